@@ -0,0 +1,209 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.benchmarks;
+
+import java.io.IOException;
+
+import javax.portlet.ActionRequest;
+import javax.portlet.ActionResponse;
+import javax.portlet.EventRequest;
+import javax.portlet.EventResponse;
+import javax.portlet.PortletException;
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletResponse;
+import javax.portlet.RenderRequest;
+import javax.portlet.RenderResponse;
+import javax.portlet.ResourceRequest;
+import javax.portlet.ResourceResponse;
+import javax.portlet.filter.ActionFilter;
+import javax.portlet.filter.EventFilter;
+import javax.portlet.filter.FilterChain;
+import javax.portlet.filter.PortletFilter;
+import javax.portlet.filter.RenderFilter;
+import javax.portlet.filter.ResourceFilter;
+
+import org.jasig.springframework.mock.web.portlet.MockPortletContext;
+import org.jasig.springframework.web.portlet.filter.PortletFilterInvoker;
+import org.springframework.mock.web.portlet.MockActionRequest;
+import org.springframework.mock.web.portlet.MockActionResponse;
+import org.springframework.mock.web.portlet.MockEvent;
+import org.springframework.mock.web.portlet.MockEventRequest;
+import org.springframework.mock.web.portlet.MockEventResponse;
+import org.springframework.mock.web.portlet.MockPortletRequest;
+import org.springframework.mock.web.portlet.MockRenderRequest;
+import org.springframework.mock.web.portlet.MockRenderResponse;
+import org.springframework.mock.web.portlet.MockResourceRequest;
+import org.springframework.mock.web.portlet.MockResourceResponse;
+
+/**
+ * The four portlet lifecycle phases as seen by a benchmark: creates the mock request and response for the phase
+ * and invokes a filter through the phase specific {@code doFilter} method, the same way a portlet container does.
+ */
+public enum BenchmarkPhase {
+    ACTION {
+        @Override
+        public MockPortletRequest createRequest(MockPortletContext portletContext) {
+            return new MockActionRequest(portletContext);
+        }
+
+        @Override
+        public PortletResponse createResponse() {
+            return new MockActionResponse();
+        }
+
+        @Override
+        public void doFilter(PortletFilter filter, PortletRequest request, PortletResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            ((ActionFilter) filter).doFilter((ActionRequest) request, (ActionResponse) response, chain);
+        }
+
+        @Override
+        public void doFilter(PortletFilterInvoker invoker, PortletRequest request, PortletResponse response,
+                FilterChain chain) throws IOException, PortletException {
+            invoker.doFilter((ActionRequest) request, (ActionResponse) response, chain);
+        }
+    },
+    EVENT {
+        @Override
+        public MockPortletRequest createRequest(MockPortletContext portletContext) {
+            return new MockEventRequest(new MockEvent("benchmark"), portletContext);
+        }
+
+        @Override
+        public PortletResponse createResponse() {
+            return new MockEventResponse();
+        }
+
+        @Override
+        public void doFilter(PortletFilter filter, PortletRequest request, PortletResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            ((EventFilter) filter).doFilter((EventRequest) request, (EventResponse) response, chain);
+        }
+
+        @Override
+        public void doFilter(PortletFilterInvoker invoker, PortletRequest request, PortletResponse response,
+                FilterChain chain) throws IOException, PortletException {
+            invoker.doFilter((EventRequest) request, (EventResponse) response, chain);
+        }
+    },
+    RENDER {
+        @Override
+        public MockPortletRequest createRequest(MockPortletContext portletContext) {
+            return new MockRenderRequest(portletContext);
+        }
+
+        @Override
+        public PortletResponse createResponse() {
+            return new MockRenderResponse();
+        }
+
+        @Override
+        public void doFilter(PortletFilter filter, PortletRequest request, PortletResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            ((RenderFilter) filter).doFilter((RenderRequest) request, (RenderResponse) response, chain);
+        }
+
+        @Override
+        public void doFilter(PortletFilterInvoker invoker, PortletRequest request, PortletResponse response,
+                FilterChain chain) throws IOException, PortletException {
+            invoker.doFilter((RenderRequest) request, (RenderResponse) response, chain);
+        }
+    },
+    RESOURCE {
+        @Override
+        public MockPortletRequest createRequest(MockPortletContext portletContext) {
+            return new MockResourceRequest(portletContext);
+        }
+
+        @Override
+        public PortletResponse createResponse() {
+            return new MockResourceResponse();
+        }
+
+        @Override
+        public void doFilter(PortletFilter filter, PortletRequest request, PortletResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            ((ResourceFilter) filter).doFilter((ResourceRequest) request, (ResourceResponse) response, chain);
+        }
+
+        @Override
+        public void doFilter(PortletFilterInvoker invoker, PortletRequest request, PortletResponse response,
+                FilterChain chain) throws IOException, PortletException {
+            invoker.doFilter((ResourceRequest) request, (ResourceResponse) response, chain);
+        }
+    };
+
+    /**
+     * A terminal {@link FilterChain} standing in for the portlet, does nothing.
+     */
+    public static final FilterChain PORTLET = new FilterChain() {
+        @Override
+        public void doFilter(ActionRequest request, ActionResponse response) {
+        }
+
+        @Override
+        public void doFilter(EventRequest request, EventResponse response) {
+        }
+
+        @Override
+        public void doFilter(RenderRequest request, RenderResponse response) {
+        }
+
+        @Override
+        public void doFilter(ResourceRequest request, ResourceResponse response) {
+        }
+    };
+
+    /**
+     * @param portletContext the context the request belongs to
+     * @return a new mock request for the phase, with the {@link PortletRequest#LIFECYCLE_PHASE} attribute set
+     */
+    public abstract MockPortletRequest createRequest(MockPortletContext portletContext);
+
+    /**
+     * @return a new mock response for the phase
+     */
+    public abstract PortletResponse createResponse();
+
+    /**
+     * Invoke the phase specific {@code doFilter} method of the filter
+     *
+     * @param filter the filter to invoke, must implement the filter interface of the phase
+     * @param request request created by {@link #createRequest(MockPortletContext)}
+     * @param response response created by {@link #createResponse()}
+     * @param chain the chain to pass to the filter
+     * @throws IOException if thrown by the filter
+     * @throws PortletException if thrown by the filter
+     */
+    public abstract void doFilter(PortletFilter filter, PortletRequest request, PortletResponse response, FilterChain chain)
+            throws IOException, PortletException;
+
+    /**
+     * Invoke the phase specific {@code doFilter} method of the invoker
+     *
+     * @param invoker the invoker to call
+     * @param request request created by {@link #createRequest(MockPortletContext)}
+     * @param response response created by {@link #createResponse()}
+     * @param chain the chain to pass to the filter
+     * @throws IOException if thrown by the filter
+     * @throws PortletException if thrown by the filter
+     */
+    public abstract void doFilter(PortletFilterInvoker invoker, PortletRequest request, PortletResponse response,
+            FilterChain chain) throws IOException, PortletException;
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.portlet.PortletException;
+import javax.portlet.PortletResponse;
+
+import org.jasig.springframework.mock.web.portlet.MockFilterConfig;
+import org.jasig.springframework.mock.web.portlet.MockPortletContext;
+import org.jasig.springframework.web.portlet.context.ContribStaticPortletApplicationContext;
+import org.jasig.springframework.web.portlet.context.PortletApplicationContext;
+import org.jasig.springframework.web.portlet.filter.DelegatingPortletFilterProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.portlet.MockPortletRequest;
+
+/**
+ * Measures the per request overhead of {@link DelegatingPortletFilterProxy} once its delegate is resolved, with a
+ * single thread and with one thread per available processor all sharing one proxy. With a lock free fast path the
+ * per thread throughput should stay roughly flat as threads are added.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DelegatingPortletFilterProxyBenchmark {
+
+    /**
+     * The proxy, shared by all benchmark threads
+     */
+    @State(Scope.Benchmark)
+    public static class ProxyState {
+        @Param({ "ACTION", "RENDER" })
+        public BenchmarkPhase phase;
+
+        DelegatingPortletFilterProxy filterProxy;
+        ContribStaticPortletApplicationContext applicationContext;
+
+        @Setup
+        public void setup() throws PortletException {
+            final MockPortletContext portletContext = new MockPortletContext();
+
+            applicationContext = new ContribStaticPortletApplicationContext();
+            applicationContext.setPortletContext(portletContext);
+            applicationContext.registerSingleton("targetFilter", PassThroughPortletFilter.class);
+            applicationContext.refresh();
+            portletContext.setAttribute(PortletApplicationContext.ROOT_PORTLET_APPLICATION_CONTEXT_ATTRIBUTE,
+                    applicationContext);
+
+            filterProxy = new DelegatingPortletFilterProxy();
+            filterProxy.init(new MockFilterConfig(portletContext, "targetFilter"));
+        }
+
+        @TearDown
+        public void tearDown() {
+            filterProxy.destroy();
+            applicationContext.close();
+        }
+    }
+
+    /**
+     * Request and response, one per benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class RequestState {
+        MockPortletRequest request;
+        PortletResponse response;
+
+        @Setup
+        public void setup(ProxyState proxyState) {
+            request = proxyState.phase.createRequest(new MockPortletContext());
+            response = proxyState.phase.createResponse();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void singleThread(ProxyState proxyState, RequestState requestState) throws Exception {
+        proxyState.phase.doFilter(proxyState.filterProxy, requestState.request, requestState.response,
+                BenchmarkPhase.PORTLET);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void allThreads(ProxyState proxyState, RequestState requestState) throws Exception {
+        proxyState.phase.doFilter(proxyState.filterProxy, requestState.request, requestState.response,
+                BenchmarkPhase.PORTLET);
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.portlet.PortletResponse;
+import javax.portlet.filter.PortletFilter;
+
+import org.jasig.springframework.mock.web.portlet.MockPortletContext;
+import org.jasig.springframework.security.portlet.DefaultPortletSecurityFilterChain;
+import org.jasig.springframework.security.portlet.PortletFilterChainProxy;
+import org.jasig.springframework.security.portlet.PortletSecurityFilterChain;
+import org.jasig.springframework.security.portlet.metrics.DefaultPortletFilterChainMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.portlet.MockPortletRequest;
+
+/**
+ * Measures chain selection and chain traversal in {@link PortletFilterChainProxy}. The request always matches the
+ * last configured chain so {@code chains} is the worst case number of matcher evaluations, each chain holds
+ * {@code filtersPerChain} pass-through filters. {@code reuseFilterChains} only has an effect on compiled chains,
+ * {@code metrics} records per chain and per filter timings with {@link DefaultPortletFilterChainMetrics}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterChainProxyBenchmark {
+
+    @Param({ "ACTION", "EVENT", "RENDER", "RESOURCE" })
+    public BenchmarkPhase phase;
+
+    @Param({ "1", "10", "50" })
+    public int chains;
+
+    @Param({ "1", "5", "10" })
+    public int filtersPerChain;
+
+    @Param({ "false", "true" })
+    public boolean compiled;
+
+    @Param({ "false", "true" })
+    public boolean reuseFilterChains;
+
+    @Param({ "false", "true" })
+    public boolean metrics;
+
+    private PortletFilterChainProxy filterChainProxy;
+    private MockPortletRequest request;
+    private PortletResponse response;
+
+    @Setup
+    public void setup() {
+        final List<PortletSecurityFilterChain> filterChains = new ArrayList<PortletSecurityFilterChain>(chains);
+        for (int chain = 0; chain < chains; chain++) {
+            final List<PortletFilter> filters = new ArrayList<PortletFilter>(filtersPerChain);
+            for (int filter = 0; filter < filtersPerChain; filter++) {
+                filters.add(new PassThroughPortletFilter());
+            }
+            filterChains.add(new DefaultPortletSecurityFilterChain(new WindowIdRequestMatcher("window" + chain), filters));
+        }
+
+        filterChainProxy = new PortletFilterChainProxy(filterChains);
+        filterChainProxy.setCompileFilterChains(compiled);
+        filterChainProxy.setReuseFilterChains(reuseFilterChains);
+        if (metrics) {
+            filterChainProxy.setFilterChainMetrics(new DefaultPortletFilterChainMetrics());
+        }
+        filterChainProxy.afterPropertiesSet();
+
+        request = phase.createRequest(new MockPortletContext());
+        request.setWindowID("window" + (chains - 1));
+        response = phase.createResponse();
+    }
+
+    @Benchmark
+    public void doFilter() throws Exception {
+        phase.doFilter(filterChainProxy, request, response, BenchmarkPhase.PORTLET);
+    }
+}
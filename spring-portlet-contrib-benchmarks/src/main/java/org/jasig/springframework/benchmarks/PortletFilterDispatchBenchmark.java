@@ -0,0 +1,80 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.portlet.PortletResponse;
+import javax.portlet.filter.PortletFilter;
+
+import org.jasig.springframework.mock.web.portlet.MockPortletContext;
+import org.jasig.springframework.web.portlet.filter.PortletFilterInvoker;
+import org.jasig.springframework.web.portlet.filter.PortletFilterUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.portlet.MockPortletRequest;
+
+/**
+ * Compares invoking a single filter through {@link PortletFilterUtils}, which reads the
+ * {@link javax.portlet.PortletRequest#LIFECYCLE_PHASE} attribute and checks the filter type on every call, with a
+ * {@link PortletFilterInvoker} that bound the phase specific filter once up front.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PortletFilterDispatchBenchmark {
+
+    @Param({ "ACTION", "EVENT", "RENDER", "RESOURCE" })
+    public BenchmarkPhase phase;
+
+    private PortletFilter filter;
+    private PortletFilterInvoker invoker;
+    private MockPortletRequest request;
+    private PortletResponse response;
+
+    @Setup
+    public void setup() {
+        filter = new PassThroughPortletFilter();
+        invoker = new PortletFilterInvoker(filter, "passThrough");
+        request = phase.createRequest(new MockPortletContext());
+        response = phase.createResponse();
+    }
+
+    @Benchmark
+    public void portletFilterUtils() throws Exception {
+        PortletFilterUtils.doFilter(filter, request, response, BenchmarkPhase.PORTLET);
+    }
+
+    @Benchmark
+    public void portletFilterInvoker() throws Exception {
+        phase.doFilter(invoker, request, response, BenchmarkPhase.PORTLET);
+    }
+}
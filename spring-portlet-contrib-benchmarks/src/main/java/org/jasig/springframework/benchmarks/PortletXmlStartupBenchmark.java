@@ -0,0 +1,144 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.benchmarks;
+
+import java.nio.charset.Charset;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jasig.springframework.security.portlet.authentication.PortletXmlMappableAttributesRetriever;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.portlet.MockPortletConfig;
+import org.springframework.mock.web.portlet.MockPortletContext;
+
+/**
+ * Portlet application startup cost of {@link PortletXmlMappableAttributesRetriever}, one retriever is initialized for
+ * each portlet declared in a generated <tt>portlet.xml</tt>.
+ * <p>
+ * {@code DOM} parses the descriptor into a DOM for every retriever as was done before the shared model,
+ * {@code STREAMING} streams it for every retriever keeping only that portlet's roles and {@code SHARED} parses it
+ * once per portlet context.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PortletXmlStartupBenchmark {
+    private static final int ROLES_PER_PORTLET = 5;
+
+    public enum Parsing {
+        DOM, STREAMING, SHARED;
+    }
+
+    @Param({ "DOM", "STREAMING", "SHARED" })
+    public Parsing parsing;
+
+    @Param({ "50" })
+    public int portletCount;
+
+    private DefaultResourceLoader resourceLoader;
+
+    @Setup
+    public void setup() {
+        final byte[] portletXml = createPortletXml(portletCount).getBytes(Charset.forName("UTF-8"));
+        resourceLoader = new DefaultResourceLoader() {
+            @Override
+            public Resource getResource(String location) {
+                return new ByteArrayResource(portletXml, "portlet.xml");
+            }
+        };
+    }
+
+    @Benchmark
+    public int startup() throws Exception {
+        final MockPortletContext portletContext = new MockPortletContext();
+        int roleCount = 0;
+        for (int i = 0; i < portletCount; i++) {
+            final PortletXmlMappableAttributesRetriever retriever = new PortletXmlMappableAttributesRetriever();
+            retriever.setResourceLoader(resourceLoader);
+            retriever.setPortletConfig(new MockPortletConfig(portletContext, "portlet" + i));
+            retriever.setShareParsedPortletXml(parsing == Parsing.SHARED);
+            retriever.setStreamingParser(parsing == Parsing.STREAMING);
+            retriever.afterPropertiesSet();
+
+            final Set<String> roles = retriever.getMappableAttributes();
+            roleCount += roles.size();
+        }
+        return roleCount;
+    }
+
+    static String createPortletXml(int portletCount) {
+        final StringBuilder xml = new StringBuilder(portletCount * 2048);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<portlet-app xmlns=\"http://java.sun.com/xml/ns/portlet/portlet-app_2_0.xsd\" version=\"2.0\">\n");
+        for (int i = 0; i < portletCount; i++) {
+            xml.append("  <portlet>\n");
+            xml.append("    <description>Generated portlet ").append(i).append("</description>\n");
+            xml.append("    <portlet-name>portlet").append(i).append("</portlet-name>\n");
+            xml.append("    <portlet-class>org.jasig.springframework.web.portlet.context.ContribDispatcherPortlet</portlet-class>\n");
+            xml.append("    <init-param>\n");
+            xml.append("      <name>contextConfigLocation</name>\n");
+            xml.append("      <value>/WEB-INF/context/portlet/portlet").append(i).append(".xml</value>\n");
+            xml.append("    </init-param>\n");
+            xml.append("    <expiration-cache>0</expiration-cache>\n");
+            xml.append("    <supports>\n");
+            xml.append("      <mime-type>text/html</mime-type>\n");
+            xml.append("      <portlet-mode>view</portlet-mode>\n");
+            xml.append("      <portlet-mode>edit</portlet-mode>\n");
+            xml.append("      <portlet-mode>help</portlet-mode>\n");
+            xml.append("    </supports>\n");
+            xml.append("    <portlet-info>\n");
+            xml.append("      <title>Portlet ").append(i).append("</title>\n");
+            xml.append("      <short-title>P").append(i).append("</short-title>\n");
+            xml.append("      <keywords>generated, benchmark</keywords>\n");
+            xml.append("    </portlet-info>\n");
+            for (int r = 0; r < ROLES_PER_PORTLET; r++) {
+                final int role = (i + r) % (ROLES_PER_PORTLET * 4);
+                xml.append("    <security-role-ref>\n");
+                xml.append("      <role-name>role").append(role).append("</role-name>\n");
+                xml.append("      <role-link>link").append(role).append("</role-link>\n");
+                xml.append("    </security-role-ref>\n");
+            }
+            xml.append("    <supported-public-render-parameter>param").append(i).append("</supported-public-render-parameter>\n");
+            xml.append("  </portlet>\n");
+        }
+        xml.append("  <filter>\n");
+        xml.append("    <filter-name>springSecurityPortletFilterChain</filter-name>\n");
+        xml.append("    <filter-class>org.jasig.springframework.web.portlet.filter.DelegatingPortletFilterProxy</filter-class>\n");
+        xml.append("    <lifecycle>RENDER_PHASE</lifecycle>\n");
+        xml.append("  </filter>\n");
+        xml.append("</portlet-app>\n");
+        return xml.toString();
+    }
+}
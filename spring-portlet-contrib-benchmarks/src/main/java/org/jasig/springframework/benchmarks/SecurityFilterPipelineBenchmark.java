@@ -0,0 +1,160 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.portlet.PortletResponse;
+import javax.portlet.filter.PortletFilter;
+
+import org.jasig.springframework.mock.web.portlet.MockPortletContext;
+import org.jasig.springframework.security.portlet.DefaultPortletSecurityFilterChain;
+import org.jasig.springframework.security.portlet.PortletFilterChainProxy;
+import org.jasig.springframework.security.portlet.authentication.PortletAuthenticationProcessingFilter;
+import org.jasig.springframework.security.portlet.authentication.PortletPreAuthenticatedAuthenticationDetailsSource;
+import org.jasig.springframework.security.portlet.context.PortletSecurityContextPersistenceFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.portlet.MockPortletRequest;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.core.authority.mapping.SimpleMappableAttributesRetriever;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationProvider;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedGrantedAuthoritiesUserDetailsService;
+
+/**
+ * Drives the full portlet security pipeline, {@link PortletFilterChainProxy} wrapping a
+ * {@link PortletSecurityContextPersistenceFilter} and a {@link PortletAuthenticationProcessingFilter} followed by
+ * {@code extraFilters} pass-through filters, for each lifecycle phase and session state.
+ * <p>
+ * Run with {@code -prof gc} to report the allocation rate, the {@code SampleTime} mode reports the latency
+ * percentiles (p0.99 and above) per phase.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityFilterPipelineBenchmark {
+    private static final String[] ROLES = { "student", "staff", "faculty", "admin", "guest" };
+
+    /**
+     * State of the user's session when a request arrives
+     */
+    public enum SessionState {
+        /** No remote user and no session, nothing is authenticated or stored */
+        ANONYMOUS,
+        /** Remote user without a session, every request authenticates and creates the session */
+        NEW_SESSION,
+        /** Remote user with a session that already holds the authenticated context */
+        AUTHENTICATED
+    }
+
+    @Param({ "ACTION", "EVENT", "RENDER", "RESOURCE" })
+    public BenchmarkPhase phase;
+
+    @Param({ "ANONYMOUS", "NEW_SESSION", "AUTHENTICATED" })
+    public SessionState sessionState;
+
+    @Param({ "0", "5" })
+    public int extraFilters;
+
+    @Param({ "false", "true" })
+    public boolean compiled;
+
+    private PortletFilterChainProxy filterChainProxy;
+    private MockPortletRequest request;
+    private PortletResponse response;
+
+    @Setup
+    public void setup() throws Exception {
+        final List<PortletFilter> filters = new ArrayList<PortletFilter>();
+        filters.add(new PortletSecurityContextPersistenceFilter());
+        filters.add(createAuthenticationFilter());
+        for (int filter = 0; filter < extraFilters; filter++) {
+            filters.add(new PassThroughPortletFilter());
+        }
+
+        filterChainProxy = new PortletFilterChainProxy(new DefaultPortletSecurityFilterChain(
+                new WindowIdRequestMatcher("window"), filters));
+        filterChainProxy.setCompileFilterChains(compiled);
+        filterChainProxy.afterPropertiesSet();
+
+        request = phase.createRequest(new MockPortletContext());
+        request.setWindowID("window");
+        response = phase.createResponse();
+
+        if (sessionState != SessionState.ANONYMOUS) {
+            request.setRemoteUser("student1");
+            request.addUserRole("student");
+            request.addUserRole("staff");
+        }
+
+        if (sessionState == SessionState.AUTHENTICATED) {
+            //First request authenticates and stores the context in the session
+            doFilter();
+        }
+    }
+
+    @Benchmark
+    public void doFilter() throws Exception {
+        phase.doFilter(filterChainProxy, request, response, BenchmarkPhase.PORTLET);
+
+        if (sessionState == SessionState.NEW_SESSION) {
+            request.setSession(null);
+        }
+    }
+
+    private PortletAuthenticationProcessingFilter createAuthenticationFilter() throws Exception {
+        final SimpleMappableAttributesRetriever rolesRetriever = new SimpleMappableAttributesRetriever();
+        rolesRetriever.setMappableAttributes(new HashSet<String>(Arrays.asList(ROLES)));
+
+        final PortletPreAuthenticatedAuthenticationDetailsSource detailsSource = new PortletPreAuthenticatedAuthenticationDetailsSource();
+        detailsSource.setMappableRolesRetriever(rolesRetriever);
+        detailsSource.afterPropertiesSet();
+
+        final PreAuthenticatedAuthenticationProvider authenticationProvider = new PreAuthenticatedAuthenticationProvider();
+        authenticationProvider.setPreAuthenticatedUserDetailsService(new PreAuthenticatedGrantedAuthoritiesUserDetailsService());
+        authenticationProvider.afterPropertiesSet();
+
+        final AuthenticationManager authenticationManager = new ProviderManager(
+                Arrays.<AuthenticationProvider>asList(authenticationProvider));
+
+        final PortletAuthenticationProcessingFilter authenticationFilter = new PortletAuthenticationProcessingFilter();
+        authenticationFilter.setAuthenticationManager(authenticationManager);
+        authenticationFilter.setAuthenticationDetailsSource(detailsSource);
+        authenticationFilter.afterPropertiesSet();
+        return authenticationFilter;
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.portlet.PortletRequest;
+
+import org.jasig.springframework.security.portlet.authentication.PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.portlet.MockRenderRequest;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+/**
+ * Serialized size and serialization cost of the {@code SecurityContext} stored in the {@code PortletSession} for a
+ * pre-authenticated portlet user with a typical LDAP backed {@link PortletRequest#USER_INFO} map.
+ * <p>
+ * Compares {@link PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails} keeping the whole user info map
+ * with details limited to a few attributes. The serialized size of the context, the bytes per session, is printed at
+ * the end of each trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionPayloadBenchmark {
+    private static final int USER_INFO_SIZE = 30;
+    private static final int ROLE_COUNT = 10;
+
+    /** Number of user info attributes kept in the details, 0 keeps all of them */
+    @Param({ "0", "3" })
+    public int userInfoAttributes;
+
+    private SecurityContext context;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        final Map<String, String> userInfo = new LinkedHashMap<String, String>();
+        for (int i = 0; i < USER_INFO_SIZE; i++) {
+            userInfo.put("ldap.attribute." + i, "value of LDAP attribute number " + i + " for this user");
+        }
+
+        final MockRenderRequest request = new MockRenderRequest();
+        request.setProperty("REMOTE_ADDR", "192.168.100.100");
+        request.getPortletSession();
+        request.setAttribute(PortletRequest.USER_INFO, Collections.unmodifiableMap(userInfo));
+
+        final List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>();
+        for (int i = 0; i < ROLE_COUNT; i++) {
+            authorities.add(new SimpleGrantedAuthority("ROLE_PORTAL_GROUP_" + i));
+        }
+
+        Set<String> keptAttributes = null;
+        if (userInfoAttributes > 0) {
+            keptAttributes = new LinkedHashSet<String>();
+            for (int i = 0; i < userInfoAttributes; i++) {
+                keptAttributes.add("ldap.attribute." + i);
+            }
+        }
+
+        final PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails details =
+                new PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails(request, keptAttributes, authorities);
+
+        final PreAuthenticatedAuthenticationToken token = new PreAuthenticatedAuthenticationToken("jdoe", "N/A", authorities);
+        token.setDetails(details);
+        context = new SecurityContextImpl();
+        context.setAuthentication(token);
+
+        serialized = serialize(context);
+    }
+
+    @TearDown(Level.Trial)
+    public void reportSize() {
+        System.out.println("userInfoAttributes=" + userInfoAttributes + ": "
+                + serialized.length + " bytes per session");
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return serialize(context);
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        try {
+            return in.readObject();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static byte[] serialize(Object obj) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(obj);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
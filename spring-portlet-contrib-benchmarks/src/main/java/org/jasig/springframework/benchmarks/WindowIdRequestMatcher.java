@@ -0,0 +1,44 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.benchmarks;
+
+import javax.portlet.PortletRequest;
+
+import org.jasig.springframework.security.portlet.util.RequestMatcher;
+
+/**
+ * Matches requests for a single portlet window, the kind of check a real chain selection does.
+ */
+public class WindowIdRequestMatcher implements RequestMatcher {
+    private final String windowId;
+
+    public WindowIdRequestMatcher(String windowId) {
+        this.windowId = windowId;
+    }
+
+    @Override
+    public boolean matches(PortletRequest request) {
+        return this.windowId.equals(request.getWindowID());
+    }
+
+    @Override
+    public String toString() {
+        return "WindowIdRequestMatcher [windowId=" + windowId + "]";
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.benchmarks;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+/**
+ * Runs {@link FilterChainProxyBenchmark} in process with the GC profiler and verifies that compiled, reused filter
+ * chains do not allocate per request once warmed up, with and without metrics.
+ * <p>
+ * The result depends on the JIT and escape analysis of the test JVM and a run takes tens of seconds, so this is a
+ * manual check that is excluded from the normal build. Run it with:
+ * <pre>
+ * mvn -Pbenchmarks,allocation-tests install -pl spring-portlet-contrib-benchmarks -am
+ * </pre>
+ */
+public class FilterChainProxyAllocationTest {
+    private static final double MAX_BYTES_PER_OP = 1.0;
+
+    @Test
+    public void reusedCompiledChainsDoNotAllocate() throws Exception {
+        final Options options = new OptionsBuilder()
+                .include(FilterChainProxyBenchmark.class.getName())
+                .param("chains", "10")
+                .param("filtersPerChain", "5")
+                .param("compiled", "true")
+                .param("reuseFilterChains", "true")
+                .param("metrics", "false", "true")
+                .mode(Mode.Throughput)
+                .forks(0)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.milliseconds(500))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.milliseconds(500))
+                .addProfiler(GCProfiler.class)
+                .shouldDoGC(true)
+                .verbosity(VerboseMode.SILENT)
+                .build();
+
+        final Collection<RunResult> results = new Runner(options).run();
+        assertFalse("No benchmark results", results.isEmpty());
+
+        for (final RunResult result : results) {
+            final Result<?> allocated = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            final String params = result.getParams().toString();
+            assertTrue("No allocation rate reported for " + params, allocated != null);
+            assertTrue(allocated.getScore() + " bytes/op allocated for " + params,
+                    allocated.getScore() < MAX_BYTES_PER_OP);
+        }
+    }
+}
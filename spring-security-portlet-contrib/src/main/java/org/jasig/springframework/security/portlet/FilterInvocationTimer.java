@@ -0,0 +1,104 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet;
+
+import javax.portlet.filter.PortletFilter;
+
+import org.jasig.springframework.security.portlet.metrics.PortletFilterChainMetrics;
+import org.jasig.springframework.web.portlet.filter.PortletPhase;
+
+/**
+ * Tracks the timing of one pass through a filter chain for {@link PortletFilterChainMetrics}. A filter's self time
+ * is the time from {@link #enter(int)} to {@link #exit(int, PortletFilter, boolean)} minus the time spent in
+ * everything it invoked further down the chain. Not thread safe, an instance is owned by a single filter chain.
+ *
+ * @version $Id: $Id
+ */
+final class FilterInvocationTimer {
+    private PortletFilterChainMetrics metrics;
+    private PortletPhase phase;
+    private int chainIndex;
+    private long[] startNanos = new long[0];
+    private long[] selfNanos = new long[0];
+    private long chainStartNanos;
+    private long markNanos;
+
+    /**
+     * Start timing a chain
+     *
+     * @param size number of filters in the chain, position {@code size} is the original chain
+     */
+    void start(PortletFilterChainMetrics metrics, PortletPhase phase, int chainIndex, int size) {
+        this.metrics = metrics;
+        this.phase = phase;
+        this.chainIndex = chainIndex;
+        if (this.startNanos.length <= size) {
+            this.startNanos = new long[size + 1];
+            this.selfNanos = new long[size + 1];
+        }
+
+        this.chainStartNanos = System.nanoTime();
+        this.markNanos = this.chainStartNanos;
+    }
+
+    /**
+     * Called right before the filter at the position is invoked
+     */
+    void enter(int position) {
+        final long now = System.nanoTime();
+        if (position > 0) {
+            this.selfNanos[position - 1] += now - this.markNanos;
+        }
+        this.startNanos[position] = now;
+        this.selfNanos[position] = 0;
+        this.markNanos = now;
+    }
+
+    /**
+     * Called right after the filter at the position returned
+     *
+     * @param filter the filter that returned, null for the original chain which is not recorded
+     */
+    void exit(int position, PortletFilter filter, boolean failed) {
+        final long now = System.nanoTime();
+        this.selfNanos[position] += now - this.markNanos;
+        this.markNanos = now;
+
+        if (filter != null) {
+            this.metrics.recordFilterInvocation(this.phase, this.chainIndex, position, filter,
+                    now - this.startNanos[position], this.selfNanos[position], failed);
+        }
+    }
+
+    /**
+     * Called once the chain has returned
+     */
+    void complete(boolean failed) {
+        this.metrics.recordChainInvocation(this.phase, this.chainIndex, System.nanoTime() - this.chainStartNanos,
+                failed);
+    }
+
+    /**
+     * Drop the metrics reference so a pooled timer does not keep it reachable
+     */
+    void clear() {
+        this.metrics = null;
+        this.phase = null;
+    }
+}
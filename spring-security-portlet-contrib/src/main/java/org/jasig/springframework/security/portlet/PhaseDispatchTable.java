@@ -0,0 +1,125 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet;
+
+import java.lang.reflect.Array;
+import java.util.List;
+
+import javax.portlet.PortletRequest;
+import javax.portlet.filter.PortletFilter;
+
+import org.jasig.springframework.web.portlet.filter.PortletPhase;
+
+/**
+ * Array backed dispatch table for a single portlet lifecycle phase, built once by
+ * {@link PortletFilterChainProxy} when compiled dispatch is enabled.
+ * <p>
+ * Each configured {@link PortletSecurityFilterChain} is captured along with its filters copied into an array of
+ * the phase specific filter interface (for example {@code ActionFilter[]}), so request time chain selection is a
+ * short array scan and no {@code instanceof} checks are needed while walking the chain. Chains containing a filter
+ * which does not support the phase are kept in the table so that matching order is preserved, but fail with the
+ * same {@link IllegalArgumentException} as {@link org.jasig.springframework.web.portlet.filter.PortletFilterUtils}
+ * if a request of that phase is ever routed to them.
+ *
+ * @param <F> the phase specific {@code PortletFilter} sub-interface
+ * @version $Id: $Id
+ */
+final class PhaseDispatchTable<F extends PortletFilter> {
+    private final PortletPhase phase;
+    private final Class<F> filterType;
+    private final PortletSecurityFilterChain[] chains;
+    private final F[][] filters;
+    private final PortletFilter[] unsupportedFilters;
+
+    /**
+     * Compile the dispatch table for one lifecycle phase
+     *
+     * @param phase the lifecycle phase the table is for
+     * @param filterType the filter interface that filters must implement to take part in the phase, must be the
+     * {@link PortletPhase#getFilterType() filter type} of the phase
+     * @param filterChains the configured chains, in matching order
+     */
+    @SuppressWarnings("unchecked")
+    PhaseDispatchTable(PortletPhase phase, Class<F> filterType, List<PortletSecurityFilterChain> filterChains) {
+        this.phase = phase;
+        this.filterType = filterType;
+
+        final int chainCount = filterChains.size();
+        this.chains = filterChains.toArray(new PortletSecurityFilterChain[chainCount]);
+        this.filters = (F[][]) Array.newInstance(filterType, chainCount, 0);
+        this.unsupportedFilters = new PortletFilter[chainCount];
+
+        for (int chainIndex = 0; chainIndex < chainCount; chainIndex++) {
+            final List<PortletFilter> chainFilters = this.chains[chainIndex].getFilters();
+            final F[] typedFilters = (F[]) Array.newInstance(filterType, chainFilters.size());
+
+            for (int filterIndex = 0; filterIndex < typedFilters.length; filterIndex++) {
+                final PortletFilter filter = chainFilters.get(filterIndex);
+                if (!filterType.isInstance(filter)) {
+                    this.unsupportedFilters[chainIndex] = filter;
+                    break;
+                }
+                typedFilters[filterIndex] = filterType.cast(filter);
+            }
+
+            this.filters[chainIndex] = this.unsupportedFilters[chainIndex] == null ? typedFilters : null;
+        }
+    }
+
+    /**
+     * @return the lifecycle phase this table dispatches
+     */
+    PortletPhase getPhase() {
+        return this.phase;
+    }
+
+    /**
+     * Find the index of the first chain which matches the request
+     *
+     * @param request the request to match
+     * @return the index of the matching chain, -1 if no chain matches
+     */
+    int match(PortletRequest request) {
+        final PortletSecurityFilterChain[] chains = this.chains;
+        for (int i = 0; i < chains.length; i++) {
+            if (chains[i].matches(request)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the typed filters for the chain at the specified index
+     *
+     * @param index index as returned by {@link #match(PortletRequest)}
+     * @return the phase specific filters of the chain
+     * @throws IllegalArgumentException if a filter in the chain does not support this phase
+     */
+    F[] getFilters(int index) {
+        final F[] chainFilters = this.filters[index];
+        if (chainFilters == null) {
+            throw new IllegalArgumentException("Provided filter does not implement " + this.filterType.getSimpleName()
+                    + " as required by : " + this.phase.getPhaseName() + " - " + this.unsupportedFilters[index]);
+        }
+
+        return chainFilters;
+    }
+}
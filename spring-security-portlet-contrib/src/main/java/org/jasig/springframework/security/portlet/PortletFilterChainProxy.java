@@ -25,6 +25,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.portlet.ActionRequest;
 import javax.portlet.ActionResponse;
@@ -37,15 +38,22 @@ import javax.portlet.RenderRequest;
 import javax.portlet.RenderResponse;
 import javax.portlet.ResourceRequest;
 import javax.portlet.ResourceResponse;
+import javax.portlet.filter.ActionFilter;
+import javax.portlet.filter.EventFilter;
 import javax.portlet.filter.FilterChain;
 import javax.portlet.filter.PortletFilter;
+import javax.portlet.filter.RenderFilter;
+import javax.portlet.filter.ResourceFilter;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.jasig.springframework.security.portlet.metrics.PortletFilterChainMetrics;
+import org.jasig.springframework.security.portlet.util.RequestMatchCache;
 import org.jasig.springframework.security.portlet.util.RequestMatcher;
 import org.jasig.springframework.web.portlet.filter.DelegatingPortletFilterProxy;
 import org.jasig.springframework.web.portlet.filter.GenericPortletFilterBean;
 import org.jasig.springframework.web.portlet.filter.PortletFilterUtils;
+import org.jasig.springframework.web.portlet.filter.PortletPhase;
 
 /**
  * Delegates {@code PortletFilter} requests to a list of Spring-managed filter beans.
@@ -103,6 +111,36 @@ import org.jasig.springframework.web.portlet.filter.PortletFilterUtils;
  * container to manage the lifecycle instead of the servlet container. {@code PortletFilterChainProxy} does not invoke the
  * standard filter lifecycle methods on any filter beans that you add to the application context.
  *
+ * <h2>Compiled Dispatch</h2>
+ * <p>
+ * When {@link #setCompileFilterChains(boolean) compileFilterChains} is enabled the configured chains are compiled
+ * into one dispatch table per lifecycle phase when {@link #afterPropertiesSet()} is called. Requests are then routed
+ * using the phase implied by the {@code doFilter} method the container invoked, chain selection is an array scan and
+ * the selected filters are invoked through their phase specific interface without re-resolving the
+ * {@link PortletRequest#LIFECYCLE_PHASE} attribute at each hop. The chains and their filter lists are captured at
+ * initialization, later modifications to them are not seen in this mode.
+ * <p>
+ * Compiled dispatch normally creates one small {@code FilterChain} object per request. Enabling
+ * {@link #setReuseFilterChains(boolean) reuseFilterChains} as well takes chain cursors from a small lock free pool
+ * owned by the proxy, they are reset rather than reallocated so a request passing through the proxy allocates
+ * nothing unless more requests are in flight than the pool holds. No cursor is tied to a container thread, they
+ * become unreachable together with the proxy. This is only safe if no filter retains the {@code FilterChain} it was
+ * passed beyond the return of its {@code doFilter} call.
+ *
+ * <h2>Chain Selection Cache</h2>
+ * <p>
+ * If a {@link #setChainSelectionCache(RequestMatchCache) chainSelectionCache} is set the index of the selected chain
+ * is remembered per cache key (by default window id, lifecycle phase, portlet mode and window state) and the
+ * {@link RequestMatcher}s are only evaluated on a cache miss. This is only correct if every configured matcher's
+ * result depends on nothing but the key components of the cache.
+ *
+ * <h2>Metrics</h2>
+ * <p>
+ * If {@link #setFilterChainMetrics(PortletFilterChainMetrics) filterChainMetrics} are set the invocation count,
+ * failures and timing of every chain and every filter are reported per lifecycle phase. Filter timings are reported
+ * both including and excluding the time spent in the rest of the chain, so the filter responsible for a slow request
+ * can be identified.
+ *
  * @author Carlos Sanchez
  * @author Ben Alex
  * @author Luke Taylor
@@ -115,12 +153,32 @@ public class PortletFilterChainProxy extends GenericPortletFilterBean {
 
     private static final Log logger = LogFactory.getLog(PortletFilterChainProxy.class);
 
+    /** Number of reusable chain cursors pooled per phase, must be a power of 2 */
+    private static final int CURSOR_POOL_SIZE = 32;
+
     //~ Instance fields ================================================================================================
 
     private List<PortletSecurityFilterChain> filterChains;
 
     private FilterChainValidator filterChainValidator = new NullFilterChainValidator();
 
+    private boolean compileFilterChains = false;
+
+    /** Compiled dispatch tables, rebuilt by {@link #afterPropertiesSet()} while requests may be reading them */
+    private volatile PhaseDispatchTable<ActionFilter> actionDispatchTable;
+    private volatile PhaseDispatchTable<EventFilter> eventDispatchTable;
+    private volatile PhaseDispatchTable<RenderFilter> renderDispatchTable;
+    private volatile PhaseDispatchTable<ResourceFilter> resourceDispatchTable;
+
+    private boolean reuseFilterChains = false;
+
+    private RequestMatchCache<Integer> chainSelectionCache;
+
+    private PortletFilterChainMetrics filterChainMetrics;
+
+    /** Chain cursors of the compiled dispatch tables, only pooled when compiled chains are reused */
+    private volatile FilterChainCursors filterChainCursors = new FilterChainCursors(0);
+
     //~ Methods ========================================================================================================
 
     /**
@@ -151,6 +209,124 @@ public class PortletFilterChainProxy extends GenericPortletFilterBean {
     @Override
     public void afterPropertiesSet() {
         filterChainValidator.validate(this);
+
+        if (chainSelectionCache != null) {
+            chainSelectionCache.clear();
+        }
+
+        if (compileFilterChains) {
+            actionDispatchTable = new PhaseDispatchTable<ActionFilter>(PortletPhase.ACTION, ActionFilter.class, filterChains);
+            eventDispatchTable = new PhaseDispatchTable<EventFilter>(PortletPhase.EVENT, EventFilter.class, filterChains);
+            renderDispatchTable = new PhaseDispatchTable<RenderFilter>(PortletPhase.RENDER, RenderFilter.class, filterChains);
+            resourceDispatchTable = new PhaseDispatchTable<ResourceFilter>(PortletPhase.RESOURCE, ResourceFilter.class, filterChains);
+        }
+        else {
+            actionDispatchTable = null;
+            eventDispatchTable = null;
+            renderDispatchTable = null;
+            resourceDispatchTable = null;
+        }
+
+        filterChainCursors = new FilterChainCursors(compileFilterChains && reuseFilterChains ? CURSOR_POOL_SIZE : 0);
+    }
+
+    /**
+     * Drops the pooled chain cursors. The pools are only referenced by the proxy, so no container thread keeps a
+     * cursor, and with it the filters and this web application's classes, after it is undeployed.
+     */
+    @Override
+    public void destroy() {
+        filterChainCursors = new FilterChainCursors(0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void doFilter(ActionRequest request, ActionResponse response, FilterChain chain) throws IOException,
+            PortletException {
+        final PhaseDispatchTable<ActionFilter> dispatchTable = this.actionDispatchTable;
+        if (dispatchTable == null) {
+            super.doFilter(request, response, chain);
+            return;
+        }
+
+        doCompiledFilter(dispatchTable, this.filterChainCursors.actionChains, request, response, chain);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void doFilter(EventRequest request, EventResponse response, FilterChain chain) throws IOException,
+            PortletException {
+        final PhaseDispatchTable<EventFilter> dispatchTable = this.eventDispatchTable;
+        if (dispatchTable == null) {
+            super.doFilter(request, response, chain);
+            return;
+        }
+
+        doCompiledFilter(dispatchTable, this.filterChainCursors.eventChains, request, response, chain);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void doFilter(RenderRequest request, RenderResponse response, FilterChain chain) throws IOException,
+            PortletException {
+        final PhaseDispatchTable<RenderFilter> dispatchTable = this.renderDispatchTable;
+        if (dispatchTable == null) {
+            super.doFilter(request, response, chain);
+            return;
+        }
+
+        doCompiledFilter(dispatchTable, this.filterChainCursors.renderChains, request, response, chain);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void doFilter(ResourceRequest request, ResourceResponse response, FilterChain chain) throws IOException,
+            PortletException {
+        final PhaseDispatchTable<ResourceFilter> dispatchTable = this.resourceDispatchTable;
+        if (dispatchTable == null) {
+            super.doFilter(request, response, chain);
+            return;
+        }
+
+        doCompiledFilter(dispatchTable, this.filterChainCursors.resourceChains, request, response, chain);
+    }
+
+    /**
+     * Select the chain for a request from the phase's dispatch table and walk it with a cursor of that phase
+     */
+    private <F extends PortletFilter, Q extends PortletRequest, S extends PortletResponse> void doCompiledFilter(
+            PhaseDispatchTable<F> dispatchTable, FilterChainCursorPool<F, Q, S> cursors, Q request, S response,
+            FilterChain chain) throws IOException, PortletException {
+
+        final int chainIndex = selectChain(request, dispatchTable);
+        final F[] filters = chainIndex < 0 ? null : dispatchTable.getFilters(chainIndex);
+        if (filters == null || filters.length == 0) {
+            logNoMatchingFilters(request, filters);
+            PortletFilterUtils.doFilter(dispatchTable.getPhase(), request, response, chain);
+            return;
+        }
+
+        final CompiledVirtualFilterChain<F, Q, S> vfc = cursors.acquire();
+        vfc.reset(request, chain, filters);
+        final FilterInvocationTimer timer = vfc.startTimer(filterChainMetrics, chainIndex);
+        boolean completed = false;
+        try {
+            vfc.proceed(request, response);
+            completed = true;
+        }
+        finally {
+            if (timer != null) {
+                timer.complete(!completed);
+            }
+            cursors.release(vfc);
+        }
+    }
+
+    private void logNoMatchingFilters(PortletRequest request, PortletFilter[] filters) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(request.getParameterMap() +
+                    (filters == null ? " has no matching filters" : " has an empty filter list"));
+        }
     }
 
     /** {@inheritDoc} */
@@ -158,7 +334,8 @@ public class PortletFilterChainProxy extends GenericPortletFilterBean {
     protected void doCommonFilter(PortletRequest request, PortletResponse response, FilterChain chain)
             throws IOException, PortletException {
 
-        List<PortletFilter> filters = getFilters(request);
+        final int chainIndex = selectChain(request, null);
+        List<PortletFilter> filters = chainIndex < 0 ? null : filterChains.get(chainIndex).getFilters();
 
         if (filters == null || filters.size() == 0) {
             if (logger.isDebugEnabled()) {
@@ -171,24 +348,69 @@ public class PortletFilterChainProxy extends GenericPortletFilterBean {
             return;
         }
 
-        VirtualFilterChain vfc = new VirtualFilterChain(request, chain, filters);
-        vfc.doCommonFilter(request, response);
+        final PortletPhase phase = PortletFilterUtils.getPortletPhase(request);
+        if (phase == null) {
+            throw new IllegalArgumentException("Unknown Portlet Lifecycle Phase: " + request.getAttribute(PortletRequest.LIFECYCLE_PHASE));
+        }
+
+        VirtualFilterChain vfc = new VirtualFilterChain(request, phase, chain, filters);
+
+        final PortletFilterChainMetrics metrics = this.filterChainMetrics;
+        if (metrics == null) {
+            vfc.doCommonFilter(request, response);
+            return;
+        }
+
+        final FilterInvocationTimer timer = new FilterInvocationTimer();
+        timer.start(metrics, phase, chainIndex, filters.size());
+        vfc.timer = timer;
+        boolean completed = false;
+        try {
+            vfc.doCommonFilter(request, response);
+            completed = true;
+        }
+        finally {
+            timer.complete(!completed);
+        }
     }
 
     /**
-     * Returns the first filter chain matching the supplied URL.
+     * Returns the index of the first filter chain matching the supplied request, consulting the chain selection
+     * cache if one is configured.
      *
      * @param request the request to match
-     * @return an ordered array of Filters defining the filter chain
+     * @param dispatchTable the compiled dispatch table for the request's phase, null if not compiled
+     * @return the index of the matching chain, -1 if no chain matches
      */
-    private List<PortletFilter> getFilters(PortletRequest request)  {
-        for (PortletSecurityFilterChain chain : filterChains) {
-            if (chain.matches(request)) {
-                return chain.getFilters();
+    private int selectChain(PortletRequest request, PhaseDispatchTable<?> dispatchTable) {
+        final RequestMatchCache<Integer> cache = this.chainSelectionCache;
+        if (cache == null) {
+            return matchChain(request, dispatchTable);
+        }
+
+        //All dispatch tables share the chain order so cached indices are valid for every phase
+        final Object key = cache.createKey(request);
+        Integer index = cache.get(key);
+        if (index == null) {
+            index = matchChain(request, dispatchTable);
+            cache.put(key, index);
+        }
+
+        return index;
+    }
+
+    private int matchChain(PortletRequest request, PhaseDispatchTable<?> dispatchTable) {
+        if (dispatchTable != null) {
+            return dispatchTable.match(request);
+        }
+
+        for (int i = 0; i < filterChains.size(); i++) {
+            if (filterChains.get(i).matches(request)) {
+                return i;
             }
         }
 
-        return null;
+        return -1;
     }
 
     /**
@@ -251,6 +473,58 @@ public class PortletFilterChainProxy extends GenericPortletFilterBean {
         this.filterChainValidator = filterChainValidator;
     }
 
+    /**
+     * If set to true the configured filter chains are compiled into per lifecycle phase dispatch tables by
+     * {@link #afterPropertiesSet()}. Defaults to false.
+     *
+     * @param compileFilterChains true to enable compiled dispatch
+     */
+    public void setCompileFilterChains(boolean compileFilterChains) {
+        this.compileFilterChains = compileFilterChains;
+    }
+
+    /**
+     * If set to true, and {@link #setCompileFilterChains(boolean) compileFilterChains} is enabled, the
+     * {@code FilterChain} objects used to walk the compiled chains are pooled and reset for each request instead of
+     * being created for every request. Only enable this if no filter keeps a reference to the {@code FilterChain}
+     * after its {@code doFilter} method returns. Takes effect when {@link #afterPropertiesSet()} is called, the pooled
+     * cursors are released by {@link #destroy()}. Defaults to false.
+     *
+     * @param reuseFilterChains true to reuse filter chain cursors
+     */
+    public void setReuseFilterChains(boolean reuseFilterChains) {
+        this.reuseFilterChains = reuseFilterChains;
+    }
+
+    /**
+     * Cache the selected filter chain per request key, see {@link RequestMatchCache} for the restrictions on
+     * which {@link RequestMatcher}s can be cached. The cache is cleared by {@link #afterPropertiesSet()}. Defaults to
+     * null, no caching.
+     *
+     * @param chainSelectionCache the cache to use, should not be shared with other proxies
+     */
+    public void setChainSelectionCache(RequestMatchCache<Integer> chainSelectionCache) {
+        this.chainSelectionCache = chainSelectionCache;
+    }
+
+    /**
+     * @return the chain selection cache, null if chain selection is not cached
+     */
+    public RequestMatchCache<Integer> getChainSelectionCache() {
+        return this.chainSelectionCache;
+    }
+
+    /**
+     * Report the timing of every chain and filter invocation to the metrics, for example a
+     * {@link org.jasig.springframework.security.portlet.metrics.DefaultPortletFilterChainMetrics}. Defaults to null,
+     * no metrics are recorded.
+     *
+     * @param filterChainMetrics the metrics to report to
+     */
+    public void setFilterChainMetrics(PortletFilterChainMetrics filterChainMetrics) {
+        this.filterChainMetrics = filterChainMetrics;
+    }
+
     /**
      * <p>toString.</p>
      *
@@ -276,10 +550,13 @@ public class PortletFilterChainProxy extends GenericPortletFilterBean {
         private final FilterChain originalChain;
         private final List<PortletFilter> additionalFilters;
         private final PortletRequest portletRequest;
+        private final PortletPhase phase;
         private final int size;
         private int currentPosition = 0;
+        private FilterInvocationTimer timer;
 
-        private VirtualFilterChain(PortletRequest portletRequest, FilterChain chain, List<PortletFilter> additionalFilters) {
+        private VirtualFilterChain(PortletRequest portletRequest, PortletPhase phase, FilterChain chain, List<PortletFilter> additionalFilters) {
+            this.phase = phase;
             this.originalChain = chain;
             this.additionalFilters = additionalFilters;
             this.size = additionalFilters.size();
@@ -314,7 +591,20 @@ public class PortletFilterChainProxy extends GenericPortletFilterBean {
                 }
 
                 // Deactivate path stripping as we exit the security filter chain
-                PortletFilterUtils.doFilter(request, response, originalChain);
+                if (timer == null) {
+                    PortletFilterUtils.doFilter(phase, request, response, originalChain);
+                    return;
+                }
+
+                timer.enter(size);
+                boolean completed = false;
+                try {
+                    PortletFilterUtils.doFilter(phase, request, response, originalChain);
+                    completed = true;
+                }
+                finally {
+                    timer.exit(size, null, !completed);
+                }
             } else {
                 currentPosition++;
 
@@ -326,8 +616,353 @@ public class PortletFilterChainProxy extends GenericPortletFilterBean {
                         + nextFilter.getClass().getSimpleName() + "'");
                 }
 
-                PortletFilterUtils.doFilter(nextFilter, request, response, this);
+                if (timer == null) {
+                    PortletFilterUtils.doFilter(phase, nextFilter, request, response, this);
+                    return;
+                }
+
+                final int position = currentPosition - 1;
+                timer.enter(position);
+                boolean completed = false;
+                try {
+                    PortletFilterUtils.doFilter(phase, nextFilter, request, response, this);
+                    completed = true;
+                }
+                finally {
+                    timer.exit(position, nextFilter, !completed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Base for the {@code FilterChain} implementations used in compiled dispatch mode. Walks an array of filters
+     * typed for a single lifecycle phase, subclasses only bind the typed {@code doFilter} calls of their phase.
+     * Invoking the other phases is an error.
+     *
+     * @param <F> the phase specific {@code PortletFilter} sub-interface
+     * @param <Q> the phase specific request type
+     * @param <S> the phase specific response type
+     */
+    private abstract static class CompiledVirtualFilterChain<F extends PortletFilter, Q extends PortletRequest, S extends PortletResponse>
+            implements FilterChain {
+        private final PortletPhase phase;
+        protected FilterChain originalChain;
+        private PortletRequest portletRequest;
+        private F[] additionalFilters;
+        private int size;
+        private int currentPosition;
+        private FilterInvocationTimer timer;
+        private FilterInvocationTimer pooledTimer;
+
+        protected CompiledVirtualFilterChain(PortletPhase phase) {
+            this.phase = phase;
+        }
+
+        final void reset(PortletRequest portletRequest, FilterChain chain, F[] additionalFilters) {
+            this.originalChain = chain;
+            this.portletRequest = portletRequest;
+            this.additionalFilters = additionalFilters;
+            this.size = additionalFilters.length;
+            this.currentPosition = 0;
+            this.timer = null;
+        }
+
+        /**
+         * Start timing this pass through the chain, must be called after reset
+         *
+         * @return the started timer, null if metrics is null
+         */
+        final FilterInvocationTimer startTimer(PortletFilterChainMetrics metrics, int chainIndex) {
+            if (metrics == null) {
+                return null;
             }
+
+            if (this.pooledTimer == null) {
+                this.pooledTimer = new FilterInvocationTimer();
+            }
+            this.pooledTimer.start(metrics, this.phase, chainIndex, this.size);
+            this.timer = this.pooledTimer;
+            return this.timer;
+        }
+
+        /**
+         * Drop all request references so a pooled chain does not keep the request reachable
+         */
+        final void clear() {
+            this.originalChain = null;
+            this.portletRequest = null;
+            this.additionalFilters = null;
+            this.timer = null;
+            if (this.pooledTimer != null) {
+                this.pooledTimer.clear();
+            }
+        }
+
+        /**
+         * Invoke the next filter, or the original chain once all filters have been invoked
+         */
+        final void proceed(Q request, S response) throws IOException, PortletException {
+            final FilterInvocationTimer timer = this.timer;
+            if (currentPosition == size) {
+                logProceed(null);
+                if (timer == null) {
+                    invokeChain(request, response);
+                    return;
+                }
+
+                timer.enter(size);
+                boolean completed = false;
+                try {
+                    invokeChain(request, response);
+                    completed = true;
+                }
+                finally {
+                    timer.exit(size, null, !completed);
+                }
+            } else {
+                final int position = currentPosition++;
+                final F nextFilter = additionalFilters[position];
+                logProceed(nextFilter);
+                if (timer == null) {
+                    invokeFilter(nextFilter, request, response);
+                    return;
+                }
+
+                timer.enter(position);
+                boolean completed = false;
+                try {
+                    invokeFilter(nextFilter, request, response);
+                    completed = true;
+                }
+                finally {
+                    timer.exit(position, nextFilter, !completed);
+                }
+            }
+        }
+
+        /**
+         * Invoke a filter with this chain through its phase specific interface
+         */
+        protected abstract void invokeFilter(F filter, Q request, S response) throws IOException, PortletException;
+
+        /**
+         * Invoke the original chain through its phase specific method
+         */
+        protected abstract void invokeChain(Q request, S response) throws IOException, PortletException;
+
+        @Override
+        public void doFilter(ActionRequest request, ActionResponse response) throws IOException, PortletException {
+            throw wrongPhase(PortletPhase.ACTION);
+        }
+
+        @Override
+        public void doFilter(EventRequest request, EventResponse response) throws IOException, PortletException {
+            throw wrongPhase(PortletPhase.EVENT);
+        }
+
+        @Override
+        public void doFilter(RenderRequest request, RenderResponse response) throws IOException, PortletException {
+            throw wrongPhase(PortletPhase.RENDER);
+        }
+
+        @Override
+        public void doFilter(ResourceRequest request, ResourceResponse response) throws IOException, PortletException {
+            throw wrongPhase(PortletPhase.RESOURCE);
+        }
+
+        private void logProceed(PortletFilter nextFilter) {
+            if (logger.isDebugEnabled()) {
+                if (nextFilter == null) {
+                    logger.debug(portletRequest
+                            + " reached end of additional filter chain; proceeding with original chain");
+                }
+                else {
+                    logger.debug(portletRequest + " at position " + currentPosition + " of "
+                        + size + " in additional filter chain; firing PortletFilter: '"
+                        + nextFilter.getClass().getSimpleName() + "'");
+                }
+            }
+        }
+
+        private IllegalStateException wrongPhase(PortletPhase invokedPhase) {
+            return new IllegalStateException("Filter chain compiled for " + this.phase.getPhaseName()
+                    + " cannot be invoked for " + invokedPhase.getPhaseName() + ": " + this.portletRequest);
+        }
+    }
+
+    private static final class ActionVirtualFilterChain extends CompiledVirtualFilterChain<ActionFilter, ActionRequest, ActionResponse> {
+        private ActionVirtualFilterChain() {
+            super(PortletPhase.ACTION);
+        }
+
+        @Override
+        public void doFilter(ActionRequest request, ActionResponse response) throws IOException, PortletException {
+            proceed(request, response);
+        }
+
+        @Override
+        protected void invokeFilter(ActionFilter filter, ActionRequest request, ActionResponse response)
+                throws IOException, PortletException {
+            filter.doFilter(request, response, this);
+        }
+
+        @Override
+        protected void invokeChain(ActionRequest request, ActionResponse response) throws IOException, PortletException {
+            originalChain.doFilter(request, response);
+        }
+    }
+
+    private static final class EventVirtualFilterChain extends CompiledVirtualFilterChain<EventFilter, EventRequest, EventResponse> {
+        private EventVirtualFilterChain() {
+            super(PortletPhase.EVENT);
+        }
+
+        @Override
+        public void doFilter(EventRequest request, EventResponse response) throws IOException, PortletException {
+            proceed(request, response);
+        }
+
+        @Override
+        protected void invokeFilter(EventFilter filter, EventRequest request, EventResponse response)
+                throws IOException, PortletException {
+            filter.doFilter(request, response, this);
+        }
+
+        @Override
+        protected void invokeChain(EventRequest request, EventResponse response) throws IOException, PortletException {
+            originalChain.doFilter(request, response);
+        }
+    }
+
+    private static final class RenderVirtualFilterChain extends CompiledVirtualFilterChain<RenderFilter, RenderRequest, RenderResponse> {
+        private RenderVirtualFilterChain() {
+            super(PortletPhase.RENDER);
+        }
+
+        @Override
+        public void doFilter(RenderRequest request, RenderResponse response) throws IOException, PortletException {
+            proceed(request, response);
+        }
+
+        @Override
+        protected void invokeFilter(RenderFilter filter, RenderRequest request, RenderResponse response)
+                throws IOException, PortletException {
+            filter.doFilter(request, response, this);
+        }
+
+        @Override
+        protected void invokeChain(RenderRequest request, RenderResponse response) throws IOException, PortletException {
+            originalChain.doFilter(request, response);
+        }
+    }
+
+    private static final class ResourceVirtualFilterChain extends CompiledVirtualFilterChain<ResourceFilter, ResourceRequest, ResourceResponse> {
+        private ResourceVirtualFilterChain() {
+            super(PortletPhase.RESOURCE);
+        }
+
+        @Override
+        public void doFilter(ResourceRequest request, ResourceResponse response) throws IOException, PortletException {
+            proceed(request, response);
+        }
+
+        @Override
+        protected void invokeFilter(ResourceFilter filter, ResourceRequest request, ResourceResponse response)
+                throws IOException, PortletException {
+            filter.doFilter(request, response, this);
+        }
+
+        @Override
+        protected void invokeChain(ResourceRequest request, ResourceResponse response) throws IOException, PortletException {
+            originalChain.doFilter(request, response);
+        }
+    }
+
+    /**
+     * Bounded lock free pool of reusable chain cursors for one phase. Each acquire takes a cursor out of its slot so
+     * concurrent and re-entrant invocations of the proxy never share one. Slots are probed starting at a per thread
+     * offset, a thread usually gets back the cursor it released last. A cursor released to a full pool is dropped
+     * and an empty pool creates a new one, a pool without slots creates a cursor for every request.
+     */
+    private abstract static class FilterChainCursorPool<F extends PortletFilter, Q extends PortletRequest, S extends PortletResponse> {
+        private final AtomicReferenceArray<CompiledVirtualFilterChain<F, Q, S>> cursors;
+        private final int poolSize;
+
+        private FilterChainCursorPool(int poolSize) {
+            this.cursors = new AtomicReferenceArray<CompiledVirtualFilterChain<F, Q, S>>(poolSize);
+            this.poolSize = poolSize;
+        }
+
+        final CompiledVirtualFilterChain<F, Q, S> acquire() {
+            final int start = probe();
+            for (int i = 0; i < poolSize; i++) {
+                final int slot = (start + i) & (poolSize - 1);
+                final CompiledVirtualFilterChain<F, Q, S> cursor = cursors.get(slot);
+                if (cursor != null && cursors.compareAndSet(slot, cursor, null)) {
+                    return cursor;
+                }
+            }
+
+            return create();
+        }
+
+        final void release(CompiledVirtualFilterChain<F, Q, S> cursor) {
+            cursor.clear();
+            final int start = probe();
+            for (int i = 0; i < poolSize; i++) {
+                final int slot = (start + i) & (poolSize - 1);
+                if (cursors.get(slot) == null && cursors.compareAndSet(slot, null, cursor)) {
+                    return;
+                }
+            }
+        }
+
+        private static int probe() {
+            final long threadId = Thread.currentThread().getId();
+            return (int) (threadId ^ (threadId >>> 32));
+        }
+
+        protected abstract CompiledVirtualFilterChain<F, Q, S> create();
+    }
+
+    /**
+     * The cursor pools for all phases
+     */
+    private static final class FilterChainCursors {
+        private final FilterChainCursorPool<ActionFilter, ActionRequest, ActionResponse> actionChains;
+        private final FilterChainCursorPool<EventFilter, EventRequest, EventResponse> eventChains;
+        private final FilterChainCursorPool<RenderFilter, RenderRequest, RenderResponse> renderChains;
+        private final FilterChainCursorPool<ResourceFilter, ResourceRequest, ResourceResponse> resourceChains;
+
+        /**
+         * @param poolSize number of cursors pooled per phase, a power of 2 or 0 to create a cursor per request
+         */
+        private FilterChainCursors(int poolSize) {
+            this.actionChains = new FilterChainCursorPool<ActionFilter, ActionRequest, ActionResponse>(poolSize) {
+                @Override
+                protected ActionVirtualFilterChain create() {
+                    return new ActionVirtualFilterChain();
+                }
+            };
+            this.eventChains = new FilterChainCursorPool<EventFilter, EventRequest, EventResponse>(poolSize) {
+                @Override
+                protected EventVirtualFilterChain create() {
+                    return new EventVirtualFilterChain();
+                }
+            };
+            this.renderChains = new FilterChainCursorPool<RenderFilter, RenderRequest, RenderResponse>(poolSize) {
+                @Override
+                protected RenderVirtualFilterChain create() {
+                    return new RenderVirtualFilterChain();
+                }
+            };
+            this.resourceChains = new FilterChainCursorPool<ResourceFilter, ResourceRequest, ResourceResponse>(poolSize) {
+                @Override
+                protected ResourceVirtualFilterChain create() {
+                    return new ResourceVirtualFilterChain();
+                }
+            };
         }
     }
 
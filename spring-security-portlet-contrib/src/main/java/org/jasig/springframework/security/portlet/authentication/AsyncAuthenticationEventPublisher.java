@@ -0,0 +1,358 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * {@link ApplicationEventPublisher} which queues events in a bounded queue and delivers them in batches to the
+ * delegate publisher, by default the application context, on a background {@link Executor}. Intended to be set as the
+ * {@link PortletAuthenticationProcessingFilter#setAuthenticationEventPublisher(ApplicationEventPublisher)
+ * authenticationEventPublisher} of the portlet authentication filter, and as the publisher of a
+ * {@link org.springframework.security.authentication.DefaultAuthenticationEventPublisher} for failure events, so
+ * audit listeners no longer run inside the portlet request.
+ * <p>
+ * At most one batch is delivered at a time so events are delivered in the order they were queued, except for events
+ * handled by {@link OverflowPolicy#CALLER_RUNS}. Listeners run without the <tt>SecurityContext</tt> of the request,
+ * the authentication is available from the event. An exception thrown by a listener is logged and does not stop
+ * delivery of the remaining events. When no executor is set a single daemon thread is created and shut down by
+ * {@link #destroy()}, which waits for the batch being delivered and then delivers any events still queued on the
+ * calling thread.
+ *
+ * @version $Id: $Id
+ */
+public class AsyncAuthenticationEventPublisher
+        implements ApplicationEventPublisher, ApplicationEventPublisherAware, InitializingBean, DisposableBean {
+
+    /**
+     * What to do with an event when the queue is full
+     */
+    public enum OverflowPolicy {
+        /** Discard the event, it is counted in {@link AsyncAuthenticationEventPublisher#getDroppedCount()} */
+        DROP,
+        /**
+         * Wait for space in the queue, if the waiting thread is interrupted the event is dropped. Listeners must not
+         * publish through the same publisher when this policy is used as the delivering thread could block itself.
+         */
+        BLOCK,
+        /** Deliver the event on the publishing thread, ahead of any events still queued */
+        CALLER_RUNS;
+    }
+
+    /** Default number of events that can be queued */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    /** Default maximum number of events taken from the queue per batch */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    /** Seconds {@link #destroy()} waits for queued events to be delivered */
+    private static final long DESTROY_TIMEOUT = 5;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    // Held while taking and delivering batches so only one thread delivers queued events at a time
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private ApplicationEventPublisher delegate;
+    private Executor executor;
+    private ExecutorService ownedExecutor;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+    private volatile BlockingQueue<ApplicationEvent> queue;
+    private volatile boolean running = false;
+
+    /**
+     * {@inheritDoc}
+     *
+     * The publisher events are delivered to, set automatically to the application context.
+     */
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.delegate = applicationEventPublisher;
+    }
+
+    /**
+     * @param executor executor batches are delivered on, if not set a single daemon thread is created
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param queueCapacity number of events that can be queued, defaults to {@link #DEFAULT_QUEUE_CAPACITY}
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        Assert.isTrue(queueCapacity > 0, "queueCapacity must be greater than 0");
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param maxBatchSize maximum number of events taken from the queue at once, defaults to
+     * {@link #DEFAULT_MAX_BATCH_SIZE}
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be greater than 0");
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @param overflowPolicy what to do when the queue is full, defaults to {@link OverflowPolicy#DROP}
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        Assert.notNull(overflowPolicy, "overflowPolicy must not be null");
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(this.delegate, "An ApplicationEventPublisher must be set");
+
+        this.queue = new ArrayBlockingQueue<ApplicationEvent>(this.queueCapacity);
+        if (this.executor == null) {
+            final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(
+                    "AsyncAuthenticationEventPublisher-");
+            threadFactory.setDaemon(true);
+            this.ownedExecutor = Executors.newSingleThreadExecutor(threadFactory);
+            this.executor = this.ownedExecutor;
+        }
+        this.running = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Stops queueing, shuts down the executor if it was created by this publisher, waits for the batch being
+     * delivered and delivers any remaining queued events on the calling thread. If the batch is not delivered in
+     * time the remaining events are left to the executor. Events published after this are delivered synchronously.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        this.running = false;
+
+        if (this.ownedExecutor != null) {
+            this.ownedExecutor.shutdown();
+            if (!this.ownedExecutor.awaitTermination(DESTROY_TIMEOUT, TimeUnit.SECONDS)) {
+                logger.warn("Timed out waiting for queued authentication events to be delivered");
+                return;
+            }
+        }
+
+        final BlockingQueue<ApplicationEvent> queue = this.queue;
+        if (queue == null) {
+            return;
+        }
+        if (!this.drainLock.tryLock(DESTROY_TIMEOUT, TimeUnit.SECONDS)) {
+            logger.warn("Timed out waiting for queued authentication events to be delivered, " + queue.size()
+                    + " events are left to the executor");
+            return;
+        }
+        try {
+            ApplicationEvent event;
+            while ((event = queue.poll()) != null) {
+                deliver(event);
+            }
+        }
+        finally {
+            this.drainLock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void publishEvent(ApplicationEvent event) {
+        final BlockingQueue<ApplicationEvent> queue = this.queue;
+        if (!this.running || queue == null) {
+            deliver(event);
+            return;
+        }
+
+        if (!queue.offer(event)) {
+            switch (this.overflowPolicy) {
+                case BLOCK: {
+                    try {
+                        queue.put(event);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        drop(event);
+                    }
+                    break;
+                }
+                case CALLER_RUNS: {
+                    this.callerRuns.incrementAndGet();
+                    deliver(event);
+                    break;
+                }
+                default: {
+                    drop(event);
+                    break;
+                }
+            }
+        }
+
+        scheduleDrain();
+    }
+
+    /**
+     * @return number of events currently queued
+     */
+    public int getQueueDepth() {
+        final BlockingQueue<ApplicationEvent> queue = this.queue;
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * @return number of events delivered to the delegate publisher
+     */
+    public long getPublishedCount() {
+        return this.published.get();
+    }
+
+    /**
+     * @return number of events discarded because the queue was full
+     */
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    /**
+     * @return number of events delivered on the publishing thread by {@link OverflowPolicy#CALLER_RUNS}
+     */
+    public long getCallerRunsCount() {
+        return this.callerRuns.get();
+    }
+
+    /**
+     * @return number of batches taken from the queue
+     */
+    public long getBatchCount() {
+        return this.batches.get();
+    }
+
+    /**
+     * Reset the published, dropped, caller runs and batch counts to 0
+     */
+    public void resetStatistics() {
+        this.published.set(0);
+        this.dropped.set(0);
+        this.callerRuns.set(0);
+        this.batches.set(0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "AsyncAuthenticationEventPublisher [queueCapacity=" + this.queueCapacity + ", overflowPolicy="
+                + this.overflowPolicy + ", queueDepth=" + getQueueDepth() + ", published=" + getPublishedCount()
+                + ", dropped=" + getDroppedCount() + ", callerRuns=" + getCallerRunsCount() + ", batches="
+                + getBatchCount() + "]";
+    }
+
+    private void scheduleDrain() {
+        if (!this.drainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            this.executor.execute(this.drainTask);
+        }
+        catch (RejectedExecutionException e) {
+            logger.warn("Executor rejected authentication event delivery, delivering on the calling thread", e);
+            drain();
+        }
+    }
+
+    private void drain() {
+        final BlockingQueue<ApplicationEvent> queue = this.queue;
+        final List<ApplicationEvent> batch = new ArrayList<ApplicationEvent>(Math.min(this.maxBatchSize, queue.size() + 1));
+        this.drainLock.lock();
+        try {
+            while (true) {
+                queue.drainTo(batch, this.maxBatchSize);
+                if (batch.isEmpty()) {
+                    this.drainScheduled.set(false);
+                    // An event queued after drainTo but before the flag was cleared did not schedule a drain
+                    if (queue.isEmpty() || !this.drainScheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+
+                this.batches.incrementAndGet();
+                for (final ApplicationEvent event : batch) {
+                    deliver(event);
+                }
+                batch.clear();
+            }
+        }
+        finally {
+            this.drainLock.unlock();
+        }
+    }
+
+    private void deliver(ApplicationEvent event) {
+        try {
+            this.delegate.publishEvent(event);
+            this.published.incrementAndGet();
+        }
+        catch (RuntimeException e) {
+            logger.error("Failed to publish authentication event " + event, e);
+        }
+    }
+
+    private void drop(ApplicationEvent event) {
+        this.dropped.incrementAndGet();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Authentication event queue is full, dropped " + event);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.portlet.PortletRequest;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * {@link PortletUserRolesSource} which reads the user's roles from a request attribute and/or a
+ * {@link PortletRequest#USER_INFO} attribute. The request attribute may hold a {@code Collection} of role names,
+ * a {@code String[]} or a delimited {@code String}, the user info attribute must be a delimited {@code String}.
+ * The request attribute is checked first.
+ * <p>
+ * The attributes hold container role names while {@link PortletRequest#isUserInRole(String)} is called with the
+ * {@code security-role-ref} names of {@code portlet.xml}, which the container maps to the {@code role-link} role.
+ * Configure the same mapping with {@link #setRoleLinks(Map)} so a role found in the attribute resolves to the same
+ * role references {@code isUserInRole} would report.
+ *
+ * @version $Id: $Id
+ */
+public class AttributeUserRolesSource implements PortletUserRolesSource {
+    private String requestAttribute;
+    private String userInfoAttribute;
+    private String delimiters = ",; ";
+    private Map<String, String> roleLinks = Collections.emptyMap();
+
+    /**
+     * @param requestAttribute name of the request attribute holding the user's roles
+     */
+    public void setRequestAttribute(String requestAttribute) {
+        this.requestAttribute = requestAttribute;
+    }
+
+    /**
+     * @param userInfoAttribute name of the {@link PortletRequest#USER_INFO} attribute holding the user's roles
+     */
+    public void setUserInfoAttribute(String userInfoAttribute) {
+        this.userInfoAttribute = userInfoAttribute;
+    }
+
+    /**
+     * @param delimiters characters separating roles in a {@code String} value, defaults to comma, semicolon and space
+     */
+    public void setDelimiters(String delimiters) {
+        this.delimiters = delimiters;
+    }
+
+    /**
+     * @param roleLinks the {@code role-link} of each {@code security-role-ref} that has one, keyed by the
+     * {@code role-name} of the reference. Container roles that are the link of a reference are reported as the
+     * reference name, a reference name that is linked to another role is not reported for a container role of the
+     * same name. Defaults to no links.
+     */
+    public void setRoleLinks(Map<String, String> roleLinks) {
+        this.roleLinks = roleLinks == null ? Collections.<String, String>emptyMap() : roleLinks;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Collection<String> getUserRoles(PortletRequest request) {
+        final Collection<String> roles = this.getContainerRoles(request);
+        if (roles == null || this.roleLinks.isEmpty()) {
+            return roles;
+        }
+        return this.applyRoleLinks(roles);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<String> getContainerRoles(PortletRequest request) {
+        if (this.requestAttribute != null) {
+            final Object roles = request.getAttribute(this.requestAttribute);
+            if (roles instanceof Collection) {
+                return (Collection<String>) roles;
+            }
+            if (roles instanceof String[]) {
+                return Arrays.asList((String[]) roles);
+            }
+            if (roles instanceof String) {
+                return split((String) roles);
+            }
+        }
+
+        if (this.userInfoAttribute != null) {
+            final Map<String, String> userInfo = (Map<String, String>) request.getAttribute(PortletRequest.USER_INFO);
+            if (userInfo != null) {
+                final String roles = userInfo.get(this.userInfoAttribute);
+                if (roles != null) {
+                    return split(roles);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private Collection<String> applyRoleLinks(Collection<String> containerRoles) {
+        final Set<String> roles = new LinkedHashSet<String>();
+        for (final String role : containerRoles) {
+            if (!this.roleLinks.containsKey(role)) {
+                roles.add(role);
+            }
+        }
+        for (final Map.Entry<String, String> roleLink : this.roleLinks.entrySet()) {
+            if (containerRoles.contains(roleLink.getValue())) {
+                roles.add(roleLink.getKey());
+            }
+        }
+        return roles;
+    }
+
+    private Collection<String> split(String roles) {
+        return Arrays.asList(StringUtils.tokenizeToStringArray(roles, this.delimiters));
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jasig.springframework.security.portlet.util.BoundedLruMap;
+import org.springframework.security.core.Authentication;
+import org.springframework.util.Assert;
+
+/**
+ * Bounded cache of {@link Authentication} results keyed by pre-authenticated principal, portlet session id and portlet
+ * window id, used by {@link PortletAuthenticationProcessingFilter} so that re-authenticating the same principal in the
+ * same session and portlet window within the time to live does not run the {@code AuthenticationDetailsSource} and
+ * {@code AuthenticationManager} again. The window is part of the key as the details and role mappings of an
+ * authentication depend on the portlet it was created for.
+ * <p>
+ * Entries expire {@link #setTimeToLive(long) timeToLive} milliseconds after they were added, the least recently used
+ * entry is evicted once {@link #setMaxSize(int) maxSize} is reached. A changed principal, a new session or another
+ * portlet window never matches an existing entry.
+ *
+ * @version $Id: $Id
+ */
+public class AuthenticationCache {
+    /** Default maximum number of cached authentications */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    /** Default time to live, 5 minutes */
+    public static final long DEFAULT_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5);
+
+    private final BoundedLruMap<PrincipalSessionKey, Entry> cache =
+            new BoundedLruMap<PrincipalSessionKey, Entry>(DEFAULT_MAX_SIZE);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private volatile long timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIME_TO_LIVE);
+
+    /**
+     * @param timeToLive milliseconds a cached authentication is used for, defaults to {@link #DEFAULT_TIME_TO_LIVE}
+     */
+    public void setTimeToLive(long timeToLive) {
+        Assert.isTrue(timeToLive > 0, "timeToLive must be greater than 0");
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+    }
+
+    /**
+     * @param maxSize maximum number of cached authentications, defaults to {@link #DEFAULT_MAX_SIZE}
+     */
+    public void setMaxSize(int maxSize) {
+        this.cache.setMaxSize(maxSize);
+    }
+
+    /**
+     * Look up a cached authentication, calls to this method are counted as hits or misses
+     *
+     * @param principal the pre-authenticated principal
+     * @param sessionId id of the current portlet session
+     * @param windowId id of the current portlet window
+     * @return the cached authentication, null if there is none or it has expired
+     */
+    public Authentication get(Object principal, String sessionId, String windowId) {
+        final PrincipalSessionKey key = new PrincipalSessionKey(principal, sessionId, windowId);
+        Authentication authentication = null;
+        synchronized (this.cache) {
+            final Entry entry = this.cache.get(key);
+            if (entry != null) {
+                if (currentTime() - entry.created < this.timeToLiveNanos) {
+                    authentication = entry.authentication;
+                }
+                else {
+                    this.cache.remove(key);
+                    this.expirations.incrementAndGet();
+                }
+            }
+        }
+
+        if (authentication == null) {
+            this.misses.incrementAndGet();
+        }
+        else {
+            this.hits.incrementAndGet();
+        }
+        return authentication;
+    }
+
+    /**
+     * Cache an authentication result
+     *
+     * @param principal the pre-authenticated principal
+     * @param sessionId id of the current portlet session
+     * @param windowId id of the current portlet window
+     * @param authentication the result of authenticating the principal
+     */
+    public void put(Object principal, String sessionId, String windowId, Authentication authentication) {
+        Assert.notNull(authentication, "authentication must not be null");
+        final PrincipalSessionKey key = new PrincipalSessionKey(principal, sessionId, windowId);
+        final Entry entry = new Entry(authentication, currentTime());
+        synchronized (this.cache) {
+            this.cache.put(key, entry);
+        }
+    }
+
+    /**
+     * Remove the cached authentication of a principal
+     *
+     * @param principal the pre-authenticated principal
+     * @param sessionId id of the portlet session
+     * @param windowId id of the portlet window
+     */
+    public void remove(Object principal, String sessionId, String windowId) {
+        synchronized (this.cache) {
+            this.cache.remove(new PrincipalSessionKey(principal, sessionId, windowId));
+        }
+    }
+
+    /**
+     * Remove all cached authentications of a session
+     *
+     * @param sessionId id of the portlet session
+     */
+    public void removeSession(String sessionId) {
+        synchronized (this.cache) {
+            for (final Iterator<PrincipalSessionKey> keyItr = this.cache.keySet().iterator(); keyItr.hasNext();) {
+                if (sessionId.equals(keyItr.next().getSessionId())) {
+                    keyItr.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all cached authentications, statistics are not reset
+     */
+    public void clear() {
+        synchronized (this.cache) {
+            this.cache.clear();
+        }
+    }
+
+    /**
+     * @return the number of cached authentications, including expired entries that have not been looked up since
+     */
+    public int getSize() {
+        synchronized (this.cache) {
+            return this.cache.size();
+        }
+    }
+
+    /**
+     * @return number of lookups that found an unexpired authentication
+     */
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return number of lookups that did not find an unexpired authentication
+     */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return number of entries removed because they expired or the cache was full
+     */
+    public long getEvictionCount() {
+        return this.expirations.get() + this.cache.getEvictionCount();
+    }
+
+    /**
+     * Reset the hit, miss and eviction counts to 0
+     */
+    public void resetStatistics() {
+        this.hits.set(0);
+        this.misses.set(0);
+        this.expirations.set(0);
+        this.cache.resetEvictionCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "AuthenticationCache [timeToLive=" + TimeUnit.NANOSECONDS.toMillis(this.timeToLiveNanos) + "ms, maxSize="
+                + this.cache.getMaxSize() + ", size=" + getSize() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + "]";
+    }
+
+    /**
+     * @return the current time in nanoseconds, entries expire based on differences of this value
+     */
+    protected long currentTime() {
+        return System.nanoTime();
+    }
+
+    private static final class Entry {
+        private final Authentication authentication;
+        private final long created;
+
+        private Entry(Authentication authentication, long created) {
+            this.authentication = authentication;
+            this.created = created;
+        }
+    }
+}
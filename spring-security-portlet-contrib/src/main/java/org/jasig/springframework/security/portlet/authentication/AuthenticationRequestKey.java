@@ -0,0 +1,76 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+/**
+ * Key identifying an authentication request by its principal, credentials, session and details. Requests with equal
+ * keys produce the same <tt>Authentication</tt>, the session id and details may be null.
+ *
+ * @version $Id: $Id
+ */
+final class AuthenticationRequestKey {
+    private final Object principal;
+    private final Object credentials;
+    private final String sessionId;
+    private final Object details;
+    private final int hash;
+
+    AuthenticationRequestKey(Object principal, Object credentials, String sessionId, Object details) {
+        this.principal = principal;
+        this.credentials = credentials;
+        this.sessionId = sessionId;
+        this.details = details;
+        int hash = 31 * principal.hashCode() + hashCode(credentials);
+        hash = 31 * hash + hashCode(sessionId);
+        this.hash = 31 * hash + hashCode(details);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof AuthenticationRequestKey)) {
+            return false;
+        }
+        final AuthenticationRequestKey other = (AuthenticationRequestKey) obj;
+        return this.hash == other.hash && this.principal.equals(other.principal)
+                && equals(this.credentials, other.credentials)
+                && equals(this.sessionId, other.sessionId)
+                && equals(this.details, other.details);
+    }
+
+    @Override
+    public String toString() {
+        return "[principal=" + this.principal + ", sessionId=" + this.sessionId + ", details=" + this.details + "]";
+    }
+
+    private static int hashCode(Object value) {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    private static boolean equals(Object value, Object other) {
+        return value == null ? other == null : value.equals(other);
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jasig.springframework.security.portlet.util.BoundedLruMap;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.mapping.Attributes2GrantedAuthoritiesMapper;
+import org.springframework.security.core.authority.mapping.SimpleAttributes2GrantedAuthoritiesMapper;
+import org.springframework.util.Assert;
+
+/**
+ * {@link Attributes2GrantedAuthoritiesMapper} which shares the mapping results of a delegate mapper between users.
+ * <p>
+ * Every attribute (role) is assigned an ordinal the first time it is seen and a set of attributes is reduced to a
+ * {@link BitSet} of those ordinals. The authorities mapped for a role set are cached as an immutable
+ * {@link GrantedAuthorityList}, all users with the same role combination share one list instance. The individual
+ * {@link GrantedAuthority} objects are interned as well so equal authorities in different lists are the same
+ * object.
+ * <p>
+ * The authorities mapped by the delegate must only depend on the set of attributes passed, the list cached for a
+ * role set is the one mapped the first time the set was seen, in the order of that first call. This holds for
+ * {@link SimpleAttributes2GrantedAuthoritiesMapper}. Attributes beyond
+ * {@link #setMaxAttributes(int) maxAttributes} distinct values are mapped by the delegate without caching or
+ * interning, which bounds the memory used when attributes do not come from a fixed set of roles.
+ *
+ * @version $Id: $Id
+ */
+public class CachingAttributes2GrantedAuthoritiesMapper implements Attributes2GrantedAuthoritiesMapper {
+    /** Default maximum number of cached role combinations */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    /** Default maximum number of distinct attributes assigned an ordinal */
+    public static final int DEFAULT_MAX_ATTRIBUTES = 1024;
+
+    private final Attributes2GrantedAuthoritiesMapper delegate;
+    private final ConcurrentMap<String, Integer> ordinals = new ConcurrentHashMap<String, Integer>();
+    private final ConcurrentMap<GrantedAuthority, GrantedAuthority> authorityPool = new ConcurrentHashMap<GrantedAuthority, GrantedAuthority>();
+    private final Map<BitSet, GrantedAuthorityList> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile int maxAttributes = DEFAULT_MAX_ATTRIBUTES;
+
+    /**
+     * Cache the results of a {@link SimpleAttributes2GrantedAuthoritiesMapper}
+     */
+    public CachingAttributes2GrantedAuthoritiesMapper() {
+        this(new SimpleAttributes2GrantedAuthoritiesMapper());
+    }
+
+    /**
+     * @param delegate the mapper to cache the results of
+     */
+    public CachingAttributes2GrantedAuthoritiesMapper(Attributes2GrantedAuthoritiesMapper delegate) {
+        this(delegate, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param delegate the mapper to cache the results of
+     * @param maxSize maximum number of role combinations to cache, the least recently used one is evicted beyond this
+     */
+    public CachingAttributes2GrantedAuthoritiesMapper(Attributes2GrantedAuthoritiesMapper delegate, int maxSize) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+
+        this.delegate = delegate;
+        this.cache = Collections.synchronizedMap(new BoundedLruMap<BitSet, GrantedAuthorityList>(maxSize));
+    }
+
+    /**
+     * @param maxAttributes maximum number of distinct attributes that are assigned an ordinal
+     */
+    public void setMaxAttributes(int maxAttributes) {
+        Assert.isTrue(maxAttributes > 0, "maxAttributes must be greater than 0");
+        this.maxAttributes = maxAttributes;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return a shared, immutable {@link GrantedAuthorityList}
+     */
+    @Override
+    public List<GrantedAuthority> getGrantedAuthorities(Collection<String> attributes) {
+        final BitSet key = new BitSet();
+        for (final String attribute : attributes) {
+            final int ordinal = getOrdinal(attribute);
+            if (ordinal < 0) {
+                this.misses.incrementAndGet();
+                return new GrantedAuthorityList(this.delegate.getGrantedAuthorities(attributes));
+            }
+            key.set(ordinal);
+        }
+
+        GrantedAuthorityList authorities = this.cache.get(key);
+        if (authorities != null) {
+            this.hits.incrementAndGet();
+            return authorities;
+        }
+
+        this.misses.incrementAndGet();
+        authorities = mapAuthorities(attributes);
+        this.cache.put(key, authorities);
+        return authorities;
+    }
+
+    /**
+     * Get the shared instance of an authority
+     *
+     * @param authority the authority to intern
+     * @return the pooled authority equal to the argument
+     */
+    public GrantedAuthority intern(GrantedAuthority authority) {
+        final GrantedAuthority existing = this.authorityPool.putIfAbsent(authority, authority);
+        return existing != null ? existing : authority;
+    }
+
+    /**
+     * Remove all cached role combinations and pooled authorities, attribute ordinals and hit and miss counts are
+     * not reset.
+     */
+    public void clear() {
+        this.cache.clear();
+        this.authorityPool.clear();
+    }
+
+    /**
+     * @return the number of cached role combinations
+     */
+    public int getSize() {
+        return this.cache.size();
+    }
+
+    /**
+     * @return the number of distinct pooled authorities
+     */
+    public int getAuthorityPoolSize() {
+        return this.authorityPool.size();
+    }
+
+    /**
+     * @return number of mappings served from the cache
+     */
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return number of mappings that called the delegate mapper
+     */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "CachingAttributes2GrantedAuthoritiesMapper [delegate=" + this.delegate + ", size=" + getSize()
+                + ", authorityPoolSize=" + getAuthorityPoolSize() + ", hits=" + getHitCount() + ", misses="
+                + getMissCount() + "]";
+    }
+
+    private GrantedAuthorityList mapAuthorities(Collection<String> attributes) {
+        final Collection<? extends GrantedAuthority> mapped = this.delegate.getGrantedAuthorities(attributes);
+        final List<GrantedAuthority> interned = new ArrayList<GrantedAuthority>(mapped.size());
+        for (final GrantedAuthority authority : mapped) {
+            interned.add(intern(authority));
+        }
+        return new GrantedAuthorityList(interned);
+    }
+
+    /**
+     * @return the ordinal of the attribute, -1 if the attribute limit has been reached
+     */
+    private int getOrdinal(String attribute) {
+        final Integer ordinal = this.ordinals.get(attribute);
+        if (ordinal != null) {
+            return ordinal;
+        }
+
+        synchronized (this.ordinals) {
+            final Integer assigned = this.ordinals.get(attribute);
+            if (assigned != null) {
+                return assigned;
+            }
+
+            final int next = this.ordinals.size();
+            if (next >= this.maxAttributes) {
+                return -1;
+            }
+            this.ordinals.put(attribute, next);
+            return next;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.RandomAccess;
+
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Immutable list of {@link GrantedAuthority}s. Instances are handed out by
+ * {@link CachingAttributes2GrantedAuthoritiesMapper} and shared by every user with the same set of roles, classes
+ * that would otherwise defensively copy an authority collection can keep a {@code GrantedAuthorityList} as is.
+ *
+ * @version $Id: $Id
+ */
+public final class GrantedAuthorityList extends AbstractList<GrantedAuthority> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final GrantedAuthority[] authorities;
+
+    /**
+     * @param authorities the authorities, copied into the list
+     */
+    public GrantedAuthorityList(Collection<? extends GrantedAuthority> authorities) {
+        this.authorities = authorities.toArray(new GrantedAuthority[authorities.size()]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public GrantedAuthority get(int index) {
+        return this.authorities[index];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return this.authorities.length;
+    }
+
+    /**
+     * Serialized as a plain unmodifiable list so session payloads stay readable by nodes that do not have this
+     * class, sharing between users does not survive serialization anyway.
+     */
+    private Object writeReplace() {
+        return Collections.unmodifiableList(new ArrayList<GrantedAuthority>(this));
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.portlet.PortletRequest;
+
+import org.springframework.util.Assert;
+
+/**
+ * Resolves which of a fixed set of mappable roles a user has into a {@link BitSet}. Each role is assigned a stable
+ * ordinal, its position in the sorted set of mappable roles, so the same role set always produces the same bits on
+ * every node of a cluster. Role names are converted back in the iteration order of the mappable roles, the order
+ * roles were always reported in, so the order of the mapped authorities does not depend on the ordinals.
+ * <p>
+ * Without a {@link PortletUserRolesSource} membership is evaluated with one
+ * {@link PortletRequest#isUserInRole(String)} call per mappable role. With a source the user's roles are read once
+ * and looked up by name, the source falling back to {@code isUserInRole} by returning null. The source is
+ * responsible for reporting role reference names, see {@link PortletUserRolesSource}.
+ *
+ * @version $Id: $Id
+ */
+public final class IndexedRoleResolver {
+    private final Set<String> mappableRoles;
+    private final String[] roles;
+    private final Map<String, Integer> ordinals;
+    /** Ordinals in the iteration order of the mappable roles */
+    private final int[] iterationOrder;
+    private final PortletUserRolesSource userRolesSource;
+
+    /**
+     * @param mappableRoles the roles to resolve membership of
+     * @param userRolesSource source for reading all roles at once, null to always use {@link PortletRequest#isUserInRole(String)}
+     */
+    public IndexedRoleResolver(Set<String> mappableRoles, PortletUserRolesSource userRolesSource) {
+        Assert.notNull(mappableRoles, "mappableRoles must not be null");
+
+        this.mappableRoles = mappableRoles;
+        this.roles = new TreeSet<String>(mappableRoles).toArray(new String[mappableRoles.size()]);
+        final Map<String, Integer> ordinals = new HashMap<String, Integer>(this.roles.length * 4 / 3 + 1);
+        for (int i = 0; i < this.roles.length; i++) {
+            ordinals.put(this.roles[i], i);
+        }
+        this.ordinals = Collections.unmodifiableMap(ordinals);
+        this.iterationOrder = new int[this.roles.length];
+        int position = 0;
+        for (final String role : mappableRoles) {
+            this.iterationOrder[position++] = ordinals.get(role);
+        }
+        this.userRolesSource = userRolesSource;
+    }
+
+    /**
+     * @return the set of mappable roles this resolver was created for
+     */
+    public Set<String> getMappableRoles() {
+        return this.mappableRoles;
+    }
+
+    /**
+     * @return the number of mappable roles
+     */
+    public int size() {
+        return this.roles.length;
+    }
+
+    /**
+     * @param role a role name
+     * @return the ordinal of the role, -1 if it is not mappable
+     */
+    public int getOrdinal(String role) {
+        final Integer ordinal = this.ordinals.get(role);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * @param ordinal a role ordinal
+     * @return the name of the role with that ordinal
+     */
+    public String getRole(int ordinal) {
+        return this.roles[ordinal];
+    }
+
+    /**
+     * Determine which mappable roles the user has
+     *
+     * @param request the current request
+     * @return a set bit for the ordinal of every mappable role the user has
+     */
+    public BitSet resolve(PortletRequest request) {
+        final BitSet memberships = new BitSet(this.roles.length);
+
+        if (this.userRolesSource != null) {
+            final Collection<String> userRoles = this.userRolesSource.getUserRoles(request);
+            if (userRoles != null) {
+                for (final String role : userRoles) {
+                    final Integer ordinal = this.ordinals.get(role);
+                    if (ordinal != null) {
+                        memberships.set(ordinal);
+                    }
+                }
+                return memberships;
+            }
+        }
+
+        final String[] roles = this.roles;
+        for (int i = 0; i < roles.length; i++) {
+            if (request.isUserInRole(roles[i])) {
+                memberships.set(i);
+            }
+        }
+        return memberships;
+    }
+
+    /**
+     * Convert memberships back to role names
+     *
+     * @param memberships as returned by {@link #resolve(PortletRequest)}
+     * @return the names of the roles in the iteration order of the mappable roles
+     */
+    public List<String> toRoles(BitSet memberships) {
+        final int cardinality = memberships.cardinality();
+        final List<String> userRoles = new ArrayList<String>(cardinality);
+        for (int i = 0; i < this.iterationOrder.length && userRoles.size() < cardinality; i++) {
+            final int ordinal = this.iterationOrder[i];
+            if (memberships.get(ordinal)) {
+                userRoles.add(this.roles[ordinal]);
+            }
+        }
+        return userRoles;
+    }
+}
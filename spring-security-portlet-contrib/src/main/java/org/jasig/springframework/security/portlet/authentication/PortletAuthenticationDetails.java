@@ -19,7 +19,10 @@
 package org.jasig.springframework.security.portlet.authentication;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import javax.portlet.PortletRequest;
 import javax.portlet.PortletSession;
@@ -28,6 +31,10 @@ import org.springframework.security.core.SpringSecurityCoreVersion;
 
 /**
  * A holder of selected portlet details related to a web authentication request.
+ * <p>
+ * Details are usually stored in the {@code PortletSession} as part of the {@code SecurityContext} and replicated
+ * with it. To keep that payload small the {@link PortletRequest#USER_INFO} map can be limited to a set of
+ * attributes when the details are created.
  *
  * @author Eric Dalquist
  * @version $Id: $Id
@@ -51,12 +58,40 @@ public class PortletAuthenticationDetails implements Serializable {
      * @param request that the authentication request was received from
      */
     public PortletAuthenticationDetails(PortletRequest request) {
+        this(request, null);
+    }
+
+    /**
+     * Records the remote address, the session Id if a session already exists and the specified subset of the
+     * user info map.
+     *
+     * @param request that the authentication request was received from
+     * @param userInfoAttributes names of the {@link PortletRequest#USER_INFO} attributes to keep, null to keep the
+     * whole map
+     */
+    public PortletAuthenticationDetails(PortletRequest request, Set<String> userInfoAttributes) {
         this.remoteAddress = request.getProperty("REMOTE_ADDR");
 
         PortletSession session = request.getPortletSession(false);
         this.sessionId = (session != null) ? session.getId() : null;
 
-        this.userInfo = (Map<String, String>)request.getAttribute(PortletRequest.USER_INFO);
+        @SuppressWarnings("unchecked")
+        final Map<String, String> userInfo = (Map<String, String>)request.getAttribute(PortletRequest.USER_INFO);
+        this.userInfo = userInfoAttributes == null ? userInfo : projectUserInfo(userInfo, userInfoAttributes);
+    }
+
+    private static Map<String, String> projectUserInfo(Map<String, String> userInfo, Set<String> userInfoAttributes) {
+        if (userInfo == null) {
+            return null;
+        }
+
+        final Map<String, String> projected = new LinkedHashMap<String, String>();
+        for (final String attribute : userInfoAttributes) {
+            if (userInfo.containsKey(attribute)) {
+                projected.put(attribute, userInfo.get(attribute));
+            }
+        }
+        return Collections.unmodifiableMap(projected);
     }
 
     //~ Methods ========================================================================================================
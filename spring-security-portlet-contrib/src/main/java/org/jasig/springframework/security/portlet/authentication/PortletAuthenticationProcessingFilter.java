@@ -23,6 +23,13 @@ import java.security.Principal;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.portlet.PortletException;
 import javax.portlet.PortletRequest;
@@ -36,6 +43,7 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.security.authentication.AuthenticationDetailsSource;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authentication.event.InteractiveAuthenticationSuccessEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
@@ -82,6 +90,23 @@ import org.springframework.util.Assert;
  * <tt>continueFilterChainOnUnsuccessfulAuthentication</tt> flag to false. The exception raised by the
  * <tt>AuthenticationManager</tt> will the be re-thrown. Note that this will not affect cases where the principal
  * returned by {@link #getPreAuthenticatedPrincipal} is null, when the chain will still proceed as normal.
+ * <p>
+ * An {@link AuthenticationCache} can be set to reuse the result of authenticating a principal within the same
+ * session and portlet window for a limited time, re-authentication triggered by <tt>checkForPrincipalChanges</tt> or
+ * an {@link AuthenticationValidator} then skips the <tt>AuthenticationDetailsSource</tt> and
+ * <tt>AuthenticationManager</tt>. A cached result is only used if it passes the <tt>AuthenticationValidator</tt>. It
+ * is placed into the SecurityContext without calling {@link #successfulAuthentication}, so an
+ * <tt>InteractiveAuthenticationSuccessEvent</tt> is only published when the <tt>AuthenticationManager</tt> was called.
+ * <p>
+ * With {@link #setCoalesceAuthentications(boolean) coalesceAuthentications} enabled concurrent authentications
+ * with the same principal, credentials, session and authentication details share a single call to the
+ * <tt>AuthenticationManager</tt>, for example the portlets of a page rendered in parallel for a new session. The
+ * details are built on each request's own thread first, so portlets whose details differ, such as portlets with
+ * different security-role-ref mappings, still authenticate separately. The first request authenticates and the
+ * others wait for and use its result or failure. Details without value based <tt>equals</tt> are never shared and
+ * requests without a session are never coalesced, as nothing ties them to the same user. A request that waits
+ * longer than the {@link #setCoalescedAuthenticationTimeout(long) coalescedAuthenticationTimeout} or is interrupted
+ * while waiting authenticates on its own thread instead.
  *
  * @author Eric Dalquist
  * @since 2.0
@@ -90,11 +115,19 @@ import org.springframework.util.Assert;
 public class PortletAuthenticationProcessingFilter
         extends GenericPortletFilterBean
         implements ApplicationEventPublisherAware {
+    /** Default time in milliseconds to wait for a coalesced authentication */
+    public static final long DEFAULT_COALESCED_AUTHENTICATION_TIMEOUT = 10000;
 
     private ApplicationEventPublisher eventPublisher = null;
+    private ApplicationEventPublisher authenticationEventPublisher = null;
     private AuthenticationDetailsSource<PortletRequest, ?> authenticationDetailsSource;
     private AuthenticationManager authenticationManager = null;
     private AuthenticationValidator authenticationValidator =null;
+    private AuthenticationCache authenticationCache = null;
+    private boolean coalesceAuthentications = false;
+    private long coalescedAuthenticationTimeout = DEFAULT_COALESCED_AUTHENTICATION_TIMEOUT;
+    private final ConcurrentMap<AuthenticationRequestKey, FutureTask<Authentication>> inFlightAuthentications =
+            new ConcurrentHashMap<AuthenticationRequestKey, FutureTask<Authentication>>();
     private boolean continueFilterChainOnUnsuccessfulAuthentication = true;
     private boolean checkForPrincipalChanges;
     private boolean invalidateSessionOnPrincipalChange = true;
@@ -136,11 +169,11 @@ public class PortletAuthenticationProcessingFilter
     /**
     * Do the actual authentication for a pre-authenticated user.
     */
-    private void doAuthenticate(PortletRequest request, PortletResponse response) {
+    private void doAuthenticate(final PortletRequest request, PortletResponse response) {
         Authentication authResult;
 
-        Object principal = getPreAuthenticatedPrincipal(request);
-        Object credentials = getPreAuthenticatedCredentials(request);
+        final Object principal = getPreAuthenticatedPrincipal(request);
+        final Object credentials = getPreAuthenticatedCredentials(request);
 
         if (principal == null) {
             if (logger.isDebugEnabled()) {
@@ -154,11 +187,36 @@ public class PortletAuthenticationProcessingFilter
             logger.debug("preAuthenticatedPrincipal = " + principal + ", trying to authenticate");
         }
 
+        final AuthenticationCache authenticationCache = this.authenticationCache;
+        final String sessionId = authenticationCache != null || coalesceAuthentications ? getSessionId(request) : null;
+        final String windowId = request.getWindowID();
+        if (authenticationCache != null && sessionId != null) {
+            final Authentication cachedResult = authenticationCache.get(principal, sessionId, windowId);
+            if (cachedResult != null) {
+                if (authenticationValidator == null || authenticationValidator.validate(cachedResult, request)) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Using cached authentication: " + cachedResult);
+                    }
+                    // Not an interactive authentication, the event was published when the result was cached
+                    SecurityContextHolder.getContext().setAuthentication(cachedResult);
+                    return;
+                }
+
+                authenticationCache.remove(principal, sessionId, windowId);
+            }
+        }
+
         try {
-            PreAuthenticatedAuthenticationToken authRequest = new PreAuthenticatedAuthenticationToken(principal,
-                    credentials);
-            authRequest.setDetails(authenticationDetailsSource.buildDetails(request));
-            authResult = authenticationManager.authenticate(authRequest);
+            final Object details = authenticationDetailsSource.buildDetails(request);
+            if (coalesceAuthentications && sessionId != null) {
+                authResult = authenticateCoalesced(principal, credentials, sessionId, details);
+            }
+            else {
+                authResult = authenticate(principal, credentials, details);
+            }
+            if (authenticationCache != null && sessionId != null) {
+                authenticationCache.put(principal, sessionId, windowId, authResult);
+            }
             successfulAuthentication(request, response, authResult);
         }
         catch (AuthenticationException failed) {
@@ -170,6 +228,94 @@ public class PortletAuthenticationProcessingFilter
         }
     }
 
+    private Authentication authenticate(Object principal, Object credentials, Object details) {
+        PreAuthenticatedAuthenticationToken authRequest = new PreAuthenticatedAuthenticationToken(principal,
+                credentials);
+        authRequest.setDetails(details);
+        return authenticationManager.authenticate(authRequest);
+    }
+
+    /**
+     * Authenticate, sharing the result with any concurrent authentication of the same principal, credentials, session
+     * and details
+     */
+    private Authentication authenticateCoalesced(final Object principal, final Object credentials, String sessionId,
+            final Object details) {
+        final AuthenticationRequestKey key = new AuthenticationRequestKey(principal, credentials, sessionId, details);
+        final FutureTask<Authentication> task = new FutureTask<Authentication>(new Callable<Authentication>() {
+            @Override
+            public Authentication call() {
+                return authenticate(principal, credentials, details);
+            }
+        });
+
+        final FutureTask<Authentication> inFlight = inFlightAuthentications.putIfAbsent(key, task);
+        if (inFlight != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Waiting for in-flight authentication of " + key);
+            }
+            try {
+                return inFlight.get(coalescedAuthenticationTimeout, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.debug("Interrupted waiting for in-flight authentication, authenticating on this thread");
+            }
+            catch (TimeoutException e) {
+                logger.warn("Timed out after " + coalescedAuthenticationTimeout + "ms waiting for in-flight "
+                        + "authentication of " + principal + ", authenticating on this thread");
+            }
+            catch (ExecutionException e) {
+                throw getAuthenticationFailure(e);
+            }
+            return authenticate(principal, credentials, details);
+        }
+
+        try {
+            task.run();
+        }
+        finally {
+            inFlightAuthentications.remove(key, task);
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    // The task has completed, get only returns its result
+                    return task.get();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                catch (ExecutionException e) {
+                    throw getAuthenticationFailure(e);
+                }
+            }
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static RuntimeException getAuthenticationFailure(ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new AuthenticationServiceException("Authentication failed", cause);
+    }
+
+    private String getSessionId(PortletRequest request) {
+        final PortletSession session = request.getPortletSession(false);
+        return session != null ? session.getId() : null;
+    }
+
     private boolean requiresAuthentication(PortletRequest request) {
         Authentication currentUser = SecurityContextHolder.getContext().getAuthentication();
 
@@ -193,6 +339,9 @@ public class PortletAuthenticationProcessingFilter
 	            PortletSession session = request.getPortletSession(false);
 
 	            if (session != null) {
+	                if (authenticationCache != null) {
+	                    authenticationCache.removeSession(session.getId());
+	                }
 	                logger.debug("Invalidating existing session");
 	                session.invalidate();
 	                request.getPortletSession();
@@ -218,8 +367,10 @@ public class PortletAuthenticationProcessingFilter
         }
         SecurityContextHolder.getContext().setAuthentication(authResult);
         // Fire event
-        if (this.eventPublisher != null) {
-            eventPublisher.publishEvent(new InteractiveAuthenticationSuccessEvent(authResult, this.getClass()));
+        final ApplicationEventPublisher publisher = this.authenticationEventPublisher != null
+                ? this.authenticationEventPublisher : this.eventPublisher;
+        if (publisher != null) {
+            publisher.publishEvent(new InteractiveAuthenticationSuccessEvent(authResult, this.getClass()));
         }
     }
 
@@ -247,6 +398,16 @@ public class PortletAuthenticationProcessingFilter
         this.eventPublisher = anApplicationEventPublisher;
     }
 
+    /**
+     * Publisher for authentication success events, used instead of the application context when set. An
+     * {@link AsyncAuthenticationEventPublisher} moves event delivery off the request thread.
+     *
+     * @param authenticationEventPublisher a {@link org.springframework.context.ApplicationEventPublisher} object.
+     */
+    public void setAuthenticationEventPublisher(ApplicationEventPublisher authenticationEventPublisher) {
+        this.authenticationEventPublisher = authenticationEventPublisher;
+    }
+
     /**
      * <p>Setter for the field authenticationDetailsSource.</p>
      *
@@ -406,4 +567,36 @@ public class PortletAuthenticationProcessingFilter
     public void setAuthenticationValidator(AuthenticationValidator value) {
     	this.authenticationValidator = value;
     }
+
+    /**
+     * Cache of authentication results keyed by principal, session id and window id, defaults to null which disables
+     * caching.
+     *
+     * @param authenticationCache the cache to use, null to disable caching
+     */
+    public void setAuthenticationCache(AuthenticationCache authenticationCache) {
+        this.authenticationCache = authenticationCache;
+    }
+
+    /**
+     * If set, concurrent authentications with the same principal, credentials, portlet session and authentication
+     * details share one call to the <tt>AuthenticationManager</tt>. Requests without a session are not coalesced as
+     * nothing ties them to the same user. Defaults to false.
+     *
+     * @param coalesceAuthentications a boolean.
+     */
+    public void setCoalesceAuthentications(boolean coalesceAuthentications) {
+        this.coalesceAuthentications = coalesceAuthentications;
+    }
+
+    /**
+     * Maximum time a request waits for a coalesced authentication in flight on another thread before authenticating
+     * on its own thread. Defaults to {@link #DEFAULT_COALESCED_AUTHENTICATION_TIMEOUT}.
+     *
+     * @param coalescedAuthenticationTimeout the timeout in milliseconds
+     */
+    public void setCoalescedAuthenticationTimeout(long coalescedAuthenticationTimeout) {
+        Assert.isTrue(coalescedAuthenticationTimeout >= 0, "coalescedAuthenticationTimeout must not be negative");
+        this.coalescedAuthenticationTimeout = coalescedAuthenticationTimeout;
+    }
 }
@@ -18,9 +18,9 @@
  */
 package org.jasig.springframework.security.portlet.authentication;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import javax.portlet.PortletRequest;
@@ -39,6 +39,11 @@ import org.springframework.util.Assert;
  * Implementation of AuthenticationDetailsSource which converts the user's Portlet roles (as obtained by calling
  * {@link javax.portlet.PortletRequest#isUserInRole(String)}) into {@code GrantedAuthority}s and stores these in the authentication
  * details object.
+ * <p>
+ * By default roles are mapped by a {@link CachingAttributes2GrantedAuthoritiesMapper} wrapping a
+ * {@link SimpleAttributes2GrantedAuthoritiesMapper}, users with the same roles share one immutable authority list.
+ * A custom mapper set with {@link #setUserRoles2GrantedAuthoritiesMapper(Attributes2GrantedAuthoritiesMapper)} can
+ * be wrapped the same way.
  *
  * @author Ruud Senden
  * @author Eric Dalquist
@@ -51,7 +56,11 @@ public class PortletPreAuthenticatedAuthenticationDetailsSource implements Authe
     /** The role attributes returned by the configured {@code MappableAttributesRetriever} */
     protected Set<String> portletMappableRoles;
     protected Attributes2GrantedAuthoritiesMapper portletUserRoles2GrantedAuthoritiesMapper =
-        new SimpleAttributes2GrantedAuthoritiesMapper();
+        new CachingAttributes2GrantedAuthoritiesMapper(new SimpleAttributes2GrantedAuthoritiesMapper());
+    /** The {@link PortletRequest#USER_INFO} attributes to keep in the details, null keeps all of them */
+    protected Set<String> userInfoAttributes;
+    private PortletUserRolesSource userRolesSource;
+    private volatile IndexedRoleResolver roleResolver;
 
     /**
      * Check that all required properties have been set.
@@ -64,23 +73,30 @@ public class PortletPreAuthenticatedAuthenticationDetailsSource implements Authe
     }
 
     /**
-     * Obtains the list of user roles based on the current user's Portlet roles. The
+     * Obtains the list of user roles based on the current user's Portlet roles. Unless a
+     * {@link #setUserRolesSource(PortletUserRolesSource) userRolesSource} provides the roles the
      * {@link javax.portlet.PortletRequest#isUserInRole(String)} method is called for each of the values
      * in the {@code portletMappableRoles} set to determine if that role should be assigned to the user.
      *
      * @param request the request which should be used to extract the user's roles.
-     * @return The subset of {@code portletMappableRoles} which applies to the current user making the request.
+     * @return The subset of {@code portletMappableRoles} which applies to the current user making the request, in
+     * the iteration order of {@code portletMappableRoles}.
      */
     protected Collection<String> getUserRoles(PortletRequest request) {
-        ArrayList<String> portletUserRolesList = new ArrayList<String>();
+        final IndexedRoleResolver roleResolver = getRoleResolver();
+        return roleResolver.toRoles(roleResolver.resolve(request));
+    }
 
-        for (String role : portletMappableRoles) {
-            if (request.isUserInRole(role)) {
-                portletUserRolesList.add(role);
-            }
+    /**
+     * @return the resolver for the current {@code portletMappableRoles}, rebuilt if the field has been replaced
+     */
+    protected IndexedRoleResolver getRoleResolver() {
+        IndexedRoleResolver roleResolver = this.roleResolver;
+        if (roleResolver == null || roleResolver.getMappableRoles() != portletMappableRoles) {
+            roleResolver = new IndexedRoleResolver(portletMappableRoles, userRolesSource);
+            this.roleResolver = roleResolver;
         }
-
-        return portletUserRolesList;
+        return roleResolver;
     }
 
     /**
@@ -95,7 +111,7 @@ public class PortletPreAuthenticatedAuthenticationDetailsSource implements Authe
         Collection<? extends GrantedAuthority> userGas = buildGrantedAuthorities(context);
 
         PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails result =
-                new PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails(context, userGas);
+                new PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails(context, userInfoAttributes, userGas);
 
         return result;
     }
@@ -135,4 +151,26 @@ public class PortletPreAuthenticatedAuthenticationDetailsSource implements Authe
     public void setUserRoles2GrantedAuthoritiesMapper(Attributes2GrantedAuthoritiesMapper mapper) {
         portletUserRoles2GrantedAuthoritiesMapper = mapper;
     }
+
+    /**
+     * Read all of the user's roles in one operation instead of calling {@link PortletRequest#isUserInRole(String)}
+     * for every mappable role, see {@link IndexedRoleResolver}.
+     *
+     * @param userRolesSource the source of the user's roles, null (the default) to use isUserInRole
+     */
+    public void setUserRolesSource(PortletUserRolesSource userRolesSource) {
+        this.userRolesSource = userRolesSource;
+        this.roleResolver = null;
+    }
+
+    /**
+     * Limit the {@link PortletRequest#USER_INFO} attributes copied into the details, the details are usually stored
+     * in and replicated with the session so only attributes the application actually reads should be kept.
+     *
+     * @param userInfoAttributes names of the attributes to keep, null (the default) keeps the whole map
+     */
+    public void setUserInfoAttributes(Set<String> userInfoAttributes) {
+        this.userInfoAttributes = userInfoAttributes == null ? null
+                : Collections.unmodifiableSet(new LinkedHashSet<String>(userInfoAttributes));
+    }
 }
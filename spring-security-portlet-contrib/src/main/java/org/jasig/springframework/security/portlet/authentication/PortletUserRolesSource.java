@@ -0,0 +1,46 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+import java.util.Collection;
+
+import javax.portlet.PortletRequest;
+
+/**
+ * Strategy to read all of a user's roles in one operation, used by {@link IndexedRoleResolver} instead of calling
+ * {@link PortletRequest#isUserInRole(String)} once for every mappable role. Useful when the container makes
+ * {@code isUserInRole} expensive but exposes the role set directly, for example in
+ * {@link PortletRequest#USER_INFO} or a request attribute.
+ * <p>
+ * The returned names must be the role names {@code isUserInRole} is called with, the {@code security-role-ref}
+ * names of {@code portlet.xml}. Where a reference has a {@code role-link} the container checks the linked role, a
+ * source reading container roles has to apply the same mapping.
+ *
+ * @version $Id: $Id
+ */
+public interface PortletUserRolesSource {
+    /**
+     * Get the roles of the user making the request
+     *
+     * @param request the current request
+     * @return the user's roles as role reference names, may contain roles that are not mappable, null if the roles are not available from
+     * this source and {@link PortletRequest#isUserInRole(String)} should be used instead
+     */
+    Collection<String> getUserRoles(PortletRequest request);
+}
@@ -26,11 +26,13 @@ import java.util.HashSet;
 import java.util.Set;
 
 import javax.portlet.PortletConfig;
+import javax.portlet.PortletContext;
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
@@ -46,6 +48,7 @@ import org.springframework.core.io.ResourceLoader;
 import org.springframework.security.core.authority.mapping.MappableAttributesRetriever;
 import org.springframework.security.web.authentication.preauth.j2ee.WebXmlMappableAttributesRetriever;
 import org.springframework.web.portlet.context.PortletConfigAware;
+import org.springframework.web.portlet.context.PortletContextAware;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -59,6 +62,14 @@ import org.xml.sax.SAXException;
  * <p>If configured in a portlet application level context then all security-role-refs from all
  * portlets are merged into a single list. If configured in a portlet level context then only
  * the security-role-refs from that portlet are used in the list.
+ * <p>When a {@link PortletContext} is available the descriptor is parsed once per portlet application into a
+ * {@link PortletXmlSecurityRoleRefs} shared through the context, so the retrievers of all portlets in the
+ * application reuse a single parse. Set {@link #setShareParsedPortletXml(boolean) shareParsedPortletXml} to false
+ * to parse the descriptor for each retriever.
+ * <p>A descriptor parsed for a single retriever is read with a streaming pull parser which only keeps the role names
+ * of the portlets the retriever is for, so memory use does not grow with the size of the descriptor. If streaming
+ * fails, shared or not, or {@link #setStreamingParser(boolean) streamingParser} is false, the descriptor is parsed
+ * into a DOM and queried with XPath instead.
  *
  * @author Ruud Senden
  * @author Luke Taylor
@@ -67,11 +78,14 @@ import org.xml.sax.SAXException;
  * @see WebXmlMappableAttributesRetriever
  * @version $Id: $Id
  */
-public class PortletXmlMappableAttributesRetriever  implements ResourceLoaderAware, PortletConfigAware, MappableAttributesRetriever, InitializingBean {
+public class PortletXmlMappableAttributesRetriever  implements ResourceLoaderAware, PortletConfigAware, PortletContextAware, MappableAttributesRetriever, InitializingBean {
     protected final Log logger = LogFactory.getLog(getClass());
 
     private ResourceLoader resourceLoader;
     private PortletConfig portletConfig;
+    private PortletContext portletContext;
+    private boolean shareParsedPortletXml = true;
+    private boolean streamingParser = true;
     private Set<String> mappableAttributes;
 
     /** {@inheritDoc} */
@@ -85,6 +99,32 @@ public class PortletXmlMappableAttributesRetriever  implements ResourceLoaderAwa
 		this.portletConfig = portletConfig;
 	}
 
+    /** {@inheritDoc} */
+    @Override
+    public void setPortletContext(PortletContext portletContext) {
+        this.portletContext = portletContext;
+    }
+
+    /**
+     * If true, the default, and a {@link PortletContext} is available the parsed descriptor is shared by all
+     * retrievers of the portlet application, see {@link PortletXmlSecurityRoleRefs#getSharedInstance}.
+     *
+     * @param shareParsedPortletXml a boolean.
+     */
+    public void setShareParsedPortletXml(boolean shareParsedPortletXml) {
+        this.shareParsedPortletXml = shareParsedPortletXml;
+    }
+
+    /**
+     * If true, the default, a descriptor that is not shared is read with a streaming pull parser, falling back to
+     * a DOM if streaming fails. If false the descriptor is always parsed into a DOM.
+     *
+     * @param streamingParser a boolean.
+     */
+    public void setStreamingParser(boolean streamingParser) {
+        this.streamingParser = streamingParser;
+    }
+
 	/**
 	 * <p>Getter for the field <code>mappableAttributes</code>.</p>
 	 *
@@ -102,6 +142,38 @@ public class PortletXmlMappableAttributesRetriever  implements ResourceLoaderAwa
      */
     public void afterPropertiesSet() throws Exception {
         Resource portletXml = resourceLoader.getResource("/WEB-INF/portlet.xml");
+
+        final PortletContext portletContext = getPortletContext();
+        if (shareParsedPortletXml && portletContext != null) {
+            try {
+                final PortletXmlSecurityRoleRefs roleRefs = PortletXmlSecurityRoleRefs.getSharedInstance(portletContext, portletXml);
+                setMappableAttributes(portletXml, portletConfig == null ? roleRefs.getRoleNames()
+                        : roleRefs.getRoleNames(portletConfig.getPortletName()));
+                return;
+            }
+            catch (XMLStreamException e) {
+                logger.warn("Failed to stream " + portletXml + " into the shared model, falling back to DOM parsing", e);
+            }
+        }
+        else if (streamingParser) {
+            final String portletName = portletConfig == null ? null : portletConfig.getPortletName();
+            try {
+                final PortletXmlSecurityRoleRefs roleRefs = PortletXmlSecurityRoleRefs.parse(portletXml.getInputStream(), portletName);
+                setMappableAttributes(portletXml, portletName == null ? roleRefs.getRoleNames() : roleRefs.getRoleNames(portletName));
+                return;
+            }
+            catch (XMLStreamException e) {
+                logger.warn("Failed to stream " + portletXml + ", falling back to DOM parsing", e);
+            }
+        }
+
+        setMappableAttributes(portletXml, getDocumentRoleNames(portletXml));
+    }
+
+    /**
+     * @return the role names in the portlet.xml for this retriever, using DOM and XPath
+     */
+    private Set<String> getDocumentRoleNames(Resource portletXml) throws Exception {
         Document doc = getDocument(portletXml.getInputStream());
         
         final XPathExpression roleNamesExpression;
@@ -134,14 +206,28 @@ public class PortletXmlMappableAttributesRetriever  implements ResourceLoaderAwa
             Element secRoleElt = (Element) securityRoles.item(i);
             String roleName = secRoleElt.getTextContent().trim();
             roleNames.add(roleName);
+        }
+
+        return roleNames;
+    }
+
+    private PortletContext getPortletContext() {
+        if (portletContext != null) {
+            return portletContext;
+        }
+        return portletConfig != null ? portletConfig.getPortletContext() : null;
+    }
+
+    private void setMappableAttributes(Resource portletXml, Set<String> roleNames) {
+        for (final String roleName : roleNames) {
             logger.info("Retrieved role-name '" + roleName + "' from portlet.xml");
         }
-        
+
         if (roleNames.isEmpty()) {
         	logger.info("No security-role-ref elements found in " + portletXml + (portletConfig == null ? "" : " for portlet " + portletConfig.getPortletName()));
         }
 
-        mappableAttributes = Collections.unmodifiableSet(roleNames);
+        mappableAttributes = Collections.unmodifiableSet(new HashSet<String>(roleNames));
     }
 
     /**
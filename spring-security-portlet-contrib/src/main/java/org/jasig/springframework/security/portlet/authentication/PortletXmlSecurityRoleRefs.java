@@ -0,0 +1,251 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.portlet.PortletContext;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.io.Resource;
+
+/**
+ * The <tt>security-role-ref/role-name</tt> values declared by each portlet in a <tt>portlet.xml</tt>, read with a
+ * single pass of a StAX pull parser which keeps only the portlet names and role names.
+ * <p>
+ * {@link #getSharedInstance(PortletContext, Resource)} parses the descriptor once per {@link PortletContext} and
+ * stores the result as a context attribute, so every {@link PortletXmlMappableAttributesRetriever} of a portlet
+ * application is served from the same model instead of parsing <tt>portlet.xml</tt> once per portlet.
+ *
+ * @version $Id: $Id
+ */
+public final class PortletXmlSecurityRoleRefs {
+    /**
+     * {@link PortletContext} attribute the shared instance is stored under
+     */
+    public static final String PORTLET_CONTEXT_ATTRIBUTE = PortletXmlSecurityRoleRefs.class.getName();
+
+    private static final Log logger = LogFactory.getLog(PortletXmlSecurityRoleRefs.class);
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    private final Map<String, Set<String>> portletRoleNames;
+    private final Set<String> roleNames;
+
+    private PortletXmlSecurityRoleRefs(Map<String, Set<String>> portletRoleNames) {
+        final Set<String> roleNames = new LinkedHashSet<String>();
+        for (final Set<String> names : portletRoleNames.values()) {
+            roleNames.addAll(names);
+        }
+
+        this.portletRoleNames = Collections.unmodifiableMap(portletRoleNames);
+        this.roleNames = Collections.unmodifiableSet(roleNames);
+    }
+
+    /**
+     * Get the model for the <tt>portlet.xml</tt> of a portlet application, parsing it if this is the first request
+     * for the context.
+     *
+     * @param portletContext the context the parsed model is shared through
+     * @param portletXml the <tt>portlet.xml</tt> of the portlet application
+     * @return the shared model
+     * @throws IOException if the descriptor cannot be read
+     * @throws XMLStreamException if the descriptor cannot be parsed
+     */
+    public static PortletXmlSecurityRoleRefs getSharedInstance(PortletContext portletContext, Resource portletXml)
+            throws IOException, XMLStreamException {
+
+        // Only contended during portlet application startup, a global lock keeps this to one parse per context
+        synchronized (PortletXmlSecurityRoleRefs.class) {
+            final Object shared = portletContext.getAttribute(PORTLET_CONTEXT_ATTRIBUTE);
+            if (shared instanceof PortletXmlSecurityRoleRefs) {
+                return (PortletXmlSecurityRoleRefs) shared;
+            }
+
+            final PortletXmlSecurityRoleRefs roleRefs = parse(portletXml.getInputStream());
+            portletContext.setAttribute(PORTLET_CONTEXT_ATTRIBUTE, roleRefs);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Parsed " + portletXml + " for portlet context " + portletContext.getPortletContextName()
+                        + ": " + roleRefs);
+            }
+            return roleRefs;
+        }
+    }
+
+    /**
+     * Parse a <tt>portlet.xml</tt>, the stream is closed when parsing completes
+     *
+     * @param portletXml stream of the descriptor
+     * @return the security-role-ref role names of each portlet in the descriptor
+     * @throws XMLStreamException if the descriptor cannot be parsed
+     */
+    public static PortletXmlSecurityRoleRefs parse(InputStream portletXml) throws XMLStreamException {
+        return parse(portletXml, null);
+    }
+
+    /**
+     * Parse a <tt>portlet.xml</tt> keeping only the role names of one portlet, memory use is bounded by the role
+     * names of that portlet regardless of the size of the descriptor. The stream is closed when parsing completes.
+     *
+     * @param portletXml stream of the descriptor
+     * @param portletName the portlet to keep the role names of, null to keep all portlets
+     * @return the security-role-ref role names of the portlet
+     * @throws XMLStreamException if the descriptor cannot be parsed
+     */
+    public static PortletXmlSecurityRoleRefs parse(InputStream portletXml, String portletName)
+            throws XMLStreamException {
+        final Map<String, Set<String>> portletRoleNames = new LinkedHashMap<String, Set<String>>();
+
+        try {
+            final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(portletXml);
+            try {
+                int depth = 0;
+                boolean portletApp = false;
+                boolean roleRef = false;
+                String currentPortletName = null;
+                Set<String> roleNames = null;
+
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT: {
+                            depth++;
+                            final String name = reader.getLocalName();
+                            if (depth == 1) {
+                                portletApp = "portlet-app".equals(name);
+                            }
+                            else if (portletApp && depth == 2 && "portlet".equals(name)) {
+                                currentPortletName = null;
+                                roleNames = new LinkedHashSet<String>();
+                            }
+                            else if (roleNames != null && depth == 3 && "portlet-name".equals(name)) {
+                                currentPortletName = reader.getElementText().trim();
+                                depth--;
+                                if (portletName != null && !portletName.equals(currentPortletName)) {
+                                    // Not a portlet being kept, skip collecting its role names
+                                    roleNames = null;
+                                }
+                            }
+                            else if (roleNames != null && depth == 3 && "security-role-ref".equals(name)) {
+                                roleRef = true;
+                            }
+                            else if (roleRef && depth == 4 && "role-name".equals(name)) {
+                                roleNames.add(reader.getElementText().trim());
+                                depth--;
+                            }
+                            break;
+                        }
+                        case XMLStreamConstants.END_ELEMENT: {
+                            if (depth == 3) {
+                                roleRef = false;
+                            }
+                            else if (depth == 2 && roleNames != null) {
+                                if (currentPortletName != null) {
+                                    final Set<String> existing = portletRoleNames.get(currentPortletName);
+                                    if (existing == null) {
+                                        portletRoleNames.put(currentPortletName, Collections.unmodifiableSet(roleNames));
+                                    }
+                                    else {
+                                        final Set<String> merged = new LinkedHashSet<String>(existing);
+                                        merged.addAll(roleNames);
+                                        portletRoleNames.put(currentPortletName, Collections.unmodifiableSet(merged));
+                                    }
+                                }
+                                roleNames = null;
+                            }
+                            depth--;
+                            break;
+                        }
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        finally {
+            try {
+                portletXml.close();
+            }
+            catch (IOException e) {
+                logger.warn("Failed to close input stream for portlet.xml", e);
+            }
+        }
+
+        return new PortletXmlSecurityRoleRefs(portletRoleNames);
+    }
+
+    /**
+     * @return the role names declared by all portlets
+     */
+    public Set<String> getRoleNames() {
+        return this.roleNames;
+    }
+
+    /**
+     * @param portletName name of a portlet
+     * @return the role names declared by the portlet, empty if the portlet is not declared
+     */
+    public Set<String> getRoleNames(String portletName) {
+        final Set<String> names = this.portletRoleNames.get(portletName);
+        if (names == null) {
+            return Collections.emptySet();
+        }
+        return names;
+    }
+
+    /**
+     * @return the names of all declared portlets
+     */
+    public Set<String> getPortletNames() {
+        return this.portletRoleNames.keySet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "PortletXmlSecurityRoleRefs " + this.portletRoleNames;
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        // External DTDs are never needed, resolve them to an empty document
+        factory.setXMLResolver(new XMLResolver() {
+            @Override
+            public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace) {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+        });
+        return factory;
+    }
+}
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import javax.portlet.PortletRequest;
 
@@ -53,10 +54,29 @@ public class PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails exte
      */
     public PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails(PortletRequest request,
             Collection<? extends GrantedAuthority> authorities) {
-        super(request);
+        this(request, null, authorities);
+    }
 
-        List<GrantedAuthority> temp = new ArrayList<GrantedAuthority>(authorities);
-        this.authorities = Collections.unmodifiableList(temp);
+    /**
+     * <p>Constructor for PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails.</p>
+     *
+     * @param request a {@link javax.portlet.PortletRequest} object.
+     * @param userInfoAttributes names of the {@link PortletRequest#USER_INFO} attributes to keep, null to keep the
+     * whole map
+     * @param authorities a {@link java.util.Collection} object.
+     */
+    public PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails(PortletRequest request,
+            Set<String> userInfoAttributes, Collection<? extends GrantedAuthority> authorities) {
+        super(request, userInfoAttributes);
+
+        if (authorities instanceof GrantedAuthorityList) {
+            // Already immutable and possibly shared with other users, no need for a copy
+            this.authorities = (GrantedAuthorityList) authorities;
+        }
+        else {
+            List<GrantedAuthority> temp = new ArrayList<GrantedAuthority>(authorities);
+            this.authorities = Collections.unmodifiableList(temp);
+        }
     }
 
     /**
@@ -0,0 +1,68 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+/**
+ * Key identifying the authentication of a principal within a portlet session and portlet window, the session id may
+ * be null for requests without a session
+ *
+ * @version $Id: $Id
+ */
+final class PrincipalSessionKey {
+    private final Object principal;
+    private final String sessionId;
+    private final String windowId;
+    private final int hash;
+
+    PrincipalSessionKey(Object principal, String sessionId, String windowId) {
+        this.principal = principal;
+        this.sessionId = sessionId;
+        this.windowId = windowId;
+        int hash = 31 * principal.hashCode() + (sessionId == null ? 0 : sessionId.hashCode());
+        this.hash = 31 * hash + (windowId == null ? 0 : windowId.hashCode());
+    }
+
+    String getSessionId() {
+        return this.sessionId;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof PrincipalSessionKey)) {
+            return false;
+        }
+        final PrincipalSessionKey other = (PrincipalSessionKey) obj;
+        return this.hash == other.hash && this.principal.equals(other.principal)
+                && (this.sessionId == null ? other.sessionId == null : this.sessionId.equals(other.sessionId))
+                && (this.windowId == null ? other.windowId == null : this.windowId.equals(other.windowId));
+    }
+
+    @Override
+    public String toString() {
+        return "[principal=" + this.principal + ", sessionId=" + this.sessionId + ", windowId=" + this.windowId + "]";
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.Assert;
+
+/**
+ * {@link Executor} which runs each task with a {@link SecurityContext} bound, either a fixed context or, by default,
+ * the context of the thread submitting the task. This lets portlet code hand back-end calls to a shared pool while
+ * keeping the security context of the request, each task's binding is removed when it completes so pooled threads
+ * never carry a context from one request to the next. The context instance is shared with the tasks, not copied,
+ * changes a task makes through {@link SecurityContextHolder#setContext(SecurityContext)} are discarded when it
+ * completes.
+ *
+ * @version $Id: $Id
+ */
+public class DelegatingSecurityContextExecutor implements Executor {
+    private final Executor delegate;
+    private final SecurityContext securityContext;
+
+    /**
+     * Propagate the context of the submitting thread
+     *
+     * @param delegate the executor to run tasks on
+     */
+    public DelegatingSecurityContextExecutor(Executor delegate) {
+        this(delegate, null);
+    }
+
+    /**
+     * @param delegate the executor to run tasks on
+     * @param securityContext the context to run every task with, null to use the context of the submitting thread
+     */
+    public DelegatingSecurityContextExecutor(Executor delegate, SecurityContext securityContext) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        this.delegate = delegate;
+        this.securityContext = securityContext;
+    }
+
+    @Override
+    public final void execute(Runnable task) {
+        this.delegate.execute(wrap(task));
+    }
+
+    /**
+     * @return the executor tasks are run on
+     */
+    protected Executor getDelegateExecutor() {
+        return this.delegate;
+    }
+
+    /**
+     * Wrap a task to run with the configured context, or the context of the calling thread
+     */
+    protected final Runnable wrap(Runnable task) {
+        return new DelegatingSecurityContextRunnable(task, this.getSecurityContext());
+    }
+
+    /**
+     * Wrap a task to run with the configured context, or the context of the calling thread
+     */
+    protected final <T> Callable<T> wrap(Callable<T> task) {
+        return new DelegatingSecurityContextCallable<T>(task, this.getSecurityContext());
+    }
+
+    private SecurityContext getSecurityContext() {
+        if (this.securityContext != null) {
+            return this.securityContext;
+        }
+        return SecurityContextHolder.getContext();
+    }
+}
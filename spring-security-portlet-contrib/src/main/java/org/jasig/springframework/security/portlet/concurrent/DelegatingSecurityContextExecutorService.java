@@ -0,0 +1,132 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.security.core.context.SecurityContext;
+
+/**
+ * {@link ExecutorService} variant of {@link DelegatingSecurityContextExecutor}, every submitted task runs with the
+ * configured {@link SecurityContext} or the context of the submitting thread.
+ *
+ * @version $Id: $Id
+ */
+public class DelegatingSecurityContextExecutorService extends DelegatingSecurityContextExecutor
+        implements ExecutorService {
+
+    /**
+     * Propagate the context of the submitting thread
+     *
+     * @param delegate the executor service to run tasks on
+     */
+    public DelegatingSecurityContextExecutorService(ExecutorService delegate) {
+        this(delegate, null);
+    }
+
+    /**
+     * @param delegate the executor service to run tasks on
+     * @param securityContext the context to run every task with, null to use the context of the submitting thread
+     */
+    public DelegatingSecurityContextExecutorService(ExecutorService delegate, SecurityContext securityContext) {
+        super(delegate, securityContext);
+    }
+
+    @Override
+    public void shutdown() {
+        getDelegate().shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return getDelegate().shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return getDelegate().isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return getDelegate().isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return getDelegate().awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        return getDelegate().submit(wrap(task));
+    }
+
+    @Override
+    public <T> Future<T> submit(Runnable task, T result) {
+        return getDelegate().submit(wrap(task), result);
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        return getDelegate().submit(wrap(task));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+        return getDelegate().invokeAll(wrapAll(tasks));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return getDelegate().invokeAll(wrapAll(tasks), timeout, unit);
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        return getDelegate().invokeAny(wrapAll(tasks));
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return getDelegate().invokeAny(wrapAll(tasks), timeout, unit);
+    }
+
+    private ExecutorService getDelegate() {
+        return (ExecutorService) getDelegateExecutor();
+    }
+
+    private <T> List<Callable<T>> wrapAll(Collection<? extends Callable<T>> tasks) {
+        final List<Callable<T>> wrappedTasks = new ArrayList<Callable<T>>(tasks.size());
+        for (final Callable<T> task : tasks) {
+            wrappedTasks.add(wrap(task));
+        }
+        return wrappedTasks;
+    }
+}
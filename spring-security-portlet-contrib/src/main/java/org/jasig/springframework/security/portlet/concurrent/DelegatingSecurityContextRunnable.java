@@ -0,0 +1,65 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.concurrent;
+
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.Assert;
+
+/**
+ * Runs a delegate {@link Runnable} inside a {@link SecurityContextScope} binding a fixed {@link SecurityContext},
+ * typically the context of the portlet request that created the task.
+ *
+ * @version $Id: $Id
+ */
+public final class DelegatingSecurityContextRunnable implements Runnable {
+    private final Runnable delegate;
+    private final SecurityContext securityContext;
+
+    /**
+     * @param delegate the task to run
+     * @param securityContext the context to bind while the task runs
+     */
+    public DelegatingSecurityContextRunnable(Runnable delegate, SecurityContext securityContext) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        Assert.notNull(securityContext, "securityContext cannot be null");
+        this.delegate = delegate;
+        this.securityContext = securityContext;
+    }
+
+    /**
+     * Wrap a task so it runs with the {@link SecurityContext} of the calling thread
+     *
+     * @param delegate the task to run
+     * @return the wrapped task
+     */
+    public static Runnable create(Runnable delegate) {
+        return new DelegatingSecurityContextRunnable(delegate, SecurityContextHolder.getContext());
+    }
+
+    @Override
+    public void run() {
+        SecurityContextScope.runWhere(this.securityContext, this.delegate);
+    }
+
+    @Override
+    public String toString() {
+        return this.delegate.toString();
+    }
+}
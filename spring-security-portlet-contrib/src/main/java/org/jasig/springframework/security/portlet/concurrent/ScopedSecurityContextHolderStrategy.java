@@ -0,0 +1,147 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.concurrent;
+
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.util.Assert;
+
+/**
+ * {@link SecurityContextHolderStrategy} which tracks nested {@link SecurityContextScope}s, giving the holder scoped
+ * value semantics: a context bound by a scope is visible for exactly the extent of that scope and the outer binding
+ * is restored when it is closed, regardless of what the code inside the scope did with the holder. Closing the
+ * outermost scope, or {@link #clearContext() clearing} outside of any scope, removes the thread local entirely so
+ * nothing is retained by pooled or short lived threads.
+ * <p>
+ * Outside of a scope the strategy behaves like the default thread local strategy. It never inherits contexts into
+ * child threads, contexts reach other threads only through explicit propagation such as
+ * {@link DelegatingSecurityContextExecutorService}. Install it with
+ * {@code SecurityContextHolder.setStrategyName(ScopedSecurityContextHolderStrategy.class.getName())} or the
+ * {@value SecurityContextHolder#SYSTEM_PROPERTY} system property.
+ *
+ * @version $Id: $Id
+ */
+public final class ScopedSecurityContextHolderStrategy implements SecurityContextHolderStrategy {
+    private static final ThreadLocal<Binding> BINDING = new ThreadLocal<Binding>();
+
+    @Override
+    public void clearContext() {
+        final Binding binding = BINDING.get();
+        if (binding == null) {
+            return;
+        }
+
+        if (binding.parent == null && !binding.scoped) {
+            BINDING.remove();
+        }
+        else {
+            // Cleared for the rest of the scope only, closing the scope restores the outer binding
+            binding.context = null;
+        }
+    }
+
+    @Override
+    public SecurityContext getContext() {
+        Binding binding = BINDING.get();
+        if (binding == null) {
+            binding = new Binding(null, createEmptyContext(), false);
+            BINDING.set(binding);
+        }
+        else if (binding.context == null) {
+            binding.context = createEmptyContext();
+        }
+
+        return binding.context;
+    }
+
+    @Override
+    public void setContext(SecurityContext context) {
+        Assert.notNull(context, "Only non-null SecurityContext instances are permitted");
+
+        final Binding binding = BINDING.get();
+        if (binding == null) {
+            BINDING.set(new Binding(null, context, false));
+        }
+        else {
+            binding.context = context;
+        }
+    }
+
+    @Override
+    public SecurityContext createEmptyContext() {
+        return new SecurityContextImpl();
+    }
+
+    /**
+     * Bind a context to the current thread until the returned scope is closed, see
+     * {@link SecurityContextScope#open(SecurityContext)}
+     */
+    SecurityContextScope open(SecurityContext context) {
+        final Binding binding = new Binding(BINDING.get(), context, true);
+        BINDING.set(binding);
+        return new BindingScope(binding);
+    }
+
+    /**
+     * @return true if the current thread has a binding, used to verify nothing is left behind
+     */
+    static boolean isBound() {
+        return BINDING.get() != null;
+    }
+
+    /**
+     * A context bound to a thread, linked to the binding it hides
+     */
+    private static final class Binding {
+        private final Binding parent;
+        private final boolean scoped;
+        private SecurityContext context;
+
+        Binding(Binding parent, SecurityContext context, boolean scoped) {
+            this.parent = parent;
+            this.context = context;
+            this.scoped = scoped;
+        }
+    }
+
+    private static final class BindingScope extends SecurityContextScope {
+        private final Binding binding;
+
+        BindingScope(Binding binding) {
+            this.binding = binding;
+        }
+
+        @Override
+        void restore() {
+            if (BINDING.get() != this.binding) {
+                throw new IllegalStateException("SecurityContextScopes must be closed in the reverse order they were opened");
+            }
+
+            final Binding parent = this.binding.parent;
+            if (parent == null) {
+                BINDING.remove();
+            }
+            else {
+                BINDING.set(parent);
+            }
+        }
+    }
+}
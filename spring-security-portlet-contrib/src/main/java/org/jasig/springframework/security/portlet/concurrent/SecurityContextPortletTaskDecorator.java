@@ -0,0 +1,40 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.concurrent;
+
+import java.util.concurrent.Callable;
+
+import org.jasig.springframework.web.portlet.support.PortletTaskDecorator;
+import org.springframework.security.core.context.SecurityContext;
+
+/**
+ * {@link PortletTaskDecorator} which runs portlet fan out tasks with the {@link SecurityContext} of the submitting
+ * request, add it to the {@link org.jasig.springframework.web.portlet.support.PortletFanOutExecutor#setTaskDecorators(java.util.List)
+ * task decorators} of the fan out executor.
+ *
+ * @version $Id: $Id
+ * @see DelegatingSecurityContextCallable
+ */
+public class SecurityContextPortletTaskDecorator implements PortletTaskDecorator {
+
+    @Override
+    public <V> Callable<V> decorate(Callable<V> task) {
+        return DelegatingSecurityContextCallable.create(task);
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.concurrent;
+
+import java.util.concurrent.Callable;
+
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.util.Assert;
+
+/**
+ * Binds a {@link SecurityContext} to the current thread for the extent of a block of code, in the style of a scoped
+ * value. When the scope is {@link #close() closed} the binding that was in place when it was opened is restored, if
+ * there was none the {@link SecurityContextHolder} is cleared so no context is left behind on pooled threads. Any
+ * {@link SecurityContextHolder#setContext(SecurityContext)} or {@link SecurityContextHolder#clearContext()} done
+ * inside the scope is discarded when it is closed.
+ * <p>
+ * When the {@link ScopedSecurityContextHolderStrategy} is installed scopes are tracked by the strategy itself,
+ * otherwise the previous context is captured and put back through the {@link SecurityContextHolder}.
+ * <p>
+ * Scopes must be closed on the thread which opened them, in the reverse order they were opened, typically:
+ * <pre>
+ * final SecurityContextScope scope = SecurityContextScope.open(context);
+ * try {
+ *     ...
+ * }
+ * finally {
+ *     scope.close();
+ * }
+ * </pre>
+ *
+ * @version $Id: $Id
+ */
+public abstract class SecurityContextScope {
+    private final Thread owner = Thread.currentThread();
+    private boolean closed = false;
+
+    SecurityContextScope() {
+    }
+
+    /**
+     * Bind a context to the current thread until the returned scope is closed
+     *
+     * @param context the context to bind, null binds an empty context
+     * @return the scope, must be closed by the caller
+     */
+    public static SecurityContextScope open(SecurityContext context) {
+        final SecurityContextHolderStrategy strategy = SecurityContextHolder.getContextHolderStrategy();
+        if (context == null) {
+            context = strategy.createEmptyContext();
+        }
+
+        if (strategy instanceof ScopedSecurityContextHolderStrategy) {
+            return ((ScopedSecurityContextHolderStrategy) strategy).open(context);
+        }
+
+        return new HolderSecurityContextScope(strategy, context);
+    }
+
+    /**
+     * Run a task with a context bound to the current thread
+     *
+     * @param context the context to bind while the task runs
+     * @param task the task to run
+     */
+    public static void runWhere(SecurityContext context, Runnable task) {
+        Assert.notNull(task, "task cannot be null");
+        final SecurityContextScope scope = open(context);
+        try {
+            task.run();
+        }
+        finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * Call a task with a context bound to the current thread
+     *
+     * @param context the context to bind while the task runs
+     * @param task the task to call
+     * @return the result of the task
+     * @throws Exception if the task fails
+     */
+    public static <V> V callWhere(SecurityContext context, Callable<V> task) throws Exception {
+        Assert.notNull(task, "task cannot be null");
+        final SecurityContextScope scope = open(context);
+        try {
+            return task.call();
+        }
+        finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * End the scope, restoring the binding that was in place when it was opened. Closing a scope more than once
+     * has no effect.
+     *
+     * @throws IllegalStateException if called from a thread other than the one that opened the scope, or if a
+     * scope opened after this one has not been closed yet
+     */
+    public final void close() {
+        if (this.closed) {
+            return;
+        }
+        if (this.owner != Thread.currentThread()) {
+            throw new IllegalStateException("SecurityContextScope opened by " + this.owner.getName()
+                    + " cannot be closed by " + Thread.currentThread().getName());
+        }
+
+        this.restore();
+        this.closed = true;
+    }
+
+    /**
+     * Restore the binding that was in place when the scope was opened, only called once, on the owning thread
+     */
+    abstract void restore();
+
+    /**
+     * Scope used with holder strategies which do not track scopes, captures the previous context and sets it back
+     */
+    private static final class HolderSecurityContextScope extends SecurityContextScope {
+        private final SecurityContextHolderStrategy strategy;
+        private final SecurityContext previousContext;
+
+        HolderSecurityContextScope(SecurityContextHolderStrategy strategy, SecurityContext context) {
+            this.strategy = strategy;
+
+            final SecurityContext currentContext = strategy.getContext();
+            final SecurityContext emptyContext = strategy.createEmptyContext();
+            this.previousContext = emptyContext.equals(currentContext) ? null : currentContext;
+
+            strategy.setContext(context);
+        }
+
+        @Override
+        void restore() {
+            if (this.previousContext == null) {
+                this.strategy.clearContext();
+            }
+            else {
+                this.strategy.setContext(this.previousContext);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.context;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.util.Assert;
+
+/**
+ * {@link SecurityContext} returned by {@link PortletSessionSecurityContextRepository#loadContext(PortletRequestResponseHolder)}
+ * when change tracking is enabled. Records whether {@link #setAuthentication(Authentication)} actually changed
+ * the authentication during the request, which lets the repository skip both the session attribute probe and the
+ * session write when nothing changed. In replicated containers every {@code setAttribute} triggers replication of
+ * the context, most requests never modify it.
+ * <p>
+ * Only the wrapped context is ever stored in the {@code PortletSession}, this wrapper lives for a single request.
+ *
+ * @version $Id: $Id
+ */
+public final class DirtyTrackingSecurityContext implements SecurityContext {
+    private static final long serialVersionUID = 1L;
+
+    private final SecurityContext delegate;
+    private final boolean storedInSession;
+    private final long sessionCreationTime;
+    private boolean dirty = false;
+
+    /**
+     * @param delegate the context to wrap
+     * @param storedInSession true if the delegate was read from the session
+     * @param sessionCreationTime creation time of the session the delegate was read from, ignored if
+     * storedInSession is false
+     */
+    DirtyTrackingSecurityContext(SecurityContext delegate, boolean storedInSession, long sessionCreationTime) {
+        Assert.notNull(delegate, "delegate must not be null");
+        this.delegate = delegate;
+        this.storedInSession = storedInSession;
+        this.sessionCreationTime = sessionCreationTime;
+    }
+
+    /**
+     * @return the wrapped context
+     */
+    public SecurityContext getDelegate() {
+        return this.delegate;
+    }
+
+    /**
+     * @return true if {@link #setAuthentication(Authentication)} has changed the authentication
+     */
+    public boolean isDirty() {
+        return this.dirty;
+    }
+
+    /**
+     * @return true if the wrapped context was read from the session
+     */
+    boolean isStoredInSession() {
+        return this.storedInSession;
+    }
+
+    /**
+     * @return creation time of the session the wrapped context was read from
+     */
+    long getSessionCreationTime() {
+        return this.sessionCreationTime;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Authentication getAuthentication() {
+        return this.delegate.getAuthentication();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setAuthentication(Authentication authentication) {
+        if (authentication != this.delegate.getAuthentication()) {
+            this.dirty = true;
+        }
+        this.delegate.setAuthentication(authentication);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof DirtyTrackingSecurityContext) {
+            return this.delegate.equals(((DirtyTrackingSecurityContext) obj).delegate);
+        }
+        return this.delegate.equals(obj);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return this.delegate.hashCode();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return this.delegate.toString();
+    }
+}
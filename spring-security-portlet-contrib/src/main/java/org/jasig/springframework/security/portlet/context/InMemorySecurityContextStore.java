@@ -0,0 +1,247 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.context;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jasig.springframework.security.portlet.metrics.StripedCounter;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.util.Assert;
+
+/**
+ * Bounded {@link SecurityContextStore} held in memory. Contexts expire once they have not been loaded or stored for
+ * {@link #setTimeToIdle(long) timeToIdle} milliseconds. Once {@link #setMaxSize(int) maxSize} is reached the least
+ * recently used of a sample of contexts is evicted. Contexts do not survive a restart, see
+ * {@link MappedFileSecurityContextStore} for that.
+ * <p>
+ * Loading a context does not lock, it only updates the last access time of its entry. Storing a new token only
+ * locks to pick the context to evict from a full store, the sample is taken at a hand that keeps rotating over all
+ * stored contexts.
+ *
+ * @version $Id: $Id
+ */
+public class InMemorySecurityContextStore implements SecurityContextStore {
+    /** Default maximum number of stored contexts */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    /** Default time to idle, 30 minutes to match the default servlet session timeout */
+    public static final long DEFAULT_TIME_TO_IDLE = TimeUnit.MINUTES.toMillis(30);
+
+    /** Number of contexts compared to pick the least recently used context to evict from a full store */
+    private static final int EVICTION_SAMPLE_SIZE = 16;
+
+    private final ConcurrentMap<String, Entry> contexts = new ConcurrentHashMap<String, Entry>();
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile long timeToIdleNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIME_TO_IDLE);
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // Guarded by evictionLock
+    private Iterator<Entry> evictionHand;
+
+    /**
+     * @param timeToIdle milliseconds after the last load or store a context expires, defaults to
+     * {@link #DEFAULT_TIME_TO_IDLE}
+     */
+    public void setTimeToIdle(long timeToIdle) {
+        Assert.isTrue(timeToIdle > 0, "timeToIdle must be greater than 0");
+        this.timeToIdleNanos = TimeUnit.MILLISECONDS.toNanos(timeToIdle);
+    }
+
+    /**
+     * @param maxSize maximum number of stored contexts, defaults to {@link #DEFAULT_MAX_SIZE}
+     */
+    public void setMaxSize(int maxSize) {
+        Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+        this.maxSize = maxSize;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public SecurityContext load(String token) {
+        SecurityContext context = null;
+        final Entry entry = this.contexts.get(token);
+        if (entry != null) {
+            final long now = currentTime();
+            if (now - entry.lastAccessed < this.timeToIdleNanos) {
+                entry.lastAccessed = now;
+                context = entry.context;
+            }
+            else if (this.contexts.remove(token, entry)) {
+                this.evictions.incrementAndGet();
+            }
+        }
+
+        if (context == null) {
+            this.misses.increment();
+        }
+        else {
+            this.hits.increment();
+        }
+        return context;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void store(String token, SecurityContext context) {
+        Assert.notNull(token, "token must not be null");
+        Assert.notNull(context, "context must not be null");
+        final Entry entry = new Entry(token, context, currentTime());
+        if (this.contexts.put(token, entry) == null) {
+            while (this.contexts.size() > this.maxSize && evictOne(entry)) {
+                //evict until back within bounds
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void remove(String token) {
+        this.contexts.remove(token);
+    }
+
+    /**
+     * Remove all expired contexts, expired contexts are otherwise only removed when they are loaded or evicted
+     */
+    public void removeExpired() {
+        final long now = currentTime();
+        for (final Map.Entry<String, Entry> mapEntry : this.contexts.entrySet()) {
+            final Entry entry = mapEntry.getValue();
+            if (now - entry.lastAccessed >= this.timeToIdleNanos && this.contexts.remove(entry.token, entry)) {
+                this.evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return the number of stored contexts, including expired contexts that have not been removed yet
+     */
+    public int getSize() {
+        return this.contexts.size();
+    }
+
+    /**
+     * @return number of loads that found an unexpired context
+     */
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return number of loads that did not find an unexpired context
+     */
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return number of contexts removed because they expired or the store was full
+     */
+    public long getEvictionCount() {
+        return this.evictions.get();
+    }
+
+    /**
+     * Reset the hit, miss and eviction counts to 0
+     */
+    public void resetStatistics() {
+        this.hits.reset();
+        this.misses.reset();
+        this.evictions.set(0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "InMemorySecurityContextStore [timeToIdle=" + TimeUnit.NANOSECONDS.toMillis(this.timeToIdleNanos)
+                + "ms, maxSize=" + this.maxSize + ", size=" + getSize() + ", hits=" + getHitCount() + ", misses="
+                + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+    }
+
+    /**
+     * @return the current time in nanoseconds, contexts expire based on differences of this value
+     */
+    protected long currentTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Remove the least recently used context of the sample following the eviction hand, the hand starts over once
+     * it has passed all contexts.
+     *
+     * @param added the entry whose store triggered the eviction, never evicted
+     * @return false if there was nothing to evict
+     */
+    private boolean evictOne(Entry added) {
+        Entry eldest = null;
+        this.evictionLock.lock();
+        try {
+            boolean restarted = false;
+            for (int sampled = 0; sampled < EVICTION_SAMPLE_SIZE;) {
+                if (this.evictionHand == null || !this.evictionHand.hasNext()) {
+                    if (restarted) {
+                        break;
+                    }
+                    this.evictionHand = this.contexts.values().iterator();
+                    restarted = true;
+                    continue;
+                }
+
+                final Entry entry = this.evictionHand.next();
+                if (entry == added) {
+                    continue;
+                }
+                sampled++;
+                if (eldest == null || entry.lastAccessed < eldest.lastAccessed) {
+                    eldest = entry;
+                }
+            }
+        }
+        finally {
+            this.evictionLock.unlock();
+        }
+
+        if (eldest == null) {
+            return false;
+        }
+        if (this.contexts.remove(eldest.token, eldest)) {
+            this.evictions.incrementAndGet();
+        }
+        return true;
+    }
+
+    private static final class Entry {
+        private final String token;
+        private final SecurityContext context;
+        private volatile long lastAccessed;
+
+        private Entry(String token, SecurityContext context, long lastAccessed) {
+            this.token = token;
+            this.context = context;
+            this.lastAccessed = lastAccessed;
+        }
+    }
+}
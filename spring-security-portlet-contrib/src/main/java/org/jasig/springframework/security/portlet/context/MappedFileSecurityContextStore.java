@@ -0,0 +1,674 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.context;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.ConfigurableObjectInputStream;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.util.Assert;
+
+/**
+ * {@link SecurityContextStore} backed by a memory-mapped file so stored contexts survive a restart of a single node.
+ * <p>
+ * The file is divided into {@link #setSlotCount(int) slotCount} fixed size slots of {@link #setSlotSize(int)
+ * slotSize} bytes, each holding one token and the serialized context. The token to slot index is rebuilt from the
+ * file by {@link #afterPropertiesSet()}. A slot is written with its length last so a partially written slot is
+ * treated as free. Contexts which serialize to more than a slot can hold are not stored and counted in
+ * {@link #getOversizedCount()}, with a pre-authenticated portlet login the user is then simply re-authenticated.
+ * Contexts expire once they have not been loaded or stored for {@link #setTimeToIdle(long) timeToIdle}
+ * milliseconds. When all slots are in use the least recently used of a sample of slots is evicted.
+ * <p>
+ * Loading and storing the context of a known token only locks one of a set of striped slot locks, finding a slot
+ * for a new token takes a free slot from a list. Stored and loaded contexts are kept softly referenced, a load
+ * returns the same instance, as a session attribute would, and only deserializes after a restart or once the
+ * garbage collector has cleared the reference.
+ * <p>
+ * The file is created readable and writable by its owner only. It is trusted, stored contexts are deserialized with
+ * the class loader which loaded this class, and must not be shared by more than one store.
+ *
+ * @version $Id: $Id
+ */
+public class MappedFileSecurityContextStore implements SecurityContextStore, InitializingBean, DisposableBean {
+    /** Default number of slots */
+    public static final int DEFAULT_SLOT_COUNT = 10000;
+    /** Default slot size in bytes */
+    public static final int DEFAULT_SLOT_SIZE = 4096;
+    /** Default time to idle, 30 minutes to match the default servlet session timeout */
+    public static final long DEFAULT_TIME_TO_IDLE = TimeUnit.MINUTES.toMillis(30);
+    /** Maximum length of a token in UTF-8 bytes */
+    public static final int MAX_TOKEN_LENGTH = 64;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x53435853;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    // Slot layout: payload length, last accessed time, token length, token bytes, payload
+    private static final int SLOT_LENGTH = 0;
+    private static final int SLOT_LAST_ACCESSED = 4;
+    private static final int SLOT_TOKEN_LENGTH = 12;
+    private static final int SLOT_TOKEN = 14;
+    private static final int SLOT_PAYLOAD = SLOT_TOKEN + MAX_TOKEN_LENGTH;
+
+    private static final int LOCK_STRIPES = 64;
+    /** Number of slots compared to pick the least recently used context to evict from a full file */
+    private static final int EVICTION_SAMPLE_SIZE = 16;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final ConcurrentMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong oversized = new AtomicLong();
+    private final ClassLoader classLoader = MappedFileSecurityContextStore.class.getClassLoader();
+
+    /*
+     * Slot contents are guarded by the stripe lock of the slot. The owner of a slot is only changed while holding
+     * the allocation lock as well, always acquired before a stripe lock. Opening and closing the file holds all
+     * locks.
+     */
+    private final ReentrantLock allocationLock = new ReentrantLock();
+    private final ReentrantLock[] slotLocks;
+
+    private File file;
+    private int slotCount = DEFAULT_SLOT_COUNT;
+    private int slotSize = DEFAULT_SLOT_SIZE;
+    private long timeToIdle = DEFAULT_TIME_TO_IDLE;
+
+    private RandomAccessFile randomAccessFile;
+    private MappedByteBuffer buffer;
+    private String[] slotTokens;
+    private Reference<SecurityContext>[] slotContexts;
+
+    // Guarded by allocationLock
+    private int[] freeSlots;
+    private int freeSlotCount;
+    private int evictionHand;
+
+    /**
+     * <p>Constructor for MappedFileSecurityContextStore.</p>
+     */
+    public MappedFileSecurityContextStore() {
+        this.slotLocks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < this.slotLocks.length; i++) {
+            this.slotLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @param file the file contexts are stored in, created if it does not exist
+     */
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param slotCount maximum number of stored contexts, defaults to {@link #DEFAULT_SLOT_COUNT}
+     */
+    public void setSlotCount(int slotCount) {
+        Assert.isTrue(slotCount > 0, "slotCount must be greater than 0");
+        this.slotCount = slotCount;
+    }
+
+    /**
+     * @param slotSize bytes reserved for each context including the slot header, defaults to
+     * {@link #DEFAULT_SLOT_SIZE}
+     */
+    public void setSlotSize(int slotSize) {
+        Assert.isTrue(slotSize > SLOT_PAYLOAD, "slotSize must be greater than " + SLOT_PAYLOAD);
+        this.slotSize = slotSize;
+    }
+
+    /**
+     * @param timeToIdle milliseconds after the last load or store a context expires, defaults to
+     * {@link #DEFAULT_TIME_TO_IDLE}
+     */
+    public void setTimeToIdle(long timeToIdle) {
+        Assert.isTrue(timeToIdle > 0, "timeToIdle must be greater than 0");
+        this.timeToIdle = timeToIdle;
+    }
+
+    /**
+     * Map the file and rebuild the token index from the contexts stored in it. A file written with a different
+     * slot count or size is cleared.
+     *
+     * @throws IOException if the file cannot be mapped
+     */
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        Assert.notNull(this.file, "file must be set");
+        final long size = HEADER_SIZE + (long) this.slotCount * this.slotSize;
+        Assert.isTrue(size <= Integer.MAX_VALUE, "slotCount * slotSize must be less than 2GB");
+
+        lockAll();
+        try {
+            createFile();
+            this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+            final boolean sameSize = this.randomAccessFile.length() == size;
+            this.randomAccessFile.setLength(size);
+            this.buffer = this.randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            this.slotTokens = new String[this.slotCount];
+            this.slotContexts = newReferenceArray(this.slotCount);
+            this.slots.clear();
+
+            if (sameSize && this.buffer.getInt(0) == MAGIC && this.buffer.getInt(4) == VERSION
+                    && this.buffer.getInt(8) == this.slotCount && this.buffer.getInt(12) == this.slotSize) {
+                loadIndex();
+            }
+            else {
+                if (logger.isInfoEnabled()) {
+                    logger.info("Initializing SecurityContext store " + this.file);
+                }
+                for (int slot = 0; slot < this.slotCount; slot++) {
+                    this.buffer.putInt(offset(slot) + SLOT_LENGTH, 0);
+                }
+                this.buffer.putInt(0, MAGIC);
+                this.buffer.putInt(4, VERSION);
+                this.buffer.putInt(8, this.slotCount);
+                this.buffer.putInt(12, this.slotSize);
+            }
+
+            // Lowest slots are handed out first
+            this.freeSlots = new int[this.slotCount];
+            this.freeSlotCount = 0;
+            this.evictionHand = 0;
+            for (int slot = this.slotCount - 1; slot >= 0; slot--) {
+                if (this.slotTokens[slot] == null) {
+                    this.freeSlots[this.freeSlotCount++] = slot;
+                }
+            }
+        }
+        finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Flush the mapped file to disk and close it
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void destroy() throws IOException {
+        lockAll();
+        try {
+            if (this.buffer != null) {
+                this.buffer.force();
+                this.buffer = null;
+            }
+            if (this.randomAccessFile != null) {
+                this.randomAccessFile.close();
+                this.randomAccessFile = null;
+            }
+            this.slots.clear();
+            this.slotTokens = null;
+            this.slotContexts = null;
+            this.freeSlots = null;
+            this.freeSlotCount = 0;
+        }
+        finally {
+            unlockAll();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public SecurityContext load(String token) {
+        final Integer slot = this.slots.get(token);
+        if (slot == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+
+        SecurityContext context = null;
+        byte[] payload = null;
+        boolean expired = false;
+        final ReentrantLock lock = slotLock(slot);
+        lock.lock();
+        try {
+            assertOpen();
+            if (token.equals(this.slotTokens[slot])) {
+                final int offset = offset(slot);
+                final long now = currentTime();
+                if (now - this.buffer.getLong(offset + SLOT_LAST_ACCESSED) >= this.timeToIdle) {
+                    expired = true;
+                }
+                else {
+                    this.buffer.putLong(offset + SLOT_LAST_ACCESSED, now);
+                    final Reference<SecurityContext> cached = this.slotContexts[slot];
+                    context = cached != null ? cached.get() : null;
+                    if (context == null) {
+                        payload = readPayload(offset);
+                    }
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+
+        if (expired) {
+            if (removeSlot(token, slot)) {
+                this.evictions.incrementAndGet();
+            }
+        }
+        else if (payload != null) {
+            context = deserialize(token, payload);
+            if (context != null) {
+                cacheContext(token, slot, context);
+            }
+        }
+
+        if (context == null) {
+            this.misses.incrementAndGet();
+        }
+        else {
+            this.hits.incrementAndGet();
+        }
+        return context;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void store(String token, SecurityContext context) {
+        Assert.notNull(context, "context must not be null");
+        final byte[] tokenBytes = token.getBytes(UTF_8);
+        Assert.isTrue(tokenBytes.length <= MAX_TOKEN_LENGTH, "token must be at most " + MAX_TOKEN_LENGTH + " bytes");
+
+        final byte[] payload;
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(this.slotSize);
+            final ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(context);
+            out.close();
+            payload = bytes.toByteArray();
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Failed to serialize SecurityContext " + context, e);
+        }
+
+        if (payload.length > this.slotSize - SLOT_PAYLOAD) {
+            this.oversized.incrementAndGet();
+            logger.warn("Serialized SecurityContext is " + payload.length + " bytes, larger than the "
+                    + (this.slotSize - SLOT_PAYLOAD) + " bytes a slot can hold. It will not be stored.");
+            remove(token);
+            return;
+        }
+
+        // Replace the context of a known token in its slot
+        final Integer slot = this.slots.get(token);
+        if (slot != null && writeSlot(slot, token, tokenBytes, payload, context, false)) {
+            return;
+        }
+
+        this.allocationLock.lock();
+        try {
+            // Another thread may have stored the same token in the mean time
+            final Integer currentSlot = this.slots.get(token);
+            if (currentSlot != null && writeSlot(currentSlot, token, tokenBytes, payload, context, false)) {
+                return;
+            }
+
+            final int newSlot = allocateSlot();
+            writeSlot(newSlot, token, tokenBytes, payload, context, true);
+            this.slots.put(token, newSlot);
+        }
+        finally {
+            this.allocationLock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void remove(String token) {
+        final Integer slot = this.slots.get(token);
+        if (slot != null) {
+            removeSlot(token, slot);
+        }
+    }
+
+    /**
+     * @return the number of stored contexts, including expired contexts that have not been removed yet
+     */
+    public int getSize() {
+        return this.slots.size();
+    }
+
+    /**
+     * @return number of loads that found an unexpired context
+     */
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return number of loads that did not find an unexpired context
+     */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return number of contexts removed because they expired or all slots were in use
+     */
+    public long getEvictionCount() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return number of contexts not stored because they were too large for a slot
+     */
+    public long getOversizedCount() {
+        return this.oversized.get();
+    }
+
+    /**
+     * Reset the hit, miss, eviction and oversized counts to 0
+     */
+    public void resetStatistics() {
+        this.hits.set(0);
+        this.misses.set(0);
+        this.evictions.set(0);
+        this.oversized.set(0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "MappedFileSecurityContextStore [file=" + this.file + ", slotCount=" + this.slotCount + ", slotSize="
+                + this.slotSize + ", timeToIdle=" + this.timeToIdle + "ms, size=" + getSize() + ", hits="
+                + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+                + ", oversized=" + getOversizedCount() + "]";
+    }
+
+    /**
+     * @return the current time in milliseconds, stored in the file so it must be comparable across restarts
+     */
+    protected long currentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Create the file if needed and limit access to the owner, it holds serialized authentications
+     */
+    private void createFile() throws IOException {
+        if (this.file.createNewFile() && logger.isDebugEnabled()) {
+            logger.debug("Created SecurityContext store " + this.file);
+        }
+
+        final boolean restricted = this.file.setReadable(false, false) && this.file.setReadable(true, true)
+                && this.file.setWritable(false, false) && this.file.setWritable(true, true)
+                && this.file.setExecutable(false, false);
+        if (!restricted) {
+            logger.warn("Failed to restrict access to SecurityContext store " + this.file + " to its owner");
+        }
+    }
+
+    private void loadIndex() {
+        final long now = currentTime();
+        final ByteBuffer slotBuffer = this.buffer.duplicate();
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            final int offset = offset(slot);
+            final int length = this.buffer.getInt(offset + SLOT_LENGTH);
+            if (length == 0) {
+                continue;
+            }
+
+            final int tokenLength = this.buffer.getShort(offset + SLOT_TOKEN_LENGTH);
+            if (length < 0 || length > this.slotSize - SLOT_PAYLOAD || tokenLength <= 0 || tokenLength > MAX_TOKEN_LENGTH
+                    || now - this.buffer.getLong(offset + SLOT_LAST_ACCESSED) >= this.timeToIdle) {
+                this.buffer.putInt(offset + SLOT_LENGTH, 0);
+                continue;
+            }
+
+            final byte[] tokenBytes = new byte[tokenLength];
+            slotBuffer.position(offset + SLOT_TOKEN);
+            slotBuffer.get(tokenBytes);
+            final String token = new String(tokenBytes, UTF_8);
+            if (this.slots.putIfAbsent(token, slot) != null) {
+                this.buffer.putInt(offset + SLOT_LENGTH, 0);
+                continue;
+            }
+            this.slotTokens[slot] = token;
+        }
+
+        if (logger.isInfoEnabled()) {
+            logger.info("Loaded " + this.slots.size() + " stored SecurityContexts from " + this.file);
+        }
+    }
+
+    private byte[] readPayload(int offset) {
+        final byte[] payload = new byte[this.buffer.getInt(offset + SLOT_LENGTH)];
+        final ByteBuffer slotBuffer = this.buffer.duplicate();
+        slotBuffer.position(offset + SLOT_PAYLOAD);
+        slotBuffer.get(payload);
+        return payload;
+    }
+
+    private SecurityContext deserialize(String token, byte[] payload) {
+        try {
+            final ObjectInputStream in = new ConfigurableObjectInputStream(new ByteArrayInputStream(payload), this.classLoader);
+            try {
+                return (SecurityContext) in.readObject();
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (Exception e) {
+            logger.warn("Failed to read stored SecurityContext, removing it", e);
+            remove(token);
+            return null;
+        }
+    }
+
+    /**
+     * Keep a deserialized context unless the slot was stored or reassigned while it was deserialized
+     */
+    private void cacheContext(String token, int slot, SecurityContext context) {
+        final ReentrantLock lock = slotLock(slot);
+        lock.lock();
+        try {
+            if (this.buffer != null && token.equals(this.slotTokens[slot])) {
+                final Reference<SecurityContext> cached = this.slotContexts[slot];
+                if (cached == null || cached.get() == null) {
+                    this.slotContexts[slot] = new SoftReference<SecurityContext>(context);
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param claim true to take the slot for the token, requires the allocation lock, false to only write the slot
+     * if it still belongs to the token
+     * @return true if the slot was written
+     */
+    private boolean writeSlot(int slot, String token, byte[] tokenBytes, byte[] payload, SecurityContext context,
+            boolean claim) {
+        final ReentrantLock lock = slotLock(slot);
+        lock.lock();
+        try {
+            assertOpen();
+            if (!claim && !token.equals(this.slotTokens[slot])) {
+                return false;
+            }
+
+            final int offset = offset(slot);
+            final ByteBuffer slotBuffer = this.buffer.duplicate();
+            this.buffer.putInt(offset + SLOT_LENGTH, 0);
+            this.buffer.putLong(offset + SLOT_LAST_ACCESSED, currentTime());
+            this.buffer.putShort(offset + SLOT_TOKEN_LENGTH, (short) tokenBytes.length);
+            slotBuffer.position(offset + SLOT_TOKEN);
+            slotBuffer.put(tokenBytes);
+            slotBuffer.position(offset + SLOT_PAYLOAD);
+            slotBuffer.put(payload);
+            // Written last, marks the slot as complete
+            this.buffer.putInt(offset + SLOT_LENGTH, payload.length);
+
+            this.slotTokens[slot] = token;
+            this.slotContexts[slot] = new SoftReference<SecurityContext>(context);
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take a free slot or evict the least recently used context of a sample of slots, requires the allocation lock
+     */
+    private int allocateSlot() {
+        assertOpen();
+        if (this.freeSlotCount > 0) {
+            return this.freeSlots[--this.freeSlotCount];
+        }
+
+        // All slots in use, sample the slots following a rotating hand
+        int eldestSlot = -1;
+        long eldestAccess = Long.MAX_VALUE;
+        final int sampleSize = Math.min(EVICTION_SAMPLE_SIZE, this.slotCount);
+        for (int i = 0; i < sampleSize; i++) {
+            final int slot = this.evictionHand;
+            this.evictionHand = (slot + 1) % this.slotCount;
+
+            final ReentrantLock lock = slotLock(slot);
+            lock.lock();
+            try {
+                final long lastAccessed = this.buffer.getLong(offset(slot) + SLOT_LAST_ACCESSED);
+                if (lastAccessed < eldestAccess) {
+                    eldestAccess = lastAccessed;
+                    eldestSlot = slot;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        final ReentrantLock lock = slotLock(eldestSlot);
+        lock.lock();
+        try {
+            final String eldestToken = this.slotTokens[eldestSlot];
+            clearSlot(eldestSlot);
+            this.slots.remove(eldestToken, eldestSlot);
+        }
+        finally {
+            lock.unlock();
+        }
+        this.evictions.incrementAndGet();
+        return eldestSlot;
+    }
+
+    /**
+     * Free the slot of a token
+     *
+     * @return true if the slot still belonged to the token and was freed
+     */
+    private boolean removeSlot(String token, int slot) {
+        this.allocationLock.lock();
+        try {
+            final ReentrantLock lock = slotLock(slot);
+            lock.lock();
+            try {
+                if (this.buffer == null || !token.equals(this.slotTokens[slot])) {
+                    return false;
+                }
+                clearSlot(slot);
+            }
+            finally {
+                lock.unlock();
+            }
+
+            this.slots.remove(token, slot);
+            this.freeSlots[this.freeSlotCount++] = slot;
+            return true;
+        }
+        finally {
+            this.allocationLock.unlock();
+        }
+    }
+
+    /**
+     * Requires the allocation lock and the slot's lock
+     */
+    private void clearSlot(int slot) {
+        this.buffer.putInt(offset(slot) + SLOT_LENGTH, 0);
+        this.slotTokens[slot] = null;
+        this.slotContexts[slot] = null;
+    }
+
+    private ReentrantLock slotLock(int slot) {
+        return this.slotLocks[slot % LOCK_STRIPES];
+    }
+
+    private void lockAll() {
+        this.allocationLock.lock();
+        for (final ReentrantLock lock : this.slotLocks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = this.slotLocks.length - 1; i >= 0; i--) {
+            this.slotLocks[i].unlock();
+        }
+        this.allocationLock.unlock();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Reference<SecurityContext>[] newReferenceArray(int size) {
+        return new Reference[size];
+    }
+
+    private int offset(int slot) {
+        return HEADER_SIZE + slot * this.slotSize;
+    }
+
+    private void assertOpen() {
+        if (this.buffer == null) {
+            throw new IllegalStateException("MappedFileSecurityContextStore is not open, afterPropertiesSet must be called");
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package org.jasig.springframework.security.portlet.context;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.portlet.PortletException;
 import javax.portlet.PortletRequest;
@@ -28,21 +29,48 @@ import javax.portlet.filter.FilterChain;
 
 import org.jasig.springframework.web.portlet.filter.GenericPortletFilterBean;
 import org.jasig.springframework.web.portlet.filter.PortletFilterUtils;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.Assert;
 
 /**
  * <p>PortletSecurityContextPersistenceFilter class.</p>
+ * <p>
+ * With {@link #setShareSecurityContext(boolean) shareSecurityContext} enabled the first portlet of this portlet
+ * application rendered in a portal request loads the context and records it in a request attribute, the other
+ * portlets in the same portal request and session reuse that context without loading it. The context is only saved
+ * by a portlet request which changed it, so a page of portlets which do not modify the context loads it once and
+ * never saves it. This relies on the portlet container exposing request attributes set by one portlet to the
+ * following portlets of the same application, as containers which store portlet request attributes in the
+ * underlying servlet request do, otherwise each portlet loads the context as before. It must only be used with a
+ * repository which stores the context in application scope.
+ * <p>
+ * A {@link #setSavePolicy(SecurityContextSavePolicy) savePolicy} decides whether the repository is asked to save
+ * the context at all, for example {@link StandardSecurityContextSavePolicy#ACTION_EVENT_OR_ON_CHANGE} skips the save
+ * for render and resource requests which did not change the context. The policy also applies to portlets sharing a
+ * context.
  */
 public class PortletSecurityContextPersistenceFilter
         extends GenericPortletFilterBean {
 
     static final String FILTER_APPLIED = "__spring_security_pscpf_applied";
 
+    /** Source of the suffix that makes {@link #sharedContextAttribute} unique per filter instance */
+    private static final AtomicLong INSTANCE_COUNTER = new AtomicLong();
+
     private PortletSecurityContextRepository repo;
 
     private boolean forceEagerSessionCreation = false;
 
+    private boolean shareSecurityContext = false;
+
+    private SecurityContextSavePolicy savePolicy = StandardSecurityContextSavePolicy.ALWAYS;
+
+    /** Request attribute the shared context is stored under, unique to this filter instance */
+    private final String sharedContextAttribute = SharedSecurityContext.class.getName() + "."
+            + INSTANCE_COUNTER.incrementAndGet();
+
     /**
      * <p>Constructor for PortletSecurityContextPersistenceFilter.</p>
      */
@@ -82,7 +110,28 @@ public class PortletSecurityContextPersistenceFilter
         }
 
         PortletRequestResponseHolder holder = new PortletRequestResponseHolder(request, response);
-        SecurityContext contextBeforeChainExecution = repo.loadContext(holder);
+        SharedSecurityContext sharedContext = null;
+        boolean loaded = false;
+        SecurityContext contextBeforeChainExecution;
+        if (shareSecurityContext) {
+            sharedContext = getSharedContext(request);
+        }
+        if (sharedContext != null) {
+            if (debug) {
+                logger.debug("Using SecurityContext shared by an earlier portlet in this request");
+            }
+            contextBeforeChainExecution = sharedContext.getContext();
+        }
+        else {
+            contextBeforeChainExecution = repo.loadContext(holder);
+            loaded = true;
+            if (shareSecurityContext) {
+                sharedContext = new SharedSecurityContext(getSessionId(request), contextBeforeChainExecution);
+                request.setAttribute(sharedContextAttribute, sharedContext);
+            }
+        }
+
+        final Authentication authenticationBeforeChainExecution = contextBeforeChainExecution.getAuthentication();
 
         try {
             SecurityContextHolder.setContext(contextBeforeChainExecution);
@@ -93,7 +142,18 @@ public class PortletSecurityContextPersistenceFilter
             SecurityContext contextAfterChainExecution = SecurityContextHolder.getContext();
             // Crucial removal of SecurityContextHolder contents - do this before anything else.
             SecurityContextHolder.clearContext();
-            repo.saveContext(contextAfterChainExecution, holder);
+            if (!savePolicy.shouldSave(request, PortletFilterUtils.getPortletPhase(request),
+                    contextBeforeChainExecution, authenticationBeforeChainExecution, contextAfterChainExecution)) {
+                if (debug) {
+                    logger.debug("Save policy " + savePolicy + " skipped saving the SecurityContext");
+                }
+            }
+            else if (sharedContext == null) {
+                repo.saveContext(contextAfterChainExecution, holder);
+            }
+            else {
+                saveSharedContext(contextAfterChainExecution, holder, sharedContext, loaded);
+            }
             request.removeAttribute(FILTER_APPLIED);
 
             if (debug) {
@@ -102,6 +162,40 @@ public class PortletSecurityContextPersistenceFilter
         }
     }
 
+    private SharedSecurityContext getSharedContext(PortletRequest request) {
+        final Object sharedContext = request.getAttribute(sharedContextAttribute);
+        if (sharedContext instanceof SharedSecurityContext
+                && ((SharedSecurityContext) sharedContext).isFor(getSessionId(request))) {
+            return (SharedSecurityContext) sharedContext;
+        }
+        return null;
+    }
+
+    private void saveSharedContext(SecurityContext context, PortletRequestResponseHolder holder,
+            SharedSecurityContext sharedContext, boolean loaded) {
+
+        if (!sharedContext.isModified(context)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Shared SecurityContext was not modified, not saving it");
+            }
+            return;
+        }
+
+        if (!loaded) {
+            // Capture the stored state the repository compares against when saving
+            repo.loadContext(holder);
+        }
+        repo.saveContext(context, holder);
+
+        final PortletRequest request = holder.getRequest();
+        request.setAttribute(sharedContextAttribute, new SharedSecurityContext(getSessionId(request), context));
+    }
+
+    private static String getSessionId(PortletRequest request) {
+        final PortletSession session = request.getPortletSession(false);
+        return session != null ? session.getId() : null;
+    }
+
     /**
      * <p>Setter for the field <code>forceEagerSessionCreation</code>.</p>
      *
@@ -110,4 +204,26 @@ public class PortletSecurityContextPersistenceFilter
     public void setForceEagerSessionCreation(boolean forceEagerSessionCreation) {
         this.forceEagerSessionCreation = forceEagerSessionCreation;
     }
+
+    /**
+     * If set, the context loaded by the first portlet in a portal request is reused by the other portlets of this
+     * portlet application in the same request and is only saved by a portlet request which changes it. Defaults to
+     * false.
+     *
+     * @param shareSecurityContext a boolean.
+     */
+    public void setShareSecurityContext(boolean shareSecurityContext) {
+        this.shareSecurityContext = shareSecurityContext;
+    }
+
+    /**
+     * Set the policy deciding whether the context is saved once a request completes. Defaults to
+     * {@link StandardSecurityContextSavePolicy#ALWAYS}.
+     *
+     * @param savePolicy a {@link org.jasig.springframework.security.portlet.context.SecurityContextSavePolicy} object.
+     */
+    public void setSavePolicy(SecurityContextSavePolicy savePolicy) {
+        Assert.notNull(savePolicy, "savePolicy must not be null");
+        this.savePolicy = savePolicy;
+    }
 }
@@ -0,0 +1,506 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.context;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jasig.springframework.security.portlet.metrics.StripedCounter;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.util.Assert;
+
+/**
+ * Bounded cache of the {@link SecurityContext} objects stored in portlet sessions, used by
+ * {@link PortletSessionSecurityContextRepository} to avoid a {@code PortletSession} attribute lookup on every
+ * request. With {@link javax.portlet.PortletSession#APPLICATION_SCOPE} every portlet in the web application reads
+ * the same context, sharing one cache instance between the repositories of those portlets (for example by
+ * defining it in the root application context) means a page with many portlets reads the session attribute once.
+ * <p>
+ * The cache only has an effect once {@link #setTrustCachedContexts(boolean) trustCachedContexts} is enabled, which
+ * requires {@link PortletSessionSecurityContextCacheListener} to be registered in {@code web.xml} so that changes
+ * made outside of the repository, such as a logout handler, a direct {@code setAttribute} or session replication in
+ * a cluster, invalidate the cached context. Without it a cached context could only be used after reading the session
+ * attribute to confirm it, which saves nothing, so the repository neither reads nor fills an untrusted cache.
+ * <p>
+ * Contexts are only weakly referenced, the session remains the owner of the context and the cache never keeps a
+ * context alive after its session is gone. Entries are also tied to the session creation time so a reused session
+ * id never sees the context of an earlier session.
+ * <p>
+ * A context read from the session after an invalidation of its key began can be stale, so every key maps to a
+ * generation that the {@code invalidate} methods advance. Callers capture it with {@link #getGeneration(Object)}
+ * before reading the session and {@link #put(Object, long, SecurityContext, long)} refuses to store the context if
+ * the generation moved on in the meantime. Generations are striped by key hash, an invalidation of another key in
+ * the same stripe only costs a skipped put.
+ * <p>
+ * Lookups neither lock nor reorder the cache. Eviction is approximate and based on write order: once a put grows
+ * the cache beyond its maximum size the oldest written of a small sample of entries is removed. The sample is taken
+ * at a hand that keeps rotating over all entries, moving it is the only locked step.
+ *
+ * @version $Id: $Id
+ */
+public class PortletSessionSecurityContextCache {
+    /** Default maximum number of cached contexts */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    /** Rough per entry overhead of the map, key, entry and reference objects in bytes */
+    private static final int ENTRY_OVERHEAD = 160;
+
+    /** Number of entries compared to pick the one to evict */
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    /** Number of invalidation generation stripes, must be a power of 2 */
+    private static final int GENERATION_STRIPES = 64;
+
+    private final int maxSize;
+    private final ConcurrentMap<Key, Entry> cache = new ConcurrentHashMap<Key, Entry>();
+    private final ReferenceQueue<SecurityContext> collected = new ReferenceQueue<SecurityContext>();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final AtomicLong writes = new AtomicLong();
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final Object attributeNamesLock = new Object();
+    private volatile String[] attributeNames = new String[0];
+    private volatile boolean trustCachedContexts = false;
+
+    // Guarded by evictionLock
+    private Iterator<Entry> evictionHand;
+
+    /**
+     * Create a cache with {@link #DEFAULT_MAX_SIZE} entries
+     */
+    public PortletSessionSecurityContextCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Create a cache
+     *
+     * @param maxSize maximum number of contexts to cache, entries are evicted in approximate write order beyond this
+     */
+    public PortletSessionSecurityContextCache(int maxSize) {
+        Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+
+        this.maxSize = maxSize;
+
+        PortletSessionSecurityContextCacheListener.register(this);
+    }
+
+    /**
+     * If true cached contexts are used without reading the session attribute. Only enable this if
+     * {@link PortletSessionSecurityContextCacheListener} is registered in {@code web.xml} and the container notifies
+     * attribute listeners of every change, including replicated ones, otherwise a context removed or replaced by
+     * other code keeps being returned. Defaults to false, in which case the cache is not used.
+     *
+     * @param trustCachedContexts true to skip the session attribute read on a cache hit
+     */
+    public void setTrustCachedContexts(boolean trustCachedContexts) {
+        this.trustCachedContexts = trustCachedContexts;
+    }
+
+    /**
+     * @return true if cached contexts are used without reading the session attribute
+     */
+    public boolean isTrustCachedContexts() {
+        return this.trustCachedContexts;
+    }
+
+    /**
+     * Create the cache key for a session attribute
+     *
+     * @param sessionId id of the portlet session
+     * @param windowId the portlet window id for {@link javax.portlet.PortletSession#PORTLET_SCOPE} attributes, null
+     * for {@link javax.portlet.PortletSession#APPLICATION_SCOPE} attributes
+     * @param attributeName name of the session attribute
+     * @return the cache key
+     */
+    public Object createKey(String sessionId, String windowId, String attributeName) {
+        Assert.notNull(sessionId, "sessionId must not be null");
+        Assert.notNull(attributeName, "attributeName must not be null");
+        return new Key(sessionId, windowId, attributeName);
+    }
+
+    /**
+     * Look up a cached context, calls to this method are counted as hits or misses.
+     *
+     * @param key the cache key from {@link #createKey(String, String, String)}
+     * @param sessionCreationTime {@link javax.portlet.PortletSession#getCreationTime()} of the current session
+     * @return the cached context, null if there is none or it belongs to a different session
+     */
+    public SecurityContext get(Object key, long sessionCreationTime) {
+        SecurityContext context = null;
+        final Entry entry = this.cache.get(key);
+        if (entry != null) {
+            if (entry.sessionCreationTime == sessionCreationTime) {
+                context = entry.get();
+            }
+            if (context == null) {
+                //Only remove the mapping if it has not been replaced concurrently
+                this.cache.remove(key, entry);
+            }
+        }
+
+        if (context == null) {
+            this.misses.increment();
+        }
+        else {
+            this.hits.increment();
+        }
+
+        return context;
+    }
+
+    /**
+     * Get the invalidation generation of a key, must be called before reading the context from the session that is
+     * then passed to {@link #put(Object, long, SecurityContext, long)}.
+     *
+     * @param key the cache key from {@link #createKey(String, String, String)}
+     * @return the current generation of the key
+     */
+    public long getGeneration(Object key) {
+        return this.generations.get(stripe(key));
+    }
+
+    /**
+     * Cache the context stored in a session, unless the key has been invalidated since its generation was read
+     *
+     * @param key the cache key from {@link #createKey(String, String, String)}
+     * @param sessionCreationTime {@link javax.portlet.PortletSession#getCreationTime()} of the session
+     * @param context the context stored in the session, must not be null
+     * @param generation the result of {@link #getGeneration(Object)} from before the context was read
+     * @return true if the context was cached, false if the key was invalidated in the meantime
+     */
+    public boolean put(Object key, long sessionCreationTime, SecurityContext context, long generation) {
+        Assert.isInstanceOf(Key.class, key);
+        Assert.notNull(context, "context must not be null");
+
+        final Key cacheKey = (Key) key;
+        final int stripe = stripe(cacheKey);
+        if (this.generations.get(stripe) != generation) {
+            return false;
+        }
+
+        addAttributeName(cacheKey.attributeName);
+        expungeCollected();
+
+        final Entry entry = new Entry(cacheKey, sessionCreationTime, context, this.writes.incrementAndGet(), this.collected);
+        final Entry previous = this.cache.put(cacheKey, entry);
+
+        //An invalidation that advanced the generation before this check removes the entry here, one that advances
+        //it after the check removes the entry itself
+        if (this.generations.get(stripe) != generation) {
+            this.cache.remove(cacheKey, entry);
+            return false;
+        }
+
+        if (previous == null) {
+            while (this.cache.size() > this.maxSize && evictOne()) {
+                //evict until back within bounds
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove a single cached context and reject puts of contexts read before this call
+     *
+     * @param key the cache key from {@link #createKey(String, String, String)}
+     */
+    public void invalidate(Object key) {
+        this.generations.incrementAndGet(stripe(key));
+        this.cache.remove(key);
+    }
+
+    /**
+     * Remove the cached context of a session attribute, called when the attribute is changed
+     *
+     * @param sessionId id of the session
+     * @param windowId the portlet window id for {@link javax.portlet.PortletSession#PORTLET_SCOPE} attributes, null
+     * for {@link javax.portlet.PortletSession#APPLICATION_SCOPE} attributes
+     * @param attributeName name of the session attribute
+     */
+    public void invalidateAttribute(String sessionId, String windowId, String attributeName) {
+        invalidate(createKey(sessionId, windowId, attributeName));
+    }
+
+    /**
+     * Remove all cached contexts of a session
+     *
+     * @param sessionId id of the portlet session
+     */
+    public void invalidateSession(String sessionId) {
+        advanceAllGenerations();
+        for (final Iterator<Key> keyItr = this.cache.keySet().iterator(); keyItr.hasNext();) {
+            if (keyItr.next().sessionId.equals(sessionId)) {
+                keyItr.remove();
+            }
+        }
+    }
+
+    /**
+     * Check if a session attribute may hold a cached context, used to ignore changes to unrelated attributes
+     * without decoding their names.
+     *
+     * @param sessionAttributeName name of the {@code HttpSession} attribute, for
+     * {@link javax.portlet.PortletSession#PORTLET_SCOPE} attributes in the {@code javax.portlet.p.<window id>?<name>}
+     * form
+     * @return true if contexts have been cached for an attribute of that name
+     */
+    public boolean isCachedAttribute(String sessionAttributeName) {
+        for (final String attributeName : this.attributeNames) {
+            if (sessionAttributeName.endsWith(attributeName)) {
+                final int separator = sessionAttributeName.length() - attributeName.length() - 1;
+                if (separator < 0 || sessionAttributeName.charAt(separator) == '?') {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove all cached contexts, hit and miss counts are not reset.
+     */
+    public void clear() {
+        advanceAllGenerations();
+        this.cache.clear();
+        while (this.collected.poll() != null) {
+            //drain
+        }
+    }
+
+    /**
+     * @return the number of cache entries, including entries whose context has been garbage collected but that
+     * have not been removed yet
+     */
+    public int getSize() {
+        expungeCollected();
+        return this.cache.size();
+    }
+
+    /**
+     * @return the maximum number of cached contexts
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Estimate the memory retained by the cache itself. The contexts are not included as they are only weakly
+     * referenced and owned by the session.
+     *
+     * @return the approximate number of bytes used by the cache entries
+     */
+    public long getEstimatedMemoryUsage() {
+        long bytes = 0;
+        expungeCollected();
+        for (final Key key : this.cache.keySet()) {
+            bytes += ENTRY_OVERHEAD + key.getCharCount() * 2L;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return number of lookups that found a cached context
+     */
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return number of lookups that did not find a cached context
+     */
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return ratio of hits to lookups, 0 if there have been no lookups
+     */
+    public double getHitRate() {
+        final long hits = this.hits.sum();
+        final long lookups = hits + this.misses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Reset the hit and miss counts to 0
+     */
+    public void resetStatistics() {
+        this.hits.reset();
+        this.misses.reset();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "PortletSessionSecurityContextCache [maxSize=" + this.maxSize + ", size=" + getSize() + ", hits="
+                + getHitCount() + ", misses=" + getMissCount() + "]";
+    }
+
+    private int stripe(Object key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return hash & (GENERATION_STRIPES - 1);
+    }
+
+    private void advanceAllGenerations() {
+        for (int stripe = 0; stripe < GENERATION_STRIPES; stripe++) {
+            this.generations.incrementAndGet(stripe);
+        }
+    }
+
+    /**
+     * Remove entries whose context has been garbage collected
+     */
+    private void expungeCollected() {
+        for (Reference<? extends SecurityContext> ref = this.collected.poll(); ref != null; ref = this.collected.poll()) {
+            final Entry entry = (Entry) ref;
+            //Only remove the mapping if it has not been replaced by a newer entry
+            this.cache.remove(entry.key, entry);
+        }
+    }
+
+    /**
+     * Remove the oldest written of the sample of entries following the eviction hand, preferring one whose context
+     * has been garbage collected. The hand starts over once it has passed all entries.
+     *
+     * @return false if the cache was empty
+     */
+    private boolean evictOne() {
+        Entry oldest = null;
+        this.evictionLock.lock();
+        try {
+            boolean restarted = false;
+            for (int sampled = 0; sampled < EVICTION_SAMPLE_SIZE;) {
+                if (this.evictionHand == null || !this.evictionHand.hasNext()) {
+                    if (restarted) {
+                        break;
+                    }
+                    this.evictionHand = this.cache.values().iterator();
+                    restarted = true;
+                    continue;
+                }
+
+                final Entry entry = this.evictionHand.next();
+                sampled++;
+                if (entry.get() == null) {
+                    oldest = entry;
+                    break;
+                }
+                if (oldest == null || entry.writeSequence < oldest.writeSequence) {
+                    oldest = entry;
+                }
+            }
+        }
+        finally {
+            this.evictionLock.unlock();
+        }
+
+        if (oldest == null) {
+            return false;
+        }
+        this.cache.remove(oldest.key, oldest);
+        return true;
+    }
+
+    private void addAttributeName(String attributeName) {
+        for (final String cachedName : this.attributeNames) {
+            if (cachedName.equals(attributeName)) {
+                return;
+            }
+        }
+
+        synchronized (this.attributeNamesLock) {
+            final String[] current = this.attributeNames;
+            for (final String cachedName : current) {
+                if (cachedName.equals(attributeName)) {
+                    return;
+                }
+            }
+            final String[] updated = new String[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = attributeName;
+            this.attributeNames = updated;
+        }
+    }
+
+    private static final class Entry extends WeakReference<SecurityContext> {
+        private final Key key;
+        private final long sessionCreationTime;
+        private final long writeSequence;
+
+        private Entry(Key key, long sessionCreationTime, SecurityContext context, long writeSequence,
+                ReferenceQueue<SecurityContext> queue) {
+            super(context, queue);
+            this.key = key;
+            this.sessionCreationTime = sessionCreationTime;
+            this.writeSequence = writeSequence;
+        }
+    }
+
+    private static final class Key {
+        private final String sessionId;
+        private final String windowId;
+        private final String attributeName;
+        private final int hash;
+
+        private Key(String sessionId, String windowId, String attributeName) {
+            this.sessionId = sessionId;
+            this.windowId = windowId;
+            this.attributeName = attributeName;
+
+            int hash = sessionId.hashCode();
+            hash = 31 * hash + (windowId == null ? 0 : windowId.hashCode());
+            hash = 31 * hash + attributeName.hashCode();
+            this.hash = hash;
+        }
+
+        private int getCharCount() {
+            return this.sessionId.length() + (this.windowId == null ? 0 : this.windowId.length())
+                    + this.attributeName.length();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.hash == other.hash && this.sessionId.equals(other.sessionId)
+                    && (this.windowId == null ? other.windowId == null : this.windowId.equals(other.windowId))
+                    && this.attributeName.equals(other.attributeName);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.context;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+
+import javax.servlet.http.HttpSessionAttributeListener;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+/**
+ * Invalidates the {@link PortletSessionSecurityContextCache}s of the web application whenever a session attribute
+ * is added, replaced or removed, or a session is destroyed, so that changes made outside of
+ * {@link PortletSessionSecurityContextRepository} are seen. Register it in {@code web.xml}:
+ * <pre>
+ * &lt;listener&gt;
+ *     &lt;listener-class&gt;org.jasig.springframework.security.portlet.context.PortletSessionSecurityContextCacheListener&lt;/listener-class&gt;
+ * &lt;/listener&gt;
+ * </pre>
+ * Portlet session attributes are stored as {@code HttpSession} attributes, portlet scoped ones under the
+ * {@code javax.portlet.p.<window id>?<name>} form defined by the portlet specification, which is decoded to find
+ * the cache entry. Attributes no cache holds a context for are ignored without taking a lock or decoding their
+ * name, so the listener adds little to the cost of unrelated session attribute changes.
+ *
+ * @version $Id: $Id
+ * @see PortletSessionSecurityContextCache#setTrustCachedContexts(boolean)
+ */
+public class PortletSessionSecurityContextCacheListener implements HttpSessionAttributeListener, HttpSessionListener {
+    private static final String PORTLET_SCOPE_PREFIX = "javax.portlet.p.";
+
+    private static final Object REGISTRATION_LOCK = new Object();
+
+    /**
+     * Caches of the web application, weakly referenced so a discarded cache is not retained. Replaced as a whole on
+     * registration so events can read it without locking.
+     */
+    private static volatile Reference<?>[] caches = new Reference<?>[0];
+
+    static void register(PortletSessionSecurityContextCache cache) {
+        synchronized (REGISTRATION_LOCK) {
+            final Reference<?>[] current = caches;
+            final Reference<?>[] updated = new Reference<?>[current.length + 1];
+            int size = 0;
+            for (final Reference<?> ref : current) {
+                //Drop caches that have been garbage collected
+                if (ref.get() != null) {
+                    updated[size++] = ref;
+                }
+            }
+            updated[size++] = new WeakReference<PortletSessionSecurityContextCache>(cache);
+
+            final Reference<?>[] registered = new Reference<?>[size];
+            System.arraycopy(updated, 0, registered, 0, size);
+            caches = registered;
+        }
+    }
+
+    @Override
+    public void attributeAdded(HttpSessionBindingEvent event) {
+        invalidateAttribute(event);
+    }
+
+    @Override
+    public void attributeRemoved(HttpSessionBindingEvent event) {
+        invalidateAttribute(event);
+    }
+
+    @Override
+    public void attributeReplaced(HttpSessionBindingEvent event) {
+        invalidateAttribute(event);
+    }
+
+    @Override
+    public void sessionCreated(HttpSessionEvent event) {
+    }
+
+    @Override
+    public void sessionDestroyed(HttpSessionEvent event) {
+        String sessionId = null;
+        for (final Reference<?> ref : caches) {
+            final PortletSessionSecurityContextCache cache = (PortletSessionSecurityContextCache) ref.get();
+            if (cache != null && cache.getSize() > 0) {
+                if (sessionId == null) {
+                    sessionId = event.getSession().getId();
+                }
+                cache.invalidateSession(sessionId);
+            }
+        }
+    }
+
+    private void invalidateAttribute(HttpSessionBindingEvent event) {
+        final String name = event.getName();
+        String sessionId = null;
+        String windowId = null;
+        String attributeName = null;
+
+        for (final Reference<?> ref : caches) {
+            final PortletSessionSecurityContextCache cache = (PortletSessionSecurityContextCache) ref.get();
+            if (cache == null || !cache.isCachedAttribute(name)) {
+                continue;
+            }
+
+            if (sessionId == null) {
+                sessionId = event.getSession().getId();
+                attributeName = name;
+                if (name.startsWith(PORTLET_SCOPE_PREFIX)) {
+                    final int separator = name.indexOf('?', PORTLET_SCOPE_PREFIX.length());
+                    if (separator >= 0) {
+                        windowId = name.substring(PORTLET_SCOPE_PREFIX.length(), separator);
+                        attributeName = name.substring(separator + 1);
+                    }
+                }
+            }
+            cache.invalidateAttribute(sessionId, windowId, attributeName);
+        }
+    }
+}
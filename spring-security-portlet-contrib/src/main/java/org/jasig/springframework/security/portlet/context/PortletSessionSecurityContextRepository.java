@@ -65,6 +65,17 @@ import org.springframework.util.Assert;
  * Only do this if you really need to conserve server memory and ensure all classes using the
  * {@code SecurityContextHolder} are designed to have no persistence of the {@code SecurityContext}
  * between web requests.
+ * <p>
+ * If a {@link #setSecurityContextCache(PortletSessionSecurityContextCache) securityContextCache} is configured and
+ * {@link PortletSessionSecurityContextCache#setTrustCachedContexts(boolean) trusts} its entries the context is
+ * looked up in the cache before the {@code PortletSession} and only a cache miss reads the session attribute.
+ * Writes and removals of the attribute made by this repository invalidate the cached context. A cache that does
+ * not trust its entries is not used, as confirming a cached context would read the session attribute anyway.
+ * <p>
+ * If {@link #setTrackContextChanges(boolean) trackContextChanges} is enabled <tt>loadContext</tt> returns a
+ * {@link DirtyTrackingSecurityContext} which records calls to <tt>setAuthentication</tt>. When that context is
+ * saved unmodified into the session it was read from, <tt>saveContext</tt> neither probes nor writes the session
+ * attribute, avoiding session replication for requests that do not change the context.
  *
  * @author Eric Dalquist
  * @since 3.0
@@ -80,6 +91,8 @@ public class PortletSessionSecurityContextRepository implements PortletSecurityC
 
     private final AuthenticationTrustResolver authenticationTrustResolver = new AuthenticationTrustResolverImpl();
     private final int sessionScope;
+    private PortletSessionSecurityContextCache securityContextCache;
+    private boolean trackContextChanges = false;
 
     /**
      * <p>Constructor for PortletSessionSecurityContextRepository.</p>
@@ -111,7 +124,8 @@ public class PortletSessionSecurityContextRepository implements PortletSecurityC
         final PortletRequest request = requestResponseHolder.getRequest();
         final PortletSession portletSession = request.getPortletSession(false);
 
-        SecurityContext context = readSecurityContextFromSession(portletSession);
+        SecurityContext context = readSecurityContext(request, portletSession);
+        final boolean storedInSession = context != null;
 
         if (context == null) {
             if (logger.isDebugEnabled()) {
@@ -122,6 +136,11 @@ public class PortletSessionSecurityContextRepository implements PortletSecurityC
 
         }
 
+        if (trackContextChanges) {
+            context = new DirtyTrackingSecurityContext(context, storedInSession,
+                    storedInSession ? portletSession.getCreationTime() : 0);
+        }
+
         //Capture pre-request state
         requestResponseHolder.setAuthBeforeExecution(context.getAuthentication());
         requestResponseHolder.setContextBeforeExecution(context);
@@ -137,37 +156,93 @@ public class PortletSessionSecurityContextRepository implements PortletSecurityC
         final PortletRequest request = requestResponseHolder.getRequest();
         PortletSession portletSession = request.getPortletSession(false);
 
+        // Only the wrapped context is ever stored in the session
+        final DirtyTrackingSecurityContext trackedContext = getUnmodifiedTrackedContext(context, requestResponseHolder);
+        final SecurityContext contextToStore = context instanceof DirtyTrackingSecurityContext
+                ? ((DirtyTrackingSecurityContext) context).getDelegate() : context;
+
         // See SEC-776
         if (authentication == null || authenticationTrustResolver.isAnonymous(authentication)) {
             if (logger.isDebugEnabled()) {
                 logger.debug("SecurityContext is empty or contents are anonymous - context will not be stored in PortletSession.");
             }
 
-            if (portletSession != null) {
+            // An unmodified context that was not read from the session cannot have left anything to remove
+            if (portletSession != null && (trackedContext == null || trackedContext.isStoredInSession())) {
                 // SEC-1587 A non-anonymous context may still be in the session
                 portletSession.removeAttribute(springSecurityContextKey, this.sessionScope);
+
+                final PortletSessionSecurityContextCache cache = this.securityContextCache;
+                if (cache != null) {
+                    cache.invalidate(createCacheKey(cache, request, portletSession));
+                }
+            }
+            return;
+        }
+
+        if (trackedContext != null && trackedContext.isStoredInSession() && portletSession != null
+                && portletSession.getCreationTime() == trackedContext.getSessionCreationTime()) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("SecurityContext was not modified during the request, not storing it to PortletSession");
             }
             return;
         }
 
         if (portletSession == null) {
-            portletSession = createNewSessionIfAllowed(context, requestResponseHolder);
+            portletSession = createNewSessionIfAllowed(contextToStore, requestResponseHolder);
         }
 
         // If PortletSession exists, store current SecurityContext but only if it has
         // actually changed in this thread (see SEC-37, SEC-1307, SEC-1528)
         if (portletSession != null) {
             // We may have a new session, so check also whether the context attribute is set SEC-1561
-            if (contextChanged(context, requestResponseHolder) || portletSession.getAttribute(springSecurityContextKey, this.sessionScope) == null) {
-                portletSession.setAttribute(springSecurityContextKey, context, this.sessionScope);
+            if (contextChanged(context, requestResponseHolder) || !isContextStored(contextToStore, request, portletSession)) {
+                portletSession.setAttribute(springSecurityContextKey, contextToStore, this.sessionScope);
+
+                //The generation cannot be captured before the write as the listener advances it for the write
+                //itself, the next read caches the stored context instead
+                final PortletSessionSecurityContextCache cache = this.securityContextCache;
+                if (cache != null) {
+                    cache.invalidate(createCacheKey(cache, request, portletSession));
+                }
 
                 if (logger.isDebugEnabled()) {
-                    logger.debug("SecurityContext stored to PortletSession: '" + context + "'");
+                    logger.debug("SecurityContext stored to PortletSession: '" + contextToStore + "'");
                 }
             }
         }
     }
 
+    /**
+     * Check if the context is stored in the session, a cached copy of the same context counts as stored
+     */
+    private boolean isContextStored(SecurityContext context, PortletRequest request, PortletSession portletSession) {
+        final PortletSessionSecurityContextCache cache = this.securityContextCache;
+        if (cache != null && cache.isTrustCachedContexts()
+                && cache.get(createCacheKey(cache, request, portletSession), portletSession.getCreationTime()) == context) {
+            return true;
+        }
+
+        return portletSession.getAttribute(springSecurityContextKey, this.sessionScope) != null;
+    }
+
+    /**
+     * @return the context as a {@link DirtyTrackingSecurityContext} if it is the one returned by loadContext and
+     * it has not been modified, null otherwise
+     */
+    private DirtyTrackingSecurityContext getUnmodifiedTrackedContext(SecurityContext context, PortletRequestResponseHolder requestResponseHolder) {
+        if (!(context instanceof DirtyTrackingSecurityContext)) {
+            return null;
+        }
+
+        final DirtyTrackingSecurityContext trackedContext = (DirtyTrackingSecurityContext) context;
+        if (trackedContext.isDirty() || contextChanged(context, requestResponseHolder)) {
+            return null;
+        }
+
+        return trackedContext;
+    }
+
     private boolean contextChanged(SecurityContext context, PortletRequestResponseHolder requestResponseHolder) {
         return context != requestResponseHolder.getContextBeforeExecution() || context.getAuthentication() != requestResponseHolder.getAuthBeforeExecution();
     }
@@ -230,9 +305,49 @@ public class PortletSessionSecurityContextRepository implements PortletSecurityC
             return false;
         }
 
+        final PortletSessionSecurityContextCache cache = this.securityContextCache;
+        if (cache != null && cache.isTrustCachedContexts()
+                && cache.get(createCacheKey(cache, request, portletSession), portletSession.getCreationTime()) != null) {
+            return true;
+        }
+
         return portletSession.getAttribute(springSecurityContextKey, this.sessionScope) != null;
     }
 
+    /**
+     * Read the context from the {@link PortletSessionSecurityContextCache} if a trusted one is configured, falling
+     * back to the session and caching what is found there.
+     */
+    private SecurityContext readSecurityContext(PortletRequest request, PortletSession portletSession) {
+        final PortletSessionSecurityContextCache cache = this.securityContextCache;
+        if (cache == null || !cache.isTrustCachedContexts() || portletSession == null) {
+            return readSecurityContextFromSession(portletSession);
+        }
+
+        final Object cacheKey = createCacheKey(cache, request, portletSession);
+        final long creationTime = portletSession.getCreationTime();
+        final SecurityContext cachedContext = cache.get(cacheKey, creationTime);
+        if (cachedContext != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Obtained a valid SecurityContext for " + springSecurityContextKey + " from the cache: '" + cachedContext + "'");
+            }
+            return cachedContext;
+        }
+
+        //Captured before the read so that an invalidation racing with it keeps the context out of the cache
+        final long generation = cache.getGeneration(cacheKey);
+        final SecurityContext context = readSecurityContextFromSession(portletSession);
+        if (context != null) {
+            cache.put(cacheKey, creationTime, context, generation);
+        }
+        return context;
+    }
+
+    private Object createCacheKey(PortletSessionSecurityContextCache cache, PortletRequest request, PortletSession portletSession) {
+        final String windowId = this.sessionScope == PortletSession.PORTLET_SCOPE ? request.getWindowID() : null;
+        return cache.createKey(portletSession.getId(), windowId, springSecurityContextKey);
+    }
+
     /**
      *
      * @param portletSession the session obtained from the request.
@@ -316,4 +431,34 @@ public class PortletSessionSecurityContextRepository implements PortletSecurityC
         Assert.hasText(springSecurityContextKey, "springSecurityContextKey cannot be empty");
         this.springSecurityContextKey = springSecurityContextKey;
     }
+
+    /**
+     * Cache to look up contexts in before reading the {@code PortletSession}, defaults to null which disables
+     * caching. The cache may be shared by the repositories of all portlets in the web application. It is only used
+     * once {@link PortletSessionSecurityContextCache#setTrustCachedContexts(boolean) trustCachedContexts} is enabled,
+     * which requires {@link PortletSessionSecurityContextCacheListener} to be registered.
+     *
+     * @param securityContextCache the cache to use, null to disable caching
+     */
+    public void setSecurityContextCache(PortletSessionSecurityContextCache securityContextCache) {
+        this.securityContextCache = securityContextCache;
+    }
+
+    /**
+     * @return the context cache, null if caching is disabled
+     */
+    public PortletSessionSecurityContextCache getSecurityContextCache() {
+        return this.securityContextCache;
+    }
+
+    /**
+     * If set to true <tt>loadContext</tt> returns a {@link DirtyTrackingSecurityContext} so that <tt>saveContext</tt>
+     * can skip the session entirely when the context was not modified. Defaults to false, in which case the
+     * session attribute is probed on every save.
+     *
+     * @param trackContextChanges a boolean.
+     */
+    public void setTrackContextChanges(boolean trackContextChanges) {
+        this.trackContextChanges = trackContextChanges;
+    }
 }
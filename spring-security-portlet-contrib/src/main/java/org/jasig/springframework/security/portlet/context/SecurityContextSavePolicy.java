@@ -0,0 +1,48 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.context;
+
+import javax.portlet.PortletRequest;
+
+import org.jasig.springframework.web.portlet.filter.PortletPhase;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+
+/**
+ * Strategy used by {@link PortletSecurityContextPersistenceFilter} to decide whether the
+ * {@link PortletSecurityContextRepository} is asked to save the context once a request completes. Skipping the save
+ * avoids the session lookups the repository does to detect changes, which is worthwhile for read-mostly render and
+ * resource requests.
+ *
+ * @version $Id: $Id
+ * @see StandardSecurityContextSavePolicy
+ */
+public interface SecurityContextSavePolicy {
+
+    /**
+     * @param request the completed request
+     * @param phase the lifecycle phase of the request, null if it cannot be determined
+     * @param contextBefore the context the request started with
+     * @param authenticationBefore the authentication of that context when the request started
+     * @param contextAfter the context the request completed with
+     * @return true if the repository should save <tt>contextAfter</tt>
+     */
+    boolean shouldSave(PortletRequest request, PortletPhase phase, SecurityContext contextBefore,
+            Authentication authenticationBefore, SecurityContext contextAfter);
+}
@@ -0,0 +1,54 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.context;
+
+import org.springframework.security.core.context.SecurityContext;
+
+/**
+ * Storage for {@link SecurityContext}s outside of the portlet session, used by
+ * {@link TokenPortletSecurityContextRepository} which keeps only the token a context is stored under in the session.
+ * Implementations must be thread safe.
+ *
+ * @version $Id: $Id
+ * @see InMemorySecurityContextStore
+ * @see MappedFileSecurityContextStore
+ */
+public interface SecurityContextStore {
+
+    /**
+     * @param token the token the context was stored under
+     * @return the stored context, null if there is none or it has expired
+     */
+    SecurityContext load(String token);
+
+    /**
+     * Store a context, replacing any context already stored under the token
+     *
+     * @param token the token to store the context under
+     * @param context the context to store
+     */
+    void store(String token, SecurityContext context);
+
+    /**
+     * Remove the context stored under a token, if any
+     *
+     * @param token the token the context was stored under
+     */
+    void remove(String token);
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.context;
+
+import java.io.Serializable;
+
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+
+/**
+ * Session attribute holding the token of a context kept in a {@link SecurityContextStore}. Portlet session
+ * attributes are stored in the container's {@code HttpSession}, the context is removed from the store when the
+ * attribute is unbound, including when the session is invalidated or times out, rather than lingering until it
+ * expires in the store.
+ * <p>
+ * The store is not serialized with the session, {@link TokenPortletSecurityContextRepository} attaches it again when
+ * the token is read from a restored session.
+ *
+ * @version $Id: $Id
+ */
+final class SecurityContextToken implements HttpSessionBindingListener, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String token;
+    private transient volatile SecurityContextStore securityContextStore;
+
+    SecurityContextToken(String token, SecurityContextStore securityContextStore) {
+        this.token = token;
+        this.securityContextStore = securityContextStore;
+    }
+
+    String getToken() {
+        return this.token;
+    }
+
+    void attach(SecurityContextStore securityContextStore) {
+        if (this.securityContextStore == null) {
+            this.securityContextStore = securityContextStore;
+        }
+    }
+
+    @Override
+    public void valueBound(HttpSessionBindingEvent event) {
+    }
+
+    @Override
+    public void valueUnbound(HttpSessionBindingEvent event) {
+        final SecurityContextStore securityContextStore = this.securityContextStore;
+        if (securityContextStore != null) {
+            securityContextStore.remove(this.token);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.token;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.context;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+
+/**
+ * Immutable record of the {@link SecurityContext} loaded or last saved by
+ * {@link PortletSecurityContextPersistenceFilter} during a portal request, stored as a request attribute so the
+ * other portlets of the same portlet application rendered in that portal request reuse it instead of loading the
+ * context again.
+ *
+ * @version $Id: $Id
+ */
+final class SharedSecurityContext {
+    private final String sessionId;
+    private final SecurityContext context;
+    private final Authentication authentication;
+
+    /**
+     * @param sessionId id of the portlet session the context belongs to, null if there is no session
+     * @param context the loaded or saved context
+     */
+    SharedSecurityContext(String sessionId, SecurityContext context) {
+        this.sessionId = sessionId;
+        this.context = context;
+        this.authentication = context.getAuthentication();
+    }
+
+    /**
+     * @param sessionId id of the current portlet session, null if there is no session
+     * @return true if the context belongs to the session
+     */
+    boolean isFor(String sessionId) {
+        return this.sessionId == null ? sessionId == null : this.sessionId.equals(sessionId);
+    }
+
+    SecurityContext getContext() {
+        return this.context;
+    }
+
+    /**
+     * @param context the context at the end of a portlet request
+     * @return true if the context was replaced or its authentication changed since it was loaded or saved
+     */
+    boolean isModified(SecurityContext context) {
+        return context != this.context || context.getAuthentication() != this.authentication;
+    }
+}
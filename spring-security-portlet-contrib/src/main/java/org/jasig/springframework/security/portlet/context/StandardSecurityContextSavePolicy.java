@@ -0,0 +1,76 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.context;
+
+import javax.portlet.PortletRequest;
+
+import org.jasig.springframework.web.portlet.filter.PortletPhase;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+
+/**
+ * The {@link SecurityContextSavePolicy} implementations provided with the persistence filter
+ *
+ * @version $Id: $Id
+ */
+public enum StandardSecurityContextSavePolicy implements SecurityContextSavePolicy {
+    /**
+     * Always save, the repository decides whether anything is written. The default.
+     */
+    ALWAYS {
+        @Override
+        public boolean shouldSave(PortletRequest request, PortletPhase phase, SecurityContext contextBefore,
+                Authentication authenticationBefore, SecurityContext contextAfter) {
+            return true;
+        }
+    },
+    /**
+     * Save only if the request replaced the context or changed its authentication
+     */
+    ON_CHANGE {
+        @Override
+        public boolean shouldSave(PortletRequest request, PortletPhase phase, SecurityContext contextBefore,
+                Authentication authenticationBefore, SecurityContext contextAfter) {
+            return contextAfter != contextBefore || contextAfter.getAuthentication() != authenticationBefore;
+        }
+    },
+    /**
+     * Save after action and event requests, render and resource requests never save. An authentication established
+     * during a render or resource request is then not persisted, and is re-established by the next request.
+     */
+    ACTION_EVENT_ONLY {
+        @Override
+        public boolean shouldSave(PortletRequest request, PortletPhase phase, SecurityContext contextBefore,
+                Authentication authenticationBefore, SecurityContext contextAfter) {
+            return phase == PortletPhase.ACTION || phase == PortletPhase.EVENT;
+        }
+    },
+    /**
+     * Always save after action and event requests, save after render and resource requests only if the request
+     * changed the context.
+     */
+    ACTION_EVENT_OR_ON_CHANGE {
+        @Override
+        public boolean shouldSave(PortletRequest request, PortletPhase phase, SecurityContext contextBefore,
+                Authentication authenticationBefore, SecurityContext contextAfter) {
+            return ACTION_EVENT_ONLY.shouldSave(request, phase, contextBefore, authenticationBefore, contextAfter)
+                    || ON_CHANGE.shouldSave(request, phase, contextBefore, authenticationBefore, contextAfter);
+        }
+    };
+}
@@ -0,0 +1,219 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.context;
+
+import java.util.UUID;
+
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletSession;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link PortletSecurityContextRepository} which keeps contexts in a {@link SecurityContextStore} and stores only a
+ * random token in the {@code PortletSession}, keeping the session small for replication. With a
+ * {@link MappedFileSecurityContextStore} authentication also survives a restart of a single node, as long as the
+ * container restores the session.
+ * <p>
+ * As with {@link PortletSessionSecurityContextRepository} the context is only saved if it was changed during the
+ * request or is not stored yet, empty and anonymous contexts are removed rather than stored, and a session is only
+ * created to store a non-empty context.
+ * <p>
+ * The token is bound to the session as an {@code HttpSessionBindingListener}, the stored context is removed when the
+ * session is invalidated or times out.
+ *
+ * @version $Id: $Id
+ */
+public class TokenPortletSecurityContextRepository implements PortletSecurityContextRepository {
+    /** Default session attribute the token is stored under */
+    public static final String SPRING_SECURITY_CONTEXT_TOKEN_KEY = "SPRING_SECURITY_CONTEXT_TOKEN";
+
+    protected final Log logger = LogFactory.getLog(this.getClass());
+
+    private final AuthenticationTrustResolver authenticationTrustResolver = new AuthenticationTrustResolverImpl();
+    private final SecurityContextStore securityContextStore;
+    private final int sessionScope;
+    private boolean allowSessionCreation = true;
+    private String tokenKey = SPRING_SECURITY_CONTEXT_TOKEN_KEY;
+
+    /**
+     * Store the token in the application scope of the session
+     *
+     * @param securityContextStore the store contexts are kept in
+     */
+    public TokenPortletSecurityContextRepository(SecurityContextStore securityContextStore) {
+        this(securityContextStore, PortletSession.APPLICATION_SCOPE);
+    }
+
+    /**
+     * @param securityContextStore the store contexts are kept in
+     * @param sessionScope the PortletSession scope under which to store the token
+     */
+    public TokenPortletSecurityContextRepository(SecurityContextStore securityContextStore, int sessionScope) {
+        Assert.notNull(securityContextStore, "securityContextStore must not be null");
+        this.securityContextStore = securityContextStore;
+        this.sessionScope = sessionScope;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public SecurityContext loadContext(PortletRequestResponseHolder requestResponseHolder) {
+        final PortletSession portletSession = requestResponseHolder.getRequest().getPortletSession(false);
+
+        SecurityContext context = null;
+        final String token = getToken(portletSession);
+        if (token != null) {
+            context = this.securityContextStore.load(token);
+            if (context == null && logger.isDebugEnabled()) {
+                logger.debug("No SecurityContext was stored for token " + token + ". A new one will be created.");
+            }
+        }
+
+        if (context == null) {
+            context = SecurityContextHolder.createEmptyContext();
+        }
+
+        requestResponseHolder.setAuthBeforeExecution(context.getAuthentication());
+        requestResponseHolder.setContextBeforeExecution(context);
+        requestResponseHolder.setPortletSessionExistedAtStartOfRequest(portletSession != null);
+
+        return context;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void saveContext(SecurityContext context, PortletRequestResponseHolder requestResponseHolder) {
+        final Authentication authentication = context.getAuthentication();
+        final PortletRequest request = requestResponseHolder.getRequest();
+        PortletSession portletSession = request.getPortletSession(false);
+        String token = getToken(portletSession);
+
+        if (authentication == null || authenticationTrustResolver.isAnonymous(authentication)) {
+            if (token != null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("SecurityContext is empty or contents are anonymous - removing stored context " + token);
+                }
+                this.securityContextStore.remove(token);
+                portletSession.removeAttribute(this.tokenKey, this.sessionScope);
+            }
+            return;
+        }
+
+        final boolean changed = context != requestResponseHolder.getContextBeforeExecution()
+                || authentication != requestResponseHolder.getAuthBeforeExecution();
+        if (!changed && token != null) {
+            // A non-empty unchanged context was loaded from the store under this token
+            return;
+        }
+
+        if (portletSession == null) {
+            portletSession = createNewSessionIfAllowed(requestResponseHolder);
+            if (portletSession == null) {
+                return;
+            }
+        }
+
+        if (token == null) {
+            token = UUID.randomUUID().toString();
+            portletSession.setAttribute(this.tokenKey, new SecurityContextToken(token, this.securityContextStore),
+                    this.sessionScope);
+        }
+
+        this.securityContextStore.store(token, context);
+        if (logger.isDebugEnabled()) {
+            logger.debug("SecurityContext stored under token " + token + ": '" + context + "'");
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsContext(PortletRequest request) {
+        final String token = getToken(request.getPortletSession(false));
+        return token != null && this.securityContextStore.load(token) != null;
+    }
+
+    /**
+     * If set to true (the default), a session will be created if required to store the token of a non-empty
+     * context.
+     *
+     * @param allowSessionCreation a boolean.
+     */
+    public void setAllowSessionCreation(boolean allowSessionCreation) {
+        this.allowSessionCreation = allowSessionCreation;
+    }
+
+    /**
+     * Allows the session attribute name of the token to be customized for this repository instance.
+     *
+     * @param tokenKey the key under which the token will be stored.
+     */
+    public void setTokenKey(String tokenKey) {
+        Assert.hasText(tokenKey, "tokenKey cannot be empty");
+        this.tokenKey = tokenKey;
+    }
+
+    private String getToken(PortletSession portletSession) {
+        if (portletSession == null) {
+            return null;
+        }
+
+        final Object token = portletSession.getAttribute(this.tokenKey, this.sessionScope);
+        if (!(token instanceof SecurityContextToken)) {
+            return null;
+        }
+
+        // The store is not serialized with a replicated or restored session
+        final SecurityContextToken securityContextToken = (SecurityContextToken) token;
+        securityContextToken.attach(this.securityContextStore);
+        return securityContextToken.getToken();
+    }
+
+    private PortletSession createNewSessionIfAllowed(PortletRequestResponseHolder requestResponseHolder) {
+        if (requestResponseHolder.isPortletSessionExistedAtStartOfRequest()) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("PortletSession is now null, but was not null at start of request; "
+                        + "session was invalidated, so do not create a new session");
+            }
+            return null;
+        }
+
+        if (!this.allowSessionCreation) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("The PortletSession is currently null and session creation is not allowed - "
+                        + "SecurityContext thus not stored for next request");
+            }
+            return null;
+        }
+
+        try {
+            return requestResponseHolder.getRequest().getPortletSession(true);
+        }
+        catch (IllegalStateException e) {
+            logger.warn("Failed to create a session, as response has been committed. Unable to store SecurityContext.");
+        }
+        return null;
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.portlet.filter.PortletFilter;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.springframework.web.portlet.filter.PortletPhase;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Default {@link PortletFilterChainMetrics} which keeps an {@link InvocationStatistics} per lifecycle phase for
+ * each filter chain and each filter in each chain. Statistics are created the first time a chain or filter is
+ * invoked in a phase, after that recording an invocation is lock free and does not allocate.
+ * <p>
+ * If an {@link #setMBeanServer(MBeanServer) MBeanServer} is set every statistics object is registered as an MBean
+ * named {@code <domain>:type=PortletFilterChain,name=<name>,phase=<phase>,chain=<index>} for chains with an
+ * additional {@code filter=<index>-<filter class>} key for filters. The MBeans are unregistered by
+ * {@link #destroy()}.
+ *
+ * @version $Id: $Id
+ */
+public class DefaultPortletFilterChainMetrics implements PortletFilterChainMetrics, DisposableBean {
+    /** Default JMX domain */
+    public static final String DEFAULT_DOMAIN = "org.jasig.springframework.security.portlet";
+
+    private static final PortletPhase[] PHASES = PortletPhase.values();
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final Object statisticsLock = new Object();
+    private final List<ObjectName> registeredNames = new ArrayList<ObjectName>();
+
+    //[phase][chain] and [phase][chain][filter], replaced as a whole when they need to grow
+    private volatile InvocationStatistics[][] chainStatistics = new InvocationStatistics[PHASES.length][0];
+    private volatile InvocationStatistics[][][] filterStatistics = new InvocationStatistics[PHASES.length][0][];
+
+    private MBeanServer mBeanServer;
+    private String domain = DEFAULT_DOMAIN;
+    private String name = "portletFilterChainProxy";
+
+    /**
+     * @param mBeanServer the server to register statistics MBeans with, null to disable JMX
+     */
+    public void setMBeanServer(MBeanServer mBeanServer) {
+        this.mBeanServer = mBeanServer;
+    }
+
+    /**
+     * @param domain the JMX domain of the registered MBeans, defaults to {@link #DEFAULT_DOMAIN}
+     */
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    /**
+     * @param name value of the {@code name} key in the registered MBean names, use a distinct name for each
+     * {@link org.jasig.springframework.security.portlet.PortletFilterChainProxy}
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void recordChainInvocation(PortletPhase phase, int chainIndex, long durationNanos, boolean failed) {
+        final int phaseIndex = phase.ordinal();
+
+        final InvocationStatistics[] phaseStatistics = this.chainStatistics[phaseIndex];
+        InvocationStatistics statistics = chainIndex < phaseStatistics.length ? phaseStatistics[chainIndex] : null;
+        if (statistics == null) {
+            statistics = createChainStatistics(phaseIndex, chainIndex);
+        }
+
+        statistics.record(durationNanos, durationNanos, failed);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void recordFilterInvocation(PortletPhase phase, int chainIndex, int filterIndex, PortletFilter filter,
+            long totalNanos, long selfNanos, boolean failed) {
+        final int phaseIndex = phase.ordinal();
+
+        final InvocationStatistics[][] phaseStatistics = this.filterStatistics[phaseIndex];
+        final InvocationStatistics[] chainStatistics = chainIndex < phaseStatistics.length ? phaseStatistics[chainIndex] : null;
+        InvocationStatistics statistics = chainStatistics != null && filterIndex < chainStatistics.length ? chainStatistics[filterIndex] : null;
+        if (statistics == null) {
+            statistics = createFilterStatistics(phaseIndex, chainIndex, filterIndex, filter);
+        }
+
+        statistics.record(totalNanos, selfNanos, failed);
+    }
+
+    /**
+     * @param phase the lifecycle phase
+     * @param chainIndex index of the chain
+     * @return the statistics of the chain in the phase, null if it has not been invoked in the phase
+     */
+    public InvocationStatistics getChainStatistics(PortletPhase phase, int chainIndex) {
+        final int phaseIndex = phase.ordinal();
+
+        final InvocationStatistics[] phaseStatistics = this.chainStatistics[phaseIndex];
+        return chainIndex < phaseStatistics.length ? phaseStatistics[chainIndex] : null;
+    }
+
+    /**
+     * @param phase the lifecycle phase
+     * @param chainIndex index of the chain
+     * @param filterIndex index of the filter in the chain
+     * @return the statistics of the filter in the phase, null if it has not been invoked in the phase
+     */
+    public InvocationStatistics getFilterStatistics(PortletPhase phase, int chainIndex, int filterIndex) {
+        final int phaseIndex = phase.ordinal();
+
+        final InvocationStatistics[][] phaseStatistics = this.filterStatistics[phaseIndex];
+        final InvocationStatistics[] chainStatistics = chainIndex < phaseStatistics.length ? phaseStatistics[chainIndex] : null;
+        return chainStatistics != null && filterIndex < chainStatistics.length ? chainStatistics[filterIndex] : null;
+    }
+
+    /**
+     * Reset all statistics
+     */
+    public void reset() {
+        for (final InvocationStatistics[] phaseStatistics : this.chainStatistics) {
+            resetAll(phaseStatistics);
+        }
+        for (final InvocationStatistics[][] phaseStatistics : this.filterStatistics) {
+            for (final InvocationStatistics[] chainStatistics : phaseStatistics) {
+                resetAll(chainStatistics);
+            }
+        }
+    }
+
+    /**
+     * Unregister all MBeans registered by this object
+     */
+    @Override
+    public void destroy() {
+        final List<ObjectName> names;
+        synchronized (this.statisticsLock) {
+            names = new ArrayList<ObjectName>(this.registeredNames);
+            this.registeredNames.clear();
+        }
+
+        for (final ObjectName objectName : names) {
+            try {
+                this.mBeanServer.unregisterMBean(objectName);
+            }
+            catch (JMException e) {
+                logger.warn("Failed to unregister MBean " + objectName, e);
+            }
+        }
+    }
+
+    /**
+     * @return the names of all currently registered MBeans
+     */
+    public List<ObjectName> getRegisteredNames() {
+        synchronized (this.statisticsLock) {
+            return Collections.unmodifiableList(new ArrayList<ObjectName>(this.registeredNames));
+        }
+    }
+
+    private InvocationStatistics createChainStatistics(int phaseIndex, int chainIndex) {
+        synchronized (this.statisticsLock) {
+            final InvocationStatistics[][] allStatistics = this.chainStatistics;
+            InvocationStatistics[] phaseStatistics = allStatistics[phaseIndex];
+            if (chainIndex < phaseStatistics.length && phaseStatistics[chainIndex] != null) {
+                return phaseStatistics[chainIndex];
+            }
+
+            final String statisticsName = "phase=" + PHASES[phaseIndex].getPhaseName() + ",chain=" + chainIndex;
+            final InvocationStatistics statistics = new InvocationStatistics(statisticsName);
+
+            final InvocationStatistics[][] newStatistics = allStatistics.clone();
+            phaseStatistics = Arrays.copyOf(phaseStatistics, Math.max(phaseStatistics.length, chainIndex + 1));
+            phaseStatistics[chainIndex] = statistics;
+            newStatistics[phaseIndex] = phaseStatistics;
+            this.chainStatistics = newStatistics;
+
+            register(statistics, statisticsName);
+            return statistics;
+        }
+    }
+
+    private InvocationStatistics createFilterStatistics(int phaseIndex, int chainIndex, int filterIndex, PortletFilter filter) {
+        synchronized (this.statisticsLock) {
+            final InvocationStatistics[][][] allStatistics = this.filterStatistics;
+            InvocationStatistics[][] phaseStatistics = allStatistics[phaseIndex];
+            InvocationStatistics[] chainStatistics = chainIndex < phaseStatistics.length ? phaseStatistics[chainIndex] : null;
+            if (chainStatistics != null && filterIndex < chainStatistics.length && chainStatistics[filterIndex] != null) {
+                return chainStatistics[filterIndex];
+            }
+
+            final String statisticsName = "phase=" + PHASES[phaseIndex].getPhaseName() + ",chain=" + chainIndex + ",filter="
+                    + ObjectName.quote(filterIndex + "-" + filter.getClass().getSimpleName());
+            final InvocationStatistics statistics = new InvocationStatistics(statisticsName);
+
+            final InvocationStatistics[][][] newStatistics = allStatistics.clone();
+            phaseStatistics = Arrays.copyOf(phaseStatistics, Math.max(phaseStatistics.length, chainIndex + 1));
+            chainStatistics = chainStatistics == null ? new InvocationStatistics[filterIndex + 1]
+                    : Arrays.copyOf(chainStatistics, Math.max(chainStatistics.length, filterIndex + 1));
+            chainStatistics[filterIndex] = statistics;
+            phaseStatistics[chainIndex] = chainStatistics;
+            newStatistics[phaseIndex] = phaseStatistics;
+            this.filterStatistics = newStatistics;
+
+            register(statistics, statisticsName);
+            return statistics;
+        }
+    }
+
+    private void register(InvocationStatistics statistics, String statisticsName) {
+        if (this.mBeanServer == null) {
+            return;
+        }
+
+        try {
+            final ObjectName objectName = new ObjectName(this.domain + ":type=PortletFilterChain,name="
+                    + ObjectName.quote(this.name) + "," + statisticsName);
+            this.mBeanServer.registerMBean(statistics, objectName);
+            this.registeredNames.add(objectName);
+        }
+        catch (JMException e) {
+            logger.warn("Failed to register MBean for " + statisticsName + ", statistics will still be recorded", e);
+        }
+    }
+
+    private static void resetAll(InvocationStatistics[] statistics) {
+        if (statistics == null) {
+            return;
+        }
+
+        for (final InvocationStatistics invocationStatistics : statistics) {
+            if (invocationStatistics != null) {
+                invocationStatistics.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Invocation count, failure count and timing of a single filter chain or filter in one lifecycle phase. For a
+ * filter chain the self time and total time are the same.
+ *
+ * @version $Id: $Id
+ */
+public class InvocationStatistics implements InvocationStatisticsMBean {
+    private final String name;
+    private final StripedCounter invocations = new StripedCounter();
+    private final StripedCounter failures = new StripedCounter();
+    private final StripedCounter totalNanos = new StripedCounter();
+    private final StripedCounter selfNanos = new StripedCounter();
+    private final AtomicLong maxSelfNanos = new AtomicLong();
+    private final NanoHistogram selfNanosHistogram = new NanoHistogram();
+
+    /**
+     * @param name description of what is being measured
+     */
+    public InvocationStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Record one invocation
+     *
+     * @param totalNanos time including downstream filters
+     * @param selfNanos time excluding downstream filters
+     * @param failed true if the invocation ended with an exception
+     */
+    public void record(long totalNanos, long selfNanos, boolean failed) {
+        this.invocations.increment();
+        if (failed) {
+            this.failures.increment();
+        }
+        this.totalNanos.add(totalNanos);
+        this.selfNanos.add(selfNanos);
+        this.selfNanosHistogram.record(selfNanos);
+
+        long max = this.maxSelfNanos.get();
+        while (selfNanos > max && !this.maxSelfNanos.compareAndSet(max, selfNanos)) {
+            max = this.maxSelfNanos.get();
+        }
+    }
+
+    /**
+     * @return description of what is being measured
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getInvocationCount() {
+        return this.invocations.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getFailureCount() {
+        return this.failures.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTotalNanos() {
+        return this.totalNanos.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSelfNanos() {
+        return this.selfNanos.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMeanSelfNanos() {
+        final long count = getInvocationCount();
+        return count == 0 ? 0 : getSelfNanos() / count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMaxSelfNanos() {
+        return this.maxSelfNanos.get();
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return approximate self time at the percentile
+     */
+    public long getSelfNanosPercentile(double percentile) {
+        return this.selfNanosHistogram.getValueAtPercentile(percentile);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSelfNanos50thPercentile() {
+        return getSelfNanosPercentile(50);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSelfNanos95thPercentile() {
+        return getSelfNanosPercentile(95);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSelfNanos99thPercentile() {
+        return getSelfNanosPercentile(99);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSelfNanos999thPercentile() {
+        return getSelfNanosPercentile(99.9);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reset() {
+        this.invocations.reset();
+        this.failures.reset();
+        this.totalNanos.reset();
+        this.selfNanos.reset();
+        this.maxSelfNanos.set(0);
+        this.selfNanosHistogram.reset();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "InvocationStatistics [name=" + this.name + ", invocations=" + getInvocationCount() + ", failures="
+                + getFailureCount() + ", meanSelfNanos=" + getMeanSelfNanos() + ", p99SelfNanos="
+                + getSelfNanos99thPercentile() + "]";
+    }
+}
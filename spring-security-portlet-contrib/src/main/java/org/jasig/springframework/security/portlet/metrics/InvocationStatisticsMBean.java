@@ -0,0 +1,82 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.metrics;
+
+/**
+ * JMX view of an {@link InvocationStatistics}. Times are in nanoseconds, percentiles are of the self time.
+ *
+ * @version $Id: $Id
+ */
+public interface InvocationStatisticsMBean {
+
+    /**
+     * @return number of recorded invocations
+     */
+    long getInvocationCount();
+
+    /**
+     * @return number of invocations that ended with an exception
+     */
+    long getFailureCount();
+
+    /**
+     * @return cumulative time of all invocations, including downstream filters
+     */
+    long getTotalNanos();
+
+    /**
+     * @return cumulative time spent in the invocations themselves, excluding downstream filters
+     */
+    long getSelfNanos();
+
+    /**
+     * @return mean self time of an invocation
+     */
+    long getMeanSelfNanos();
+
+    /**
+     * @return largest self time of a single invocation
+     */
+    long getMaxSelfNanos();
+
+    /**
+     * @return approximate median self time
+     */
+    long getSelfNanos50thPercentile();
+
+    /**
+     * @return approximate 95th percentile self time
+     */
+    long getSelfNanos95thPercentile();
+
+    /**
+     * @return approximate 99th percentile self time
+     */
+    long getSelfNanos99thPercentile();
+
+    /**
+     * @return approximate 99.9th percentile self time
+     */
+    long getSelfNanos999thPercentile();
+
+    /**
+     * Reset all counters
+     */
+    void reset();
+}
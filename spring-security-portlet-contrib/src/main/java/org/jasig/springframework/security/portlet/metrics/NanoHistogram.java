@@ -0,0 +1,124 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size log-linear histogram of non-negative long values. Each power of two range is split into 8 linear
+ * buckets so values are recorded with a relative error of at most 12.5%, without any allocation or locking. Like
+ * {@link StripedCounter} the buckets are striped by thread so threads recording the same value do not contend,
+ * reads sum all stripes.
+ *
+ * @version $Id: $Id
+ */
+public final class NanoHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray[] counts = new AtomicLongArray[StripedCounter.STRIPES];
+
+    /**
+     * <p>Constructor for NanoHistogram.</p>
+     */
+    public NanoHistogram() {
+        for (int stripe = 0; stripe < this.counts.length; stripe++) {
+            this.counts[stripe] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    /**
+     * @param value the value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        this.counts[StripedCounter.stripe()].incrementAndGet(bucketIndex(value < 0 ? 0 : value));
+    }
+
+    /**
+     * Approximate the value at a percentile, the returned value is the upper bound of the bucket the percentile
+     * falls into.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the percentile, 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (final AtomicLongArray stripeCounts : this.counts) {
+            for (int i = 0; i < BUCKETS; i++) {
+                final long count = stripeCounts.get(i);
+                snapshot[i] += count;
+                total += count;
+            }
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        final long target = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return bucketUpperBound(i);
+            }
+        }
+
+        return bucketUpperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Set all buckets to 0, concurrent updates may or may not be lost
+     */
+    public void reset() {
+        for (final AtomicLongArray stripeCounts : this.counts) {
+            for (int i = 0; i < BUCKETS; i++) {
+                stripeCounts.set(i, 0);
+            }
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        final int shift = index / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        return bucketLowerBound(index + 1) - 1;
+    }
+}
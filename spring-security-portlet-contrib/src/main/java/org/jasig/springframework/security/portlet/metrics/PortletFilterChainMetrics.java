@@ -0,0 +1,58 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.metrics;
+
+import javax.portlet.filter.PortletFilter;
+
+import org.jasig.springframework.web.portlet.filter.PortletPhase;
+
+/**
+ * Receives timing information from {@link org.jasig.springframework.security.portlet.PortletFilterChainProxy} for
+ * every chain and filter invocation. Implementations are called on the request thread for every request so must be
+ * thread safe and cheap.
+ *
+ * @version $Id: $Id
+ * @see DefaultPortletFilterChainMetrics
+ */
+public interface PortletFilterChainMetrics {
+
+    /**
+     * Called once a filter chain selected by the proxy has completed
+     *
+     * @param phase the lifecycle phase
+     * @param chainIndex index of the chain in the proxy's filter chain list
+     * @param durationNanos time spent in the chain, including the rest of the original container chain
+     * @param failed true if the chain completed by throwing an exception
+     */
+    void recordChainInvocation(PortletPhase phase, int chainIndex, long durationNanos, boolean failed);
+
+    /**
+     * Called once a filter in a chain has returned
+     *
+     * @param phase the lifecycle phase
+     * @param chainIndex index of the chain in the proxy's filter chain list
+     * @param filterIndex index of the filter in the chain
+     * @param filter the filter that was invoked
+     * @param totalNanos time from invoking the filter until it returned, including all downstream filters
+     * @param selfNanos time spent in the filter itself, excluding downstream filters and the original chain
+     * @param failed true if the filter completed by throwing an exception
+     */
+    void recordFilterInvocation(PortletPhase phase, int chainIndex, int filterIndex, PortletFilter filter, long totalNanos,
+            long selfNanos, boolean failed);
+}
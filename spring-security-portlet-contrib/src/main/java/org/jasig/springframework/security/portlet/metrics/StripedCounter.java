@@ -0,0 +1,90 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that spreads updates over several cache line padded cells to avoid contention between threads. Reads sum
+ * all cells so are more expensive than writes and are not an atomic snapshot.
+ *
+ * @version $Id: $Id
+ */
+public final class StripedCounter {
+    //longs per cell, 8 * 8 bytes keeps each cell on its own 64 byte cache line
+    private static final int PADDING = 8;
+    static final int STRIPES;
+    static {
+        int stripes = 1;
+        final int processors = Runtime.getRuntime().availableProcessors();
+        while (stripes < processors) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * @param delta the amount to add
+     */
+    public void add(long delta) {
+        this.cells.getAndAdd(stripe() * PADDING, delta);
+    }
+
+    /**
+     * Add one
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * @return the current sum of all cells
+     */
+    public long sum() {
+        long sum = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            sum += this.cells.get(stripe * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Set all cells to 0, concurrent updates may or may not be lost
+     */
+    public void reset() {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            this.cells.set(stripe * PADDING, 0);
+        }
+    }
+
+    /**
+     * @return the stripe of the current thread, between 0 and {@link #STRIPES} - 1
+     */
+    static int stripe() {
+        return (int) (Thread.currentThread().getId() & (STRIPES - 1));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import javax.portlet.ActionRequest;
+import javax.portlet.PortletRequest;
+
+import org.jasig.springframework.web.portlet.filter.PortletFilterUtils;
+import org.jasig.springframework.web.portlet.filter.PortletPhase;
+import org.springframework.util.Assert;
+
+/**
+ * Matches {@link ActionRequest}s whose {@link ActionRequest#ACTION_NAME} parameter has the specified value
+ *
+ * @version $Id: $Id
+ */
+public class ActionNameRequestMatcher implements ContextAwareRequestMatcher {
+    private final String actionName;
+
+    /**
+     * @param actionName the action name to match
+     */
+    public ActionNameRequestMatcher(String actionName) {
+        Assert.hasText(actionName, "actionName must be specified");
+        this.actionName = actionName;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(PortletRequest request) {
+        return PortletFilterUtils.getPortletPhase(request) == PortletPhase.ACTION
+                && actionName.equals(request.getParameter(ActionRequest.ACTION_NAME));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(RequestMatchingContext context) {
+        return context.getPortletPhase() == PortletPhase.ACTION && actionName.equals(context.getActionName());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof ActionNameRequestMatcher && actionName.equals(((ActionNameRequestMatcher) obj).actionName);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return actionName.hashCode();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ActionNameRequestMatcher [" + actionName + "]";
+    }
+}
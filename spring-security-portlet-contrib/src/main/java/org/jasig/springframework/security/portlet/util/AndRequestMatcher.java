@@ -0,0 +1,105 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.portlet.PortletRequest;
+
+import org.springframework.util.Assert;
+
+/**
+ * Matches requests if all of the specified matchers match, evaluation stops at the first matcher that does not match.
+ * The built in matchers share their request data through {@link RequestMatchingContext} so combining them does not
+ * read the same value from the request more than once, the context itself is resolved once and passed to every
+ * {@link ContextAwareRequestMatcher}.
+ *
+ * @version $Id: $Id
+ */
+public class AndRequestMatcher implements ContextAwareRequestMatcher {
+    private final RequestMatcher[] requestMatchers;
+    private final boolean contextAware;
+
+    /**
+     * @param requestMatchers the matchers to combine, in evaluation order
+     */
+    public AndRequestMatcher(RequestMatcher... requestMatchers) {
+        Assert.notEmpty(requestMatchers, "At least one RequestMatcher must be specified");
+        Assert.noNullElements(requestMatchers, "RequestMatchers must not be null");
+        this.requestMatchers = requestMatchers.clone();
+
+        boolean contextAware = false;
+        for (final RequestMatcher matcher : this.requestMatchers) {
+            contextAware |= matcher instanceof ContextAwareRequestMatcher;
+        }
+        this.contextAware = contextAware;
+    }
+
+    /**
+     * @param requestMatchers the matchers to combine, in evaluation order
+     */
+    public AndRequestMatcher(List<RequestMatcher> requestMatchers) {
+        this(requestMatchers.toArray(new RequestMatcher[requestMatchers.size()]));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(PortletRequest request) {
+        if (contextAware) {
+            return matches(RequestMatchingContext.get(request));
+        }
+
+        for (final RequestMatcher matcher : requestMatchers) {
+            if (!matcher.matches(request)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(RequestMatchingContext context) {
+        for (final RequestMatcher matcher : requestMatchers) {
+            if (!context.matches(matcher)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof AndRequestMatcher && Arrays.equals(requestMatchers, ((AndRequestMatcher) obj).requestMatchers);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(requestMatchers);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "AndRequestMatcher " + Arrays.toString(requestMatchers);
+    }
+}
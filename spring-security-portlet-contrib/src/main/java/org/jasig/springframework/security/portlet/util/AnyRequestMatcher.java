@@ -26,7 +26,7 @@ import javax.portlet.PortletRequest;
  * @author Eric Dalquist
  * @version $Id: $Id
  */
-public class AnyRequestMatcher implements RequestMatcher {
+public class AnyRequestMatcher implements ContextAwareRequestMatcher {
 
     /** {@inheritDoc} */
     @Override
@@ -34,6 +34,12 @@ public class AnyRequestMatcher implements RequestMatcher {
         return true;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(RequestMatchingContext context) {
+        return true;
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean equals(Object obj) {
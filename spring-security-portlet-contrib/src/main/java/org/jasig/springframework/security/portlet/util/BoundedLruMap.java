@@ -0,0 +1,102 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link LinkedHashMap} in access order that evicts the least recently used entry once it holds more than
+ * {@link #setMaxSize(int) maxSize} entries.
+ * <p>
+ * Like {@link LinkedHashMap} this class is not thread safe, {@link #get(Object)} changes the iteration order as
+ * well. Callers either synchronize on the map for every access, which also allows compound operations, or wrap it
+ * with {@link java.util.Collections#synchronizedMap(Map)}. Every access then takes the same lock, so it only suits
+ * caches that are not consulted on every request, such as those used once per authentication. Caches on the
+ * request path use a {@link java.util.concurrent.ConcurrentHashMap} with sampled eviction instead, see
+ * {@link RequestMatchCache}.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @version $Id: $Id
+ */
+public class BoundedLruMap<K, V> extends LinkedHashMap<K, V> {
+    private static final long serialVersionUID = 1L;
+
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile int maxSize;
+
+    /**
+     * @param maxSize maximum number of entries, the least recently used entry is evicted beyond this
+     */
+    public BoundedLruMap(int maxSize) {
+        super(16, 0.75f, true);
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * @param maxSize maximum number of entries, a smaller value takes effect when the next entry is added
+     */
+    public void setMaxSize(int maxSize) {
+        Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return maximum number of entries
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * @return number of least recently used entries evicted because the map was full
+     */
+    public long getEvictionCount() {
+        return this.evictions.get();
+    }
+
+    /**
+     * Reset the eviction count to 0
+     */
+    public void resetEvictionCount() {
+        this.evictions.set(0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        final int maxSize = this.maxSize;
+        if (size() <= maxSize) {
+            return false;
+        }
+
+        // More than one entry to evict after maxSize was reduced, LinkedHashMap allows trimming here
+        for (final Iterator<K> keyItr = keySet().iterator(); size() > maxSize;) {
+            keyItr.next();
+            keyItr.remove();
+            this.evictions.incrementAndGet();
+        }
+        return false;
+    }
+}
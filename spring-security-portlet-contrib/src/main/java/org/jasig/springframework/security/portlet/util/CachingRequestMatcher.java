@@ -0,0 +1,88 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import javax.portlet.PortletRequest;
+
+import org.springframework.util.Assert;
+
+/**
+ * Decorates a {@link RequestMatcher} and remembers its result using a {@link RequestMatchCache}. Only use this for
+ * matchers whose result is fully determined by the key components the cache is configured with.
+ *
+ * @version $Id: $Id
+ */
+public class CachingRequestMatcher implements RequestMatcher {
+    private final RequestMatcher delegate;
+    private final RequestMatchCache<Boolean> cache;
+
+    /**
+     * Cache the results of the delegate in a default {@link RequestMatchCache}
+     *
+     * @param delegate the matcher to cache
+     */
+    public CachingRequestMatcher(RequestMatcher delegate) {
+        this(delegate, new RequestMatchCache<Boolean>());
+    }
+
+    /**
+     * @param delegate the matcher to cache
+     * @param cache the cache to use, should not be shared with other matchers
+     */
+    public CachingRequestMatcher(RequestMatcher delegate, RequestMatchCache<Boolean> cache) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.notNull(cache, "cache must not be null");
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(PortletRequest request) {
+        final Object key = this.cache.createKey(request);
+        final Boolean cached = this.cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final boolean matches = this.delegate.matches(request);
+        this.cache.put(key, matches);
+        return matches;
+    }
+
+    /**
+     * @return the matcher being cached
+     */
+    public RequestMatcher getDelegate() {
+        return this.delegate;
+    }
+
+    /**
+     * @return the cache, exposes the hit and miss counts
+     */
+    public RequestMatchCache<Boolean> getCache() {
+        return this.cache;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "CachingRequestMatcher [delegate=" + this.delegate + ", cache=" + this.cache + "]";
+    }
+}
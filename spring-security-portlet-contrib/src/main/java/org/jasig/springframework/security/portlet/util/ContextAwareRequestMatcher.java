@@ -0,0 +1,38 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+/**
+ * {@link RequestMatcher} that can be evaluated against a {@link RequestMatchingContext}. Composite matchers resolve
+ * the context of a request once and pass it to every context aware matcher they combine, so a composite reads the
+ * context request attribute once no matter how many matchers it holds.
+ *
+ * @version $Id: $Id
+ */
+public interface ContextAwareRequestMatcher extends RequestMatcher {
+
+    /**
+     * Decides whether the rule implemented by the strategy matches the request of the supplied context.
+     *
+     * @param context the matching context of the request to check for a match
+     * @return true if the request matches, false otherwise
+     */
+    boolean matches(RequestMatchingContext context);
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.portlet.PortletRequest;
+
+import org.jasig.springframework.web.portlet.filter.PortletFilterUtils;
+import org.jasig.springframework.web.portlet.filter.PortletPhase;
+import org.springframework.util.Assert;
+
+/**
+ * Matches requests in any of the specified lifecycle phases, see {@link PortletRequest#LIFECYCLE_PHASE}
+ *
+ * @version $Id: $Id
+ */
+public class LifecyclePhaseRequestMatcher implements ContextAwareRequestMatcher {
+    private final Set<String> phases;
+
+    /**
+     * @param phases the lifecycle phases to match, for example {@link PortletRequest#RENDER_PHASE}
+     */
+    public LifecyclePhaseRequestMatcher(String... phases) {
+        Assert.notEmpty(phases, "At least one lifecycle phase must be specified");
+        this.phases = new LinkedHashSet<String>(Arrays.asList(phases));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(PortletRequest request) {
+        final PortletPhase phase = PortletFilterUtils.getPortletPhase(request);
+        return phase != null && phases.contains(phase.getPhaseName());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(RequestMatchingContext context) {
+        return phases.contains(context.getLifecyclePhase());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof LifecyclePhaseRequestMatcher && phases.equals(((LifecyclePhaseRequestMatcher) obj).phases);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return phases.hashCode();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "LifecyclePhaseRequestMatcher " + phases;
+    }
+}
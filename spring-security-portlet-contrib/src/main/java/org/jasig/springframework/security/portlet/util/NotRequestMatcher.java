@@ -0,0 +1,70 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import javax.portlet.PortletRequest;
+
+import org.springframework.util.Assert;
+
+/**
+ * Matches requests that the specified matcher does not match
+ *
+ * @version $Id: $Id
+ */
+public class NotRequestMatcher implements ContextAwareRequestMatcher {
+    private final RequestMatcher requestMatcher;
+
+    /**
+     * @param requestMatcher the matcher to negate
+     */
+    public NotRequestMatcher(RequestMatcher requestMatcher) {
+        Assert.notNull(requestMatcher, "requestMatcher must not be null");
+        this.requestMatcher = requestMatcher;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(PortletRequest request) {
+        return !requestMatcher.matches(request);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(RequestMatchingContext context) {
+        return !context.matches(requestMatcher);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof NotRequestMatcher && requestMatcher.equals(((NotRequestMatcher) obj).requestMatcher);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return ~requestMatcher.hashCode();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "NotRequestMatcher [" + requestMatcher + "]";
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import javax.portlet.PortletRequest;
+
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Matches requests that have the specified parameter, optionally with a specific value. When a value is
+ * specified any of the parameter's values may match.
+ *
+ * @version $Id: $Id
+ */
+public class ParameterRequestMatcher implements ContextAwareRequestMatcher {
+    private final String name;
+    private final String value;
+
+    /**
+     * Match requests where the parameter is present
+     *
+     * @param name the parameter name
+     */
+    public ParameterRequestMatcher(String name) {
+        this(name, null);
+    }
+
+    /**
+     * Match requests where the parameter has the specified value
+     *
+     * @param name the parameter name
+     * @param value the value to match, null to match any value
+     */
+    public ParameterRequestMatcher(String name, String value) {
+        Assert.hasText(name, "name must be specified");
+        this.name = name;
+        this.value = value;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(PortletRequest request) {
+        return matchesValues(request.getParameterValues(name));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(RequestMatchingContext context) {
+        return matchesValues(context.getParameterValues(name));
+    }
+
+    private boolean matchesValues(String[] values) {
+        if (values == null || values.length == 0) {
+            return false;
+        }
+        if (value == null) {
+            return true;
+        }
+
+        for (final String parameterValue : values) {
+            if (value.equals(parameterValue)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ParameterRequestMatcher)) {
+            return false;
+        }
+        final ParameterRequestMatcher other = (ParameterRequestMatcher) obj;
+        return name.equals(other.name) && ObjectUtils.nullSafeEquals(value, other.value);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return 31 * name.hashCode() + ObjectUtils.nullSafeHashCode(value);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ParameterRequestMatcher [" + name + (value == null ? "" : "=" + value) + "]";
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.portlet.PortletMode;
+import javax.portlet.PortletRequest;
+
+import org.springframework.util.Assert;
+
+/**
+ * Matches requests in any of the specified {@link PortletMode}s
+ *
+ * @version $Id: $Id
+ */
+public class PortletModeRequestMatcher implements ContextAwareRequestMatcher {
+    private final Set<PortletMode> portletModes;
+
+    /**
+     * @param portletModes the portlet modes to match
+     */
+    public PortletModeRequestMatcher(PortletMode... portletModes) {
+        Assert.notEmpty(portletModes, "At least one PortletMode must be specified");
+        this.portletModes = new LinkedHashSet<PortletMode>(Arrays.asList(portletModes));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(PortletRequest request) {
+        return portletModes.contains(request.getPortletMode());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(RequestMatchingContext context) {
+        return portletModes.contains(context.getPortletMode());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof PortletModeRequestMatcher && portletModes.equals(((PortletModeRequestMatcher) obj).portletModes);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return portletModes.hashCode();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "PortletModeRequestMatcher " + portletModes;
+    }
+}
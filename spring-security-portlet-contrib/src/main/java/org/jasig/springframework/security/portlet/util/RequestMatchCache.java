@@ -0,0 +1,336 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.portlet.PortletRequest;
+
+import org.jasig.springframework.security.portlet.metrics.StripedCounter;
+import org.jasig.springframework.web.portlet.filter.PortletFilterUtils;
+import org.jasig.springframework.web.portlet.filter.PortletPhase;
+import org.springframework.util.Assert;
+
+/**
+ * Bounded cache of request matching results. Requests are reduced to a key made of the configured
+ * {@link KeyComponent}s, all requests producing the same key share a cached result.
+ * <p>
+ * Lookups neither lock nor reorder the cache, a hit only marks its entry as referenced. Eviction approximates LRU
+ * with a sampled CLOCK: once a put grows the cache beyond its maximum size a small sample of entries following a
+ * clock hand is scanned, referenced entries get a second chance and the first unreferenced one is removed. The hand
+ * keeps its position between evictions so it rotates over all entries, moving it is the only locked step.
+ * <p>
+ * Caching is only correct if the result being cached is fully determined by the configured key components. A
+ * matcher that looks at request parameters, roles or session state must not be cached unless requests that share a
+ * key are guaranteed to produce the same result.
+ *
+ * @param <V> the type of the cached result
+ * @version $Id: $Id
+ */
+public class RequestMatchCache<V> {
+    /** Default maximum number of cached keys */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /** Number of entries scanned to pick the one to evict */
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    /**
+     * Parts of the {@link PortletRequest} that can make up the cache key
+     */
+    public enum KeyComponent {
+        /** {@link PortletRequest#getWindowID()} */
+        WINDOW_ID,
+        /** The lifecycle phase, see {@link PortletFilterUtils#getPortletPhase(PortletRequest)} */
+        LIFECYCLE_PHASE,
+        /** {@link PortletRequest#getPortletMode()} */
+        PORTLET_MODE,
+        /** {@link PortletRequest#getWindowState()} */
+        WINDOW_STATE;
+    }
+
+    private final boolean keyWindowId;
+    private final boolean keyLifecyclePhase;
+    private final boolean keyPortletMode;
+    private final boolean keyWindowState;
+    private final KeyComponent[] keyComponents;
+    private final int maxSize;
+    private final ConcurrentMap<Key, Entry<V>> cache = new ConcurrentHashMap<Key, Entry<V>>();
+    private final AtomicLong writes = new AtomicLong();
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // Guarded by evictionLock
+    private Iterator<Entry<V>> evictionHand;
+
+    /**
+     * Create a cache with {@link #DEFAULT_MAX_SIZE} entries keyed by all {@link KeyComponent}s
+     */
+    public RequestMatchCache() {
+        this(DEFAULT_MAX_SIZE, EnumSet.allOf(KeyComponent.class));
+    }
+
+    /**
+     * Create a cache
+     *
+     * @param maxSize maximum number of keys to cache, an approximately least recently used key is evicted beyond
+     * this
+     * @param keyComponents the request attributes to key the cache on
+     */
+    public RequestMatchCache(int maxSize, Set<KeyComponent> keyComponents) {
+        Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+        Assert.notEmpty(keyComponents, "At least one KeyComponent must be specified");
+
+        this.maxSize = maxSize;
+        this.keyComponents = EnumSet.copyOf(keyComponents).toArray(new KeyComponent[keyComponents.size()]);
+        this.keyWindowId = keyComponents.contains(KeyComponent.WINDOW_ID);
+        this.keyLifecyclePhase = keyComponents.contains(KeyComponent.LIFECYCLE_PHASE);
+        this.keyPortletMode = keyComponents.contains(KeyComponent.PORTLET_MODE);
+        this.keyWindowState = keyComponents.contains(KeyComponent.WINDOW_STATE);
+    }
+
+    /**
+     * Create the cache key for a request
+     *
+     * @param request the request to create the key for
+     * @return the cache key
+     */
+    public Object createKey(PortletRequest request) {
+        return new Key(
+                this.keyWindowId ? request.getWindowID() : null,
+                this.keyLifecyclePhase ? PortletFilterUtils.getPortletPhase(request) : null,
+                this.keyPortletMode ? request.getPortletMode() : null,
+                this.keyWindowState ? request.getWindowState() : null);
+    }
+
+    /**
+     * Look up a cached result by a key from {@link #createKey(PortletRequest)}, calls to this method are counted as
+     * hits or misses.
+     *
+     * @param key the cache key
+     * @return the cached result, null if there is none
+     */
+    public V get(Object key) {
+        final Entry<V> entry = this.cache.get(key);
+        if (entry == null) {
+            this.misses.increment();
+            return null;
+        }
+
+        this.hits.increment();
+        //Only write the flag when it changes so hits on a hot entry do not contend on its cache line
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Cache a result by a key from {@link #createKey(PortletRequest)}
+     *
+     * @param key the cache key
+     * @param value the result, must not be null
+     */
+    public void put(Object key, V value) {
+        Assert.isInstanceOf(Key.class, key);
+        Assert.notNull(value, "value must not be null");
+
+        final Entry<V> entry = new Entry<V>((Key) key, value, this.writes.incrementAndGet());
+        if (this.cache.put(entry.key, entry) == null) {
+            while (this.cache.size() > this.maxSize && evictOne(entry)) {
+                //evict until back within bounds
+            }
+        }
+    }
+
+    /**
+     * Remove all cached results, hit and miss counts are not reset.
+     */
+    public void clear() {
+        this.cache.clear();
+    }
+
+    /**
+     * @return the number of cached keys
+     */
+    public int getSize() {
+        return this.cache.size();
+    }
+
+    /**
+     * @return the maximum number of cached keys
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * @return the request attributes the cache is keyed on
+     */
+    public Set<KeyComponent> getKeyComponents() {
+        return EnumSet.copyOf(Arrays.asList(this.keyComponents));
+    }
+
+    /**
+     * @return number of lookups that found a cached result
+     */
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return number of lookups that did not find a cached result
+     */
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Reset the hit and miss counts to 0
+     */
+    public void resetStatistics() {
+        this.hits.reset();
+        this.misses.reset();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "RequestMatchCache [keyComponents=" + Arrays.toString(this.keyComponents) + ", maxSize="
+                + this.maxSize + ", size=" + getSize() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + "]";
+    }
+
+    /**
+     * Remove the first unreferenced entry of the sample following the clock hand, clearing the referenced flag of
+     * the entries passed over. If every sampled entry was referenced the oldest written one is removed. The hand
+     * starts over once it has passed all entries.
+     *
+     * @param added the entry whose put triggered the eviction, never evicted
+     * @return false if there was nothing to evict
+     */
+    private boolean evictOne(Entry<V> added) {
+        Entry<V> victim = null;
+        Entry<V> oldest = null;
+        this.evictionLock.lock();
+        try {
+            boolean restarted = false;
+            for (int sampled = 0; sampled < EVICTION_SAMPLE_SIZE;) {
+                if (this.evictionHand == null || !this.evictionHand.hasNext()) {
+                    if (restarted) {
+                        break;
+                    }
+                    this.evictionHand = this.cache.values().iterator();
+                    restarted = true;
+                    continue;
+                }
+
+                final Entry<V> entry = this.evictionHand.next();
+                if (entry == added) {
+                    continue;
+                }
+                sampled++;
+                if (!entry.referenced) {
+                    victim = entry;
+                    break;
+                }
+                entry.referenced = false;
+                if (oldest == null || entry.writeSequence < oldest.writeSequence) {
+                    oldest = entry;
+                }
+            }
+        }
+        finally {
+            this.evictionLock.unlock();
+        }
+
+        if (victim == null) {
+            victim = oldest;
+        }
+        if (victim == null) {
+            return false;
+        }
+        this.cache.remove(victim.key, victim);
+        return true;
+    }
+
+    private static final class Entry<V> {
+        private final Key key;
+        private final V value;
+        private final long writeSequence;
+        private volatile boolean referenced;
+
+        private Entry(Key key, V value, long writeSequence) {
+            this.key = key;
+            this.value = value;
+            this.writeSequence = writeSequence;
+        }
+    }
+
+    private static final class Key {
+        private final String windowId;
+        private final PortletPhase phase;
+        private final Object portletMode;
+        private final Object windowState;
+        private final int hash;
+
+        private Key(String windowId, PortletPhase phase, Object portletMode, Object windowState) {
+            this.windowId = windowId;
+            this.phase = phase;
+            this.portletMode = portletMode;
+            this.windowState = windowState;
+
+            int hash = windowId == null ? 0 : windowId.hashCode();
+            hash = 31 * hash + (phase == null ? 0 : phase.hashCode());
+            hash = 31 * hash + (portletMode == null ? 0 : portletMode.hashCode());
+            hash = 31 * hash + (windowState == null ? 0 : windowState.hashCode());
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.hash == other.hash && nullSafeEquals(this.windowId, other.windowId)
+                    && nullSafeEquals(this.phase, other.phase) && nullSafeEquals(this.portletMode, other.portletMode)
+                    && nullSafeEquals(this.windowState, other.windowState);
+        }
+
+        private static boolean nullSafeEquals(Object o1, Object o2) {
+            return o1 == null ? o2 == null : o1.equals(o2);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.portlet.ActionRequest;
+import javax.portlet.PortletMode;
+import javax.portlet.PortletRequest;
+import javax.portlet.ResourceRequest;
+import javax.portlet.WindowState;
+
+import org.jasig.springframework.web.portlet.filter.PortletFilterUtils;
+import org.jasig.springframework.web.portlet.filter.PortletPhase;
+
+/**
+ * Request scoped memo of the request data that the built in {@link RequestMatcher}s look at. Each value is read
+ * from the {@link PortletRequest} the first time any matcher asks for it and then shared by all matchers, in all
+ * filter chains, evaluated against the same request.
+ * <p>
+ * Composite matchers look the context up once and pass it to the {@link ContextAwareRequestMatcher}s they combine.
+ * A leaf matcher evaluated on its own reads plain getters such as {@link PortletRequest#getPortletMode()} directly,
+ * as that is cheaper than the request attribute lookup, and only uses the context for values worth remembering such
+ * as {@link PortletRequest#isUserInRole(String)}.
+ * <p>
+ * Obtain the instance for a request with {@link #get(PortletRequest)}. Instances are not thread safe, a portlet
+ * request is only ever processed by one thread at a time.
+ *
+ * @version $Id: $Id
+ */
+public final class RequestMatchingContext {
+    /** Request attribute the context is stored under */
+    public static final String CONTEXT_ATTRIBUTE = RequestMatchingContext.class.getName();
+
+    private static final Object NOT_RESOLVED = new Object();
+    private static final String[] NO_VALUES = new String[0];
+
+    /**
+     * Get the matching context for the request, creating it and storing it as a request attribute if needed
+     *
+     * @param request the request being matched
+     * @return the matching context, never null
+     */
+    public static RequestMatchingContext get(PortletRequest request) {
+        final Object context = request.getAttribute(CONTEXT_ATTRIBUTE);
+        if (context instanceof RequestMatchingContext) {
+            final RequestMatchingContext matchingContext = (RequestMatchingContext) context;
+            if (matchingContext.request == request) {
+                return matchingContext;
+            }
+        }
+
+        final RequestMatchingContext matchingContext = new RequestMatchingContext(request);
+        request.setAttribute(CONTEXT_ATTRIBUTE, matchingContext);
+        return matchingContext;
+    }
+
+    private final PortletRequest request;
+    private Object portletPhase = NOT_RESOLVED;
+    private PortletMode portletMode;
+    private WindowState windowState;
+    private Object resourceId = NOT_RESOLVED;
+    private Map<String, String[]> parameters;
+    private Map<String, Boolean> roles;
+
+    private RequestMatchingContext(PortletRequest request) {
+        this.request = request;
+    }
+
+    /**
+     * @return the request this context was created for
+     */
+    public PortletRequest getRequest() {
+        return this.request;
+    }
+
+    /**
+     * Evaluate a matcher against the request of this context, passing the context on if the matcher is
+     * {@link ContextAwareRequestMatcher context aware}
+     *
+     * @param matcher the matcher to evaluate
+     * @return true if the request matches
+     */
+    public boolean matches(RequestMatcher matcher) {
+        if (matcher instanceof ContextAwareRequestMatcher) {
+            return ((ContextAwareRequestMatcher) matcher).matches(this);
+        }
+        return matcher.matches(this.request);
+    }
+
+    /**
+     * @return the phase of the request as resolved by {@link PortletFilterUtils#getPortletPhase(PortletRequest)}
+     */
+    public PortletPhase getPortletPhase() {
+        if (this.portletPhase == NOT_RESOLVED) {
+            this.portletPhase = PortletFilterUtils.getPortletPhase(this.request);
+        }
+        return (PortletPhase) this.portletPhase;
+    }
+
+    /**
+     * @return the {@link PortletRequest#LIFECYCLE_PHASE} value of the request's phase
+     */
+    public String getLifecyclePhase() {
+        final PortletPhase phase = getPortletPhase();
+        return phase == null ? null : phase.getPhaseName();
+    }
+
+    /**
+     * @return {@link PortletRequest#getPortletMode()}
+     */
+    public PortletMode getPortletMode() {
+        if (this.portletMode == null) {
+            this.portletMode = this.request.getPortletMode();
+        }
+        return this.portletMode;
+    }
+
+    /**
+     * @return {@link PortletRequest#getWindowState()}
+     */
+    public WindowState getWindowState() {
+        if (this.windowState == null) {
+            this.windowState = this.request.getWindowState();
+        }
+        return this.windowState;
+    }
+
+    /**
+     * @return {@link ResourceRequest#getResourceID()}, null if this is not a resource request
+     */
+    public String getResourceId() {
+        if (this.resourceId == NOT_RESOLVED) {
+            if (this.request instanceof ResourceRequest) {
+                this.resourceId = ((ResourceRequest) this.request).getResourceID();
+            }
+            else {
+                this.resourceId = null;
+            }
+        }
+        return (String) this.resourceId;
+    }
+
+    /**
+     * @return the {@link ActionRequest#ACTION_NAME} parameter
+     */
+    public String getActionName() {
+        return getParameter(ActionRequest.ACTION_NAME);
+    }
+
+    /**
+     * @param name the parameter name
+     * @return the first value of the parameter, null if it is not set
+     */
+    public String getParameter(String name) {
+        final String[] values = getParameterValues(name);
+        return values.length == 0 ? null : values[0];
+    }
+
+    /**
+     * @param name the parameter name
+     * @return all values of the parameter, an empty array if it is not set
+     */
+    public String[] getParameterValues(String name) {
+        if (this.parameters == null) {
+            this.parameters = new HashMap<String, String[]>();
+        }
+
+        String[] values = this.parameters.get(name);
+        if (values == null) {
+            values = this.request.getParameterValues(name);
+            if (values == null) {
+                values = NO_VALUES;
+            }
+            this.parameters.put(name, values);
+        }
+        return values;
+    }
+
+    /**
+     * @param role the role name
+     * @return {@link PortletRequest#isUserInRole(String)}
+     */
+    public boolean isUserInRole(String role) {
+        if (this.roles == null) {
+            this.roles = new HashMap<String, Boolean>();
+        }
+
+        Boolean inRole = this.roles.get(role);
+        if (inRole == null) {
+            inRole = this.request.isUserInRole(role);
+            this.roles.put(role, inRole);
+        }
+        return inRole;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import javax.portlet.PortletRequest;
+import javax.portlet.ResourceRequest;
+
+import org.springframework.util.Assert;
+
+/**
+ * Matches {@link ResourceRequest}s for the specified resource ID
+ *
+ * @version $Id: $Id
+ */
+public class ResourceIdRequestMatcher implements ContextAwareRequestMatcher {
+    private final String resourceId;
+
+    /**
+     * @param resourceId the resource ID to match
+     */
+    public ResourceIdRequestMatcher(String resourceId) {
+        Assert.hasText(resourceId, "resourceId must be specified");
+        this.resourceId = resourceId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(PortletRequest request) {
+        return request instanceof ResourceRequest && resourceId.equals(((ResourceRequest) request).getResourceID());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(RequestMatchingContext context) {
+        return resourceId.equals(context.getResourceId());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof ResourceIdRequestMatcher && resourceId.equals(((ResourceIdRequestMatcher) obj).resourceId);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return resourceId.hashCode();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ResourceIdRequestMatcher [" + resourceId + "]";
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.portlet.PortletRequest;
+
+import org.springframework.util.Assert;
+
+/**
+ * Matches requests where the user is in any of the specified roles, see {@link PortletRequest#isUserInRole(String)}
+ *
+ * @version $Id: $Id
+ */
+public class RoleRequestMatcher implements ContextAwareRequestMatcher {
+    private final String[] roles;
+
+    /**
+     * @param roles the roles to match
+     */
+    public RoleRequestMatcher(String... roles) {
+        Assert.notEmpty(roles, "At least one role must be specified");
+        final Set<String> uniqueRoles = new LinkedHashSet<String>(Arrays.asList(roles));
+        this.roles = uniqueRoles.toArray(new String[uniqueRoles.size()]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(PortletRequest request) {
+        // isUserInRole may be expensive, the context remembers its results for the other matchers of the request
+        return matches(RequestMatchingContext.get(request));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(RequestMatchingContext context) {
+        for (final String role : roles) {
+            if (context.isUserInRole(role)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof RoleRequestMatcher && Arrays.equals(roles, ((RoleRequestMatcher) obj).roles);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(roles);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "RoleRequestMatcher " + Arrays.toString(roles);
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.portlet.PortletRequest;
+import javax.portlet.WindowState;
+
+import org.springframework.util.Assert;
+
+/**
+ * Matches requests in any of the specified {@link WindowState}s
+ *
+ * @version $Id: $Id
+ */
+public class WindowStateRequestMatcher implements ContextAwareRequestMatcher {
+    private final Set<WindowState> windowStates;
+
+    /**
+     * @param windowStates the window states to match
+     */
+    public WindowStateRequestMatcher(WindowState... windowStates) {
+        Assert.notEmpty(windowStates, "At least one WindowState must be specified");
+        this.windowStates = new LinkedHashSet<WindowState>(Arrays.asList(windowStates));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(PortletRequest request) {
+        return windowStates.contains(request.getWindowState());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean matches(RequestMatchingContext context) {
+        return windowStates.contains(context.getWindowState());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof WindowStateRequestMatcher && windowStates.equals(((WindowStateRequestMatcher) obj).windowStates);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return windowStates.hashCode();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "WindowStateRequestMatcher " + windowStates;
+    }
+}
@@ -0,0 +1,414 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.portlet.PortletException;
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletResponse;
+import javax.portlet.filter.FilterChain;
+import javax.portlet.filter.PortletFilter;
+import javax.portlet.filter.RenderFilter;
+
+import org.jasig.springframework.security.portlet.metrics.DefaultPortletFilterChainMetrics;
+import org.jasig.springframework.security.portlet.metrics.InvocationStatistics;
+import org.jasig.springframework.security.portlet.metrics.PortletFilterChainMetrics;
+import org.jasig.springframework.security.portlet.util.AnyRequestMatcher;
+import org.jasig.springframework.security.portlet.util.RequestMatchCache;
+import org.jasig.springframework.security.portlet.util.RequestMatcher;
+import org.jasig.springframework.web.portlet.filter.GenericPortletFilterBean;
+import org.jasig.springframework.web.portlet.filter.PortletFilterUtils;
+import org.jasig.springframework.web.portlet.filter.PortletPhase;
+import org.junit.Test;
+import org.springframework.mock.web.portlet.MockActionRequest;
+import org.springframework.mock.web.portlet.MockActionResponse;
+import org.springframework.mock.web.portlet.MockEventRequest;
+import org.springframework.mock.web.portlet.MockEventResponse;
+import org.springframework.mock.web.portlet.MockRenderRequest;
+import org.springframework.mock.web.portlet.MockRenderResponse;
+import org.springframework.mock.web.portlet.MockResourceRequest;
+import org.springframework.mock.web.portlet.MockResourceResponse;
+
+public class PortletFilterChainProxyTests {
+
+    @Test
+    public void filtersAreInvokedInOrderForAllPhases() throws Exception {
+        for (boolean compiled : new boolean[] { false, true }) {
+            final List<String> invocations = new ArrayList<String>();
+            final PortletFilterChainProxy proxy = createProxy(compiled, new DefaultPortletSecurityFilterChain(
+                    new AnyRequestMatcher(), new RecordingFilter("a", invocations), new RecordingFilter("b", invocations)));
+
+            final FilterChain chain = mock(FilterChain.class);
+
+            final MockActionRequest actionRequest = new MockActionRequest();
+            final MockActionResponse actionResponse = new MockActionResponse();
+            proxy.doFilter(actionRequest, actionResponse, chain);
+            verify(chain).doFilter(actionRequest, actionResponse);
+
+            final MockEventRequest eventRequest = new MockEventRequest(null);
+            final MockEventResponse eventResponse = new MockEventResponse();
+            proxy.doFilter(eventRequest, eventResponse, chain);
+            verify(chain).doFilter(eventRequest, eventResponse);
+
+            final MockRenderRequest renderRequest = new MockRenderRequest();
+            final MockRenderResponse renderResponse = new MockRenderResponse();
+            proxy.doFilter(renderRequest, renderResponse, chain);
+            verify(chain).doFilter(renderRequest, renderResponse);
+
+            final MockResourceRequest resourceRequest = new MockResourceRequest();
+            final MockResourceResponse resourceResponse = new MockResourceResponse();
+            proxy.doFilter(resourceRequest, resourceResponse, chain);
+            verify(chain).doFilter(resourceRequest, resourceResponse);
+
+            assertEquals(Arrays.asList("a", "b", "a", "b", "a", "b", "a", "b"), invocations);
+        }
+    }
+
+    @Test
+    public void firstMatchingChainIsUsed() throws Exception {
+        for (boolean compiled : new boolean[] { false, true }) {
+            final List<String> invocations = new ArrayList<String>();
+            final PortletFilterChainProxy proxy = createProxy(compiled,
+                    new DefaultPortletSecurityFilterChain(new AttributeRequestMatcher("first"),
+                            new RecordingFilter("first", invocations)),
+                    new DefaultPortletSecurityFilterChain(new AnyRequestMatcher(),
+                            new RecordingFilter("any", invocations)));
+
+            final FilterChain chain = mock(FilterChain.class);
+
+            final MockRenderRequest request = new MockRenderRequest();
+            request.setAttribute("first", Boolean.TRUE);
+            proxy.doFilter(request, new MockRenderResponse(), chain);
+            proxy.doFilter(new MockRenderRequest(), new MockRenderResponse(), chain);
+
+            assertEquals(Arrays.asList("first", "any"), invocations);
+        }
+    }
+
+    @Test
+    public void requestWithNoMatchingChainProceedsWithOriginalChain() throws Exception {
+        for (boolean compiled : new boolean[] { false, true }) {
+            final RenderFilter filter = mock(RenderFilter.class);
+            final PortletFilterChainProxy proxy = createProxy(compiled,
+                    new DefaultPortletSecurityFilterChain(new AttributeRequestMatcher("never"), filter));
+
+            final FilterChain chain = mock(FilterChain.class);
+            final MockRenderRequest request = new MockRenderRequest();
+            final MockRenderResponse response = new MockRenderResponse();
+            proxy.doFilter(request, response, chain);
+
+            verify(chain).doFilter(request, response);
+            verifyZeroInteractions(filter);
+        }
+    }
+
+    @Test
+    public void compiledChainRejectsFilterNotSupportingPhase() throws Exception {
+        final RenderFilter filter = mock(RenderFilter.class);
+        final PortletFilterChainProxy proxy = createProxy(true,
+                new DefaultPortletSecurityFilterChain(new AnyRequestMatcher(), filter));
+
+        final FilterChain chain = mock(FilterChain.class);
+        try {
+            proxy.doFilter(new MockActionRequest(), new MockActionResponse(), chain);
+            fail("ActionRequest should have been rejected by RenderFilter only chain");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+        verifyZeroInteractions(filter, chain);
+    }
+
+    @Test
+    public void filterCanShortCircuitCompiledChain() throws Exception {
+        final RenderFilter second = mock(RenderFilter.class);
+        final PortletFilterChainProxy proxy = createProxy(true,
+                new DefaultPortletSecurityFilterChain(new AnyRequestMatcher(), new GenericPortletFilterBean() {
+                    @Override
+                    protected void doCommonFilter(PortletRequest request, PortletResponse response, FilterChain chain) {
+                        request.setAttribute("stopped", Boolean.TRUE);
+                    }
+                }, second));
+
+        final FilterChain chain = mock(FilterChain.class);
+        final MockRenderRequest request = new MockRenderRequest();
+        proxy.doFilter(request, new MockRenderResponse(), chain);
+
+        assertEquals(Boolean.TRUE, request.getAttribute("stopped"));
+        verifyZeroInteractions(second, chain);
+    }
+
+    @Test
+    public void reusedChainsAreResetBetweenRequests() throws Exception {
+        final List<String> invocations = new ArrayList<String>();
+        final PortletFilterChainProxy proxy = createProxy(true, true, new DefaultPortletSecurityFilterChain(
+                new AnyRequestMatcher(), new RecordingFilter("a", invocations), new RecordingFilter("b", invocations)));
+
+        for (int i = 0; i < 3; i++) {
+            final FilterChain chain = mock(FilterChain.class);
+            final MockRenderRequest request = new MockRenderRequest();
+            final MockRenderResponse response = new MockRenderResponse();
+            proxy.doFilter(request, response, chain);
+            verify(chain).doFilter(request, response);
+        }
+
+        assertEquals(Arrays.asList("a", "b", "a", "b", "a", "b"), invocations);
+    }
+
+    @Test
+    public void reusedChainsSupportReentrantInvocation() throws Exception {
+        final List<String> invocations = new ArrayList<String>();
+        final PortletFilterChainProxy[] proxyRef = new PortletFilterChainProxy[1];
+        final PortletFilterChainProxy proxy = createProxy(true, true,
+                new DefaultPortletSecurityFilterChain(new AttributeRequestMatcher("inner"),
+                        new RecordingFilter("inner", invocations)),
+                new DefaultPortletSecurityFilterChain(new AnyRequestMatcher(),
+                        new RecordingFilter("outer", invocations), new GenericPortletFilterBean() {
+                            @Override
+                            protected void doCommonFilter(PortletRequest request, PortletResponse response,
+                                    FilterChain chain) throws IOException, PortletException {
+                                final MockRenderRequest innerRequest = new MockRenderRequest();
+                                innerRequest.setAttribute("inner", Boolean.TRUE);
+                                proxyRef[0].doFilter(innerRequest, new MockRenderResponse(), mock(FilterChain.class));
+                                PortletFilterUtils.doFilter(request, response, chain);
+                            }
+                        }, new RecordingFilter("last", invocations)));
+        proxyRef[0] = proxy;
+
+        final FilterChain chain = mock(FilterChain.class);
+        final MockRenderRequest request = new MockRenderRequest();
+        final MockRenderResponse response = new MockRenderResponse();
+        proxy.doFilter(request, response, chain);
+
+        verify(chain).doFilter(request, response);
+        assertEquals(Arrays.asList("outer", "inner", "last"), invocations);
+    }
+
+    @Test
+    public void destroyReleasesReusedChains() throws Exception {
+        final List<FilterChain> chains = new ArrayList<FilterChain>();
+        final PortletFilterChainProxy proxy = createProxy(true, true, new DefaultPortletSecurityFilterChain(
+                new AnyRequestMatcher(), new GenericPortletFilterBean() {
+                    @Override
+                    protected void doCommonFilter(PortletRequest request, PortletResponse response,
+                            FilterChain chain) throws IOException, PortletException {
+                        chains.add(chain);
+                        PortletFilterUtils.doFilter(request, response, chain);
+                    }
+                }));
+
+        proxy.doFilter(new MockRenderRequest(), new MockRenderResponse(), mock(FilterChain.class));
+        proxy.doFilter(new MockRenderRequest(), new MockRenderResponse(), mock(FilterChain.class));
+        assertSame(chains.get(0), chains.get(1));
+
+        // Once destroyed the proxy keeps no cursor, requests still work with per request chains
+        proxy.destroy();
+        proxy.doFilter(new MockRenderRequest(), new MockRenderResponse(), mock(FilterChain.class));
+        proxy.doFilter(new MockRenderRequest(), new MockRenderResponse(), mock(FilterChain.class));
+        assertNotSame(chains.get(1), chains.get(2));
+        assertNotSame(chains.get(2), chains.get(3));
+    }
+
+    @Test
+    public void reusedChainsAreNotTiedToThreads() throws Exception {
+        final List<FilterChain> chains = Collections.synchronizedList(new ArrayList<FilterChain>());
+        final PortletFilterChainProxy proxy = createProxy(true, true, new DefaultPortletSecurityFilterChain(
+                new AnyRequestMatcher(), new GenericPortletFilterBean() {
+                    @Override
+                    protected void doCommonFilter(PortletRequest request, PortletResponse response,
+                            FilterChain chain) throws IOException, PortletException {
+                        chains.add(chain);
+                        PortletFilterUtils.doFilter(request, response, chain);
+                    }
+                }));
+
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    proxy.doFilter(new MockRenderRequest(), new MockRenderResponse(), mock(FilterChain.class));
+                }
+                catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+
+        // The cursor released by the finished thread is pooled by the proxy, not by that thread
+        proxy.doFilter(new MockRenderRequest(), new MockRenderResponse(), mock(FilterChain.class));
+        assertEquals(2, chains.size());
+        assertSame(chains.get(0), chains.get(1));
+    }
+
+    @Test
+    public void chainSelectionIsCached() throws Exception {
+        for (boolean compiled : new boolean[] { false, true }) {
+            final List<String> invocations = new ArrayList<String>();
+            final RequestMatcher matcher = mock(RequestMatcher.class);
+            when(matcher.matches(any(PortletRequest.class))).thenReturn(true);
+            final RequestMatchCache<Integer> cache = new RequestMatchCache<Integer>();
+
+            final PortletFilterChainProxy proxy = new PortletFilterChainProxy(Arrays.<PortletSecurityFilterChain>asList(
+                    new DefaultPortletSecurityFilterChain(matcher, new RecordingFilter("a", invocations))));
+            proxy.setCompileFilterChains(compiled);
+            proxy.setChainSelectionCache(cache);
+            proxy.afterPropertiesSet();
+
+            final FilterChain chain = mock(FilterChain.class);
+            for (int i = 0; i < 3; i++) {
+                final MockRenderRequest request = new MockRenderRequest();
+                request.setWindowID("window");
+                proxy.doFilter(request, new MockRenderResponse(), chain);
+            }
+
+            verify(matcher, times(1)).matches(any(PortletRequest.class));
+            assertEquals(Arrays.asList("a", "a", "a"), invocations);
+            assertEquals(2, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void filterAndChainInvocationsAreRecorded() throws Exception {
+        for (boolean compiled : new boolean[] { false, true }) {
+            final PortletFilter first = new RecordingFilter("first", new ArrayList<String>());
+            final PortletFilter second = new RecordingFilter("second", new ArrayList<String>());
+            final PortletFilterChainMetrics metrics = mock(PortletFilterChainMetrics.class);
+            final PortletFilterChainProxy proxy = createProxy(compiled,
+                    new DefaultPortletSecurityFilterChain(new AttributeRequestMatcher("never")),
+                    new DefaultPortletSecurityFilterChain(new AnyRequestMatcher(), first, second));
+            proxy.setFilterChainMetrics(metrics);
+
+            final FilterChain chain = mock(FilterChain.class);
+            final MockResourceRequest request = new MockResourceRequest();
+            final MockResourceResponse response = new MockResourceResponse();
+            doThrow(new PortletException("failed")).when(chain).doFilter(request, response);
+            try {
+                proxy.doFilter(request, response, chain);
+                fail("PortletException should have been thrown");
+            }
+            catch (PortletException e) {
+                //expected
+            }
+
+            verify(metrics).recordFilterInvocation(eq(PortletPhase.RESOURCE), eq(1), eq(0), same(first),
+                    anyLong(), anyLong(), eq(true));
+            verify(metrics).recordFilterInvocation(eq(PortletPhase.RESOURCE), eq(1), eq(1), same(second),
+                    anyLong(), anyLong(), eq(true));
+            verify(metrics).recordChainInvocation(eq(PortletPhase.RESOURCE), eq(1), anyLong(), eq(true));
+        }
+    }
+
+    @Test
+    public void filterSelfTimeExcludesDownstreamFilters() throws Exception {
+        for (boolean compiled : new boolean[] { false, true }) {
+            final DefaultPortletFilterChainMetrics metrics = new DefaultPortletFilterChainMetrics();
+            final PortletFilterChainProxy proxy = createProxy(compiled, new DefaultPortletSecurityFilterChain(
+                    new AnyRequestMatcher(), new RecordingFilter("fast", new ArrayList<String>()),
+                    new GenericPortletFilterBean() {
+                        @Override
+                        protected void doCommonFilter(PortletRequest request, PortletResponse response,
+                                FilterChain chain) throws IOException, PortletException {
+                            try {
+                                Thread.sleep(20);
+                            }
+                            catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            PortletFilterUtils.doFilter(request, response, chain);
+                        }
+                    }));
+            proxy.setFilterChainMetrics(metrics);
+
+            proxy.doFilter(new MockRenderRequest(), new MockRenderResponse(), mock(FilterChain.class));
+
+            final InvocationStatistics fast = metrics.getFilterStatistics(PortletPhase.RENDER, 0, 0);
+            final InvocationStatistics slow = metrics.getFilterStatistics(PortletPhase.RENDER, 0, 1);
+            final long slowNanos = TimeUnit.MILLISECONDS.toNanos(20);
+            assertTrue(fast.getTotalNanos() >= slowNanos);
+            assertTrue(fast.getSelfNanos() < slowNanos);
+            assertTrue(slow.getSelfNanos() >= slowNanos);
+            assertTrue(metrics.getChainStatistics(PortletPhase.RENDER, 0).getTotalNanos() >= slowNanos);
+        }
+    }
+
+    private PortletFilterChainProxy createProxy(boolean compiled, PortletSecurityFilterChain... chains) {
+        return createProxy(compiled, false, chains);
+    }
+
+    private PortletFilterChainProxy createProxy(boolean compiled, boolean reuse, PortletSecurityFilterChain... chains) {
+        final PortletFilterChainProxy proxy = new PortletFilterChainProxy(Arrays.asList(chains));
+        proxy.setCompileFilterChains(compiled);
+        proxy.setReuseFilterChains(reuse);
+        proxy.afterPropertiesSet();
+        return proxy;
+    }
+
+    private static final class AttributeRequestMatcher implements RequestMatcher {
+        private final String attribute;
+
+        private AttributeRequestMatcher(String attribute) {
+            this.attribute = attribute;
+        }
+
+        @Override
+        public boolean matches(PortletRequest request) {
+            return request.getAttribute(attribute) != null;
+        }
+    }
+
+    private static final class RecordingFilter extends GenericPortletFilterBean {
+        private final String name;
+        private final List<String> invocations;
+
+        private RecordingFilter(String name, List<String> invocations) {
+            this.name = name;
+            this.invocations = invocations;
+        }
+
+        @Override
+        protected void doCommonFilter(PortletRequest request, PortletResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            invocations.add(name);
+            PortletFilterUtils.doFilter(request, response, chain);
+        }
+    }
+}
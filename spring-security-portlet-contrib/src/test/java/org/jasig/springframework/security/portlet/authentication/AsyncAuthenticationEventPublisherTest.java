@@ -0,0 +1,245 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.jasig.springframework.security.portlet.authentication.AsyncAuthenticationEventPublisher.OverflowPolicy;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authentication.event.InteractiveAuthenticationSuccessEvent;
+
+public class AsyncAuthenticationEventPublisherTest {
+    private ApplicationEventPublisher delegate;
+    private QueuingExecutor executor;
+    private AsyncAuthenticationEventPublisher publisher;
+
+    @Before
+    public void setup() {
+        delegate = mock(ApplicationEventPublisher.class);
+        executor = new QueuingExecutor();
+        publisher = new AsyncAuthenticationEventPublisher();
+        publisher.setApplicationEventPublisher(delegate);
+        publisher.setExecutor(executor);
+    }
+
+    @Test
+    public void eventsAreDeliveredInOrderOnTheExecutor() throws Exception {
+        publisher.afterPropertiesSet();
+        ApplicationEvent first = createEvent("cat");
+        ApplicationEvent second = createEvent("dog");
+
+        publisher.publishEvent(first);
+        publisher.publishEvent(second);
+        verify(delegate, never()).publishEvent(any(ApplicationEvent.class));
+        assertEquals(2, publisher.getQueueDepth());
+        // Only one drain is scheduled while one is pending
+        assertEquals(1, executor.tasks.size());
+
+        executor.runAll();
+        InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).publishEvent(first);
+        inOrder.verify(delegate).publishEvent(second);
+        assertEquals(0, publisher.getQueueDepth());
+        assertEquals(2, publisher.getPublishedCount());
+        assertEquals(1, publisher.getBatchCount());
+    }
+
+    @Test
+    public void batchesAreLimitedToMaxBatchSize() throws Exception {
+        publisher.setMaxBatchSize(2);
+        publisher.afterPropertiesSet();
+        for (int i = 0; i < 5; i++) {
+            publisher.publishEvent(createEvent("user" + i));
+        }
+
+        executor.runAll();
+        assertEquals(5, publisher.getPublishedCount());
+        assertEquals(3, publisher.getBatchCount());
+    }
+
+    @Test
+    public void dropPolicyDiscardsEventsWhenFull() throws Exception {
+        publisher.setQueueCapacity(2);
+        publisher.afterPropertiesSet();
+        for (int i = 0; i < 5; i++) {
+            publisher.publishEvent(createEvent("user" + i));
+        }
+
+        assertEquals(2, publisher.getQueueDepth());
+        assertEquals(3, publisher.getDroppedCount());
+        executor.runAll();
+        verify(delegate, times(2)).publishEvent(any(ApplicationEvent.class));
+    }
+
+    @Test
+    public void callerRunsPolicyDeliversOnPublishingThreadWhenFull() throws Exception {
+        publisher.setQueueCapacity(1);
+        publisher.setOverflowPolicy(OverflowPolicy.CALLER_RUNS);
+        publisher.afterPropertiesSet();
+        ApplicationEvent queued = createEvent("cat");
+        ApplicationEvent overflow = createEvent("dog");
+
+        publisher.publishEvent(queued);
+        publisher.publishEvent(overflow);
+        verify(delegate).publishEvent(overflow);
+        verify(delegate, never()).publishEvent(queued);
+        assertEquals(1, publisher.getCallerRunsCount());
+        assertEquals(0, publisher.getDroppedCount());
+
+        executor.runAll();
+        verify(delegate).publishEvent(queued);
+    }
+
+    @Test
+    public void listenerFailureDoesNotStopDelivery() throws Exception {
+        publisher.afterPropertiesSet();
+        ApplicationEvent failing = createEvent("cat");
+        ApplicationEvent second = createEvent("dog");
+        doThrow(new IllegalStateException("listener failed")).when(delegate).publishEvent(failing);
+
+        publisher.publishEvent(failing);
+        publisher.publishEvent(second);
+        executor.runAll();
+        verify(delegate).publishEvent(second);
+        assertEquals(1, publisher.getPublishedCount());
+    }
+
+    @Test
+    public void destroyDeliversQueuedEvents() throws Exception {
+        publisher.afterPropertiesSet();
+        ApplicationEvent queued = createEvent("cat");
+        publisher.publishEvent(queued);
+
+        publisher.destroy();
+        verify(delegate).publishEvent(queued);
+
+        // After destroy events are delivered synchronously
+        ApplicationEvent late = createEvent("dog");
+        publisher.publishEvent(late);
+        verify(delegate).publishEvent(late);
+    }
+
+    @Test
+    public void destroyWaitsForTheBatchBeingDelivered() throws Exception {
+        final CountDownLatch delivering = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<ApplicationEvent> delivered = Collections.synchronizedList(new ArrayList<ApplicationEvent>());
+        publisher.setApplicationEventPublisher(new ApplicationEventPublisher() {
+            @Override
+            public void publishEvent(ApplicationEvent event) {
+                delivered.add(event);
+                if (delivered.size() == 1) {
+                    delivering.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        publisher.setMaxBatchSize(1);
+        publisher.afterPropertiesSet();
+        ApplicationEvent first = createEvent("cat");
+        ApplicationEvent second = createEvent("dog");
+        publisher.publishEvent(first);
+        publisher.publishEvent(second);
+
+        Thread worker = new Thread() {
+            @Override
+            public void run() {
+                executor.runAll();
+            }
+        };
+        worker.start();
+        assertTrue(delivering.await(5, TimeUnit.SECONDS));
+
+        Thread destroyer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    publisher.destroy();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        destroyer.start();
+        // The second event must not be delivered while the first is still being delivered
+        destroyer.join(100);
+        assertEquals(Arrays.asList(first), delivered);
+
+        release.countDown();
+        worker.join(5000);
+        destroyer.join(5000);
+        assertEquals(Arrays.asList(first, second), delivered);
+    }
+
+    @Test
+    public void ownedExecutorDeliversEvents() throws Exception {
+        publisher.setExecutor(null);
+        publisher.afterPropertiesSet();
+        publisher.publishEvent(createEvent("cat"));
+        publisher.destroy();
+        verify(delegate).publishEvent(any(ApplicationEvent.class));
+    }
+
+    private static ApplicationEvent createEvent(String name) {
+        return new InteractiveAuthenticationSuccessEvent(new TestingAuthenticationToken(name, "N/A"),
+                AsyncAuthenticationEventPublisherTest.class);
+    }
+
+    private static final class QueuingExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+}
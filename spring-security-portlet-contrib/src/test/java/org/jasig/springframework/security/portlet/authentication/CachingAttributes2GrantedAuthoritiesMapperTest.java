@@ -0,0 +1,87 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.mock.web.portlet.MockRenderRequest;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+public class CachingAttributes2GrantedAuthoritiesMapperTest {
+
+    @Test
+    public void sameRoleSetSharesOneList() {
+        final CachingAttributes2GrantedAuthoritiesMapper mapper = new CachingAttributes2GrantedAuthoritiesMapper();
+
+        final List<GrantedAuthority> first = mapper.getGrantedAuthorities(Arrays.asList("ROLE_A", "ROLE_B"));
+        final List<GrantedAuthority> second = mapper.getGrantedAuthorities(Arrays.asList("ROLE_B", "ROLE_A", "ROLE_A"));
+
+        assertSame(first, second);
+        assertEquals(AuthorityUtils.createAuthorityList("ROLE_A", "ROLE_B"), first);
+        assertTrue(first instanceof GrantedAuthorityList);
+        assertEquals(1, mapper.getSize());
+        assertEquals(1, mapper.getHitCount());
+        assertEquals(1, mapper.getMissCount());
+    }
+
+    @Test
+    public void authoritiesAreInternedAcrossRoleSets() {
+        final CachingAttributes2GrantedAuthoritiesMapper mapper = new CachingAttributes2GrantedAuthoritiesMapper();
+
+        final List<GrantedAuthority> ab = mapper.getGrantedAuthorities(Arrays.asList("ROLE_A", "ROLE_B"));
+        final List<GrantedAuthority> b = mapper.getGrantedAuthorities(Arrays.asList("ROLE_B"));
+
+        assertNotSame(ab, b);
+        assertSame(ab.get(1), b.get(0));
+        assertEquals(2, mapper.getAuthorityPoolSize());
+    }
+
+    @Test
+    public void attributesBeyondLimitAreNotCached() {
+        final CachingAttributes2GrantedAuthoritiesMapper mapper = new CachingAttributes2GrantedAuthoritiesMapper();
+        mapper.setMaxAttributes(1);
+
+        mapper.getGrantedAuthorities(Arrays.asList("ROLE_A"));
+        final List<GrantedAuthority> first = mapper.getGrantedAuthorities(Arrays.asList("ROLE_A", "ROLE_B"));
+        final List<GrantedAuthority> second = mapper.getGrantedAuthorities(Arrays.asList("ROLE_A", "ROLE_B"));
+
+        assertNotSame(first, second);
+        assertEquals(first, second);
+        assertEquals(1, mapper.getSize());
+    }
+
+    @Test
+    public void detailsKeepSharedList() {
+        final CachingAttributes2GrantedAuthoritiesMapper mapper = new CachingAttributes2GrantedAuthoritiesMapper();
+        final List<GrantedAuthority> authorities = mapper.getGrantedAuthorities(Arrays.asList("ROLE_A"));
+
+        final PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails details =
+                new PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails(new MockRenderRequest(), authorities);
+
+        assertSame(authorities, details.getGrantedAuthorities());
+    }
+}
@@ -21,24 +21,35 @@ package org.jasig.springframework.security.portlet.authentication;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.portlet.PortletRequest;
 import javax.portlet.filter.FilterChain;
 
+import org.jasig.springframework.security.portlet.util.AuthenticationValidator;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.portlet.MockPortletSession;
 import org.springframework.mock.web.portlet.MockRenderRequest;
 import org.springframework.mock.web.portlet.MockRenderResponse;
 import org.springframework.security.authentication.AuthenticationDetailsSource;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.event.InteractiveAuthenticationSuccessEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 
@@ -140,6 +151,372 @@ public class PortletAuthenticationProcessingFilterTest {
         filter.doFilter(request, response, chain);
     }
 
+    @Test
+    public void cachedAuthenticationIsReusedWithinTimeToLive() throws Exception {
+        MockRenderRequest request = new MockRenderRequest();
+        request.setRemoteUser("cat");
+        request.getPortletSession();
+        MockRenderResponse response = new MockRenderResponse();
+        FilterChain chain = mock(FilterChain.class);
+        AuthenticationManager am = createAuthenticationManager();
+        MutableClockAuthenticationCache cache = new MutableClockAuthenticationCache();
+        cache.setTimeToLive(1000);
+        PortletAuthenticationProcessingFilter filter = new PortletAuthenticationProcessingFilter();
+        filter.setAuthenticationManager(am);
+        filter.setAuthenticationDetailsSource(createAuthenticationDetailsSource());
+        filter.setAuthenticationCache(cache);
+        filter.afterPropertiesSet();
+
+        filter.doFilter(request, response, chain);
+        Authentication cat = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        filter.doFilter(request, response, chain);
+        assertSame(cat, SecurityContextHolder.getContext().getAuthentication());
+        verify(am, times(1)).authenticate(any(Authentication.class));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // Expire the entry
+        cache.time += TimeUnit.SECONDS.toNanos(1);
+        SecurityContextHolder.clearContext();
+        filter.doFilter(request, response, chain);
+        verify(am, times(2)).authenticate(any(Authentication.class));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void cachedAuthenticationIsScopedToWindowAndDoesNotPublishEvent() throws Exception {
+        MockPortletSession session = new MockPortletSession();
+        MockRenderRequest request = new MockRenderRequest();
+        request.setRemoteUser("cat");
+        request.setSession(session);
+        request.setWindowID("portletA");
+        MockRenderResponse response = new MockRenderResponse();
+        FilterChain chain = mock(FilterChain.class);
+        AuthenticationManager am = createAuthenticationManager();
+        ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+        PortletAuthenticationProcessingFilter filter = new PortletAuthenticationProcessingFilter();
+        filter.setAuthenticationManager(am);
+        filter.setAuthenticationDetailsSource(createAuthenticationDetailsSource());
+        filter.setAuthenticationCache(new AuthenticationCache());
+        filter.setApplicationEventPublisher(publisher);
+        filter.afterPropertiesSet();
+
+        filter.doFilter(request, response, chain);
+        SecurityContextHolder.clearContext();
+        filter.doFilter(request, response, chain);
+        assertNotNull(SecurityContextHolder.getContext().getAuthentication());
+        verify(am, times(1)).authenticate(any(Authentication.class));
+        verify(publisher, times(1)).publishEvent(any(InteractiveAuthenticationSuccessEvent.class));
+
+        // Another portlet in the same session authenticates on its own
+        MockRenderRequest otherRequest = new MockRenderRequest();
+        otherRequest.setRemoteUser("cat");
+        otherRequest.setSession(session);
+        otherRequest.setWindowID("portletB");
+        SecurityContextHolder.clearContext();
+        filter.doFilter(otherRequest, response, chain);
+        verify(am, times(2)).authenticate(any(Authentication.class));
+    }
+
+    @Test
+    public void cachedAuthenticationIsValidated() throws Exception {
+        MockRenderRequest request = new MockRenderRequest();
+        request.setRemoteUser("cat");
+        request.getPortletSession();
+        MockRenderResponse response = new MockRenderResponse();
+        FilterChain chain = mock(FilterChain.class);
+        AuthenticationManager am = createAuthenticationManager();
+        AuthenticationValidator validator = mock(AuthenticationValidator.class);
+        PortletAuthenticationProcessingFilter filter = new PortletAuthenticationProcessingFilter();
+        filter.setAuthenticationManager(am);
+        filter.setAuthenticationDetailsSource(createAuthenticationDetailsSource());
+        filter.setAuthenticationCache(new AuthenticationCache());
+        filter.setAuthenticationValidator(validator);
+        filter.setCheckForPrincipalChanges(true);
+        filter.afterPropertiesSet();
+
+        filter.doFilter(request, response, chain);
+        // Validator rejects the current and the cached authentication
+        filter.doFilter(request, response, chain);
+        verify(am, times(2)).authenticate(any(Authentication.class));
+    }
+
+    @Test
+    public void userInfoPrincipalChangeIsDetected() throws Exception {
+        MockRenderRequest request = new MockRenderRequest();
+        request.setAttribute(PortletRequest.USER_INFO, ImmutableMap.of("myUsernameHeader", "wolfman"));
+        request.getPortletSession();
+        MockRenderResponse response = new MockRenderResponse();
+        FilterChain chain = mock(FilterChain.class);
+        AuthenticationManager am = createAuthenticationManager();
+        PortletAuthenticationProcessingFilter filter = new PortletAuthenticationProcessingFilter();
+        filter.setAuthenticationManager(am);
+        filter.setAuthenticationDetailsSource(createAuthenticationDetailsSource());
+        filter.setUserNameAttributes(Arrays.asList("myUsernameHeader"));
+        filter.setCheckForPrincipalChanges(true);
+        filter.setInvalidateSessionOnPrincipalChange(false);
+        filter.afterPropertiesSet();
+
+        filter.doFilter(request, response, chain);
+        filter.doFilter(request, response, chain);
+        assertEquals("wolfman", SecurityContextHolder.getContext().getAuthentication().getName());
+        verify(am, times(1)).authenticate(any(Authentication.class));
+
+        // Only the USER_INFO principal changed
+        request.setAttribute(PortletRequest.USER_INFO, ImmutableMap.of("myUsernameHeader", "dracula"));
+        filter.doFilter(request, response, chain);
+        assertEquals("dracula", SecurityContextHolder.getContext().getAuthentication().getName());
+        verify(am, times(2)).authenticate(any(Authentication.class));
+    }
+
+    @Test
+    public void concurrentAuthenticationsOfTheSameSessionAreCoalesced() throws Exception {
+        final MockPortletSession session = new MockPortletSession();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger authenticateCount = new AtomicInteger();
+        final PortletAuthenticationProcessingFilter filter = new PortletAuthenticationProcessingFilter();
+        filter.setAuthenticationManager(new AuthenticationManager() {
+            public Authentication authenticate(Authentication authentication) {
+                authenticateCount.incrementAndGet();
+                entered.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return authentication;
+            }
+        });
+        filter.setAuthenticationDetailsSource(createAuthenticationDetailsSource());
+        filter.setCoalesceAuthentications(true);
+        filter.afterPropertiesSet();
+
+        final int threadCount = 5;
+        final AtomicReferenceArray<Authentication> results = new AtomicReferenceArray<Authentication>(threadCount);
+        final Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    MockRenderRequest request = new MockRenderRequest();
+                    request.setRemoteUser("cat");
+                    request.setSession(session);
+                    try {
+                        filter.doFilter(request, new MockRenderResponse(), mock(FilterChain.class));
+                    }
+                    catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    results.set(index, SecurityContextHolder.getContext().getAuthentication());
+                }
+            });
+        }
+
+        // Start the leader and wait for it to be inside the AuthenticationManager before starting the others
+        threads[0].start();
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        for (int i = 1; i < threadCount; i++) {
+            threads[i].start();
+        }
+        for (int i = 1; i < threadCount; i++) {
+            awaitWaiting(threads[i]);
+        }
+        release.countDown();
+        for (final Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        assertEquals(1, authenticateCount.get());
+        for (int i = 0; i < threadCount; i++) {
+            assertNotNull(results.get(i));
+            assertSame(results.get(0), results.get(i));
+        }
+
+        // Once complete the next authentication is not coalesced with the finished one
+        MockRenderRequest request = new MockRenderRequest();
+        request.setRemoteUser("cat");
+        request.setSession(session);
+        filter.doFilter(request, new MockRenderResponse(), mock(FilterChain.class));
+        assertEquals(2, authenticateCount.get());
+    }
+
+    @Test
+    public void windowsOfOneSessionWithEqualDetailsAreCoalesced() throws Exception {
+        final MockPortletSession session = new MockPortletSession();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch adminEntered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger authenticateCount = new AtomicInteger();
+        final PortletAuthenticationProcessingFilter filter = new PortletAuthenticationProcessingFilter();
+        filter.setAuthenticationManager(new AuthenticationManager() {
+            public Authentication authenticate(Authentication authentication) {
+                authenticateCount.incrementAndGet();
+                if ("ROLE_ADMIN".equals(authentication.getDetails())) {
+                    adminEntered.countDown();
+                    return authentication;
+                }
+                entered.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return authentication;
+            }
+        });
+        // Details are equal for every window except the admin portlet, as with identical role mappings
+        filter.setAuthenticationDetailsSource(new AuthenticationDetailsSource<PortletRequest, String>() {
+            public String buildDetails(PortletRequest request) {
+                return request.getWindowID().startsWith("admin") ? "ROLE_ADMIN" : "ROLE_USER";
+            }
+        });
+        filter.setCoalesceAuthentications(true);
+        filter.afterPropertiesSet();
+
+        final int windowCount = 5;
+        final Thread[] threads = new Thread[windowCount];
+        for (int i = 0; i < windowCount; i++) {
+            threads[i] = createRequestThread(filter, session, "window" + i);
+        }
+        final Thread adminWindow = createRequestThread(filter, session, "adminWindow");
+
+        try {
+            // Start the leader and wait for it to be inside the AuthenticationManager before starting the others
+            threads[0].start();
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            for (int i = 1; i < windowCount; i++) {
+                threads[i].start();
+            }
+            for (int i = 1; i < windowCount; i++) {
+                awaitWaiting(threads[i]);
+            }
+
+            // Different details are not coalesced with the authentication in flight
+            adminWindow.start();
+            assertTrue(adminEntered.await(10, TimeUnit.SECONDS));
+        }
+        finally {
+            release.countDown();
+            for (final Thread thread : threads) {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            }
+            adminWindow.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        assertEquals(2, authenticateCount.get());
+    }
+
+    @Test
+    public void requestsWithoutSessionAreNotCoalesced() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final PortletAuthenticationProcessingFilter filter = new PortletAuthenticationProcessingFilter();
+        filter.setAuthenticationManager(new AuthenticationManager() {
+            public Authentication authenticate(Authentication authentication) {
+                entered.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return authentication;
+            }
+        });
+        filter.setAuthenticationDetailsSource(createAuthenticationDetailsSource());
+        filter.setCoalesceAuthentications(true);
+        filter.afterPropertiesSet();
+
+        // Two browsers without a session, same principal and equal details
+        final Thread first = createRequestThread(filter, null, "window");
+        final Thread second = createRequestThread(filter, null, "window");
+        try {
+            first.start();
+            second.start();
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+        }
+        finally {
+            release.countDown();
+            first.join(TimeUnit.SECONDS.toMillis(10));
+            second.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    @Test
+    public void timedOutCoalescedAuthenticationFallsBackToCallerThread() throws Exception {
+        final MockPortletSession session = new MockPortletSession();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger authenticateCount = new AtomicInteger();
+        final PortletAuthenticationProcessingFilter filter = new PortletAuthenticationProcessingFilter();
+        filter.setAuthenticationManager(new AuthenticationManager() {
+            public Authentication authenticate(Authentication authentication) {
+                if (authenticateCount.incrementAndGet() == 1) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return authentication;
+            }
+        });
+        filter.setAuthenticationDetailsSource(createAuthenticationDetailsSource());
+        filter.setCoalesceAuthentications(true);
+        filter.setCoalescedAuthenticationTimeout(50);
+        filter.afterPropertiesSet();
+
+        final Thread leader = createRequestThread(filter, session, "window");
+        final Thread waiter = createRequestThread(filter, session, "window");
+        try {
+            leader.start();
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            // The leader is stuck in the AuthenticationManager, the waiter gives up and authenticates itself
+            waiter.start();
+            waiter.join(TimeUnit.SECONDS.toMillis(10));
+            assertEquals(Thread.State.TERMINATED, waiter.getState());
+            assertEquals(2, authenticateCount.get());
+        }
+        finally {
+            release.countDown();
+            leader.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private static Thread createRequestThread(final PortletAuthenticationProcessingFilter filter,
+            final MockPortletSession session, final String windowId) {
+        return new Thread(new Runnable() {
+            public void run() {
+                MockRenderRequest request = new MockRenderRequest();
+                request.setRemoteUser("cat");
+                if (session != null) {
+                    request.setSession(session);
+                }
+                request.setWindowID(windowId);
+                try {
+                    filter.doFilter(request, new MockRenderResponse(), mock(FilterChain.class));
+                }
+                catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue("Timed out waiting for " + thread.getName(), System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
     /**
      * Create an authentication manager which returns the passed in object.
      */
@@ -162,4 +539,13 @@ public class PortletAuthenticationProcessingFilterTest {
         AuthenticationDetailsSource<PortletRequest, ?> ads = mock(AuthenticationDetailsSource.class);
         return ads;
     }
+
+    private static final class MutableClockAuthenticationCache extends AuthenticationCache {
+        private long time = 0;
+
+        @Override
+        protected long currentTime() {
+            return time;
+        }
+    }
 }
@@ -0,0 +1,140 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.portlet.PortletRequest;
+
+import org.junit.Test;
+import org.springframework.mock.web.portlet.MockRenderRequest;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.authority.mapping.SimpleMappableAttributesRetriever;
+
+import com.google.common.collect.ImmutableMap;
+
+public class PortletPreAuthenticatedAuthenticationDetailsSourceTest {
+    private static final Set<String> MAPPABLE_ROLES = new LinkedHashSet<String>(Arrays.asList("ROLE_C", "ROLE_A", "ROLE_B"));
+
+    @Test
+    public void rolesAreResolvedWithIsUserInRole() throws Exception {
+        final PortletPreAuthenticatedAuthenticationDetailsSource source = createDetailsSource();
+        final MockRenderRequest request = new MockRenderRequest();
+        request.addUserRole("ROLE_C");
+        request.addUserRole("ROLE_A");
+        request.addUserRole("ROLE_NOT_MAPPABLE");
+
+        // In the iteration order of the mappable roles, not the order of the role ordinals
+        assertEquals(Arrays.asList("ROLE_C", "ROLE_A"), source.getUserRoles(request));
+        assertEquals(AuthorityUtils.createAuthorityList("ROLE_C", "ROLE_A"), source.buildDetails(request).getGrantedAuthorities());
+    }
+
+    @Test
+    public void rolesAreReadFromRequestAttribute() throws Exception {
+        final PortletPreAuthenticatedAuthenticationDetailsSource source = createDetailsSource();
+        final AttributeUserRolesSource rolesSource = new AttributeUserRolesSource();
+        rolesSource.setRequestAttribute("userRoles");
+        source.setUserRolesSource(rolesSource);
+
+        final MockRenderRequest request = new MockRenderRequest();
+        request.setAttribute("userRoles", new String[] { "ROLE_B", "ROLE_NOT_MAPPABLE" });
+        // Would be found by isUserInRole, the bulk source wins
+        request.addUserRole("ROLE_C");
+
+        assertEquals(Arrays.asList("ROLE_B"), source.getUserRoles(request));
+    }
+
+    @Test
+    public void rolesAreReadFromUserInfoWithFallback() throws Exception {
+        final PortletPreAuthenticatedAuthenticationDetailsSource source = createDetailsSource();
+        final AttributeUserRolesSource rolesSource = new AttributeUserRolesSource();
+        rolesSource.setUserInfoAttribute("groups");
+        source.setUserRolesSource(rolesSource);
+
+        final MockRenderRequest request = new MockRenderRequest();
+        request.setAttribute(PortletRequest.USER_INFO, ImmutableMap.of("groups", "ROLE_A, ROLE_B"));
+        assertEquals(Arrays.asList("ROLE_A", "ROLE_B"), source.getUserRoles(request));
+
+        // No roles in user info, falls back to isUserInRole
+        final MockRenderRequest fallbackRequest = new MockRenderRequest();
+        fallbackRequest.addUserRole("ROLE_C");
+        assertEquals(Arrays.asList("ROLE_C"), source.getUserRoles(fallbackRequest));
+    }
+
+    @Test
+    public void roleLinksAreAppliedToContainerRoles() throws Exception {
+        // What the container reports through isUserInRole for a user with the container roles ROLE_A and staff
+        final MockRenderRequest containerRequest = new MockRenderRequest();
+        containerRequest.addUserRole("ROLE_A");
+        containerRequest.addUserRole("ROLE_B");
+        final Collection<String> expected = createDetailsSource().getUserRoles(containerRequest);
+        assertEquals(Arrays.asList("ROLE_A", "ROLE_B"), expected);
+
+        final PortletPreAuthenticatedAuthenticationDetailsSource source = createDetailsSource();
+        final AttributeUserRolesSource rolesSource = new AttributeUserRolesSource();
+        rolesSource.setRequestAttribute("userRoles");
+        rolesSource.setRoleLinks(ImmutableMap.of("ROLE_B", "staff", "ROLE_C", "faculty"));
+        source.setUserRolesSource(rolesSource);
+
+        // ROLE_C is linked to faculty, a container role of the same name does not grant it
+        final MockRenderRequest request = new MockRenderRequest();
+        request.setAttribute("userRoles", "ROLE_A, staff, ROLE_C");
+        assertEquals(expected, source.getUserRoles(request));
+    }
+
+    @Test
+    public void ordinalsAreStable() {
+        final IndexedRoleResolver resolver = new IndexedRoleResolver(MAPPABLE_ROLES, null);
+        assertEquals(0, resolver.getOrdinal("ROLE_A"));
+        assertEquals(1, resolver.getOrdinal("ROLE_B"));
+        assertEquals(2, resolver.getOrdinal("ROLE_C"));
+        assertEquals(-1, resolver.getOrdinal("ROLE_D"));
+
+        final MockRenderRequest request = new MockRenderRequest();
+        request.addUserRole("ROLE_B");
+        final BitSet expected = new BitSet();
+        expected.set(1);
+        assertEquals(expected, resolver.resolve(request));
+    }
+
+    @Test
+    public void missingAttributesReturnNull() {
+        final AttributeUserRolesSource rolesSource = new AttributeUserRolesSource();
+        rolesSource.setRequestAttribute("userRoles");
+        rolesSource.setUserInfoAttribute("groups");
+        final Collection<String> roles = rolesSource.getUserRoles(new MockRenderRequest());
+        assertNull(roles);
+    }
+
+    private PortletPreAuthenticatedAuthenticationDetailsSource createDetailsSource() throws Exception {
+        final PortletPreAuthenticatedAuthenticationDetailsSource source = new PortletPreAuthenticatedAuthenticationDetailsSource();
+        final SimpleMappableAttributesRetriever retriever = new SimpleMappableAttributesRetriever();
+        retriever.setMappableAttributes(MAPPABLE_ROLES);
+        source.setMappableRolesRetriever(retriever);
+        source.afterPropertiesSet();
+        return source;
+    }
+}
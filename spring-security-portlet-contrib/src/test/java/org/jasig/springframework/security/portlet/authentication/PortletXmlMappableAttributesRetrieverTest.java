@@ -19,17 +19,28 @@
 package org.jasig.springframework.security.portlet.authentication;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 import java.util.Set;
 
 import javax.portlet.PortletConfig;
 
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.mock.web.portlet.MockPortletConfig;
+import org.springframework.mock.web.portlet.MockPortletContext;
 
 import com.google.common.collect.ImmutableSet;
 
@@ -100,4 +111,104 @@ public class PortletXmlMappableAttributesRetrieverTest {
 		
 		assertEquals(Collections.emptySet(), mappableAttributes);
 	}
+
+	@Test
+	public void testSharedModelParsedOncePerPortletContext() throws Exception {
+		final Resource resource = mock(Resource.class);
+		when(resource.getInputStream()).thenAnswer(new Answer<InputStream>() {
+			public InputStream answer(InvocationOnMock invocation) throws Throwable {
+				return new ClassPathResource("/org/jasig/springframework/security/portlet/authentication/portlet_2_with_attributes.xml").getInputStream();
+			}
+		});
+		final ResourceLoader resourceLoader = mock(ResourceLoader.class);
+		when(resourceLoader.getResource("/WEB-INF/portlet.xml")).thenReturn(resource);
+		final MockPortletContext portletContext = new MockPortletContext();
+		
+		final PortletXmlMappableAttributesRetriever first = new PortletXmlMappableAttributesRetriever();
+		first.setResourceLoader(resourceLoader);
+		first.setPortletConfig(new MockPortletConfig(portletContext, "ContextTestPortlet"));
+		first.afterPropertiesSet();
+		
+		final PortletXmlMappableAttributesRetriever second = new PortletXmlMappableAttributesRetriever();
+		second.setResourceLoader(resourceLoader);
+		second.setPortletConfig(new MockPortletConfig(portletContext, "ContextTestPortlet2"));
+		second.afterPropertiesSet();
+		
+		final PortletXmlMappableAttributesRetriever application = new PortletXmlMappableAttributesRetriever();
+		application.setResourceLoader(resourceLoader);
+		application.setPortletContext(portletContext);
+		application.afterPropertiesSet();
+		
+		assertEquals(ImmutableSet.of("name1", "name2"), first.getMappableAttributes());
+		assertEquals(ImmutableSet.of("name2", "name3"), second.getMappableAttributes());
+		assertEquals(ImmutableSet.of("name1", "name2", "name3"), application.getMappableAttributes());
+		verify(resource, times(1)).getInputStream();
+		
+		final PortletXmlSecurityRoleRefs roleRefs = (PortletXmlSecurityRoleRefs) portletContext.getAttribute(PortletXmlSecurityRoleRefs.PORTLET_CONTEXT_ATTRIBUTE);
+		assertSame(roleRefs, PortletXmlSecurityRoleRefs.getSharedInstance(portletContext, resource));
+		assertEquals(ImmutableSet.of("ContextTestPortlet", "ContextTestPortlet2"), roleRefs.getPortletNames());
+		assertEquals(Collections.emptySet(), roleRefs.getRoleNames("UnknownPortlet"));
+	}
+
+	@Test
+	public void testSharedModelFallsBackToDomParser() throws Exception {
+		final Resource resource = mock(Resource.class);
+		when(resource.getInputStream()).thenReturn(new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("Stream failed");
+			}
+		}).thenAnswer(new Answer<InputStream>() {
+			public InputStream answer(InvocationOnMock invocation) throws Throwable {
+				return new ClassPathResource("/org/jasig/springframework/security/portlet/authentication/portlet_2_with_attributes.xml").getInputStream();
+			}
+		});
+		final ResourceLoader resourceLoader = mock(ResourceLoader.class);
+		when(resourceLoader.getResource("/WEB-INF/portlet.xml")).thenReturn(resource);
+		final MockPortletContext portletContext = new MockPortletContext();
+		
+		final PortletXmlMappableAttributesRetriever retriever = new PortletXmlMappableAttributesRetriever();
+		retriever.setResourceLoader(resourceLoader);
+		retriever.setPortletConfig(new MockPortletConfig(portletContext, "ContextTestPortlet"));
+		retriever.afterPropertiesSet();
+		
+		assertEquals(ImmutableSet.of("name1", "name2"), retriever.getMappableAttributes());
+		assertNull(portletContext.getAttribute(PortletXmlSecurityRoleRefs.PORTLET_CONTEXT_ATTRIBUTE));
+	}
+
+	@Test
+	public void testDomParserMatchesStreamingParser() throws Exception {
+		final ResourceLoader resourceLoader = mock(ResourceLoader.class);
+		when(resourceLoader.getResource("/WEB-INF/portlet.xml")).thenReturn(new ClassPathResource("/org/jasig/springframework/security/portlet/authentication/portlet_2_with_attributes.xml"));
+		
+		for (final String portletName : new String[] { null, "ContextTestPortlet", "ContextTestPortlet2" }) {
+			final Set<String> streamed = getMappableAttributes(resourceLoader, portletName, true);
+			final Set<String> dom = getMappableAttributes(resourceLoader, portletName, false);
+			assertEquals(dom, streamed);
+		}
+	}
+	
+	@Test
+	public void testStreamingKeepsOnlyRequestedPortlet() throws Exception {
+		final PortletXmlSecurityRoleRefs roleRefs = PortletXmlSecurityRoleRefs.parse(
+				new ClassPathResource("/org/jasig/springframework/security/portlet/authentication/portlet_2_with_attributes.xml").getInputStream(),
+				"ContextTestPortlet2");
+		
+		assertEquals(ImmutableSet.of("ContextTestPortlet2"), roleRefs.getPortletNames());
+		assertEquals(ImmutableSet.of("name2", "name3"), roleRefs.getRoleNames());
+	}
+	
+	private Set<String> getMappableAttributes(ResourceLoader resourceLoader, String portletName, boolean streamingParser) throws Exception {
+		final PortletXmlMappableAttributesRetriever portletXmlMappableAttributesRetriever = new PortletXmlMappableAttributesRetriever();
+		portletXmlMappableAttributesRetriever.setResourceLoader(resourceLoader);
+		portletXmlMappableAttributesRetriever.setStreamingParser(streamingParser);
+		if (portletName != null) {
+			final PortletConfig portletConfig = mock(PortletConfig.class);
+			when(portletConfig.getPortletName()).thenReturn(portletName);
+			portletXmlMappableAttributesRetriever.setPortletConfig(portletConfig);
+		}
+		
+		portletXmlMappableAttributesRetriever.afterPropertiesSet();
+		return portletXmlMappableAttributesRetriever.getMappableAttributes();
+	}
 }
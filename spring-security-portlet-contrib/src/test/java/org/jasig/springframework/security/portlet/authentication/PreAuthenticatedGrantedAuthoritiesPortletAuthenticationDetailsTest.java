@@ -0,0 +1,160 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.authentication;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import javax.portlet.PortletRequest;
+
+import org.junit.Test;
+import org.springframework.mock.web.portlet.MockRenderRequest;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import com.google.common.collect.ImmutableMap;
+
+public class PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetailsTest {
+
+    @Test
+    public void serializedFormRoundTrips() throws Exception {
+        final MockRenderRequest request = new MockRenderRequest();
+        request.setProperty("REMOTE_ADDR", "127.0.0.1");
+        request.getPortletSession();
+        request.setAttribute(PortletRequest.USER_INFO, ImmutableMap.of("user.login.id", "jdoe", "mail", "jdoe@example.com"));
+
+        final PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails details =
+                new PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails(request, Arrays.asList(
+                        new SimpleGrantedAuthority("ROLE_USER"), new CustomAuthority("CUSTOM")));
+
+        final PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails copy = roundTrip(details);
+        assertEquals(details, copy);
+        assertEquals("127.0.0.1", copy.getRemoteAddress());
+        assertEquals(request.getPortletSession().getId(), copy.getSessionId());
+        assertEquals("jdoe@example.com", copy.getUserInfo().get("mail"));
+        assertEquals(new CustomAuthority("CUSTOM"), copy.getGrantedAuthorities().get(1));
+    }
+
+    @Test
+    public void missingUserInfoRoundTrips() throws Exception {
+        final PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails details =
+                new PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails(new MockRenderRequest(),
+                        Arrays.<GrantedAuthority>asList());
+
+        final PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails copy = roundTrip(details);
+        assertEquals(details, copy);
+        assertNull(copy.getUserInfo());
+        assertNull(copy.getSessionId());
+    }
+
+    @Test
+    public void userInfoIsProjectedToConfiguredAttributes() throws Exception {
+        final MockRenderRequest request = new MockRenderRequest();
+        request.setAttribute(PortletRequest.USER_INFO,
+                ImmutableMap.of("user.login.id", "jdoe", "mail", "jdoe@example.com", "jpegPhoto", "..."));
+
+        final PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails details =
+                new PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails(request,
+                        new LinkedHashSet<String>(Arrays.asList("user.login.id", "mail", "missing")),
+                        Arrays.<GrantedAuthority>asList());
+
+        assertEquals(ImmutableMap.of("user.login.id", "jdoe", "mail", "jdoe@example.com"), details.getUserInfo());
+        assertEquals(details.getUserInfo(), roundTrip(details).getUserInfo());
+    }
+
+    @Test
+    public void serializedFieldsMatchDefaultForm() throws Exception {
+        // Session payloads are read by nodes running older releases during a rolling upgrade
+        assertEquals(Arrays.asList("remoteAddress", "sessionId", "userInfo"),
+                serializedFieldNames(PortletAuthenticationDetails.class));
+        assertEquals(Arrays.asList("authorities"),
+                serializedFieldNames(PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails.class));
+    }
+
+    @Test
+    public void sharedAuthorityListSerializedAsPlainList() throws Exception {
+        final GrantedAuthorityList authorities = new GrantedAuthorityList(Arrays.<GrantedAuthority>asList(
+                new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN")));
+        final PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails details =
+                new PreAuthenticatedGrantedAuthoritiesPortletAuthenticationDetails(new MockRenderRequest(), authorities);
+        assertSame(authorities, details.getGrantedAuthorities());
+
+        final List<GrantedAuthority> copy = roundTrip(details).getGrantedAuthorities();
+        assertEquals(authorities, copy);
+        assertFalse(copy instanceof GrantedAuthorityList);
+    }
+
+    private static List<String> serializedFieldNames(Class<?> type) {
+        final List<String> names = new ArrayList<String>();
+        for (final ObjectStreamField field : ObjectStreamClass.lookup(type).getFields()) {
+            names.add(field.getName());
+        }
+        return names;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T obj) throws IOException, ClassNotFoundException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(obj);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        return (T) in.readObject();
+    }
+
+    private static final class CustomAuthority implements GrantedAuthority {
+        private static final long serialVersionUID = 1L;
+
+        private final String authority;
+
+        private CustomAuthority(String authority) {
+            this.authority = authority;
+        }
+
+        @Override
+        public String getAuthority() {
+            return this.authority;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.authority.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CustomAuthority && this.authority.equals(((CustomAuthority) obj).authority);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+public class DelegatingSecurityContextExecutorServiceTests {
+    private ExecutorService pool;
+    private DelegatingSecurityContextExecutorService executorService;
+
+    @Before
+    public void setup() {
+        pool = Executors.newSingleThreadExecutor();
+        executorService = new DelegatingSecurityContextExecutorService(pool);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        SecurityContextHolder.clearContext();
+        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_THREADLOCAL);
+        pool.shutdownNow();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void taskRunsWithSubmittingContext() throws Exception {
+        final Authentication authentication = new TestingAuthenticationToken("someone", "passwd", "ROLE_A");
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        final Future<Authentication> result = executorService.submit(new CurrentAuthentication());
+
+        assertSame(authentication, result.get());
+        assertPoolThreadClean();
+    }
+
+    @Test
+    public void contextsDoNotLeakBetweenRequests() throws Exception {
+        final List<Future<Authentication>> results = new ArrayList<Future<Authentication>>();
+        final List<Authentication> authentications = new ArrayList<Authentication>();
+        for (int i = 0; i < 10; i++) {
+            // Alternate between authenticated and anonymous requests sharing the pool, each request gets its own
+            // context as PortletSecurityContextPersistenceFilter would set it
+            final SecurityContext context = new SecurityContextImpl();
+            if (i % 2 == 0) {
+                context.setAuthentication(new TestingAuthenticationToken("user" + i, "passwd", "ROLE_A"));
+            }
+            SecurityContextHolder.setContext(context);
+            authentications.add(context.getAuthentication());
+            results.add(executorService.submit(new CurrentAuthentication()));
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            assertSame(authentications.get(i), results.get(i).get());
+        }
+        assertPoolThreadClean();
+    }
+
+    @Test
+    public void fixedContextIsUsed() throws Exception {
+        final Authentication authentication = new TestingAuthenticationToken("someone", "passwd", "ROLE_A");
+        final SecurityContext context = new SecurityContextImpl();
+        context.setAuthentication(authentication);
+        executorService = new DelegatingSecurityContextExecutorService(pool, context);
+
+        final List<Callable<Authentication>> tasks = new ArrayList<Callable<Authentication>>();
+        tasks.add(new CurrentAuthentication());
+        tasks.add(new CurrentAuthentication());
+        for (final Future<Authentication> result : executorService.invokeAll(tasks)) {
+            assertSame(authentication, result.get());
+        }
+        assertPoolThreadClean();
+    }
+
+    @Test
+    public void taskChangesAreDiscarded() throws Exception {
+        final Authentication authentication = new TestingAuthenticationToken("someone", "passwd", "ROLE_A");
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        executorService.submit(new Runnable() {
+            @Override
+            public void run() {
+                final SecurityContext context = new SecurityContextImpl();
+                context.setAuthentication(new TestingAuthenticationToken("other", "passwd", "ROLE_B"));
+                SecurityContextHolder.setContext(context);
+            }
+        }).get();
+
+        assertSame(authentication, SecurityContextHolder.getContext().getAuthentication());
+        assertPoolThreadClean();
+    }
+
+    @Test
+    public void callerThreadContextIsRestored() throws Exception {
+        final Authentication outer = new TestingAuthenticationToken("outer", "passwd", "ROLE_A");
+        final Authentication inner = new TestingAuthenticationToken("inner", "passwd", "ROLE_B");
+        SecurityContextHolder.getContext().setAuthentication(outer);
+        final SecurityContext innerContext = new SecurityContextImpl();
+        innerContext.setAuthentication(inner);
+
+        // Run on the calling thread, as a caller runs rejection policy would
+        final Authentication seen = new DelegatingSecurityContextCallable<Authentication>(new CurrentAuthentication(),
+                innerContext).call();
+
+        assertSame(inner, seen);
+        assertSame(outer, SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    public void scopedStrategyLeavesNoBinding() throws Exception {
+        SecurityContextHolder.setStrategyName(ScopedSecurityContextHolderStrategy.class.getName());
+
+        final Authentication authentication = new TestingAuthenticationToken("someone", "passwd", "ROLE_A");
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        final Future<Boolean> bound = executorService.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                // Clearing inside the task only affects the task's scope
+                SecurityContextHolder.clearContext();
+                return ScopedSecurityContextHolderStrategy.isBound();
+            }
+        });
+        assertTrue(bound.get());
+
+        final Future<Boolean> leftBehind = pool.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return ScopedSecurityContextHolderStrategy.isBound();
+            }
+        });
+        assertFalse(leftBehind.get());
+        assertSame(authentication, SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    public void scopeMustBeClosedByOwner() throws Exception {
+        final SecurityContextScope scope = SecurityContextScope.open(new SecurityContextImpl());
+        try {
+            pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    scope.close();
+                }
+            }).get();
+            fail();
+        }
+        catch (java.util.concurrent.ExecutionException e) {
+            assertEquals(IllegalStateException.class, e.getCause().getClass());
+        }
+        finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * Verify the pool thread has no context left by running an unwrapped task on it
+     */
+    private void assertPoolThreadClean() throws Exception {
+        assertNull(pool.submit(new CurrentAuthentication()).get());
+    }
+
+    private static final class CurrentAuthentication implements Callable<Authentication> {
+        @Override
+        public Authentication call() throws Exception {
+            return SecurityContextHolder.getContext().getAuthentication();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.concurrent;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+public class ScopedSecurityContextHolderStrategyTests {
+    private final ScopedSecurityContextHolderStrategy strategy = new ScopedSecurityContextHolderStrategy();
+
+    @After
+    public void tearDown() {
+        strategy.clearContext();
+    }
+
+    @Test
+    public void clearOutsideScopeRemovesBinding() {
+        strategy.setContext(createContext("someone"));
+        assertTrue(ScopedSecurityContextHolderStrategy.isBound());
+
+        strategy.clearContext();
+        assertFalse(ScopedSecurityContextHolderStrategy.isBound());
+        assertNull(strategy.getContext().getAuthentication());
+    }
+
+    @Test
+    public void nestedScopesRestoreOuterBinding() {
+        final SecurityContext outer = createContext("outer");
+        final SecurityContext first = createContext("first");
+        final SecurityContext second = createContext("second");
+        strategy.setContext(outer);
+
+        final SecurityContextScope firstScope = strategy.open(first);
+        assertSame(first, strategy.getContext());
+
+        final SecurityContextScope secondScope = strategy.open(second);
+        assertSame(second, strategy.getContext());
+        strategy.setContext(outer);
+        strategy.clearContext();
+        assertNull(strategy.getContext().getAuthentication());
+        secondScope.close();
+
+        assertSame(first, strategy.getContext());
+        firstScope.close();
+        assertSame(outer, strategy.getContext());
+    }
+
+    @Test
+    public void closingOutermostScopeRemovesBinding() {
+        final SecurityContextScope scope = strategy.open(createContext("someone"));
+        assertTrue(ScopedSecurityContextHolderStrategy.isBound());
+        scope.close();
+        assertFalse(ScopedSecurityContextHolderStrategy.isBound());
+
+        // Closing again has no effect
+        scope.close();
+        assertFalse(ScopedSecurityContextHolderStrategy.isBound());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void scopesMustBeClosedInOrder() {
+        final SecurityContextScope outerScope = strategy.open(createContext("outer"));
+        final SecurityContextScope innerScope = strategy.open(createContext("inner"));
+        try {
+            outerScope.close();
+        }
+        finally {
+            innerScope.close();
+            outerScope.close();
+        }
+    }
+
+    private static SecurityContext createContext(String name) {
+        final SecurityContext context = new SecurityContextImpl();
+        context.setAuthentication(new TestingAuthenticationToken(name, "passwd", "ROLE_A"));
+        return context;
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.concurrent;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jasig.springframework.web.portlet.support.PortletFanOut;
+import org.jasig.springframework.web.portlet.support.PortletFanOutExecutor;
+import org.jasig.springframework.web.portlet.support.PortletTaskDecorator;
+import org.jasig.springframework.web.portlet.support.PortletTaskResult;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.portlet.MockRenderRequest;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+public class SecurityContextPortletTaskDecoratorTests {
+    private final ExecutorService pool = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() throws Exception {
+        SecurityContextHolder.clearContext();
+        pool.shutdownNow();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void fanOutTasksRunWithRequestContext() throws Exception {
+        final PortletFanOutExecutor fanOutExecutor = new PortletFanOutExecutor();
+        fanOutExecutor.setExecutorService(pool);
+        fanOutExecutor.setTaskDecorators(
+                Collections.<PortletTaskDecorator>singletonList(new SecurityContextPortletTaskDecorator()));
+        fanOutExecutor.afterPropertiesSet();
+
+        final Authentication authentication = new TestingAuthenticationToken("someone", "passwd", "ROLE_A");
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        final PortletFanOut fanOut = fanOutExecutor.begin(new MockRenderRequest());
+        final PortletTaskResult<Authentication> result = fanOut.submit(new CurrentAuthentication());
+
+        assertSame(authentication, result.get());
+        assertNull(pool.submit(new CurrentAuthentication()).get());
+    }
+
+    private static final class CurrentAuthentication implements Callable<Authentication> {
+        @Override
+        public Authentication call() throws Exception {
+            return SecurityContextHolder.getContext().getAuthentication();
+        }
+    }
+}
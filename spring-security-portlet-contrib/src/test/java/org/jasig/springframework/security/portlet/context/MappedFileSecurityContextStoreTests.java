@@ -0,0 +1,216 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.context;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+public class MappedFileSecurityContextStoreTests {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+    private MappedFileSecurityContextStore store;
+
+    @Before
+    public void setup() throws Exception {
+        file = new File(temporaryFolder.getRoot(), "contexts.dat");
+        store = createStore(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.destroy();
+    }
+
+    @Test
+    public void storedContextSurvivesReopen() throws Exception {
+        store.store("token1", createContext("someone"));
+        store.store("token2", createContext("someoneelse"));
+        store.remove("token2");
+        store.destroy();
+
+        store = createStore(4);
+        assertEquals(1, store.getSize());
+        SecurityContext context = store.load("token1");
+        assertNotNull(context);
+        assertEquals("someone", context.getAuthentication().getName());
+        assertNull(store.load("token2"));
+    }
+
+    @Test
+    public void changedLayoutClearsFile() throws Exception {
+        store.store("token1", createContext("someone"));
+        store.destroy();
+
+        store = createStore(8);
+        assertEquals(0, store.getSize());
+        assertNull(store.load("token1"));
+    }
+
+    @Test
+    public void leastRecentlyUsedContextIsEvictedWhenFull() throws Exception {
+        final MutableClockStore clockStore = new MutableClockStore();
+        clockStore.setFile(new File(temporaryFolder.getRoot(), "clock.dat"));
+        clockStore.setSlotCount(2);
+        clockStore.afterPropertiesSet();
+        try {
+            clockStore.store("token1", createContext("one"));
+            clockStore.time++;
+            clockStore.store("token2", createContext("two"));
+            clockStore.time++;
+            // Touch token1 so token2 is the least recently used
+            assertNotNull(clockStore.load("token1"));
+            clockStore.time++;
+            clockStore.store("token3", createContext("three"));
+
+            assertEquals(2, clockStore.getSize());
+            assertEquals(1, clockStore.getEvictionCount());
+            assertNull(clockStore.load("token2"));
+            assertNotNull(clockStore.load("token1"));
+            assertNotNull(clockStore.load("token3"));
+
+            // Expire everything
+            clockStore.time += MappedFileSecurityContextStore.DEFAULT_TIME_TO_IDLE;
+            assertNull(clockStore.load("token1"));
+        }
+        finally {
+            clockStore.destroy();
+        }
+    }
+
+    @Test
+    public void loadReturnsStoredInstance() throws Exception {
+        final SecurityContext context = createContext("someone");
+        store.store("token1", context);
+        assertSame(context, store.load("token1"));
+        store.destroy();
+
+        store = createStore(4);
+        final SecurityContext restored = store.load("token1");
+        assertEquals("someone", restored.getAuthentication().getName());
+        assertSame(restored, store.load("token1"));
+    }
+
+    @Test
+    public void removedSlotIsReusedWithoutEviction() throws Exception {
+        store.store("token1", createContext("one"));
+        store.store("token2", createContext("two"));
+        store.store("token3", createContext("three"));
+        store.store("token4", createContext("four"));
+        store.remove("token2");
+        store.store("token5", createContext("five"));
+
+        assertEquals(4, store.getSize());
+        assertEquals(0, store.getEvictionCount());
+        assertNull(store.load("token2"));
+        assertEquals("five", store.load("token5").getAuthentication().getName());
+    }
+
+    @Test
+    public void concurrentStoresKeepContextsSeparate() throws Exception {
+        store.destroy();
+        store = createStore(256);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < 8; t++) {
+                final int thread = t;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int i = 0; i < 200; i++) {
+                            final String name = thread + "-" + (i % 20);
+                            store.store(name, createContext(name));
+                            assertEquals(name, store.load(name).getAuthentication().getName());
+                            if (i % 3 == 0) {
+                                store.remove(name);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertEquals(0, store.getEvictionCount());
+    }
+
+    @Test
+    public void oversizedContextIsNotStored() throws Exception {
+        store.destroy();
+        store = new MappedFileSecurityContextStore();
+        store.setFile(file);
+        store.setSlotCount(1);
+        store.setSlotSize(128);
+        store.afterPropertiesSet();
+
+        store.store("token1", createContext("someone"));
+        assertEquals(0, store.getSize());
+        assertEquals(1, store.getOversizedCount());
+    }
+
+    private MappedFileSecurityContextStore createStore(int slotCount) throws Exception {
+        final MappedFileSecurityContextStore store = new MappedFileSecurityContextStore();
+        store.setFile(file);
+        store.setSlotCount(slotCount);
+        store.afterPropertiesSet();
+        return store;
+    }
+
+    private static SecurityContext createContext(String name) {
+        final SecurityContext context = new SecurityContextImpl();
+        context.setAuthentication(new TestingAuthenticationToken(name, "passwd", "ROLE_A"));
+        return context;
+    }
+
+    private static final class MutableClockStore extends MappedFileSecurityContextStore {
+        private long time = 0;
+
+        @Override
+        protected long currentTime() {
+            return time;
+        }
+    }
+}
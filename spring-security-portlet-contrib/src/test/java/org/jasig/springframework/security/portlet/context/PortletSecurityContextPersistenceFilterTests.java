@@ -28,11 +28,15 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 
+import javax.portlet.ActionRequest;
+import javax.portlet.ActionResponse;
 import javax.portlet.RenderRequest;
 import javax.portlet.RenderResponse;
 import javax.portlet.filter.FilterChain;
@@ -41,6 +45,8 @@ import org.junit.After;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.springframework.mock.web.portlet.MockActionRequest;
+import org.springframework.mock.web.portlet.MockActionResponse;
 import org.springframework.mock.web.portlet.MockRenderRequest;
 import org.springframework.mock.web.portlet.MockRenderResponse;
 import org.springframework.security.authentication.TestingAuthenticationToken;
@@ -150,4 +156,108 @@ public class PortletSecurityContextPersistenceFilterTests {
         assertFalse(repo.containsContext(request));
         assertNull(request.getPortletSession(false));
     }
+
+    @Test
+    public void sharedContextIsLoadedOnceAndNotSavedWhenUnchanged() throws Exception {
+        final FilterChain chain = mock(FilterChain.class);
+        final MockRenderRequest request = new MockRenderRequest();
+        request.getPortletSession();
+        final MockRenderResponse response = new MockRenderResponse();
+        final PortletSecurityContextRepository repo = mock(PortletSecurityContextRepository.class);
+        final SecurityContext loaded = new SecurityContextImpl();
+        loaded.setAuthentication(testToken);
+        when(repo.loadContext(any(PortletRequestResponseHolder.class))).thenReturn(loaded);
+        PortletSecurityContextPersistenceFilter filter = new PortletSecurityContextPersistenceFilter(repo);
+        filter.setShareSecurityContext(true);
+
+        // The same request stands in for the portal request shared by three portlets
+        filter.doFilter(request, response, chain);
+        filter.doFilter(request, response, chain);
+        filter.doFilter(request, response, chain);
+
+        verify(chain, times(3)).doFilter(any(RenderRequest.class), any(RenderResponse.class));
+        verify(repo, times(1)).loadContext(any(PortletRequestResponseHolder.class));
+        verify(repo, never()).saveContext(any(SecurityContext.class), any(PortletRequestResponseHolder.class));
+    }
+
+    @Test
+    public void sharedContextIsSavedByThePortletWhichChangesIt() throws Exception {
+        final MockRenderRequest request = new MockRenderRequest();
+        request.getPortletSession();
+        final MockRenderResponse response = new MockRenderResponse();
+        final PortletSecurityContextRepository repo = mock(PortletSecurityContextRepository.class);
+        when(repo.loadContext(any(PortletRequestResponseHolder.class))).thenReturn(new SecurityContextImpl());
+        PortletSecurityContextPersistenceFilter filter = new PortletSecurityContextPersistenceFilter(repo);
+        filter.setShareSecurityContext(true);
+
+        filter.doFilter(request, response, mock(FilterChain.class));
+
+        final FilterChain authenticatingChain = mock(FilterChain.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                SecurityContextHolder.getContext().setAuthentication(testToken);
+                return null;
+            }
+        }).when(authenticatingChain).doFilter(any(RenderRequest.class), any(RenderResponse.class));
+        filter.doFilter(request, response, authenticatingChain);
+
+        // The holder of the second portlet is loaded so the repository can compare against the stored state
+        verify(repo, times(2)).loadContext(any(PortletRequestResponseHolder.class));
+        verify(repo, times(1)).saveContext(any(SecurityContext.class), any(PortletRequestResponseHolder.class));
+
+        // Later portlets see the saved authentication
+        final FilterChain verifyingChain = mock(FilterChain.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                assertEquals(testToken, SecurityContextHolder.getContext().getAuthentication());
+                return null;
+            }
+        }).when(verifyingChain).doFilter(any(RenderRequest.class), any(RenderResponse.class));
+        filter.doFilter(request, response, verifyingChain);
+        verify(verifyingChain).doFilter(any(RenderRequest.class), any(RenderResponse.class));
+        verify(repo, times(2)).loadContext(any(PortletRequestResponseHolder.class));
+        verify(repo, times(1)).saveContext(any(SecurityContext.class), any(PortletRequestResponseHolder.class));
+    }
+
+    @Test
+    public void onChangeSavePolicySkipsUnchangedContext() throws Exception {
+        final MockRenderRequest request = new MockRenderRequest();
+        final MockRenderResponse response = new MockRenderResponse();
+        final PortletSecurityContextRepository repo = mock(PortletSecurityContextRepository.class);
+        when(repo.loadContext(any(PortletRequestResponseHolder.class))).thenReturn(new SecurityContextImpl());
+        PortletSecurityContextPersistenceFilter filter = new PortletSecurityContextPersistenceFilter(repo);
+        filter.setSavePolicy(StandardSecurityContextSavePolicy.ON_CHANGE);
+
+        filter.doFilter(request, response, mock(FilterChain.class));
+        verify(repo, never()).saveContext(any(SecurityContext.class), any(PortletRequestResponseHolder.class));
+
+        final FilterChain authenticatingChain = mock(FilterChain.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                SecurityContextHolder.getContext().setAuthentication(testToken);
+                return null;
+            }
+        }).when(authenticatingChain).doFilter(any(RenderRequest.class), any(RenderResponse.class));
+        filter.doFilter(request, response, authenticatingChain);
+        verify(repo).saveContext(any(SecurityContext.class), any(PortletRequestResponseHolder.class));
+    }
+
+    @Test
+    public void actionEventOrOnChangeSavePolicyAlwaysSavesActions() throws Exception {
+        final PortletSecurityContextRepository repo = mock(PortletSecurityContextRepository.class);
+        when(repo.loadContext(any(PortletRequestResponseHolder.class))).thenReturn(new SecurityContextImpl());
+        PortletSecurityContextPersistenceFilter filter = new PortletSecurityContextPersistenceFilter(repo);
+        filter.setSavePolicy(StandardSecurityContextSavePolicy.ACTION_EVENT_OR_ON_CHANGE);
+
+        filter.doFilter(new MockRenderRequest(), new MockRenderResponse(), mock(FilterChain.class));
+        verify(repo, never()).saveContext(any(SecurityContext.class), any(PortletRequestResponseHolder.class));
+
+        final FilterChain chain = mock(FilterChain.class);
+        filter.doFilter(new MockActionRequest(), new MockActionResponse(), chain);
+        verify(chain).doFilter(any(ActionRequest.class), any(ActionResponse.class));
+        verify(repo).saveContext(any(SecurityContext.class), any(PortletRequestResponseHolder.class));
+    }
 }
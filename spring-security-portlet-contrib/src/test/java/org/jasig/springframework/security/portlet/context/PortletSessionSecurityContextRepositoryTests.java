@@ -19,18 +19,30 @@
 package org.jasig.springframework.security.portlet.context;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.web.context.HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY;
 
 import javax.portlet.PortletSession;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionEvent;
 
 import org.junit.After;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.mock.web.MockHttpSession;
 import org.springframework.mock.web.portlet.MockPortletRequest;
 import org.springframework.mock.web.portlet.MockPortletResponse;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
@@ -198,6 +210,256 @@ public class PortletSessionSecurityContextRepositoryTests {
         assertNull(request.getPortletSession().getAttribute("imTheContext", PortletSession.APPLICATION_SCOPE));
     }
 
+    @Test
+    public void cachedContextIsSharedByRepositoriesWithoutReadingTheSession() throws Exception {
+        PortletSessionSecurityContextCache cache = new PortletSessionSecurityContextCache();
+        cache.setTrustCachedContexts(true);
+        SecurityContext ctx = SecurityContextHolder.createEmptyContext();
+        ctx.setAuthentication(testToken);
+        PortletSession session = mock(PortletSession.class);
+        when(session.getId()).thenReturn("session1");
+        when(session.getCreationTime()).thenReturn(1000L);
+        when(session.getAttribute(SPRING_SECURITY_CONTEXT_KEY, PortletSession.APPLICATION_SCOPE)).thenReturn(ctx);
+
+        // Simulate several portlets rendering on the same page, each with its own repository
+        for (int i = 0; i < 3; i++) {
+            PortletSessionSecurityContextRepository repo = new PortletSessionSecurityContextRepository();
+            repo.setSecurityContextCache(cache);
+            MockPortletRequest request = new MockPortletRequest();
+            request.setSession(session);
+            PortletRequestResponseHolder holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+            assertSame(ctx, repo.loadContext(holder));
+            repo.saveContext(ctx, holder);
+            assertTrue(repo.containsContext(request));
+        }
+
+        verify(session, times(1)).getAttribute(SPRING_SECURITY_CONTEXT_KEY, PortletSession.APPLICATION_SCOPE);
+        verify(session, times(0)).setAttribute(SPRING_SECURITY_CONTEXT_KEY, ctx, PortletSession.APPLICATION_SCOPE);
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(8, cache.getHitCount());
+        assertTrue(cache.getEstimatedMemoryUsage() > 0);
+    }
+
+    @Test
+    public void cachedContextIsInvalidatedWhenRemovedFromSession() throws Exception {
+        PortletSessionSecurityContextCache cache = new PortletSessionSecurityContextCache();
+        cache.setTrustCachedContexts(true);
+        PortletSessionSecurityContextRepository repo = new PortletSessionSecurityContextRepository();
+        repo.setSecurityContextCache(cache);
+        MockPortletRequest request = new MockPortletRequest();
+        SecurityContext ctxInSession = SecurityContextHolder.createEmptyContext();
+        ctxInSession.setAuthentication(testToken);
+        request.getPortletSession().setAttribute(SPRING_SECURITY_CONTEXT_KEY, ctxInSession, PortletSession.APPLICATION_SCOPE);
+        PortletRequestResponseHolder holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+        assertSame(ctxInSession, repo.loadContext(holder));
+        assertEquals(1, cache.getSize());
+
+        // Save an empty context
+        repo.saveContext(SecurityContextHolder.getContext(), holder);
+        assertEquals(0, cache.getSize());
+        assertNull(repo.loadContext(new PortletRequestResponseHolder(request, new MockPortletResponse())).getAuthentication());
+    }
+
+    @Test
+    public void untrustedCacheIsNotUsed() throws Exception {
+        PortletSessionSecurityContextCache cache = new PortletSessionSecurityContextCache();
+        PortletSessionSecurityContextRepository repo = new PortletSessionSecurityContextRepository();
+        repo.setSecurityContextCache(cache);
+        MockPortletRequest request = new MockPortletRequest();
+        SecurityContext ctxInSession = SecurityContextHolder.createEmptyContext();
+        ctxInSession.setAuthentication(testToken);
+        request.getPortletSession().setAttribute(SPRING_SECURITY_CONTEXT_KEY, ctxInSession, PortletSession.APPLICATION_SCOPE);
+        PortletRequestResponseHolder holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+        assertSame(ctxInSession, repo.loadContext(holder));
+        repo.saveContext(ctxInSession, holder);
+
+        // Replaced by other code, for example a logout handler or session replication
+        SecurityContext replacement = SecurityContextHolder.createEmptyContext();
+        request.getPortletSession().setAttribute(SPRING_SECURITY_CONTEXT_KEY, replacement, PortletSession.APPLICATION_SCOPE);
+        assertSame(replacement, repo.loadContext(new PortletRequestResponseHolder(request, new MockPortletResponse())));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getHitCount() + cache.getMissCount());
+    }
+
+    @Test
+    public void cacheEvictsBeyondMaxSize() throws Exception {
+        PortletSessionSecurityContextCache cache = new PortletSessionSecurityContextCache(2);
+        SecurityContext ctx = SecurityContextHolder.createEmptyContext();
+        for (int i = 0; i < 5; i++) {
+            Object key = cache.createKey("session" + i, null, SPRING_SECURITY_CONTEXT_KEY);
+            assertTrue(cache.put(key, 1000L, ctx, cache.getGeneration(key)));
+        }
+        assertEquals(2, cache.getSize());
+        assertSame(ctx, cache.get(cache.createKey("session4", null, SPRING_SECURITY_CONTEXT_KEY), 1000L));
+    }
+
+    @Test
+    public void contextInvalidatedDuringSessionReadIsNotCached() throws Exception {
+        final PortletSessionSecurityContextCache cache = new PortletSessionSecurityContextCache();
+        cache.setTrustCachedContexts(true);
+        PortletSessionSecurityContextRepository repo = new PortletSessionSecurityContextRepository();
+        repo.setSecurityContextCache(cache);
+        final SecurityContext ctx = SecurityContextHolder.createEmptyContext();
+        ctx.setAuthentication(testToken);
+        PortletSession session = mock(PortletSession.class);
+        when(session.getId()).thenReturn("session1");
+        when(session.getCreationTime()).thenReturn(1000L);
+        // A logout on another thread removes the attribute after it was read but before it is cached
+        when(session.getAttribute(SPRING_SECURITY_CONTEXT_KEY, PortletSession.APPLICATION_SCOPE)).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                cache.invalidateAttribute("session1", null, SPRING_SECURITY_CONTEXT_KEY);
+                return ctx;
+            }
+        });
+        MockPortletRequest request = new MockPortletRequest();
+        request.setSession(session);
+        assertSame(ctx, repo.loadContext(new PortletRequestResponseHolder(request, new MockPortletResponse())));
+        assertEquals(0, cache.getSize());
+
+        when(session.getAttribute(SPRING_SECURITY_CONTEXT_KEY, PortletSession.APPLICATION_SCOPE)).thenReturn(null);
+        assertNull(repo.loadContext(new PortletRequestResponseHolder(request, new MockPortletResponse())).getAuthentication());
+    }
+
+    @Test
+    public void putIsRejectedAfterInvalidation() throws Exception {
+        PortletSessionSecurityContextCache cache = new PortletSessionSecurityContextCache();
+        SecurityContext ctx = SecurityContextHolder.createEmptyContext();
+        Object key = cache.createKey("session1", null, SPRING_SECURITY_CONTEXT_KEY);
+        long generation = cache.getGeneration(key);
+        cache.invalidate(key);
+        assertFalse(cache.put(key, 1000L, ctx, generation));
+        assertNull(cache.get(key, 1000L));
+
+        generation = cache.getGeneration(key);
+        cache.invalidateSession("session1");
+        assertFalse(cache.put(key, 1000L, ctx, generation));
+        assertTrue(cache.put(key, 1000L, ctx, cache.getGeneration(key)));
+        assertSame(ctx, cache.get(key, 1000L));
+    }
+
+    @Test
+    public void trustedCacheIsInvalidatedByListener() throws Exception {
+        PortletSessionSecurityContextCache cache = new PortletSessionSecurityContextCache();
+        cache.setTrustCachedContexts(true);
+        PortletSessionSecurityContextRepository repo = new PortletSessionSecurityContextRepository(PortletSession.PORTLET_SCOPE);
+        repo.setSecurityContextCache(cache);
+        MockPortletRequest request = new MockPortletRequest();
+        request.setWindowID("window1");
+        SecurityContext ctxInSession = SecurityContextHolder.createEmptyContext();
+        ctxInSession.setAuthentication(testToken);
+        request.getPortletSession().setAttribute(SPRING_SECURITY_CONTEXT_KEY, ctxInSession, PortletSession.PORTLET_SCOPE);
+        assertSame(ctxInSession, repo.loadContext(new PortletRequestResponseHolder(request, new MockPortletResponse())));
+        assertEquals(1, cache.getSize());
+
+        // Notification for an unrelated attribute leaves the entry
+        PortletSessionSecurityContextCacheListener listener = new PortletSessionSecurityContextCacheListener();
+        MockHttpSession httpSession = new MockHttpSession(null, request.getPortletSession().getId());
+        listener.attributeReplaced(new HttpSessionBindingEvent(httpSession, "javax.portlet.p.window2?" + SPRING_SECURITY_CONTEXT_KEY));
+        listener.attributeReplaced(new HttpSessionBindingEvent(httpSession, "javax.portlet.p.window1?other" + SPRING_SECURITY_CONTEXT_KEY));
+        assertFalse(cache.isCachedAttribute("javax.portlet.p.window1?other" + SPRING_SECURITY_CONTEXT_KEY));
+        assertTrue(cache.isCachedAttribute(SPRING_SECURITY_CONTEXT_KEY));
+        assertEquals(1, cache.getSize());
+
+        listener.attributeRemoved(new HttpSessionBindingEvent(httpSession, "javax.portlet.p.window1?" + SPRING_SECURITY_CONTEXT_KEY));
+        assertEquals(0, cache.getSize());
+
+        repo.loadContext(new PortletRequestResponseHolder(request, new MockPortletResponse()));
+        assertEquals(1, cache.getSize());
+        listener.sessionDestroyed(new HttpSessionEvent(httpSession));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void cachedContextIsNotUsedForNewSessionWithSameId() throws Exception {
+        PortletSessionSecurityContextCache cache = new PortletSessionSecurityContextCache();
+        cache.setTrustCachedContexts(true);
+        PortletSessionSecurityContextRepository repo = new PortletSessionSecurityContextRepository();
+        repo.setSecurityContextCache(cache);
+        SecurityContext ctx = SecurityContextHolder.createEmptyContext();
+        ctx.setAuthentication(testToken);
+        PortletSession session = mock(PortletSession.class);
+        when(session.getId()).thenReturn("session1");
+        when(session.getCreationTime()).thenReturn(1000L);
+        when(session.getAttribute(SPRING_SECURITY_CONTEXT_KEY, PortletSession.APPLICATION_SCOPE)).thenReturn(ctx);
+        MockPortletRequest request = new MockPortletRequest();
+        request.setSession(session);
+        assertSame(ctx, repo.loadContext(new PortletRequestResponseHolder(request, new MockPortletResponse())));
+
+        // Same id, but the session was invalidated and recreated
+        PortletSession newSession = mock(PortletSession.class);
+        when(newSession.getId()).thenReturn("session1");
+        when(newSession.getCreationTime()).thenReturn(2000L);
+        request.setSession(newSession);
+        assertNull(repo.loadContext(new PortletRequestResponseHolder(request, new MockPortletResponse())).getAuthentication());
+    }
+
+    @Test
+    public void unmodifiedTrackedContextIsNotProbedOrWritten() throws Exception {
+        PortletSessionSecurityContextRepository repo = new PortletSessionSecurityContextRepository();
+        repo.setTrackContextChanges(true);
+        SecurityContext ctx = SecurityContextHolder.createEmptyContext();
+        ctx.setAuthentication(testToken);
+        PortletSession session = mock(PortletSession.class);
+        when(session.getCreationTime()).thenReturn(1000L);
+        when(session.getAttribute(SPRING_SECURITY_CONTEXT_KEY, PortletSession.APPLICATION_SCOPE)).thenReturn(ctx);
+        MockPortletRequest request = new MockPortletRequest();
+        request.setSession(session);
+        PortletRequestResponseHolder holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+
+        SecurityContext loaded = repo.loadContext(holder);
+        assertTrue(loaded instanceof DirtyTrackingSecurityContext);
+        assertSame(ctx, ((DirtyTrackingSecurityContext) loaded).getDelegate());
+        // Setting the same authentication is not a modification
+        loaded.setAuthentication(testToken);
+        repo.saveContext(loaded, holder);
+
+        verify(session, times(1)).getAttribute(SPRING_SECURITY_CONTEXT_KEY, PortletSession.APPLICATION_SCOPE);
+        verify(session, never()).setAttribute(anyString(), any(), anyInt());
+        verify(session, never()).removeAttribute(anyString(), anyInt());
+    }
+
+    @Test
+    public void modifiedTrackedContextStoresWrappedContext() throws Exception {
+        PortletSessionSecurityContextRepository repo = new PortletSessionSecurityContextRepository();
+        repo.setTrackContextChanges(true);
+        MockPortletRequest request = new MockPortletRequest();
+        PortletRequestResponseHolder holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+
+        SecurityContext loaded = repo.loadContext(holder);
+        assertFalse(((DirtyTrackingSecurityContext) loaded).isDirty());
+        loaded.setAuthentication(testToken);
+        assertTrue(((DirtyTrackingSecurityContext) loaded).isDirty());
+        repo.saveContext(loaded, holder);
+
+        Object stored = request.getPortletSession().getAttribute(SPRING_SECURITY_CONTEXT_KEY, PortletSession.APPLICATION_SCOPE);
+        assertSame(((DirtyTrackingSecurityContext) loaded).getDelegate(), stored);
+    }
+
+    @Test
+    public void unmodifiedTrackedContextIsStoredInRecreatedSession() throws Exception {
+        PortletSessionSecurityContextRepository repo = new PortletSessionSecurityContextRepository();
+        repo.setTrackContextChanges(true);
+        SecurityContext ctx = SecurityContextHolder.createEmptyContext();
+        ctx.setAuthentication(testToken);
+        PortletSession session = mock(PortletSession.class);
+        when(session.getCreationTime()).thenReturn(1000L);
+        when(session.getAttribute(SPRING_SECURITY_CONTEXT_KEY, PortletSession.APPLICATION_SCOPE)).thenReturn(ctx);
+        MockPortletRequest request = new MockPortletRequest();
+        request.setSession(session);
+        PortletRequestResponseHolder holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+        SecurityContext loaded = repo.loadContext(holder);
+
+        // Session replaced during the request, the context must be written to the new one
+        PortletSession newSession = mock(PortletSession.class);
+        when(newSession.getCreationTime()).thenReturn(2000L);
+        request.setSession(newSession);
+        repo.saveContext(loaded, holder);
+
+        verify(newSession).setAttribute(SPRING_SECURITY_CONTEXT_KEY, ctx, PortletSession.APPLICATION_SCOPE);
+    }
+
     //Not working after port to portlet apis, not quite sure why
 //    // SEC-1735
 //    @Test
@@ -0,0 +1,185 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.context;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import javax.portlet.PortletSession;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.portlet.MockPortletRequest;
+import org.springframework.mock.web.portlet.MockPortletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+public class TokenPortletSecurityContextRepositoryTests {
+    private final TestingAuthenticationToken testToken = new TestingAuthenticationToken("someone", "passwd", "ROLE_A");
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void onlyTokenIsStoredInSession() throws Exception {
+        InMemorySecurityContextStore store = new InMemorySecurityContextStore();
+        TokenPortletSecurityContextRepository repo = new TokenPortletSecurityContextRepository(store);
+        MockPortletRequest request = new MockPortletRequest();
+
+        PortletRequestResponseHolder holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+        SecurityContext context = repo.loadContext(holder);
+        assertNull(context.getAuthentication());
+        context.setAuthentication(testToken);
+        repo.saveContext(context, holder);
+
+        Object token = request.getPortletSession().getAttribute(
+                TokenPortletSecurityContextRepository.SPRING_SECURITY_CONTEXT_TOKEN_KEY, PortletSession.APPLICATION_SCOPE);
+        assertTrue(token instanceof SecurityContextToken);
+        assertEquals(1, store.getSize());
+        assertTrue(repo.containsContext(request));
+
+        holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+        assertSame(testToken, repo.loadContext(holder).getAuthentication());
+    }
+
+    @Test
+    public void unchangedContextIsNotStoredAgain() throws Exception {
+        SecurityContextStore store = spy(new InMemorySecurityContextStore());
+        TokenPortletSecurityContextRepository repo = new TokenPortletSecurityContextRepository(store);
+        MockPortletRequest request = new MockPortletRequest();
+        PortletRequestResponseHolder holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+        SecurityContext context = repo.loadContext(holder);
+        context.setAuthentication(testToken);
+        repo.saveContext(context, holder);
+        verify(store).store(anyString(), any(SecurityContext.class));
+
+        holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+        context = repo.loadContext(holder);
+        repo.saveContext(context, holder);
+        verify(store).store(anyString(), any(SecurityContext.class));
+    }
+
+    @Test
+    public void emptyContextRemovesStoredContext() throws Exception {
+        InMemorySecurityContextStore store = new InMemorySecurityContextStore();
+        TokenPortletSecurityContextRepository repo = new TokenPortletSecurityContextRepository(store);
+        MockPortletRequest request = new MockPortletRequest();
+        PortletRequestResponseHolder holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+        SecurityContext context = repo.loadContext(holder);
+        context.setAuthentication(testToken);
+        repo.saveContext(context, holder);
+
+        holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+        context = repo.loadContext(holder);
+        context.setAuthentication(null);
+        repo.saveContext(context, holder);
+
+        assertEquals(0, store.getSize());
+        assertFalse(repo.containsContext(request));
+        assertNull(request.getPortletSession().getAttribute(
+                TokenPortletSecurityContextRepository.SPRING_SECURITY_CONTEXT_TOKEN_KEY, PortletSession.APPLICATION_SCOPE));
+    }
+
+    @Test
+    public void invalidatedSessionRemovesStoredContext() throws Exception {
+        InMemorySecurityContextStore store = new InMemorySecurityContextStore();
+        TokenPortletSecurityContextRepository repo = new TokenPortletSecurityContextRepository(store);
+        MockPortletRequest request = new MockPortletRequest();
+        PortletRequestResponseHolder holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+        SecurityContext context = repo.loadContext(holder);
+        context.setAuthentication(testToken);
+        repo.saveContext(context, holder);
+        assertEquals(1, store.getSize());
+
+        request.getPortletSession().invalidate();
+        assertEquals(0, store.getSize());
+    }
+
+    @Test
+    public void sessionIsNotCreatedForEmptyContext() throws Exception {
+        SecurityContextStore store = mock(SecurityContextStore.class);
+        TokenPortletSecurityContextRepository repo = new TokenPortletSecurityContextRepository(store);
+        MockPortletRequest request = new MockPortletRequest();
+        PortletRequestResponseHolder holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+        repo.saveContext(repo.loadContext(holder), holder);
+
+        assertNull(request.getPortletSession(false));
+        verify(store, never()).store(anyString(), any(SecurityContext.class));
+    }
+
+    @Test
+    public void expiredContextIsNotLoaded() throws Exception {
+        MutableClockStore store = new MutableClockStore();
+        store.setTimeToIdle(1000);
+        TokenPortletSecurityContextRepository repo = new TokenPortletSecurityContextRepository(store);
+        MockPortletRequest request = new MockPortletRequest();
+        PortletRequestResponseHolder holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+        SecurityContext context = repo.loadContext(holder);
+        context.setAuthentication(testToken);
+        repo.saveContext(context, holder);
+
+        store.time += 2000L * 1000 * 1000;
+        holder = new PortletRequestResponseHolder(request, new MockPortletResponse());
+        assertNull(repo.loadContext(holder).getAuthentication());
+        assertEquals(1, store.getEvictionCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedContextIsEvicted() throws Exception {
+        MutableClockStore store = new MutableClockStore();
+        store.setMaxSize(2);
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(testToken);
+
+        store.store("a", context);
+        store.time++;
+        store.store("b", context);
+        store.time++;
+        assertSame(context, store.load("a"));
+        store.time++;
+        store.store("c", context);
+
+        assertEquals(2, store.getSize());
+        assertSame(context, store.load("a"));
+        assertNull(store.load("b"));
+        assertSame(context, store.load("c"));
+        assertEquals(1, store.getEvictionCount());
+    }
+
+    private static final class MutableClockStore extends InMemorySecurityContextStore {
+        private long time = 0;
+
+        @Override
+        protected long currentTime() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.portlet.filter.RenderFilter;
+
+import org.jasig.springframework.web.portlet.filter.PortletPhase;
+import org.junit.Test;
+
+public class DefaultPortletFilterChainMetricsTests {
+
+    @Test
+    public void statisticsArePerPhaseChainAndFilter() {
+        final DefaultPortletFilterChainMetrics metrics = new DefaultPortletFilterChainMetrics();
+        final RenderFilter filter = mock(RenderFilter.class);
+
+        metrics.recordChainInvocation(PortletPhase.RENDER, 1, 100, false);
+        metrics.recordChainInvocation(PortletPhase.RENDER, 1, 300, true);
+        metrics.recordFilterInvocation(PortletPhase.RENDER, 1, 2, filter, 250, 50, false);
+
+        final InvocationStatistics chainStatistics = metrics.getChainStatistics(PortletPhase.RENDER, 1);
+        assertEquals(2, chainStatistics.getInvocationCount());
+        assertEquals(1, chainStatistics.getFailureCount());
+        assertEquals(400, chainStatistics.getTotalNanos());
+        assertEquals(200, chainStatistics.getMeanSelfNanos());
+        assertEquals(300, chainStatistics.getMaxSelfNanos());
+
+        final InvocationStatistics filterStatistics = metrics.getFilterStatistics(PortletPhase.RENDER, 1, 2);
+        assertEquals(1, filterStatistics.getInvocationCount());
+        assertEquals(250, filterStatistics.getTotalNanos());
+        assertEquals(50, filterStatistics.getSelfNanos());
+
+        assertNull(metrics.getChainStatistics(PortletPhase.ACTION, 1));
+        assertNull(metrics.getChainStatistics(PortletPhase.RENDER, 0));
+        assertNull(metrics.getFilterStatistics(PortletPhase.RENDER, 1, 0));
+
+        metrics.reset();
+        assertEquals(0, chainStatistics.getInvocationCount());
+        assertEquals(0, filterStatistics.getSelfNanos());
+    }
+
+    @Test
+    public void percentilesAreWithinBucketResolution() {
+        final InvocationStatistics statistics = new InvocationStatistics("test");
+        for (int i = 1; i <= 1000; i++) {
+            statistics.record(i * 1000, i * 1000, false);
+        }
+
+        assertWithin(500000, statistics.getSelfNanos50thPercentile());
+        assertWithin(990000, statistics.getSelfNanos99thPercentile());
+        assertEquals(1000000, statistics.getMaxSelfNanos());
+    }
+
+    @Test
+    public void histogramBucketsAreContiguous() {
+        for (int index = 0; index < 400; index++) {
+            assertEquals(NanoHistogram.bucketUpperBound(index) + 1, NanoHistogram.bucketLowerBound(index + 1));
+            assertEquals(index, NanoHistogram.bucketIndex(NanoHistogram.bucketLowerBound(index)));
+            assertEquals(index, NanoHistogram.bucketIndex(NanoHistogram.bucketUpperBound(index)));
+        }
+
+        final NanoHistogram histogram = new NanoHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void statisticsAreRegisteredAsMBeans() throws Exception {
+        final MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        final DefaultPortletFilterChainMetrics metrics = new DefaultPortletFilterChainMetrics();
+        metrics.setMBeanServer(mBeanServer);
+        metrics.setName("proxy");
+
+        metrics.recordChainInvocation(PortletPhase.ACTION, 0, 100, false);
+        metrics.recordFilterInvocation(PortletPhase.ACTION, 0, 0, mock(RenderFilter.class), 100, 10, false);
+        assertEquals(2, metrics.getRegisteredNames().size());
+
+        final ObjectName chainName = new ObjectName(
+                "org.jasig.springframework.security.portlet:type=PortletFilterChain,name=\"proxy\",phase=ACTION_PHASE,chain=0");
+        assertTrue(mBeanServer.isRegistered(chainName));
+        assertEquals(1L, mBeanServer.getAttribute(chainName, "InvocationCount"));
+
+        metrics.destroy();
+        assertFalse(mBeanServer.isRegistered(chainName));
+        assertTrue(metrics.getRegisteredNames().isEmpty());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " not within 12.5% of " + expected, Math.abs(actual - expected) <= expected / 8);
+    }
+}
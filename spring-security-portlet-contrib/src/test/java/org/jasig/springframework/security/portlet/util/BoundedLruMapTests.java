@@ -0,0 +1,64 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BoundedLruMapTests {
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        final BoundedLruMap<String, String> map = new BoundedLruMap<String, String>(2);
+        map.put("a", "A");
+        map.put("b", "B");
+        map.get("a");
+        map.put("c", "C");
+
+        assertEquals(2, map.size());
+        assertTrue(map.containsKey("a"));
+        assertFalse(map.containsKey("b"));
+        assertEquals(1, map.getEvictionCount());
+
+        // Explicit removals are not evictions
+        map.remove("a");
+        assertEquals(1, map.getEvictionCount());
+
+        map.resetEvictionCount();
+        assertEquals(0, map.getEvictionCount());
+    }
+
+    @Test
+    public void reducedMaxSizeAppliesOnNextPut() {
+        final BoundedLruMap<String, String> map = new BoundedLruMap<String, String>(3);
+        map.put("a", "A");
+        map.put("b", "B");
+        map.put("c", "C");
+
+        map.setMaxSize(1);
+        assertEquals(3, map.size());
+        map.put("d", "D");
+        assertEquals(1, map.size());
+        assertTrue(map.containsKey("d"));
+        assertEquals(3, map.getEvictionCount());
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.EnumSet;
+
+import javax.portlet.PortletMode;
+import javax.portlet.PortletRequest;
+import javax.portlet.WindowState;
+
+import org.jasig.springframework.security.portlet.util.RequestMatchCache.KeyComponent;
+import org.junit.Test;
+import org.springframework.mock.web.portlet.MockActionRequest;
+import org.springframework.mock.web.portlet.MockRenderRequest;
+
+public class CachingRequestMatcherTests {
+
+    @Test
+    public void resultIsCachedPerKey() {
+        final RequestMatcher delegate = mock(RequestMatcher.class);
+        when(delegate.matches(any(PortletRequest.class))).thenReturn(true);
+        final CachingRequestMatcher matcher = new CachingRequestMatcher(delegate);
+
+        assertTrue(matcher.matches(createRenderRequest("w1", PortletMode.VIEW, WindowState.NORMAL)));
+        assertTrue(matcher.matches(createRenderRequest("w1", PortletMode.VIEW, WindowState.NORMAL)));
+        verify(delegate, times(1)).matches(any(PortletRequest.class));
+
+        assertTrue(matcher.matches(createRenderRequest("w2", PortletMode.VIEW, WindowState.NORMAL)));
+        assertTrue(matcher.matches(createRenderRequest("w1", PortletMode.EDIT, WindowState.NORMAL)));
+        assertTrue(matcher.matches(createRenderRequest("w1", PortletMode.VIEW, WindowState.MAXIMIZED)));
+        final MockActionRequest actionRequest = new MockActionRequest();
+        actionRequest.setWindowID("w1");
+        assertTrue(matcher.matches(actionRequest));
+        verify(delegate, times(5)).matches(any(PortletRequest.class));
+
+        assertEquals(1, matcher.getCache().getHitCount());
+        assertEquals(5, matcher.getCache().getMissCount());
+        assertEquals(5, matcher.getCache().getSize());
+    }
+
+    @Test
+    public void negativeResultIsCached() {
+        final RequestMatcher delegate = mock(RequestMatcher.class);
+        final CachingRequestMatcher matcher = new CachingRequestMatcher(delegate);
+
+        assertFalse(matcher.matches(createRenderRequest("w1", PortletMode.VIEW, WindowState.NORMAL)));
+        assertFalse(matcher.matches(createRenderRequest("w1", PortletMode.VIEW, WindowState.NORMAL)));
+        verify(delegate, times(1)).matches(any(PortletRequest.class));
+    }
+
+    @Test
+    public void keyComponentsAreConfigurable() {
+        final RequestMatcher delegate = mock(RequestMatcher.class);
+        final CachingRequestMatcher matcher = new CachingRequestMatcher(delegate,
+                new RequestMatchCache<Boolean>(10, EnumSet.of(KeyComponent.WINDOW_ID)));
+
+        matcher.matches(createRenderRequest("w1", PortletMode.VIEW, WindowState.NORMAL));
+        matcher.matches(createRenderRequest("w1", PortletMode.EDIT, WindowState.MAXIMIZED));
+        verify(delegate, times(1)).matches(any(PortletRequest.class));
+    }
+
+    @Test
+    public void recentlyUsedKeyIsNotEvicted() {
+        final RequestMatcher delegate = mock(RequestMatcher.class);
+        final CachingRequestMatcher matcher = new CachingRequestMatcher(delegate,
+                new RequestMatchCache<Boolean>(2, EnumSet.of(KeyComponent.WINDOW_ID)));
+
+        matcher.matches(createRenderRequest("w1", PortletMode.VIEW, WindowState.NORMAL));
+        matcher.matches(createRenderRequest("w2", PortletMode.VIEW, WindowState.NORMAL));
+        matcher.matches(createRenderRequest("w1", PortletMode.VIEW, WindowState.NORMAL));
+        matcher.matches(createRenderRequest("w3", PortletMode.VIEW, WindowState.NORMAL));
+        assertEquals(2, matcher.getCache().getSize());
+
+        //w2 was not used since it was cached and must be evicted, w1 was used and must still be cached
+        matcher.matches(createRenderRequest("w1", PortletMode.VIEW, WindowState.NORMAL));
+        verify(delegate, times(3)).matches(any(PortletRequest.class));
+        matcher.matches(createRenderRequest("w2", PortletMode.VIEW, WindowState.NORMAL));
+        verify(delegate, times(4)).matches(any(PortletRequest.class));
+    }
+
+    private MockRenderRequest createRenderRequest(String windowId, PortletMode mode, WindowState state) {
+        final MockRenderRequest request = new MockRenderRequest(mode, state);
+        request.setWindowID(windowId);
+        return request;
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.security.portlet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import javax.portlet.ActionRequest;
+import javax.portlet.PortletMode;
+import javax.portlet.PortletRequest;
+import javax.portlet.WindowState;
+
+import org.junit.Test;
+import org.springframework.mock.web.portlet.MockActionRequest;
+import org.springframework.mock.web.portlet.MockRenderRequest;
+import org.springframework.mock.web.portlet.MockResourceRequest;
+
+public class RequestMatchersTests {
+
+    @Test
+    public void lifecyclePhase() {
+        final RequestMatcher matcher = new LifecyclePhaseRequestMatcher(PortletRequest.RENDER_PHASE,
+                PortletRequest.RESOURCE_PHASE);
+
+        assertTrue(matcher.matches(new MockRenderRequest()));
+        assertTrue(matcher.matches(new MockResourceRequest()));
+        assertFalse(matcher.matches(new MockActionRequest()));
+    }
+
+    @Test
+    public void portletModeAndWindowState() {
+        final MockRenderRequest request = new MockRenderRequest(PortletMode.EDIT, WindowState.MAXIMIZED);
+
+        assertTrue(new PortletModeRequestMatcher(PortletMode.VIEW, PortletMode.EDIT).matches(request));
+        assertFalse(new PortletModeRequestMatcher(PortletMode.HELP).matches(request));
+        assertTrue(new WindowStateRequestMatcher(WindowState.MAXIMIZED).matches(request));
+        assertFalse(new WindowStateRequestMatcher(WindowState.NORMAL, WindowState.MINIMIZED).matches(request));
+    }
+
+    @Test
+    public void resourceIdAndActionName() {
+        final MockResourceRequest resourceRequest = new MockResourceRequest("image");
+        assertTrue(new ResourceIdRequestMatcher("image").matches(resourceRequest));
+        assertFalse(new ResourceIdRequestMatcher("other").matches(resourceRequest));
+        assertFalse(new ResourceIdRequestMatcher("image").matches(new MockRenderRequest()));
+
+        final MockActionRequest actionRequest = new MockActionRequest("save");
+        assertTrue(new ActionNameRequestMatcher("save").matches(actionRequest));
+        assertFalse(new ActionNameRequestMatcher("delete").matches(actionRequest));
+
+        final MockRenderRequest renderRequest = new MockRenderRequest();
+        renderRequest.setParameter(ActionRequest.ACTION_NAME, "save");
+        assertFalse(new ActionNameRequestMatcher("save").matches(renderRequest));
+    }
+
+    @Test
+    public void parameter() {
+        final MockRenderRequest request = new MockRenderRequest();
+        request.setParameter("tab", new String[] { "a", "b" });
+
+        assertTrue(new ParameterRequestMatcher("tab").matches(request));
+        assertTrue(new ParameterRequestMatcher("tab", "b").matches(request));
+        assertFalse(new ParameterRequestMatcher("tab", "c").matches(request));
+        assertFalse(new ParameterRequestMatcher("page").matches(request));
+    }
+
+    @Test
+    public void composites() {
+        final MockRenderRequest request = new MockRenderRequest(PortletMode.VIEW, WindowState.NORMAL);
+        request.addUserRole("admin");
+
+        final RequestMatcher view = new PortletModeRequestMatcher(PortletMode.VIEW);
+        final RequestMatcher admin = new RoleRequestMatcher("staff", "admin");
+        final RequestMatcher maximized = new WindowStateRequestMatcher(WindowState.MAXIMIZED);
+
+        assertTrue(admin.matches(request));
+        assertTrue(new AndRequestMatcher(view, admin).matches(request));
+        assertFalse(new AndRequestMatcher(view, maximized).matches(request));
+        assertTrue(new OrRequestMatcher(maximized, admin).matches(request));
+        assertFalse(new OrRequestMatcher(maximized, new NotRequestMatcher(view)).matches(request));
+        assertTrue(new NotRequestMatcher(maximized).matches(request));
+
+        assertEquals(new AndRequestMatcher(view, admin), new AndRequestMatcher(new PortletModeRequestMatcher(
+                PortletMode.VIEW), new RoleRequestMatcher("staff", "admin")));
+    }
+
+    @Test
+    public void requestDataIsReadOnce() {
+        final MockRenderRequest request = spy(new MockRenderRequest(PortletMode.VIEW, WindowState.NORMAL));
+        request.setParameter("tab", "a");
+        request.addUserRole("admin");
+
+        final RequestMatcher first = new AndRequestMatcher(new PortletModeRequestMatcher(PortletMode.EDIT),
+                new RoleRequestMatcher("admin"));
+        final RequestMatcher second = new AndRequestMatcher(new RoleRequestMatcher("admin"),
+                new ParameterRequestMatcher("tab", "b"));
+        final RequestMatcher third = new AndRequestMatcher(new PortletModeRequestMatcher(PortletMode.VIEW),
+                new RoleRequestMatcher("admin"), new ParameterRequestMatcher("tab", "a"));
+
+        assertFalse(first.matches(request));
+        assertFalse(second.matches(request));
+        assertTrue(third.matches(request));
+
+        verify(request, times(1)).getPortletMode();
+        verify(request, times(1)).isUserInRole("admin");
+        verify(request, times(1)).getParameterValues("tab");
+    }
+
+    @Test
+    public void compositeResolvesContextOnce() {
+        final MockRenderRequest request = spy(new MockRenderRequest(PortletMode.VIEW, WindowState.NORMAL));
+        request.setParameter("tab", "a");
+
+        final RequestMatcher matcher = new AndRequestMatcher(
+                new OrRequestMatcher(new PortletModeRequestMatcher(PortletMode.EDIT),
+                        new WindowStateRequestMatcher(WindowState.NORMAL)),
+                new NotRequestMatcher(new RoleRequestMatcher("admin")),
+                new ParameterRequestMatcher("tab", "a"),
+                new LifecyclePhaseRequestMatcher(PortletRequest.RENDER_PHASE));
+
+        assertTrue(matcher.matches(request));
+        verify(request, times(1)).getAttribute(RequestMatchingContext.CONTEXT_ATTRIBUTE);
+    }
+
+    @Test
+    public void leafReadsPlainGetterDirectly() {
+        final MockRenderRequest request = spy(new MockRenderRequest(PortletMode.VIEW, WindowState.NORMAL));
+
+        assertTrue(new PortletModeRequestMatcher(PortletMode.VIEW).matches(request));
+        assertTrue(new WindowStateRequestMatcher(WindowState.NORMAL).matches(request));
+        verify(request, never()).getAttribute(RequestMatchingContext.CONTEXT_ATTRIBUTE);
+    }
+}
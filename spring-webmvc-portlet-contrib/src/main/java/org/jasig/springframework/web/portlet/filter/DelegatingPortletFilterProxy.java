@@ -19,9 +19,6 @@
 package org.jasig.springframework.web.portlet.filter;
 
 import java.io.IOException;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.portlet.ActionRequest;
 import javax.portlet.ActionResponse;
@@ -70,6 +67,13 @@ import org.springframework.web.portlet.context.PortletApplicationContextUtils;
  * of the {@code PortletFilter.init} and {@code PortletFilter.destroy} lifecycle methods
  * on the target bean, letting the portlet container manage the filter lifecycle.
  *
+ * <p>Once the delegate has been resolved it is published through a single volatile
+ * field as a {@link PortletFilterInvoker}, the per request path reads that field
+ * and makes one call to the invoker for the request's phase without taking a lock,
+ * looking up the application context or checking the delegate's type. If the
+ * delegate does not support the phase, the {@code invokeDelegate} methods are passed
+ * a fail-fast filter that throws an {@link IllegalStateException}.
+ *
  * <p>This class was originally inspired by Spring's {@code DelegatingFilterProxy}
  *
  * @author Eric Dalquist
@@ -137,15 +141,9 @@ public class DelegatingPortletFilterProxy extends GenericPortletFilterBean {
 
     private String contextAttribute;
 
-    private PortletFilter delegate;
-    private ActionFilter actionDelegate;
-    private EventFilter eventDelegate;
-    private RenderFilter renderDelegate;
-    private ResourceFilter resourceDelegate;
+    private volatile PortletFilterInvoker delegateInvoker;
 
-    private final ReadWriteLock delegateLock = new ReentrantReadWriteLock();
-    private final Lock delegateReadLock = this.delegateLock.readLock();
-    private final Lock delegateWriteLock = this.delegateLock.writeLock();
+    private final Object delegateMonitor = new Object();
 
 
     /**
@@ -237,14 +235,10 @@ public class DelegatingPortletFilterProxy extends GenericPortletFilterBean {
             PortletException {
 
         // Lazily initialize the delegate if necessary.
-        initDelegate(true);
-
-        if (this.resourceDelegate == null) {
-            throw new IllegalStateException("The delegate PortletFilter does not implement ResourceFilter but " + this.getFilterName() + " is configured with the RESOURCE_PHASE lifecycle.");
-        }
+        final ResourceFilter resourceInvoker = getDelegateInvoker().getResourceInvoker();
 
         // Let the delegate perform the actual doFilter operation.
-        invokeDelegate(this.resourceDelegate, request, response, chain);
+        invokeDelegate(resourceInvoker, request, response, chain);
     }
 
     /** {@inheritDoc} */
@@ -252,14 +246,10 @@ public class DelegatingPortletFilterProxy extends GenericPortletFilterBean {
             PortletException {
 
         // Lazily initialize the delegate if necessary.
-        initDelegate(true);
-
-        if (this.eventDelegate == null) {
-            throw new IllegalStateException("The delegate PortletFilter does not implement EventFilter but " + this.getFilterName() + " is configured with the EVENT_PHASE lifecycle.");
-        }
+        final EventFilter eventInvoker = getDelegateInvoker().getEventInvoker();
 
         // Let the delegate perform the actual doFilter operation.
-        invokeDelegate(this.eventDelegate, request, response, chain);
+        invokeDelegate(eventInvoker, request, response, chain);
     }
 
     /** {@inheritDoc} */
@@ -267,14 +257,10 @@ public class DelegatingPortletFilterProxy extends GenericPortletFilterBean {
             PortletException {
 
         // Lazily initialize the delegate if necessary.
-        initDelegate(true);
-
-        if (this.renderDelegate == null) {
-            throw new IllegalStateException("The delegate PortletFilter does not implement RenderFilter but " + this.getFilterName() + " is configured with the RENDER_PHASE lifecycle.");
-        }
+        final RenderFilter renderInvoker = getDelegateInvoker().getRenderInvoker();
 
         // Let the delegate perform the actual doFilter operation.
-        invokeDelegate(this.renderDelegate, request, response, chain);
+        invokeDelegate(renderInvoker, request, response, chain);
     }
 
     /** {@inheritDoc} */
@@ -282,31 +268,19 @@ public class DelegatingPortletFilterProxy extends GenericPortletFilterBean {
             PortletException {
 
         // Lazily initialize the delegate if necessary.
-        initDelegate(true);
-
-        if (this.actionDelegate == null) {
-            throw new IllegalStateException("The delegate PortletFilter does not implement ActionFilter but " + this.getFilterName() + " is configured with the ACTION_PHASE lifecycle.");
-        }
+        final ActionFilter actionInvoker = getDelegateInvoker().getActionInvoker();
 
         // Let the delegate perform the actual doFilter operation.
-        invokeDelegate(this.actionDelegate, request, response, chain);
+        invokeDelegate(actionInvoker, request, response, chain);
     }
 
     /**
      * <p>destroy.</p>
      */
     public void destroy() {
-        PortletFilter delegateToUse = null;
-        delegateReadLock.lock();
-        try {
-            delegateToUse = this.delegate;
-        }
-        finally {
-            delegateReadLock.unlock();
-        }
-
-        if (delegateToUse != null) {
-            destroyDelegate(delegateToUse);
+        final PortletFilterInvoker invoker = this.delegateInvoker;
+        if (invoker != null) {
+            destroyDelegate(invoker.getFilter());
         }
     }
 
@@ -361,31 +335,19 @@ public class DelegatingPortletFilterProxy extends GenericPortletFilterBean {
      * @param require a boolean.
      */
     protected void initDelegate(boolean require) throws PortletException {
-        final ApplicationContext wac = findWebApplicationContext();
-        PortletFilter delegate = null;
-
-        //Check if initialization is complete
-        this.delegateReadLock.lock();
-        try {
-            delegate = this.delegate;
-        }
-        finally {
-            this.delegateReadLock.unlock();
-        }
-
-        //Return if the delegate filter was found
-        if (delegate != null) {
+        //Return if the delegate filter was already initialized, no locking or context lookup needed
+        if (this.delegateInvoker != null) {
             return;
         }
 
-        this.delegateWriteLock.lock();
-        try {
+        synchronized (this.delegateMonitor) {
             //Already initialized
-            if (this.delegate != null) {
+            if (this.delegateInvoker != null) {
                 return;
             }
 
             //Verify app context is available
+            final ApplicationContext wac = findWebApplicationContext();
             if (wac == null) {
                 //If required init throw an exception for a missing app context
                 if (require) {
@@ -397,29 +359,29 @@ public class DelegatingPortletFilterProxy extends GenericPortletFilterBean {
             }
 
             //Load and init the delegate filter
-            delegate = wac.getBean(getTargetBeanName(), PortletFilter.class);
+            final PortletFilter delegate = wac.getBean(getTargetBeanName(), PortletFilter.class);
             if (isTargetFilterLifecycle()) {
                 delegate.init(getFilterConfig());
             }
 
-            //init local fields
-            this.delegate = delegate;
-            if (delegate instanceof ActionFilter) {
-                actionDelegate = (ActionFilter)delegate;
-            }
-            if (delegate instanceof EventFilter) {
-                eventDelegate = (EventFilter)delegate;
-            }
-            if (delegate instanceof RenderFilter) {
-                renderDelegate = (RenderFilter)delegate;
-            }
-            if (delegate instanceof ResourceFilter) {
-                resourceDelegate = (ResourceFilter)delegate;
-            }
+            //Publish the fully initialized delegate, with its phase invokers bound once
+            this.delegateInvoker = new PortletFilterInvoker(delegate, getFilterName());
         }
-        finally {
-            this.delegateWriteLock.unlock();
+    }
+
+    /**
+     * Get the invoker for the resolved delegate, initializing it if needed
+     */
+    private PortletFilterInvoker getDelegateInvoker() throws PortletException {
+        PortletFilterInvoker invoker = this.delegateInvoker;
+        if (invoker == null) {
+            initDelegate(true);
+            invoker = this.delegateInvoker;
+            if (invoker == null) {
+                throw new IllegalStateException("Delegate PortletFilter " + getTargetBeanName() + " was not initialized");
+            }
         }
+        return invoker;
     }
 
     /**
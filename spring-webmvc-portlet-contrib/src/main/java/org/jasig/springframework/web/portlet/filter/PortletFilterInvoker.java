@@ -0,0 +1,222 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.web.portlet.filter;
+
+import java.io.IOException;
+
+import javax.portlet.ActionRequest;
+import javax.portlet.ActionResponse;
+import javax.portlet.EventRequest;
+import javax.portlet.EventResponse;
+import javax.portlet.PortletException;
+import javax.portlet.RenderRequest;
+import javax.portlet.RenderResponse;
+import javax.portlet.ResourceRequest;
+import javax.portlet.ResourceResponse;
+import javax.portlet.filter.ActionFilter;
+import javax.portlet.filter.EventFilter;
+import javax.portlet.filter.FilterChain;
+import javax.portlet.filter.FilterConfig;
+import javax.portlet.filter.PortletFilter;
+import javax.portlet.filter.RenderFilter;
+import javax.portlet.filter.ResourceFilter;
+
+import org.springframework.util.Assert;
+
+/**
+ * Pre-bound, per lifecycle phase view of a {@link PortletFilter}. The filter interfaces are checked once when the
+ * invoker is created, each phase then has a non-null invoker: the filter itself if it implements the phase's
+ * interface, or a fail-fast filter that throws an {@link IllegalStateException} if it does not. Invoking a phase
+ * is a single interface call with no {@code instanceof} checks, casts or {@link javax.portlet.PortletRequest#LIFECYCLE_PHASE}
+ * lookups, unlike {@link PortletFilterUtils#doFilter(PortletFilter, javax.portlet.PortletRequest, javax.portlet.PortletResponse, FilterChain)}.
+ *
+ * @version $Id: $Id
+ */
+public final class PortletFilterInvoker {
+    private final PortletFilter filter;
+    private final ActionFilter actionInvoker;
+    private final EventFilter eventInvoker;
+    private final RenderFilter renderInvoker;
+    private final ResourceFilter resourceInvoker;
+
+    /**
+     * @param filter the filter to invoke
+     * @param filterName name used in the error message when an unsupported phase is invoked
+     */
+    public PortletFilterInvoker(PortletFilter filter, String filterName) {
+        Assert.notNull(filter, "filter must not be null");
+        this.filter = filter;
+        this.actionInvoker = filter instanceof ActionFilter ? (ActionFilter) filter
+                : new UnsupportedPhaseFilter(filter, filterName, "ActionFilter", "ACTION_PHASE");
+        this.eventInvoker = filter instanceof EventFilter ? (EventFilter) filter
+                : new UnsupportedPhaseFilter(filter, filterName, "EventFilter", "EVENT_PHASE");
+        this.renderInvoker = filter instanceof RenderFilter ? (RenderFilter) filter
+                : new UnsupportedPhaseFilter(filter, filterName, "RenderFilter", "RENDER_PHASE");
+        this.resourceInvoker = filter instanceof ResourceFilter ? (ResourceFilter) filter
+                : new UnsupportedPhaseFilter(filter, filterName, "ResourceFilter", "RESOURCE_PHASE");
+    }
+
+    /**
+     * @return the filter being invoked
+     */
+    public PortletFilter getFilter() {
+        return this.filter;
+    }
+
+    /**
+     * @return the filter if it is an {@link ActionFilter}, otherwise a filter that always fails
+     */
+    public ActionFilter getActionInvoker() {
+        return this.actionInvoker;
+    }
+
+    /**
+     * @return the filter if it is an {@link EventFilter}, otherwise a filter that always fails
+     */
+    public EventFilter getEventInvoker() {
+        return this.eventInvoker;
+    }
+
+    /**
+     * @return the filter if it is a {@link RenderFilter}, otherwise a filter that always fails
+     */
+    public RenderFilter getRenderInvoker() {
+        return this.renderInvoker;
+    }
+
+    /**
+     * @return the filter if it is a {@link ResourceFilter}, otherwise a filter that always fails
+     */
+    public ResourceFilter getResourceInvoker() {
+        return this.resourceInvoker;
+    }
+
+    /**
+     * Invoke the filter for an action request
+     *
+     * @param request the action request
+     * @param response the action response
+     * @param chain the filter chain
+     * @throws IOException if thrown by the filter
+     * @throws PortletException if thrown by the filter
+     * @throws IllegalStateException if the filter is not an {@link ActionFilter}
+     */
+    public void doFilter(ActionRequest request, ActionResponse response, FilterChain chain) throws IOException,
+            PortletException {
+        this.actionInvoker.doFilter(request, response, chain);
+    }
+
+    /**
+     * Invoke the filter for an event request
+     *
+     * @param request the event request
+     * @param response the event response
+     * @param chain the filter chain
+     * @throws IOException if thrown by the filter
+     * @throws PortletException if thrown by the filter
+     * @throws IllegalStateException if the filter is not an {@link EventFilter}
+     */
+    public void doFilter(EventRequest request, EventResponse response, FilterChain chain) throws IOException,
+            PortletException {
+        this.eventInvoker.doFilter(request, response, chain);
+    }
+
+    /**
+     * Invoke the filter for a render request
+     *
+     * @param request the render request
+     * @param response the render response
+     * @param chain the filter chain
+     * @throws IOException if thrown by the filter
+     * @throws PortletException if thrown by the filter
+     * @throws IllegalStateException if the filter is not a {@link RenderFilter}
+     */
+    public void doFilter(RenderRequest request, RenderResponse response, FilterChain chain) throws IOException,
+            PortletException {
+        this.renderInvoker.doFilter(request, response, chain);
+    }
+
+    /**
+     * Invoke the filter for a resource request
+     *
+     * @param request the resource request
+     * @param response the resource response
+     * @param chain the filter chain
+     * @throws IOException if thrown by the filter
+     * @throws PortletException if thrown by the filter
+     * @throws IllegalStateException if the filter is not a {@link ResourceFilter}
+     */
+    public void doFilter(ResourceRequest request, ResourceResponse response, FilterChain chain) throws IOException,
+            PortletException {
+        this.resourceInvoker.doFilter(request, response, chain);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "PortletFilterInvoker [" + this.filter + "]";
+    }
+
+    /**
+     * Stands in for a phase the filter does not support, fails on every invocation
+     */
+    private static final class UnsupportedPhaseFilter implements ActionFilter, EventFilter, RenderFilter, ResourceFilter {
+        private final PortletFilter filter;
+        private final String message;
+
+        private UnsupportedPhaseFilter(PortletFilter filter, String filterName, String filterType, String phase) {
+            this.filter = filter;
+            this.message = "The delegate PortletFilter does not implement " + filterType + " but " + filterName
+                    + " is configured with the " + phase + " lifecycle.";
+        }
+
+        @Override
+        public void init(FilterConfig filterConfig) throws PortletException {
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public void doFilter(ActionRequest request, ActionResponse response, FilterChain chain) {
+            throw new IllegalStateException(this.message);
+        }
+
+        @Override
+        public void doFilter(EventRequest request, EventResponse response, FilterChain chain) {
+            throw new IllegalStateException(this.message);
+        }
+
+        @Override
+        public void doFilter(RenderRequest request, RenderResponse response, FilterChain chain) {
+            throw new IllegalStateException(this.message);
+        }
+
+        @Override
+        public void doFilter(ResourceRequest request, ResourceResponse response, FilterChain chain) {
+            throw new IllegalStateException(this.message);
+        }
+
+        @Override
+        public String toString() {
+            return "UnsupportedPhaseFilter [" + this.filter + "]";
+        }
+    }
+}
@@ -21,22 +21,14 @@ package org.jasig.springframework.web.portlet.filter;
 import java.io.IOException;
 
 import javax.portlet.ActionRequest;
-import javax.portlet.ActionResponse;
 import javax.portlet.EventRequest;
-import javax.portlet.EventResponse;
 import javax.portlet.PortletException;
 import javax.portlet.PortletRequest;
 import javax.portlet.PortletResponse;
 import javax.portlet.RenderRequest;
-import javax.portlet.RenderResponse;
 import javax.portlet.ResourceRequest;
-import javax.portlet.ResourceResponse;
-import javax.portlet.filter.ActionFilter;
-import javax.portlet.filter.EventFilter;
 import javax.portlet.filter.FilterChain;
 import javax.portlet.filter.PortletFilter;
-import javax.portlet.filter.RenderFilter;
-import javax.portlet.filter.ResourceFilter;
 
 /**
  * Utilities for interacting with a portlet filter chain
@@ -49,8 +41,75 @@ public final class PortletFilterUtils {
     }
     
     /**
-     * Call doFilter and use the {@link javax.portlet.PortletRequest#LIFECYCLE_PHASE} attribute to figure out what
-     * type of request/response are in use and call the appropriate doFilter method on {@link javax.portlet.filter.FilterChain}
+     * Request attribute the resolved {@link PortletPhase} is cached under
+     */
+    public static final String PORTLET_PHASE_ATTRIBUTE = PortletPhase.class.getName();
+
+    /**
+     * Determine the lifecycle phase of the request. The request's interface type is checked first, which needs no
+     * attribute lookup. Only if the request implements none or more than one of the phase specific request
+     * interfaces is the {@link javax.portlet.PortletRequest#LIFECYCLE_PHASE} attribute consulted, the result of
+     * that lookup is cached on the request under {@link #PORTLET_PHASE_ATTRIBUTE}. The cached value records the
+     * request object it was resolved for and is ignored when seen through a different request, as happens when
+     * request attributes carry over from the action to the event or render phase.
+     *
+     * @param request a {@link javax.portlet.PortletRequest} object.
+     * @return the phase of the request, null if it cannot be determined
+     */
+    public static PortletPhase getPortletPhase(PortletRequest request) {
+        PortletPhase byType = null;
+        int matches = 0;
+        if (request instanceof ActionRequest) {
+            byType = PortletPhase.ACTION;
+            matches++;
+        }
+        if (request instanceof EventRequest) {
+            byType = PortletPhase.EVENT;
+            matches++;
+        }
+        if (request instanceof RenderRequest) {
+            byType = PortletPhase.RENDER;
+            matches++;
+        }
+        if (request instanceof ResourceRequest) {
+            byType = PortletPhase.RESOURCE;
+            matches++;
+        }
+        if (matches == 1) {
+            return byType;
+        }
+
+        final Object cached = request.getAttribute(PORTLET_PHASE_ATTRIBUTE);
+        if (cached instanceof ResolvedPortletPhase) {
+            final ResolvedPortletPhase resolvedPhase = (ResolvedPortletPhase) cached;
+            if (resolvedPhase.request == request) {
+                return resolvedPhase.phase;
+            }
+        }
+
+        final PortletPhase phase = PortletPhase.forPhaseName(request.getAttribute(PortletRequest.LIFECYCLE_PHASE));
+        if (phase != null) {
+            request.setAttribute(PORTLET_PHASE_ATTRIBUTE, new ResolvedPortletPhase(request, phase));
+        }
+        return phase;
+    }
+
+    /**
+     * A phase resolved from the lifecycle attribute, along with the request it was resolved for
+     */
+    private static final class ResolvedPortletPhase {
+        private final PortletRequest request;
+        private final PortletPhase phase;
+
+        private ResolvedPortletPhase(PortletRequest request, PortletPhase phase) {
+            this.request = request;
+            this.phase = phase;
+        }
+    }
+
+    /**
+     * Call doFilter and use the phase of the request, see {@link #getPortletPhase(PortletRequest)}, to figure out
+     * what type of request/response are in use and call the appropriate doFilter method on {@link javax.portlet.filter.FilterChain}
      *
      * @param request a {@link javax.portlet.PortletRequest} object.
      * @param response a {@link javax.portlet.PortletResponse} object.
@@ -60,29 +119,29 @@ public final class PortletFilterUtils {
      */
     public static void doFilter(PortletRequest request, PortletResponse response, FilterChain chain)
             throws IOException, PortletException {
-        
-        final Object phase = request.getAttribute(PortletRequest.LIFECYCLE_PHASE);
 
-        if (PortletRequest.ACTION_PHASE.equals(phase)) {
-            chain.doFilter((ActionRequest) request, (ActionResponse) response);
-        }
-        else if (PortletRequest.EVENT_PHASE.equals(phase)) {
-            chain.doFilter((EventRequest) request, (EventResponse) response);
-        }
-        else if (PortletRequest.RENDER_PHASE.equals(phase)) {
-            chain.doFilter((RenderRequest) request, (RenderResponse) response);
-        }
-        else if (PortletRequest.RESOURCE_PHASE.equals(phase)) {
-            chain.doFilter((ResourceRequest) request, (ResourceResponse) response);
-        }
-        else {
-            throw new IllegalArgumentException("Unknown Portlet Lifecycle Phase: " + phase);
-        }
+        doFilter(requirePortletPhase(request), request, response, chain);
     }
-    
+
+    /**
+     * Call the doFilter method of {@link javax.portlet.filter.FilterChain} for an already resolved phase
+     *
+     * @param phase the phase of the request
+     * @param request a {@link javax.portlet.PortletRequest} object.
+     * @param response a {@link javax.portlet.PortletResponse} object.
+     * @param chain a {@link javax.portlet.filter.FilterChain} object.
+     * @throws java.io.IOException if any.
+     * @throws javax.portlet.PortletException if any.
+     */
+    public static void doFilter(PortletPhase phase, PortletRequest request, PortletResponse response, FilterChain chain)
+            throws IOException, PortletException {
+
+        phase.doFilter(request, response, chain);
+    }
+
     /**
      * Call doFilter on the specified {@link javax.portlet.filter.PortletFilter}, determines the right PortletFilter interface to use by
-     * looking at the {@link javax.portlet.PortletRequest#LIFECYCLE_PHASE} attribute
+     * looking at the phase of the request, see {@link #getPortletPhase(PortletRequest)}
      *
      * @param filter a {@link javax.portlet.filter.PortletFilter} object.
      * @param request a {@link javax.portlet.PortletRequest} object.
@@ -93,43 +152,32 @@ public final class PortletFilterUtils {
      */
     public static void doFilter(PortletFilter filter, PortletRequest request, PortletResponse response, FilterChain chain)
             throws IOException, PortletException {
-        
-        final Object phase = request.getAttribute(PortletRequest.LIFECYCLE_PHASE);
 
-        if (PortletRequest.ACTION_PHASE.equals(phase)) {
-            if (filter instanceof ActionFilter) {
-                ((ActionFilter) filter).doFilter((ActionRequest) request, (ActionResponse) response, chain);
-            }
-            else {
-                throw new IllegalArgumentException("Provided filter does not implement ActionFilter as required by : " + phase + " - " + filter); 
-            }
-        }
-        else if (PortletRequest.EVENT_PHASE.equals(phase)) {
-            if (filter instanceof EventFilter) {
-                ((EventFilter) filter).doFilter((EventRequest) request, (EventResponse) response, chain);
-            }
-            else {
-                throw new IllegalArgumentException("Provided filter does not implement EventFilter as required by : " + phase + " - " + filter); 
-            }
-        }
-        else if (PortletRequest.RENDER_PHASE.equals(phase)) {
-            if (filter instanceof RenderFilter) {
-                ((RenderFilter) filter).doFilter((RenderRequest) request, (RenderResponse) response, chain);
-            }
-            else {
-                throw new IllegalArgumentException("Provided filter does not implement RenderFilter as required by : " + phase + " - " + filter); 
-            }
-        }
-        else if (PortletRequest.RESOURCE_PHASE.equals(phase)) {
-            if (filter instanceof ResourceFilter) {
-                ((ResourceFilter) filter).doFilter((ResourceRequest) request, (ResourceResponse) response, chain);
-            }
-            else {
-                throw new IllegalArgumentException("Provided filter does not implement ResourceFilter as required by : " + phase + " - " + filter); 
-            }
-        }
-        else {
-            throw new IllegalArgumentException("Unknown Portlet Lifecycle Phase: " + phase);
+        doFilter(requirePortletPhase(request), filter, request, response, chain);
+    }
+
+    /**
+     * Call doFilter on the specified {@link javax.portlet.filter.PortletFilter} for an already resolved phase
+     *
+     * @param phase the phase of the request
+     * @param filter a {@link javax.portlet.filter.PortletFilter} object.
+     * @param request a {@link javax.portlet.PortletRequest} object.
+     * @param response a {@link javax.portlet.PortletResponse} object.
+     * @param chain a {@link javax.portlet.filter.FilterChain} object.
+     * @throws java.io.IOException if any.
+     * @throws javax.portlet.PortletException if any.
+     */
+    public static void doFilter(PortletPhase phase, PortletFilter filter, PortletRequest request, PortletResponse response, FilterChain chain)
+            throws IOException, PortletException {
+
+        phase.doFilter(filter, request, response, chain);
+    }
+
+    private static PortletPhase requirePortletPhase(PortletRequest request) {
+        final PortletPhase phase = getPortletPhase(request);
+        if (phase == null) {
+            throw new IllegalArgumentException("Unknown Portlet Lifecycle Phase: " + request.getAttribute(PortletRequest.LIFECYCLE_PHASE));
         }
+        return phase;
     }
 }
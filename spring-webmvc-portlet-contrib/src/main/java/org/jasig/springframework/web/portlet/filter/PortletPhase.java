@@ -0,0 +1,197 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.web.portlet.filter;
+
+import java.io.IOException;
+
+import javax.portlet.ActionRequest;
+import javax.portlet.ActionResponse;
+import javax.portlet.EventRequest;
+import javax.portlet.EventResponse;
+import javax.portlet.PortletException;
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletResponse;
+import javax.portlet.RenderRequest;
+import javax.portlet.RenderResponse;
+import javax.portlet.ResourceRequest;
+import javax.portlet.ResourceResponse;
+import javax.portlet.filter.ActionFilter;
+import javax.portlet.filter.EventFilter;
+import javax.portlet.filter.FilterChain;
+import javax.portlet.filter.PortletFilter;
+import javax.portlet.filter.RenderFilter;
+import javax.portlet.filter.ResourceFilter;
+
+/**
+ * The portlet lifecycle phases, each knows its {@link PortletRequest#LIFECYCLE_PHASE} value, request type and
+ * filter type and how to invoke a {@link FilterChain} or {@link PortletFilter} for the phase. Use
+ * {@link PortletFilterUtils#getPortletPhase(PortletRequest)} to resolve the phase of a request.
+ *
+ * @version $Id: $Id
+ */
+public enum PortletPhase {
+    ACTION(PortletRequest.ACTION_PHASE, ActionRequest.class, ActionFilter.class) {
+        @Override
+        public void doFilter(PortletRequest request, PortletResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            chain.doFilter((ActionRequest) request, (ActionResponse) response);
+        }
+
+        @Override
+        public void doFilter(PortletFilter filter, PortletRequest request, PortletResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            if (!(filter instanceof ActionFilter)) {
+                throw unsupportedFilter(filter);
+            }
+            ((ActionFilter) filter).doFilter((ActionRequest) request, (ActionResponse) response, chain);
+        }
+    },
+    EVENT(PortletRequest.EVENT_PHASE, EventRequest.class, EventFilter.class) {
+        @Override
+        public void doFilter(PortletRequest request, PortletResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            chain.doFilter((EventRequest) request, (EventResponse) response);
+        }
+
+        @Override
+        public void doFilter(PortletFilter filter, PortletRequest request, PortletResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            if (!(filter instanceof EventFilter)) {
+                throw unsupportedFilter(filter);
+            }
+            ((EventFilter) filter).doFilter((EventRequest) request, (EventResponse) response, chain);
+        }
+    },
+    RENDER(PortletRequest.RENDER_PHASE, RenderRequest.class, RenderFilter.class) {
+        @Override
+        public void doFilter(PortletRequest request, PortletResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            chain.doFilter((RenderRequest) request, (RenderResponse) response);
+        }
+
+        @Override
+        public void doFilter(PortletFilter filter, PortletRequest request, PortletResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            if (!(filter instanceof RenderFilter)) {
+                throw unsupportedFilter(filter);
+            }
+            ((RenderFilter) filter).doFilter((RenderRequest) request, (RenderResponse) response, chain);
+        }
+    },
+    RESOURCE(PortletRequest.RESOURCE_PHASE, ResourceRequest.class, ResourceFilter.class) {
+        @Override
+        public void doFilter(PortletRequest request, PortletResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            chain.doFilter((ResourceRequest) request, (ResourceResponse) response);
+        }
+
+        @Override
+        public void doFilter(PortletFilter filter, PortletRequest request, PortletResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            if (!(filter instanceof ResourceFilter)) {
+                throw unsupportedFilter(filter);
+            }
+            ((ResourceFilter) filter).doFilter((ResourceRequest) request, (ResourceResponse) response, chain);
+        }
+    };
+
+    private final String phaseName;
+    private final Class<? extends PortletRequest> requestType;
+    private final Class<? extends PortletFilter> filterType;
+
+    private PortletPhase(String phaseName, Class<? extends PortletRequest> requestType,
+            Class<? extends PortletFilter> filterType) {
+        this.phaseName = phaseName;
+        this.requestType = requestType;
+        this.filterType = filterType;
+    }
+
+    /**
+     * @return the {@link PortletRequest#LIFECYCLE_PHASE} attribute value of the phase
+     */
+    public String getPhaseName() {
+        return this.phaseName;
+    }
+
+    /**
+     * @return the request interface of the phase
+     */
+    public Class<? extends PortletRequest> getRequestType() {
+        return this.requestType;
+    }
+
+    /**
+     * @return the filter interface of the phase
+     */
+    public Class<? extends PortletFilter> getFilterType() {
+        return this.filterType;
+    }
+
+    /**
+     * @param filter the filter to check
+     * @return true if the filter implements the filter interface of the phase
+     */
+    public boolean supports(PortletFilter filter) {
+        return this.filterType.isInstance(filter);
+    }
+
+    /**
+     * Call the phase specific doFilter method of the chain
+     *
+     * @param request the request, must be of the phase's request type
+     * @param response the response, must be of the phase's response type
+     * @param chain the chain to invoke
+     * @throws IOException if thrown by the chain
+     * @throws PortletException if thrown by the chain
+     */
+    public abstract void doFilter(PortletRequest request, PortletResponse response, FilterChain chain)
+            throws IOException, PortletException;
+
+    /**
+     * Call the phase specific doFilter method of the filter
+     *
+     * @param filter the filter to invoke
+     * @param request the request, must be of the phase's request type
+     * @param response the response, must be of the phase's response type
+     * @param chain the chain to pass to the filter
+     * @throws IOException if thrown by the filter
+     * @throws PortletException if thrown by the filter
+     * @throws IllegalArgumentException if the filter does not implement the phase's filter interface
+     */
+    public abstract void doFilter(PortletFilter filter, PortletRequest request, PortletResponse response,
+            FilterChain chain) throws IOException, PortletException;
+
+    /**
+     * @param phaseName a {@link PortletRequest#LIFECYCLE_PHASE} attribute value
+     * @return the matching phase, null if the value is not a known phase
+     */
+    public static PortletPhase forPhaseName(Object phaseName) {
+        for (final PortletPhase phase : values()) {
+            if (phase.phaseName.equals(phaseName)) {
+                return phase;
+            }
+        }
+        return null;
+    }
+
+    IllegalArgumentException unsupportedFilter(PortletFilter filter) {
+        return new IllegalArgumentException("Provided filter does not implement " + this.filterType.getSimpleName()
+                + " as required by : " + this.phaseName + " - " + filter);
+    }
+}
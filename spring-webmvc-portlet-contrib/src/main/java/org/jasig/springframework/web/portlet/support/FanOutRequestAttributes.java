@@ -0,0 +1,195 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.web.portlet.support;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletSession;
+
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.AbstractRequestAttributes;
+import org.springframework.web.context.request.DestructionCallbackBindingListener;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.portlet.context.PortletRequestAttributes;
+import org.springframework.web.portlet.util.PortletUtils;
+
+/**
+ * {@link RequestAttributes} bound to fan out worker threads, which must never touch the portlet request as it is not
+ * thread safe. The request scope is a copy of the request attributes taken on the request thread when the fan out
+ * begins, including the PortletApplicationContext, attributes set by tasks are only visible to the tasks of the same
+ * fan out. The session scopes are read and written through the {@link PortletSession} that existed when the fan out
+ * began, sessions are safe for concurrent use.
+ * <p>
+ * Completed by {@link PortletFanOut#close()}, which runs the destruction callbacks of request scoped objects created
+ * by tasks. Tasks still running after that can no longer access the request scope.
+ *
+ * @version $Id: $Id
+ */
+final class FanOutRequestAttributes extends AbstractRequestAttributes {
+    private final ConcurrentMap<String, Object> requestAttributes = new ConcurrentHashMap<String, Object>();
+    private final PortletSession session;
+
+    FanOutRequestAttributes(PortletRequest request) {
+        final RequestAttributes boundRequestAttributes = RequestContextHolder.getRequestAttributes();
+        if (boundRequestAttributes != null) {
+            for (final String name : boundRequestAttributes.getAttributeNames(SCOPE_REQUEST)) {
+                putRequestAttribute(name, boundRequestAttributes.getAttribute(name, SCOPE_REQUEST));
+            }
+        }
+        else {
+            for (final Enumeration<String> names = request.getAttributeNames(); names.hasMoreElements();) {
+                final String name = names.nextElement();
+                putRequestAttribute(name, request.getAttribute(name));
+            }
+        }
+
+        this.session = request.getPortletSession(false);
+    }
+
+    @Override
+    public Object getAttribute(String name, int scope) {
+        if (scope == SCOPE_REQUEST) {
+            assertRequestActive();
+            return this.requestAttributes.get(name);
+        }
+        if (this.session == null) {
+            return null;
+        }
+        return this.session.getAttribute(name, getPortletSessionScope(scope));
+    }
+
+    @Override
+    public void setAttribute(String name, Object value, int scope) {
+        if (scope == SCOPE_REQUEST) {
+            assertRequestActive();
+            putRequestAttribute(name, value);
+        }
+        else {
+            getRequiredSession().setAttribute(name, value, getPortletSessionScope(scope));
+        }
+    }
+
+    @Override
+    public void removeAttribute(String name, int scope) {
+        if (scope == SCOPE_REQUEST) {
+            assertRequestActive();
+            this.requestAttributes.remove(name);
+            removeRequestDestructionCallback(name);
+        }
+        else if (this.session != null) {
+            final int portletSessionScope = getPortletSessionScope(scope);
+            this.session.removeAttribute(name, portletSessionScope);
+            this.session.removeAttribute(PortletRequestAttributes.DESTRUCTION_CALLBACK_NAME_PREFIX + name, portletSessionScope);
+        }
+    }
+
+    @Override
+    public String[] getAttributeNames(int scope) {
+        if (scope == SCOPE_REQUEST) {
+            assertRequestActive();
+            return StringUtils.toStringArray(this.requestAttributes.keySet());
+        }
+        if (this.session == null) {
+            return new String[0];
+        }
+
+        final List<String> names = new ArrayList<String>();
+        for (final Enumeration<String> sessionNames = this.session.getAttributeNames(getPortletSessionScope(scope)); sessionNames.hasMoreElements();) {
+            names.add(sessionNames.nextElement());
+        }
+        return StringUtils.toStringArray(names);
+    }
+
+    @Override
+    public void registerDestructionCallback(String name, Runnable callback, int scope) {
+        if (scope == SCOPE_REQUEST) {
+            registerRequestDestructionCallback(name, callback);
+        }
+        else {
+            getRequiredSession().setAttribute(PortletRequestAttributes.DESTRUCTION_CALLBACK_NAME_PREFIX + name,
+                    new DestructionCallbackBindingListener(callback), getPortletSessionScope(scope));
+        }
+    }
+
+    /**
+     * Only the session can be resolved, the portlet request is not available to worker threads
+     */
+    @Override
+    public Object resolveReference(String key) {
+        if (REFERENCE_SESSION.equals(key)) {
+            return this.session;
+        }
+        return null;
+    }
+
+    @Override
+    public String getSessionId() {
+        return getRequiredSession().getId();
+    }
+
+    @Override
+    public Object getSessionMutex() {
+        return PortletUtils.getSessionMutex(getRequiredSession());
+    }
+
+    /**
+     * Session attributes are written through to the session when they are set
+     */
+    @Override
+    protected void updateAccessedSessionAttributes() {
+    }
+
+    @Override
+    public String toString() {
+        return "FanOutRequestAttributes [session=" + (this.session != null ? this.session.getId() : null) + "]";
+    }
+
+    private void putRequestAttribute(String name, Object value) {
+        if (value != null) {
+            this.requestAttributes.put(name, value);
+        }
+        else {
+            this.requestAttributes.remove(name);
+        }
+    }
+
+    private void assertRequestActive() {
+        if (!isRequestActive()) {
+            throw new IllegalStateException("Cannot access request attributes - the fan out has been closed");
+        }
+    }
+
+    private PortletSession getRequiredSession() {
+        if (this.session == null) {
+            throw new IllegalStateException("No PortletSession existed when the fan out began, "
+                    + "a session cannot be created by a fan out task");
+        }
+        return this.session;
+    }
+
+    private static int getPortletSessionScope(int scope) {
+        return scope == SCOPE_GLOBAL_SESSION ? PortletSession.APPLICATION_SCOPE : PortletSession.PORTLET_SCOPE;
+    }
+}
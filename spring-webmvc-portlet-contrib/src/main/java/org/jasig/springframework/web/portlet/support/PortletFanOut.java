@@ -0,0 +1,192 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.web.portlet.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.portlet.PortletRequest;
+
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.context.i18n.SimpleLocaleContext;
+import org.springframework.util.Assert;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * The parallel back-end calls of one portlet request, created by {@link PortletFanOutExecutor#begin(PortletRequest)}.
+ * The request's locale, a copy of its request attributes including the PortletApplicationContext, and its session are
+ * captured when the fan out is created, tasks must be submitted from the request thread. Not thread safe.
+ * <p>
+ * The fan out must be {@link #close() closed} at the end of the request, that cancels tasks still running and
+ * completes the request attributes bound to the tasks.
+ *
+ * @version $Id: $Id
+ */
+public final class PortletFanOut {
+    private final PortletFanOutExecutor fanOutExecutor;
+    private final LocaleContext localeContext;
+    private final FanOutRequestAttributes requestAttributes;
+    private final List<PortletTaskResult<?>> results = new ArrayList<PortletTaskResult<?>>();
+    private boolean closed = false;
+
+    PortletFanOut(PortletFanOutExecutor fanOutExecutor, PortletRequest request) {
+        this.fanOutExecutor = fanOutExecutor;
+
+        final LocaleContext currentLocaleContext = LocaleContextHolder.getLocaleContext();
+        this.localeContext = currentLocaleContext != null ? currentLocaleContext : new SimpleLocaleContext(request.getLocale());
+
+        this.requestAttributes = new FanOutRequestAttributes(request);
+    }
+
+    /**
+     * Submit a task using the default timeout and a null fallback
+     *
+     * @param task the task to run
+     * @return the result of the task
+     */
+    public <V> PortletTaskResult<V> submit(Callable<V> task) {
+        return submit(task, null);
+    }
+
+    /**
+     * Submit a task using the default timeout
+     *
+     * @param task the task to run
+     * @param fallback the result to use if the task fails or times out
+     * @return the result of the task
+     */
+    public <V> PortletTaskResult<V> submit(Callable<V> task, V fallback) {
+        return submit(task, this.fanOutExecutor.getDefaultTimeout(), TimeUnit.MILLISECONDS, fallback);
+    }
+
+    /**
+     * Submit a task. If the executor rejects the task, because it is saturated or has been shut down, the result is
+     * the fallback value right away.
+     *
+     * @param task the task to run
+     * @param timeout time the result of the task is waited for, measured from now
+     * @param unit unit of the timeout
+     * @param fallback the result to use if the task fails or times out
+     * @return the result of the task
+     */
+    public <V> PortletTaskResult<V> submit(Callable<V> task, long timeout, TimeUnit unit, V fallback) {
+        Assert.notNull(task, "task cannot be null");
+        Assert.isTrue(timeout > 0, "timeout must be greater than 0");
+        Assert.state(!this.closed, "The fan out has been closed");
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        Callable<V> decoratedTask = new RequestContextCallable<V>(task, this.localeContext, this.requestAttributes);
+        for (final PortletTaskDecorator taskDecorator : this.fanOutExecutor.getTaskDecorators()) {
+            decoratedTask = taskDecorator.decorate(decoratedTask);
+        }
+
+        this.fanOutExecutor.taskSubmitted();
+        final Future<V> future;
+        try {
+            future = this.fanOutExecutor.getExecutorService().submit(decoratedTask);
+        }
+        catch (RejectedExecutionException e) {
+            this.fanOutExecutor.taskRejected();
+            this.fanOutExecutor.logger.warn("Task " + task + " was rejected by the executor, using fallback");
+            return new PortletTaskResult<V>(this.fanOutExecutor, task, fallback);
+        }
+
+        final PortletTaskResult<V> result = new PortletTaskResult<V>(this.fanOutExecutor, task, future, deadline, fallback);
+        this.results.add(result);
+        return result;
+    }
+
+    /**
+     * Wait for every submitted task to complete, fail or time out. As timeouts are measured from submission this
+     * waits no longer than the latest deadline of the submitted tasks.
+     */
+    public void awaitAll() {
+        for (final PortletTaskResult<?> result : this.results) {
+            result.get();
+        }
+    }
+
+    /**
+     * Cancel every submitted task that has not completed, interrupting it if it is running. Results that were not
+     * read yet resolve to their fallback value.
+     */
+    public void cancelAll() {
+        for (final PortletTaskResult<?> result : this.results) {
+            result.cancel();
+        }
+    }
+
+    /**
+     * End the fan out at the end of the request: {@link #cancelAll() cancels} the tasks which have not completed
+     * and runs the destruction callbacks of request scoped objects created by tasks. Tasks can no longer be
+     * submitted and tasks which ignore the interrupt can no longer access the request scope.
+     */
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        cancelAll();
+        this.requestAttributes.requestCompleted();
+    }
+
+    /**
+     * Binds the captured locale and request attributes around a task, restoring what was bound before when the
+     * task completes
+     */
+    private static final class RequestContextCallable<V> implements Callable<V> {
+        private final Callable<V> delegate;
+        private final LocaleContext localeContext;
+        private final RequestAttributes requestAttributes;
+
+        RequestContextCallable(Callable<V> delegate, LocaleContext localeContext, RequestAttributes requestAttributes) {
+            this.delegate = delegate;
+            this.localeContext = localeContext;
+            this.requestAttributes = requestAttributes;
+        }
+
+        @Override
+        public V call() throws Exception {
+            final LocaleContext previousLocaleContext = LocaleContextHolder.getLocaleContext();
+            final RequestAttributes previousRequestAttributes = RequestContextHolder.getRequestAttributes();
+            LocaleContextHolder.setLocaleContext(this.localeContext);
+            RequestContextHolder.setRequestAttributes(this.requestAttributes);
+            try {
+                return this.delegate.call();
+            }
+            finally {
+                // Restores the request thread's bindings when run by the caller, clears pooled threads
+                LocaleContextHolder.setLocaleContext(previousLocaleContext);
+                RequestContextHolder.setRequestAttributes(previousRequestAttributes);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.delegate.toString();
+        }
+    }
+}
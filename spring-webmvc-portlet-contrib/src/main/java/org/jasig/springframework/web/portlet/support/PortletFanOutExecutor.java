@@ -0,0 +1,241 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.web.portlet.support;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.portlet.PortletRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Runs independent back-end calls of a portlet request in parallel so the request takes roughly as long as the
+ * slowest call instead of the sum of all of them. Each request starts a {@link PortletFanOut} with
+ * {@link #begin(PortletRequest)}, submits its tasks to it and then collects the results:
+ * <pre>
+ * final PortletFanOut fanOut = fanOutExecutor.begin(request);
+ * try {
+ *     final PortletTaskResult&lt;List&lt;Item&gt;&gt; items = fanOut.submit(itemsTask, Collections.&lt;Item&gt;emptyList());
+ *     final PortletTaskResult&lt;Weather&gt; weather = fanOut.submit(weatherTask, 500, TimeUnit.MILLISECONDS, null);
+ *     model.put("items", items.get());
+ *     model.put("weather", weather.get());
+ * }
+ * finally {
+ *     fanOut.close();
+ * }
+ * </pre>
+ * <p>
+ * Tasks run with the locale of the request and {@link org.springframework.web.context.request.RequestAttributes}
+ * holding a copy of the request attributes taken when the fan out begins bound, the portlet request itself is not
+ * thread safe and never used by worker threads. The PortletApplicationContext set by
+ * {@link org.jasig.springframework.web.portlet.context.ContribDispatcherPortlet} is available through the request
+ * scope of the bound attributes. Other thread bound state, such as the security context, is propagated by the
+ * configured {@link #setTaskDecorators(List) task decorators}. Every binding is removed when the task completes so
+ * pooled threads never carry state from one request to the next. Closing the fan out at the end of the request
+ * cancels tasks that are still running.
+ * <p>
+ * Unless an {@link #setExecutorService(ExecutorService) executor service} is provided a bounded pool of daemon
+ * threads is created. When its queue is full, or after this bean was destroyed, tasks are rejected and resolve to
+ * their fallback value right away rather than running on the request thread beyond their timeout.
+ *
+ * @version $Id: $Id
+ */
+public class PortletFanOutExecutor implements InitializingBean, DisposableBean {
+    /** Default number of worker threads */
+    public static final int DEFAULT_POOL_SIZE = 8;
+    /** Default number of tasks that can wait for a worker thread */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    /** Default task timeout in milliseconds */
+    public static final long DEFAULT_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private ExecutorService executorService;
+    private boolean ownsExecutorService = false;
+    private int poolSize = DEFAULT_POOL_SIZE;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private long defaultTimeout = DEFAULT_TIMEOUT;
+    private List<PortletTaskDecorator> taskDecorators = Collections.emptyList();
+
+    /**
+     * @param executorService executor service to run tasks on, its lifecycle is managed by the caller. If not set
+     * a bounded pool is created and shut down when this bean is destroyed.
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * @param poolSize number of worker threads of the created pool, defaults to {@value #DEFAULT_POOL_SIZE}
+     */
+    public void setPoolSize(int poolSize) {
+        Assert.isTrue(poolSize > 0, "poolSize must be greater than 0");
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * @param queueCapacity number of tasks that can wait for a worker thread of the created pool, defaults to
+     * {@value #DEFAULT_QUEUE_CAPACITY}
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        Assert.isTrue(queueCapacity > 0, "queueCapacity must be greater than 0");
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param defaultTimeout timeout in milliseconds for tasks submitted without one, measured from submission,
+     * defaults to {@value #DEFAULT_TIMEOUT}
+     */
+    public void setDefaultTimeout(long defaultTimeout) {
+        Assert.isTrue(defaultTimeout > 0, "defaultTimeout must be greater than 0");
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    /**
+     * @param taskDecorators decorators applied to every task, in order, when it is submitted
+     */
+    public void setTaskDecorators(List<PortletTaskDecorator> taskDecorators) {
+        Assert.notNull(taskDecorators, "taskDecorators cannot be null");
+        this.taskDecorators = taskDecorators;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (this.executorService == null) {
+            final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("PortletFanOut-");
+            threadFactory.setDaemon(true);
+
+            final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(this.poolSize, this.poolSize, 60,
+                    TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(this.queueCapacity), threadFactory,
+                    new ThreadPoolExecutor.AbortPolicy());
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+
+            this.executorService = threadPoolExecutor;
+            this.ownsExecutorService = true;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (this.ownsExecutorService) {
+            this.executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Start fanning out the back-end calls of a portlet request, must be called on the request thread. The returned
+     * fan out must be closed at the end of the request.
+     *
+     * @param request the current portlet request
+     * @return the fan out to submit the request's tasks to
+     */
+    public PortletFanOut begin(PortletRequest request) {
+        Assert.notNull(request, "request cannot be null");
+        Assert.state(this.executorService != null, "afterPropertiesSet must be called before begin");
+        return new PortletFanOut(this, request);
+    }
+
+    ExecutorService getExecutorService() {
+        return this.executorService;
+    }
+
+    long getDefaultTimeout() {
+        return this.defaultTimeout;
+    }
+
+    List<PortletTaskDecorator> getTaskDecorators() {
+        return this.taskDecorators;
+    }
+
+    void taskSubmitted() {
+        this.submittedCount.incrementAndGet();
+    }
+
+    void taskTimedOut() {
+        this.timeoutCount.incrementAndGet();
+    }
+
+    void taskFailed() {
+        this.failureCount.incrementAndGet();
+    }
+
+    void taskRejected() {
+        this.rejectedCount.incrementAndGet();
+    }
+
+    /**
+     * @return number of tasks submitted
+     */
+    public long getSubmittedCount() {
+        return this.submittedCount.get();
+    }
+
+    /**
+     * @return number of tasks whose result was not available before their timeout
+     */
+    public long getTimeoutCount() {
+        return this.timeoutCount.get();
+    }
+
+    /**
+     * @return number of tasks which failed
+     */
+    public long getFailureCount() {
+        return this.failureCount.get();
+    }
+
+    /**
+     * @return number of tasks rejected by the executor service, their results used the fallback value
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    /**
+     * Reset the submitted, timeout, failure and rejected counts
+     */
+    public void resetStatistics() {
+        this.submittedCount.set(0);
+        this.timeoutCount.set(0);
+        this.failureCount.set(0);
+        this.rejectedCount.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "PortletFanOutExecutor [submitted=" + this.submittedCount + ", timeouts=" + this.timeoutCount
+                + ", failures=" + this.failureCount + ", rejected=" + this.rejectedCount + "]";
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.web.portlet.support;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Decorates tasks submitted through a {@link PortletFanOut}, called on the portlet request thread when the task is
+ * submitted so implementations can capture thread bound state, such as the security context, and bind it around
+ * the task on the worker thread. Anything bound must be removed again before the returned task completes.
+ *
+ * @version $Id: $Id
+ * @see PortletFanOutExecutor#setTaskDecorators(java.util.List)
+ */
+public interface PortletTaskDecorator {
+
+    /**
+     * @param task the task to decorate
+     * @return the task to run on the worker thread, may be the task itself
+     */
+    <V> Callable<V> decorate(Callable<V> task);
+}
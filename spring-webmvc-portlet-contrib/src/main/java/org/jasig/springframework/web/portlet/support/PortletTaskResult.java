@@ -0,0 +1,133 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.web.portlet.support;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of a task submitted to a {@link PortletFanOut}. {@link #get()} waits until the task's deadline at most,
+ * if the task fails, times out or the request thread is interrupted the fallback value is returned and the task is
+ * cancelled. A task rejected by the executor resolves to the fallback value right away.
+ *
+ * @param <V> the result type of the task
+ * @version $Id: $Id
+ */
+public final class PortletTaskResult<V> {
+    private final PortletFanOutExecutor fanOutExecutor;
+    private final Object task;
+    private final Future<V> future;
+    private final long deadline;
+    private final V fallback;
+
+    private boolean resolved = false;
+    private boolean usedFallback = false;
+    private V value;
+
+    PortletTaskResult(PortletFanOutExecutor fanOutExecutor, Object task, Future<V> future, long deadline, V fallback) {
+        this.fanOutExecutor = fanOutExecutor;
+        this.task = task;
+        this.future = future;
+        this.deadline = deadline;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Result of a task which was rejected and never runs
+     */
+    PortletTaskResult(PortletFanOutExecutor fanOutExecutor, Object task, V fallback) {
+        this(fanOutExecutor, task, null, 0, fallback);
+        this.resolved = true;
+        this.usedFallback = true;
+        this.value = fallback;
+    }
+
+    /**
+     * Wait for the task until its deadline
+     *
+     * @return the result of the task, or the fallback value if the task did not complete successfully in time
+     */
+    public synchronized V get() {
+        if (this.resolved) {
+            return this.value;
+        }
+
+        try {
+            this.value = this.future.get(Math.max(0, this.deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException e) {
+            this.fanOutExecutor.taskTimedOut();
+            this.fanOutExecutor.logger.warn("Task " + this.task + " did not complete before its timeout, using fallback");
+            useFallback();
+        }
+        catch (ExecutionException e) {
+            this.fanOutExecutor.taskFailed();
+            this.fanOutExecutor.logger.warn("Task " + this.task + " failed, using fallback", e.getCause());
+            useFallback();
+        }
+        catch (CancellationException e) {
+            useFallback();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            useFallback();
+        }
+
+        this.resolved = true;
+        return this.value;
+    }
+
+    /**
+     * @return true if the task completed, failed, timed out or was cancelled
+     */
+    public boolean isDone() {
+        return this.future == null || this.future.isDone();
+    }
+
+    /**
+     * @return true if {@link #get()} returned the fallback value
+     */
+    public synchronized boolean isFallback() {
+        return this.usedFallback;
+    }
+
+    /**
+     * Cancel the task if it has not completed, interrupting it if it is running. If the result was not read yet it
+     * resolves to the fallback value.
+     */
+    synchronized void cancel() {
+        if (this.future != null) {
+            this.future.cancel(true);
+        }
+        if (!this.resolved) {
+            this.usedFallback = true;
+            this.value = this.fallback;
+            this.resolved = true;
+        }
+    }
+
+    private void useFallback() {
+        this.future.cancel(true);
+        this.usedFallback = true;
+        this.value = this.fallback;
+    }
+}
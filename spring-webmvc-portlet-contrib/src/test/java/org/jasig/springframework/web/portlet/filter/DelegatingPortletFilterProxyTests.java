@@ -20,8 +20,18 @@ package org.jasig.springframework.web.portlet.filter;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.portlet.PortletContext;
 import javax.portlet.PortletException;
@@ -35,6 +45,8 @@ import org.jasig.springframework.mock.web.portlet.MockFilterConfig;
 import org.jasig.springframework.web.portlet.context.ContribStaticPortletApplicationContext;
 import org.jasig.springframework.web.portlet.context.PortletApplicationContext;
 import org.junit.Test;
+import org.springframework.mock.web.portlet.MockActionRequest;
+import org.springframework.mock.web.portlet.MockActionResponse;
 import org.springframework.mock.web.portlet.MockPortletContext;
 import org.springframework.mock.web.portlet.MockRenderRequest;
 import org.springframework.mock.web.portlet.MockRenderResponse;
@@ -183,6 +195,105 @@ public class DelegatingPortletFilterProxyTests {
         assertNull(targetFilter.filterConfig);
     }
 
+    @Test
+    public void testDelegatingPortletFilterProxyUnsupportedPhase() throws PortletException, IOException {
+        PortletContext pc = new MockPortletContext();
+
+        ContribStaticPortletApplicationContext pac = new ContribStaticPortletApplicationContext();
+        pac.setPortletContext(pc);
+        pac.registerSingleton("targetFilter", MockRenderFilter.class);
+        pac.refresh();
+        pc.setAttribute(PortletApplicationContext.ROOT_PORTLET_APPLICATION_CONTEXT_ATTRIBUTE, pac);
+
+        MockFilterConfig proxyConfig = new MockFilterConfig(pc, "targetFilter");
+        DelegatingPortletFilterProxy filterProxy = new DelegatingPortletFilterProxy();
+        filterProxy.init(proxyConfig);
+
+        MockActionRequest request = new MockActionRequest();
+        try {
+            filterProxy.doFilter(request, new MockActionResponse(), null);
+            fail("ActionRequest should be rejected by a RenderFilter delegate");
+        }
+        catch (IllegalStateException e) {
+            assertEquals("The delegate PortletFilter does not implement ActionFilter but targetFilter is configured with the ACTION_PHASE lifecycle.",
+                    e.getMessage());
+        }
+        assertNull(request.getAttribute("called"));
+    }
+
+    @Test
+    public void testDelegatingPortletFilterProxyConcurrentLazyInit() throws Exception {
+        final PortletContext sc = new MockPortletContext();
+
+        final MockFilterConfig proxyConfig = new MockFilterConfig(sc);
+        proxyConfig.addInitParameter("targetBeanName", "targetFilter");
+        proxyConfig.addInitParameter("targetFilterLifecycle", "true");
+        final DelegatingPortletFilterProxy filterProxy = new DelegatingPortletFilterProxy();
+        filterProxy.init(proxyConfig);
+
+        final ContribStaticPortletApplicationContext wac = new ContribStaticPortletApplicationContext();
+        wac.setPortletContext(sc);
+        wac.registerSingleton("targetFilter", CountingRenderFilter.class);
+        wac.refresh();
+        sc.setAttribute(PortletApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, wac);
+
+        final CountingRenderFilter targetFilter = (CountingRenderFilter) wac.getBean("targetFilter");
+
+        final int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        final int iterations = 10000;
+        final CyclicBarrier startBarrier = new CyclicBarrier(threads);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int thread = 0; thread < threads; thread++) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        final MockRenderRequest request = new MockRenderRequest();
+                        final MockRenderResponse response = new MockRenderResponse();
+                        startBarrier.await();
+                        for (int i = 0; i < iterations; i++) {
+                            filterProxy.doFilter(request, response, null);
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            for (final Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, targetFilter.initCount.get());
+        assertEquals(threads * iterations, targetFilter.invocationCount.get());
+
+        filterProxy.destroy();
+        assertEquals(1, targetFilter.destroyCount.get());
+    }
+
+
+    public static class CountingRenderFilter implements RenderFilter {
+        public final AtomicInteger initCount = new AtomicInteger();
+        public final AtomicInteger invocationCount = new AtomicInteger();
+        public final AtomicInteger destroyCount = new AtomicInteger();
+
+        public void init(FilterConfig filterConfig) throws PortletException {
+            initCount.incrementAndGet();
+        }
+
+        @Override
+        public void doFilter(RenderRequest request, RenderResponse response, FilterChain chain) throws IOException, PortletException {
+            invocationCount.incrementAndGet();
+        }
+
+        public void destroy() {
+            destroyCount.incrementAndGet();
+        }
+    }
 
     public static class MockRenderFilter implements RenderFilter {
 
@@ -0,0 +1,175 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.web.portlet.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import javax.portlet.ActionRequest;
+import javax.portlet.ActionResponse;
+import javax.portlet.EventRequest;
+import javax.portlet.EventResponse;
+import javax.portlet.PortletException;
+import javax.portlet.PortletRequest;
+import javax.portlet.RenderRequest;
+import javax.portlet.RenderResponse;
+import javax.portlet.ResourceRequest;
+import javax.portlet.ResourceResponse;
+import javax.portlet.filter.FilterChain;
+import javax.portlet.filter.FilterConfig;
+import javax.portlet.filter.PortletRequestWrapper;
+import javax.portlet.filter.RenderFilter;
+
+import org.junit.Test;
+import org.springframework.mock.web.portlet.MockActionRequest;
+import org.springframework.mock.web.portlet.MockEventRequest;
+import org.springframework.mock.web.portlet.MockPortletRequest;
+import org.springframework.mock.web.portlet.MockRenderRequest;
+import org.springframework.mock.web.portlet.MockRenderResponse;
+import org.springframework.mock.web.portlet.MockResourceRequest;
+
+public class PortletFilterUtilsTests {
+
+    @Test
+    public void testPhaseResolvedFromRequestType() {
+        assertSame(PortletPhase.ACTION, PortletFilterUtils.getPortletPhase(new MockActionRequest()));
+        assertSame(PortletPhase.EVENT, PortletFilterUtils.getPortletPhase(new MockEventRequest(null)));
+        assertSame(PortletPhase.RENDER, PortletFilterUtils.getPortletPhase(new MockRenderRequest()));
+        assertSame(PortletPhase.RESOURCE, PortletFilterUtils.getPortletPhase(new MockResourceRequest()));
+    }
+
+    @Test
+    public void testPhaseResolvedFromAttributeAndCached() {
+        final MockPortletRequest target = new MockPortletRequest();
+        target.setAttribute(PortletRequest.LIFECYCLE_PHASE, PortletRequest.RENDER_PHASE);
+        final PortletRequest request = new PortletRequestWrapper(target);
+
+        assertSame(PortletPhase.RENDER, PortletFilterUtils.getPortletPhase(request));
+        assertNotNull(request.getAttribute(PortletFilterUtils.PORTLET_PHASE_ATTRIBUTE));
+
+        //Cached value wins over a later change to the lifecycle attribute
+        target.setAttribute(PortletRequest.LIFECYCLE_PHASE, PortletRequest.ACTION_PHASE);
+        assertSame(PortletPhase.RENDER, PortletFilterUtils.getPortletPhase(request));
+    }
+
+    @Test
+    public void testCachedPhaseIgnoredForOtherRequest() {
+        final MockPortletRequest target = new MockPortletRequest();
+        target.setAttribute(PortletRequest.LIFECYCLE_PHASE, PortletRequest.ACTION_PHASE);
+        assertSame(PortletPhase.ACTION, PortletFilterUtils.getPortletPhase(new PortletRequestWrapper(target)));
+
+        //Attributes carried over into the event phase, seen through the event phase's request object
+        target.setAttribute(PortletRequest.LIFECYCLE_PHASE, PortletRequest.EVENT_PHASE);
+        assertSame(PortletPhase.EVENT, PortletFilterUtils.getPortletPhase(new PortletRequestWrapper(target)));
+    }
+
+    @Test
+    public void testUnknownPhase() throws PortletException, IOException {
+        final MockPortletRequest request = new MockPortletRequest();
+        request.setAttribute(PortletRequest.LIFECYCLE_PHASE, "UNKNOWN_PHASE");
+
+        assertNull(PortletFilterUtils.getPortletPhase(request));
+        assertNull(request.getAttribute(PortletFilterUtils.PORTLET_PHASE_ATTRIBUTE));
+
+        try {
+            PortletFilterUtils.doFilter(request, new MockRenderResponse(), null);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("Unknown Portlet Lifecycle Phase: UNKNOWN_PHASE", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testForPhaseName() {
+        for (final PortletPhase phase : PortletPhase.values()) {
+            assertSame(phase, PortletPhase.forPhaseName(phase.getPhaseName()));
+        }
+        assertNull(PortletPhase.forPhaseName(null));
+        assertNull(PortletPhase.forPhaseName("UNKNOWN_PHASE"));
+    }
+
+    @Test
+    public void testDoFilterWithPhase() throws PortletException, IOException {
+        final MockRenderRequest request = new MockRenderRequest();
+        final MockRenderResponse response = new MockRenderResponse();
+        final CountingRenderChain chain = new CountingRenderChain();
+
+        PortletFilterUtils.doFilter(PortletPhase.RENDER, new DelegatingRenderFilter(), request, response, chain);
+        PortletFilterUtils.doFilter(PortletPhase.RENDER, request, response, chain);
+
+        assertEquals(2, chain.renderCount);
+    }
+
+    @Test
+    public void testDoFilterWithUnsupportedFilter() throws PortletException, IOException {
+        try {
+            PortletFilterUtils.doFilter(PortletPhase.ACTION, new DelegatingRenderFilter(), new MockActionRequest(), null, null);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    private static class DelegatingRenderFilter implements RenderFilter {
+        @Override
+        public void init(FilterConfig filterConfig) {
+        }
+
+        @Override
+        public void doFilter(RenderRequest request, RenderResponse response, FilterChain chain)
+                throws IOException, PortletException {
+            PortletFilterUtils.doFilter(request, response, chain);
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    private static class CountingRenderChain implements FilterChain {
+        private int renderCount = 0;
+
+        @Override
+        public void doFilter(RenderRequest request, RenderResponse response) {
+            renderCount++;
+        }
+
+        @Override
+        public void doFilter(ActionRequest request, ActionResponse response) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void doFilter(EventRequest request, EventResponse response) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void doFilter(ResourceRequest request, ResourceResponse response) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
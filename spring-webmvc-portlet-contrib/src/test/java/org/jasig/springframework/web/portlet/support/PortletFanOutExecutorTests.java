@@ -0,0 +1,296 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.springframework.web.portlet.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jasig.springframework.web.portlet.context.ContribDispatcherPortlet;
+import org.jasig.springframework.web.portlet.context.ContribStaticPortletApplicationContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.mock.web.portlet.MockRenderRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+public class PortletFanOutExecutorTests {
+    private ExecutorService pool;
+    private PortletFanOutExecutor fanOutExecutor;
+    private MockRenderRequest request;
+
+    @Before
+    public void setup() {
+        pool = Executors.newFixedThreadPool(3);
+        fanOutExecutor = new PortletFanOutExecutor();
+        fanOutExecutor.setExecutorService(pool);
+        fanOutExecutor.afterPropertiesSet();
+
+        request = new MockRenderRequest();
+        request.addPreferredLocale(Locale.CANADA_FRENCH);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fanOutExecutor.destroy();
+        pool.shutdownNow();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void tasksRunInParallel() throws Exception {
+        final CountDownLatch allStarted = new CountDownLatch(3);
+        final PortletFanOut fanOut = fanOutExecutor.begin(request);
+        final PortletTaskResult<String> first = fanOut.submit(new LatchedTask(allStarted, "first"));
+        final PortletTaskResult<String> second = fanOut.submit(new LatchedTask(allStarted, "second"));
+        final PortletTaskResult<String> third = fanOut.submit(new LatchedTask(allStarted, "third"));
+
+        // Each task waits for the others to start, so this only completes if they run concurrently
+        fanOut.awaitAll();
+        assertEquals(Arrays.asList("first", "second", "third"), Arrays.asList(first.get(), second.get(), third.get()));
+        assertFalse(first.isFallback());
+        assertEquals(3, fanOutExecutor.getSubmittedCount());
+    }
+
+    @Test
+    public void requestContextIsPropagated() throws Exception {
+        final ContribStaticPortletApplicationContext applicationContext = new ContribStaticPortletApplicationContext();
+        request.setAttribute(ContribDispatcherPortlet.PORTLET_APPLICATION_CONTEXT_ATTRIBUTE, applicationContext);
+
+        final PortletFanOut fanOut = fanOutExecutor.begin(request);
+        final PortletTaskResult<Locale> locale = fanOut.submit(new Callable<Locale>() {
+            @Override
+            public Locale call() throws Exception {
+                return LocaleContextHolder.getLocale();
+            }
+        });
+        final PortletTaskResult<Object> portletApplicationContext = fanOut.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return RequestContextHolder.currentRequestAttributes().getAttribute(
+                        ContribDispatcherPortlet.PORTLET_APPLICATION_CONTEXT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            }
+        });
+
+        assertEquals(Locale.CANADA_FRENCH, locale.get());
+        assertSame(applicationContext, portletApplicationContext.get());
+        assertWorkersClean();
+    }
+
+    @Test
+    public void timedOutTaskUsesFallback() throws Exception {
+        final PortletFanOut fanOut = fanOutExecutor.begin(request);
+        final PortletTaskResult<String> slow = fanOut.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(5));
+                return "slow";
+            }
+        }, 50, TimeUnit.MILLISECONDS, "fallback");
+
+        assertEquals("fallback", slow.get());
+        assertTrue(slow.isFallback());
+        assertTrue(slow.isDone());
+        assertEquals(1, fanOutExecutor.getTimeoutCount());
+    }
+
+    @Test
+    public void failedTaskUsesFallback() throws Exception {
+        final PortletFanOut fanOut = fanOutExecutor.begin(request);
+        final PortletTaskResult<String> failed = fanOut.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw new IllegalStateException("back-end unavailable");
+            }
+        }, "fallback");
+
+        assertEquals("fallback", failed.get());
+        assertTrue(failed.isFallback());
+        assertEquals(1, fanOutExecutor.getFailureCount());
+    }
+
+    @Test
+    public void taskDecoratorsAreApplied() throws Exception {
+        fanOutExecutor.setTaskDecorators(Arrays.<PortletTaskDecorator>asList(new PortletTaskDecorator() {
+            @Override
+            public <V> Callable<V> decorate(final Callable<V> task) {
+                final String submittingThread = Thread.currentThread().getName();
+                return new Callable<V>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public V call() throws Exception {
+                        return (V) (submittingThread + ":" + task.call());
+                    }
+                };
+            }
+        }));
+
+        final PortletFanOut fanOut = fanOutExecutor.begin(request);
+        final PortletTaskResult<String> result = fanOut.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "result";
+            }
+        });
+
+        assertEquals(Thread.currentThread().getName() + ":result", result.get());
+    }
+
+    @Test
+    public void rejectedTaskUsesFallback() throws Exception {
+        final PortletFanOutExecutor ownedFanOutExecutor = new PortletFanOutExecutor();
+        ownedFanOutExecutor.setPoolSize(1);
+        ownedFanOutExecutor.setQueueCapacity(1);
+        ownedFanOutExecutor.afterPropertiesSet();
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final PortletFanOut fanOut = ownedFanOutExecutor.begin(request);
+            final PortletTaskResult<String> blocking = fanOut.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    release.await(5, TimeUnit.SECONDS);
+                    return "blocking";
+                }
+            });
+            final PortletTaskResult<String> queued = fanOut.submit(new LatchedTask(new CountDownLatch(0), "queued"));
+
+            // Pool and queue are full, the task never runs
+            final AtomicBoolean ran = new AtomicBoolean();
+            final PortletTaskResult<String> rejected = fanOut.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    ran.set(true);
+                    return "rejected";
+                }
+            }, "fallback");
+            assertTrue(rejected.isDone());
+            assertTrue(rejected.isFallback());
+            assertEquals("fallback", rejected.get());
+            assertEquals(1, ownedFanOutExecutor.getRejectedCount());
+
+            release.countDown();
+            assertEquals("blocking", blocking.get());
+            assertEquals("queued", queued.get());
+            assertFalse(ran.get());
+        }
+        finally {
+            ownedFanOutExecutor.destroy();
+        }
+
+        final PortletTaskResult<String> afterDestroy = ownedFanOutExecutor.begin(request).submit(
+                new LatchedTask(new CountDownLatch(0), "destroyed"), "fallback");
+        assertEquals("fallback", afterDestroy.get());
+        assertEquals(2, ownedFanOutExecutor.getRejectedCount());
+    }
+
+    @Test
+    public void closeCancelsTasksAndCompletesRequestAttributes() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final AtomicBoolean destroyed = new AtomicBoolean();
+
+        final PortletFanOut fanOut = fanOutExecutor.begin(request);
+        final PortletTaskResult<String> scoped = fanOut.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                final RequestAttributes requestAttributes = RequestContextHolder.currentRequestAttributes();
+                requestAttributes.setAttribute("scoped", "value", RequestAttributes.SCOPE_REQUEST);
+                requestAttributes.registerDestructionCallback("scoped", new Runnable() {
+                    @Override
+                    public void run() {
+                        destroyed.set(true);
+                    }
+                }, RequestAttributes.SCOPE_REQUEST);
+                return "scoped";
+            }
+        });
+        final PortletTaskResult<String> slow = fanOut.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(5));
+                }
+                catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return "slow";
+            }
+        }, "fallback");
+
+        assertEquals("scoped", scoped.get());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        fanOut.close();
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals("fallback", slow.get());
+        assertTrue(slow.isFallback());
+        assertTrue(destroyed.get());
+        // Attributes set by tasks never reach the portlet request
+        assertNull(request.getAttribute("scoped"));
+    }
+
+    /**
+     * Verify no request state is left on the worker threads by running unwrapped tasks on each of them
+     */
+    private void assertWorkersClean() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(pool.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return LocaleContextHolder.getLocaleContext() == null
+                            && RequestContextHolder.getRequestAttributes() == null;
+                }
+            }).get());
+        }
+    }
+
+    private static final class LatchedTask implements Callable<String> {
+        private final CountDownLatch latch;
+        private final String result;
+
+        LatchedTask(CountDownLatch latch, String result) {
+            this.latch = latch;
+            this.result = result;
+        }
+
+        @Override
+        public String call() throws Exception {
+            latch.countDown();
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out waiting for " + result);
+            }
+            return result;
+        }
+    }
+}